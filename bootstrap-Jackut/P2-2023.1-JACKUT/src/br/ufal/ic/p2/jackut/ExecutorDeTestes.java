@@ -0,0 +1,269 @@
+/**
+ * Executa scripts de teste de aceitação do EasyAccept em paralelo, cada um com uma Facade isolada.
+ * <p>
+ * Os scripts são agrupados pelo prefixo antes do último "_" (us1_1.txt e us1_2.txt formam o grupo
+ * us1). Os scripts de um grupo rodam em ordem, pelo número do sufixo, no mesmo diretório de dados,
+ * porque os seguintes verificam o que os anteriores persistiram com encerrarSistema. Cada grupo usa
+ * um diretório temporário próprio, removido ao final. Como no EasyAccept, cada script recebe uma
+ * Facade nova.
+ * </p>
+ * <p>
+ * Grupos diferentes rodam ao mesmo tempo em processos separados, e não em threads: o construtor
+ * de {@link Script} recria a tabela estática de comandos internos (quit, expectError...), e um
+ * script construído em uma thread faz os que já estão rodando em outras falharem com "Unknown
+ * command". Cada processo trabalhador recebe parte dos grupos, executa-os um de cada vez pelo
+ * {@link #main} desta classe e grava os resultados em um arquivo, lido ao final. As propriedades
+ * {@code jackut.*} da JVM atual são repassadas aos trabalhadores.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut;
+
+import br.ufal.ic.p2.jackut.comandos.Comando;
+import br.ufal.ic.p2.jackut.comandos.InterpretadorDeComandos;
+import easyaccept.QuitSignalException;
+import easyaccept.script.Script;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+public class ExecutorDeTestes {
+    // Quantidade de grupos executados ao mesmo tempo
+    private final int trabalhadores;
+
+    /**
+     * Construtor
+     * @param trabalhadores Quantidade de processos trabalhadores (grupos executados ao mesmo tempo)
+     */
+    public ExecutorDeTestes(int trabalhadores) {
+        this.trabalhadores = Math.max(1, trabalhadores);
+    }
+
+    /**
+     * Executa os scripts e aguarda o fim de todos
+     * @param scripts Arquivos de script
+     * @return Resultado de cada script, em ordem alfabética do arquivo
+     * @throws IOException Se não for possível criar os diretórios de dados ou iniciar os trabalhadores
+     * @throws InterruptedException Se a espera pelos trabalhadores for interrompida
+     */
+    public List<ResultadoDeScript> executar(File[] scripts) throws IOException, InterruptedException {
+        Map<String, List<File>> grupos = new TreeMap<>();
+        for (File script : scripts) {
+            grupos.computeIfAbsent(grupo(script.getName()), g -> new ArrayList<>()).add(script);
+        }
+
+        File raiz = Files.createTempDirectory("jackut-testes").toFile();
+        try {
+            int processos = Math.min(trabalhadores, grupos.size());
+            List<ResultadoDeScript> resultados = processos <= 1
+                    ? executarGrupos(grupos, raiz)
+                    : executarEmProcessos(grupos, processos, raiz);
+            resultados.sort(Comparator.comparing(resultado -> resultado.getArquivo().getName()));
+            return resultados;
+        } finally {
+            apagar(raiz);
+        }
+    }
+
+    /**
+     * Ponto de entrada dos processos trabalhadores: executa os scripts, um grupo de cada vez, e
+     * grava uma linha por resultado no arquivo indicado
+     * @param args Arquivo de resultados seguido dos arquivos de script
+     * @throws Exception Se não for possível executar os scripts ou gravar os resultados
+     */
+    public static void main(String[] args) throws Exception {
+        File[] scripts = new File[args.length - 1];
+        for (int i = 1; i < args.length; i++) {
+            scripts[i - 1] = new File(args[i]);
+        }
+        List<String> linhas = new ArrayList<>();
+        for (ResultadoDeScript resultado : new ExecutorDeTestes(1).executar(scripts)) {
+            linhas.add("resultado " + InterpretadorDeComandos.citar(resultado.getArquivo().getPath())
+                    + " " + resultado.getTestes() + " " + resultado.getErros() + " " + resultado.getNanos()
+                    + " " + InterpretadorDeComandos.citar(resultado.getMensagens()));
+        }
+        Files.write(new File(args[0]).toPath(), linhas, StandardCharsets.UTF_8);
+    }
+
+    // Executa os grupos um de cada vez nesta JVM, cada um em um diretório sob a raiz
+    private static List<ResultadoDeScript> executarGrupos(Map<String, List<File>> grupos, File raiz) {
+        List<ResultadoDeScript> resultados = new ArrayList<>();
+        for (Map.Entry<String, List<File>> grupo : grupos.entrySet()) {
+            List<File> ordenados = grupo.getValue();
+            ordenados.sort(Comparator.comparingInt((File script) -> sufixo(script.getName()))
+                    .thenComparing(File::getName));
+            resultados.addAll(executarGrupo(ordenados, new File(raiz, grupo.getKey())));
+        }
+        return resultados;
+    }
+
+    // Distribui os grupos entre os processos trabalhadores, aguarda todos e lê os resultados
+    private static List<ResultadoDeScript> executarEmProcessos(Map<String, List<File>> grupos, int processos,
+                                                               File raiz) throws IOException, InterruptedException {
+        List<List<String>> partes = new ArrayList<>();
+        for (int i = 0; i < processos; i++) {
+            partes.add(new ArrayList<>());
+        }
+        int proxima = 0;
+        for (List<File> grupo : grupos.values()) {
+            for (File script : grupo) {
+                partes.get(proxima).add(script.getPath());
+            }
+            proxima = (proxima + 1) % processos;
+        }
+
+        List<Process> iniciados = new ArrayList<>();
+        List<File> arquivosDeResultado = new ArrayList<>();
+        try {
+            for (int i = 0; i < processos; i++) {
+                File arquivo = new File(raiz, "resultados-" + i + ".txt");
+                arquivosDeResultado.add(arquivo);
+                iniciados.add(new ProcessBuilder(comandoDoTrabalhador(arquivo, partes.get(i))).inheritIO().start());
+            }
+            for (Process processo : iniciados) {
+                int saida = processo.waitFor();
+                if (saida != 0) {
+                    throw new RuntimeException("Erro ao executar os testes: trabalhador terminou com código " + saida + ".");
+                }
+            }
+        } finally {
+            for (Process processo : iniciados) {
+                processo.destroyForcibly();
+            }
+        }
+
+        List<ResultadoDeScript> resultados = new ArrayList<>();
+        for (File arquivo : arquivosDeResultado) {
+            for (String linha : Files.readAllLines(arquivo.toPath(), StandardCharsets.UTF_8)) {
+                Comando comando = InterpretadorDeComandos.interpretar(linha);
+                if (comando != null) {
+                    resultados.add(new ResultadoDeScript(new File(comando.getValor(0)),
+                            Integer.parseInt(comando.getValor(1)), Integer.parseInt(comando.getValor(2)),
+                            comando.getValor(4), Long.parseLong(comando.getValor(3))));
+                }
+            }
+        }
+        return resultados;
+    }
+
+    // Linha de comando de um trabalhador: a mesma JVM e classpath, com as propriedades jackut.*
+    private static List<String> comandoDoTrabalhador(File resultados, List<String> scripts) {
+        List<String> comando = new ArrayList<>();
+        comando.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        Properties propriedades = System.getProperties();
+        for (String nome : propriedades.stringPropertyNames()) {
+            if (nome.startsWith("jackut.") || nome.equals("file.encoding")) {
+                comando.add("-D" + nome + "=" + propriedades.getProperty(nome));
+            }
+        }
+        comando.add("-cp");
+        comando.add(System.getProperty("java.class.path"));
+        comando.add(ExecutorDeTestes.class.getName());
+        comando.add(resultados.getPath());
+        comando.addAll(scripts);
+        return comando;
+    }
+
+    // Executa os scripts de um grupo em ordem, no mesmo diretório de dados
+    private static List<ResultadoDeScript> executarGrupo(List<File> scripts, File diretorio) {
+        List<ResultadoDeScript> resultados = new ArrayList<>();
+        for (File script : scripts) {
+            resultados.add(executarScript(script, diretorio));
+        }
+        return resultados;
+    }
+
+    // Executa um script com uma Facade nova sobre o diretório; o comando quit encerra o script
+    private static ResultadoDeScript executarScript(File arquivo, File diretorio) {
+        long inicio = System.nanoTime();
+        try {
+            Script script = new Script(arquivo.getPath(), new Facade(diretorio));
+            try {
+                try {
+                    script.executeAndCheck();
+                } catch (QuitSignalException e) {
+                    // Fim normal dos scripts do projeto
+                }
+                // Os resultados são lidos antes de fechar o script, que os descarta
+                String erros = script.check() ? "" : script.allErrorMessages();
+                return new ResultadoDeScript(arquivo, script.numberOfTests(), script.numberOfErrors(), erros,
+                        System.nanoTime() - inicio);
+            } finally {
+                script.close();
+            }
+        } catch (Exception e) {
+            return new ResultadoDeScript(arquivo, 0, 1, String.valueOf(e.getMessage()), System.nanoTime() - inicio);
+        }
+    }
+
+    // Grupo de um script: o nome até o último "_" (ou sem a extensão, se não houver "_")
+    private static String grupo(String nome) {
+        int separador = nome.lastIndexOf('_');
+        if (separador >= 0) {
+            return nome.substring(0, separador);
+        }
+        int ponto = nome.lastIndexOf('.');
+        return ponto >= 0 ? nome.substring(0, ponto) : nome;
+    }
+
+    // Número depois do último "_" (0 se não houver), para que us1_10 venha depois de us1_2
+    private static int sufixo(String nome) {
+        int separador = nome.lastIndexOf('_');
+        int ponto = nome.lastIndexOf('.');
+        if (separador < 0) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(nome.substring(separador + 1, ponto > separador ? ponto : nome.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Remove um diretório de dados e o que houver dentro
+    private static void apagar(File arquivo) {
+        File[] filhos = arquivo.listFiles();
+        if (filhos != null) {
+            for (File filho : filhos) {
+                apagar(filho);
+            }
+        }
+        arquivo.delete();
+    }
+
+    /**
+     * Resultado da execução de um script
+     */
+    public static final class ResultadoDeScript {
+        private final File arquivo;
+        private final int testes;
+        private final int erros;
+        private final String mensagens;
+        private final long nanos;
+
+        /**
+         * Construtor
+         * @param arquivo Arquivo do script
+         * @param testes Quantidade de testes executados
+         * @param erros Quantidade de testes com erro
+         * @param mensagens Mensagens de erro do EasyAccept (vazio se não houve erro)
+         * @param nanos Duração da execução, incluindo a carga da Facade
+         */
+        public ResultadoDeScript(File arquivo, int testes, int erros, String mensagens, long nanos) {
+            this.arquivo = arquivo;
+            this.testes = testes;
+            this.erros = erros;
+            this.mensagens = mensagens;
+            this.nanos = nanos;
+        }
+
+        public File getArquivo() { return arquivo; }
+        public int getTestes() { return testes; }
+        public int getErros() { return erros; }
+        public String getMensagens() { return mensagens; }
+        public long getNanos() { return nanos; }
+        public boolean passou() { return erros == 0; }
+    }
+}
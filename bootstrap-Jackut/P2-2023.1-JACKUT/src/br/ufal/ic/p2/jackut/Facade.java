@@ -7,19 +7,136 @@
  */
 package br.ufal.ic.p2.jackut;
 
+import br.ufal.ic.p2.jackut.comandos.Comando;
+import br.ufal.ic.p2.jackut.comandos.InterpretadorDeComandos;
+import br.ufal.ic.p2.jackut.comandos.Resultado;
 import br.ufal.ic.p2.jackut.managers.*;
+import br.ufal.ic.p2.jackut.models.Comunidade;
+import br.ufal.ic.p2.jackut.models.Pagina;
 import br.ufal.ic.p2.jackut.models.Usuario;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
 public class Facade {
     /**
      * Inicializa o sistema e carrega os dados persistentes.
      */
 
+    // Quantidade de comandos de um lote executados sob uma única aquisição das travas
+    private static final int COMANDOS_POR_LOTE = 4096;
+
+    // Operações medidas: os métodos públicos (que nos lotes são medidos por comando) e as tarefas
+    // de manutenção disparadas por eles
+    private static final String[] OPERACOES = {
+            "zerarSistema", "criarUsuario", "removerUsuario", "abrirSessao", "getAtributoUsuario",
+            "buscarUsuariosPorAtributo", "buscarUsuariosPorNome", "editarPerfil", "adicionarAmigo",
+            "ehAmigo", "ehFa", "ehPaquera", "getAmigos", "getAmigosPaginado", "enviarRecado",
+            "criarComunidade", "getDescricaoComunidade", "getDonoComunidade", "lerRecado",
+            "getMembrosComunidade", "getMembrosComunidadePaginado", "adicionarComunidade",
+            "getComunidades", "getFas", "getPaqueras", "getFasPaginado", "getPaquerasPaginado",
+            "recomendarAmigos", "enviarMensagem", "adicionarIdolo", "adicionarPaquera",
+            "adicionarInimigo", "lerMensagem", "encerrarSistema", "executarLote", "compactar",
+            "liberarMemoria"
+    };
+
+    // Aridade dos verbos que aceitam qualquer quantidade de argumentos
+    private static final int QUALQUER = -1;
+
+    // Indicam se um verbo altera os dados (e é registrado no log)
+    private static final boolean ESCRITA = true;
+    private static final boolean LEITURA = false;
+
+    // Verbos da gramática dos scripts: a mesma tabela atende os métodos públicos e as chamadas
+    // avulsas (com as travas de cada verbo) e os lotes (sob o acesso exclusivo)
+    private static final Map<String, Verbo> VERBOS = verbos(
+            new Verbo("zerarSistema", QUALQUER, ESCRITA, Trava.TUDO,
+                    (f, u, a) -> { f.limparSistema(); return null; }),
+            new Verbo("criarUsuario", 3, ESCRITA, Trava.logins(0),
+                    (f, u, a) -> { f.registrarUsuario(a[0], a[1], a[2]); return null; }),
+            new Verbo("removerUsuario", 1, ESCRITA, Trava.TUDO_COM_SESSAO,
+                    (f, u, a) -> { f.removerUsuario(u); return null; }),
+            new Verbo("abrirSessao", 2, LEITURA, Trava.NENHUMA,
+                    (f, u, a) -> f.sessionManager.abrirSessao(a[0], a[1])),
+            new Verbo("getAtributoUsuario", 2, LEITURA, Trava.NENHUMA,
+                    (f, u, a) -> f.lerAtributo(a[0], a[1])),
+            new Verbo("buscarUsuariosPorAtributo", 2, LEITURA, Trava.NENHUMA,
+                    (f, u, a) -> f.buscarPorAtributo(a[0], a[1])),
+            new Verbo("buscarUsuariosPorNome", 1, LEITURA, Trava.NENHUMA,
+                    (f, u, a) -> f.buscarPorNome(a[0])),
+            new Verbo("editarPerfil", 3, ESCRITA, Trava.sessao(),
+                    (f, u, a) -> { f.editarPerfil(u, a[1], a[2]); return null; }),
+            new Verbo("adicionarAmigo", 2, ESCRITA, Trava.sessao(1),
+                    (f, u, a) -> { f.adicionarAmigo(u, a[1]); return null; }),
+            new Verbo("ehAmigo", 2, LEITURA, Trava.logins(0, 1),
+                    (f, u, a) -> f.relationshipManager.ehAmigo(a[0], a[1])),
+            new Verbo("ehFa", 2, LEITURA, Trava.logins(1),
+                    (f, u, a) -> f.relationshipManager.ehFa(a[0], a[1])),
+            new Verbo("ehPaquera", 2, LEITURA, Trava.sessao(),
+                    (f, u, a) -> f.relationshipManager.ehPaquera(u, a[1])),
+            new Verbo("getAmigos", 1, LEITURA, Trava.logins(0),
+                    (f, u, a) -> f.relationshipManager.getAmigos(a[0])),
+            new Verbo("getAmigosPaginado", 3, LEITURA, Trava.logins(0),
+                    (f, u, a) -> f.relationshipManager.getPaginaAmigos(a[0], a[1], lerLimite(a[2]))),
+            new Verbo("enviarRecado", 3, ESCRITA, Trava.sessao(1),
+                    (f, u, a) -> { f.enviarRecado(u, a[1], a[2]); return null; }),
+            new Verbo("criarComunidade", 3, ESCRITA, Trava.sessao(),
+                    (f, u, a) -> { f.criarComunidade(u, a[1], a[2]); return null; }),
+            new Verbo("getDescricaoComunidade", 1, LEITURA, Trava.NENHUMA,
+                    (f, u, a) -> f.communityManager.getDescricaoComunidade(a[0])),
+            new Verbo("getDonoComunidade", 1, LEITURA, Trava.NENHUMA,
+                    (f, u, a) -> f.communityManager.getDonoComunidade(a[0])),
+            new Verbo("lerRecado", 1, ESCRITA, Trava.sessao(),
+                    (f, u, a) -> f.lerRecado(u)),
+            new Verbo("getMembrosComunidade", 1, LEITURA, Trava.NENHUMA,
+                    (f, u, a) -> f.communityManager.getMembrosComunidade(a[0])),
+            new Verbo("getMembrosComunidadePaginado", 3, LEITURA, Trava.NENHUMA,
+                    (f, u, a) -> f.communityManager.getPaginaMembros(a[0], a[1], lerLimite(a[2]))),
+            new Verbo("adicionarComunidade", 2, ESCRITA, Trava.sessao(),
+                    (f, u, a) -> { f.adicionarComunidade(u, a[1]); return null; }),
+            new Verbo("getComunidades", 1, LEITURA, Trava.NENHUMA,
+                    (f, u, a) -> f.communityManager.getComunidadesDoUsuario(a[0])),
+            new Verbo("getFas", 1, LEITURA, Trava.logins(0),
+                    (f, u, a) -> f.relationshipManager.getFas(a[0])),
+            new Verbo("getPaqueras", 1, LEITURA, Trava.sessao(),
+                    (f, u, a) -> f.relationshipManager.getPaqueras(u)),
+            new Verbo("getFasPaginado", 3, LEITURA, Trava.logins(0),
+                    (f, u, a) -> f.relationshipManager.getPaginaFas(a[0], a[1], lerLimite(a[2]))),
+            new Verbo("getPaquerasPaginado", 3, LEITURA, Trava.sessao(),
+                    (f, u, a) -> f.relationshipManager.getPaginaPaqueras(u, a[1], lerLimite(a[2]))),
+            new Verbo("recomendarAmigos", 2, LEITURA, Trava.sessao(),
+                    (f, u, a) -> f.recomendar(u, lerQuantidade(a[1]))),
+            // A trava do remetente ordena a mensagem em relação às demais operações dele; a entrega
+            // não altera os membros e é serializada pela trava da comunidade
+            new Verbo("enviarMensagem", 3, ESCRITA, Trava.sessao(),
+                    (f, u, a) -> { f.enviarMensagem(u, a[1], a[2]); return null; }),
+            new Verbo("adicionarIdolo", 2, ESCRITA, Trava.sessao(1),
+                    (f, u, a) -> { f.adicionarIdolo(u, a[1]); return null; }),
+            new Verbo("adicionarPaquera", 2, ESCRITA, Trava.sessao(1),
+                    (f, u, a) -> { f.adicionarPaquera(u, a[1]); return null; }),
+            new Verbo("adicionarInimigo", 2, ESCRITA, Trava.sessao(1),
+                    (f, u, a) -> { f.adicionarInimigo(u, a[1]); return null; }),
+            new Verbo("lerMensagem", 1, ESCRITA, Trava.sessao(),
+                    (f, u, a) -> f.lerMensagem(u)),
+            new Verbo("encerrarSistema", QUALQUER, LEITURA, Trava.TUDO,
+                    (f, u, a) -> { f.persistenceManager.salvarDados(); return null; }),
+            // Encerra os scripts; quem lê os comandos trata o fim, aqui ele não faz nada
+            new Verbo("quit", QUALQUER, LEITURA, Trava.NENHUMA,
+                    (f, u, a) -> null)
+    );
+
     private final UserManager userManager;
     private final SessionManager sessionManager;
     private final CommunityManager communityManager;
     private final RelationshipManager relationshipManager;
+    private final RecommendationManager recommendationManager;
     private final PersistenceManager persistenceManager;
+    private final TravasDeUsuarios travas;
+    private final MetricasDeOperacoes metricas = new MetricasDeOperacoes(OPERACOES);
 
     public Facade() {
         /**
@@ -31,18 +148,30 @@ public class Facade {
          * @throws RuntimeException Se o login já existir ou se algum parâmetro for inválido
          */
 
+        this(PersistenceManager.getDiretorioPadrao());
+    }
+
+    //Inicializa o sistema com os dados persistentes guardados no diretório informado
+    public Facade(File diretorio) {
         this.userManager = new UserManager();
         this.sessionManager = new SessionManager(userManager);
         this.communityManager = new CommunityManager(userManager);
         this.relationshipManager = new RelationshipManager(userManager);
-        this.persistenceManager = new PersistenceManager();
+        this.recommendationManager = new RecommendationManager(userManager, communityManager);
+        this.persistenceManager = new PersistenceManager(diretorio, userManager, communityManager,
+                relationshipManager);
+        this.travas = userManager.getTravas();
 
-        persistenceManager.carregarUsuarios(userManager);
-        persistenceManager.carregarComunidades(communityManager);
+        persistenceManager.carregarDados();
     }
 
     //Limpa todos os dados do sistema, reiniciando todos os managers
     public void zerarSistema() {
+        chamar("zerarSistema");
+    }
+
+    private void limparSistema() {
+        persistenceManager.registrar("zerarSistema");
         userManager.clear();
         sessionManager.clear();
         communityManager.clear();
@@ -50,7 +179,7 @@ public class Facade {
 
     //Cria um novo usuário no sistema através do userManager
     public void criarUsuario(String login, String senha, String nome) {
-        userManager.criarUsuario(login, senha, nome);
+        chamar("criarUsuario", login, senha, nome);
 
         /**
          * Adiciona um amigo para o usuário da sessão atual.
@@ -62,9 +191,18 @@ public class Facade {
          */
     }
 
+    private void registrarUsuario(String login, String senha, String nome) {
+        userManager.criarUsuario(login, senha, nome,
+                () -> persistenceManager.registrar("criarUsuario", login, senha, nome));
+    }
+
     //Remove um usuário do sistema, incluindo suas comunidades e sessões
     public void removerUsuario(String idSessao) {
-        Usuario usuario = sessionManager.getUsuarioPorSessao(idSessao);
+        chamar("removerUsuario", idSessao);
+    }
+
+    private void removerUsuario(Usuario usuario) {
+        persistenceManager.registrar("removerUsuario", usuario.getLogin());
         communityManager.removerComunidadesDoUsuario(usuario);
         sessionManager.removeSessoesDoUsuario(usuario.getLogin());
         userManager.removerUsuario(usuario);
@@ -72,11 +210,15 @@ public class Facade {
 
     //Abre uma nova sessão para o usuário e retorna um ID de sessão
     public String abrirSessao(String login, String senha) {
-        return sessionManager.abrirSessao(login, senha);
+        return (String) chamar("abrirSessao", login, senha);
     }
 
     //Retorna um atributo específico do perfil do usuário (nome ou outros atributos do perfil)
     public String getAtributoUsuario(String login, String atributo) {
+        return (String) chamar("getAtributoUsuario", login, atributo);
+    }
+
+    private String lerAtributo(String login, String atributo) {
         Usuario usuario = userManager.getUsuario(login);
         if (usuario == null) {
             throw new RuntimeException("Usuário não cadastrado.");
@@ -93,139 +235,619 @@ public class Facade {
         return valor;
     }
 
+    //Busca os usuários com um atributo de perfil preenchido com o valor informado
+    public String buscarUsuariosPorAtributo(String atributo, String valor) {
+        return (String) chamar("buscarUsuariosPorAtributo", atributo, valor);
+    }
+
+    private String buscarPorAtributo(String atributo, String valor) {
+        List<String> logins = new ArrayList<>();
+        for (Usuario usuario : userManager.buscarPorAtributo(atributo, valor)) {
+            logins.add(usuario.getLogin());
+        }
+        Collections.sort(logins);
+        return "{" + String.join(",", logins) + "}";
+    }
+
+    //Busca os usuários cujo nome começa pelo prefixo informado, em ordem alfabética de nome
+    public String buscarUsuariosPorNome(String prefixo) {
+        return (String) chamar("buscarUsuariosPorNome", prefixo);
+    }
+
+    private String buscarPorNome(String prefixo) {
+        List<String> logins = new ArrayList<>();
+        for (Usuario usuario : userManager.buscarPorPrefixoDoNome(prefixo)) {
+            logins.add(usuario.getLogin());
+        }
+        return "{" + String.join(",", logins) + "}";
+    }
+
     //Permite ao usuário editar um atributo de seu perfil
     public void editarPerfil(String idSessao, String atributo, String valor) {
-        Usuario usuario = sessionManager.getUsuarioPorSessao(idSessao);
+        chamar("editarPerfil", idSessao, atributo, valor);
+    }
 
+    private void editarPerfil(Usuario usuario, String atributo, String valor) {
         if (atributo == null || atributo.isEmpty()) {
             throw new RuntimeException("Atributo não preenchido.");
         }
-
-        usuario.getPerfil().adicionarAtributo(atributo, valor);
+        persistenceManager.registrar("editarPerfil", usuario.getLogin(), atributo, valor);
+        userManager.editarAtributo(usuario, atributo, valor);
     }
 
     //Adiciona um amigo ao usuário atual
     public void adicionarAmigo(String idSessao, String loginAmigo) {
-        Usuario usuario = sessionManager.getUsuarioPorSessao(idSessao);
-        relationshipManager.adicionarAmigo(usuario, loginAmigo);
+        chamar("adicionarAmigo", idSessao, loginAmigo);
+    }
+
+    private void adicionarAmigo(Usuario usuario, String loginAmigo) {
+        relationshipManager.adicionarAmigo(usuario, loginAmigo,
+                () -> persistenceManager.registrar("adicionarAmigo", usuario.getLogin(), loginAmigo));
     }
 
     //Verifica se dois usuários são amigos
     public boolean ehAmigo(String login1, String login2) {
-        return relationshipManager.ehAmigo(login1, login2);
+        return (Boolean) chamar("ehAmigo", login1, login2);
     }
 
     //Verifica se um usuário é fã de outro
     public boolean ehFa(String faLogin, String idoloLogin) {
-        return relationshipManager.ehFa(faLogin, idoloLogin);
+        return (Boolean) chamar("ehFa", faLogin, idoloLogin);
     }
 
     //Verifica se um usuário tem uma paquera por outro
     public boolean ehPaquera(String idSessao, String paqueraLogin) {
-        Usuario usuario = sessionManager.getUsuarioPorSessao(idSessao);
-        return relationshipManager.ehPaquera(usuario, paqueraLogin);
+        return (Boolean) chamar("ehPaquera", idSessao, paqueraLogin);
     }
 
     //Retorna a lista de amigos de um usuário
     public String getAmigos(String login) {
-        return relationshipManager.getAmigos(login);
+        return (String) chamar("getAmigos", login);
+    }
+
+    //Retorna uma página da lista de amigos de um usuário, em ordem alfabética
+    public Pagina getAmigosPaginado(String login, String cursor, int limite) {
+        return chamarDireto("getAmigosPaginado", u -> relationshipManager.getPaginaAmigos(login, cursor, limite), login);
     }
 
     //Envia um recado de um usuário para outro
     public void enviarRecado(String idSessao, String destinatarioLogin, String recado) {
-        Usuario remetente = sessionManager.getUsuarioPorSessao(idSessao);
-        relationshipManager.enviarRecado(remetente, destinatarioLogin, recado);
+        chamar("enviarRecado", idSessao, destinatarioLogin, recado);
+    }
+
+    private void enviarRecado(Usuario remetente, String destinatarioLogin, String recado) {
+        relationshipManager.enviarRecado(remetente, destinatarioLogin, recado,
+                () -> persistenceManager.registrar("enviarRecado", remetente.getLogin(), destinatarioLogin, recado));
     }
 
     //Cria uma nova comunidade com o usuário atual como dono
     public void criarComunidade(String sessao, String nome, String descricao) {
-        Usuario dono = sessionManager.getUsuarioPorSessao(sessao);
-        communityManager.criarComunidade(dono, nome, descricao);
+        chamar("criarComunidade", sessao, nome, descricao);
+    }
+
+    private void criarComunidade(Usuario dono, String nome, String descricao) {
+        communityManager.criarComunidade(dono, nome, descricao,
+                () -> persistenceManager.registrar("criarComunidade", dono.getLogin(), nome, descricao));
     }
 
     //Obtém a descrição de uma comunidade
     public String getDescricaoComunidade(String nome) {
-        return communityManager.getDescricaoComunidade(nome);
+        return (String) chamar("getDescricaoComunidade", nome);
     }
 
     //Obtém o dono de uma comunidade
     public String getDonoComunidade(String nome) {
-        return communityManager.getDonoComunidade(nome);
+        return (String) chamar("getDonoComunidade", nome);
     }
 
     //Lê o próximo recado na fila de recados do usuário
     public String lerRecado(String idSessao) {
-        Usuario usuario = sessionManager.getUsuarioPorSessao(idSessao);
+        return (String) chamar("lerRecado", idSessao);
+    }
 
+    private String lerRecado(Usuario usuario) {
         if (!usuario.temRecados()) {
             throw new RuntimeException("Não há recados.");
         }
 
-        return usuario.lerRecado();
+        persistenceManager.registrar("lerRecado", usuario.getLogin());
+        return usuario.lerRecado(persistenceManager::getRemetenteAlterado);
     }
 
     //Obtém os membros de uma comunidade
     public String getMembrosComunidade(String nome) {
-        return communityManager.getMembrosComunidade(nome);
+        return (String) chamar("getMembrosComunidade", nome);
+    }
+
+    //Obtém uma página dos membros de uma comunidade, em ordem alfabética
+    public Pagina getMembrosComunidadePaginado(String nome, String cursor, int limite) {
+        return chamarDireto("getMembrosComunidadePaginado", u -> communityManager.getPaginaMembros(nome, cursor, limite));
     }
 
     //Adiciona o usuário atual a uma comunidade
     public void adicionarComunidade(String sessao, String nome) {
-        Usuario usuario = sessionManager.getUsuarioPorSessao(sessao);
-        communityManager.adicionarMembro(usuario, nome);
+        chamar("adicionarComunidade", sessao, nome);
+    }
+
+    private void adicionarComunidade(Usuario usuario, String nome) {
+        communityManager.adicionarMembro(usuario, nome,
+                () -> persistenceManager.registrar("adicionarComunidade", usuario.getLogin(), nome));
     }
 
     //Obtém as comunidades de um usuário
     public String getComunidades(String login) {
-        return communityManager.getComunidadesDoUsuario(login);
+        return (String) chamar("getComunidades", login);
     }
 
     //Obtém os fãs de um usuário
     public String getFas(String login) {
-        return relationshipManager.getFas(login);
+        return (String) chamar("getFas", login);
     }
 
     //Obtém as paqueras do usuário atual
     public String getPaqueras(String idSessao) {
-        Usuario usuario = sessionManager.getUsuarioPorSessao(idSessao);
-        return relationshipManager.getPaqueras(usuario);
+        return (String) chamar("getPaqueras", idSessao);
+    }
+
+    //Obtém uma página dos fãs de um usuário, em ordem alfabética
+    public Pagina getFasPaginado(String login, String cursor, int limite) {
+        return chamarDireto("getFasPaginado", u -> relationshipManager.getPaginaFas(login, cursor, limite), login);
+    }
+
+    //Obtém uma página das paqueras do usuário atual, em ordem alfabética
+    public Pagina getPaquerasPaginado(String idSessao, String cursor, int limite) {
+        return chamarDireto("getPaquerasPaginado", u -> relationshipManager.getPaginaPaqueras(u, cursor, limite),
+                idSessao);
+    }
+
+    //Recomenda ao usuário atual amigos de amigos, do mais para o menos relevante
+    public String recomendarAmigos(String idSessao, int quantidade) {
+        return chamarDireto("recomendarAmigos", u -> recomendar(u, quantidade), idSessao);
+    }
+
+    private String recomendar(Usuario usuario, int quantidade) {
+        return "{" + String.join(",", recommendationManager.recomendar(usuario, quantidade)) + "}";
     }
 
     //Envia uma mensagem para todos os membros de uma comunidade
     public void enviarMensagem(String idSessao, String nomeComunidade, String mensagem) {
-        Usuario remetente = sessionManager.getUsuarioPorSessao(idSessao);
-        communityManager.enviarMensagemParaComunidade(remetente, nomeComunidade, mensagem);
+        chamar("enviarMensagem", idSessao, nomeComunidade, mensagem);
+    }
+
+    private void enviarMensagem(Usuario remetente, String nomeComunidade, String mensagem) {
+        communityManager.enviarMensagemParaComunidade(remetente, nomeComunidade, mensagem,
+                () -> persistenceManager.registrar("enviarMensagem", remetente.getLogin(), nomeComunidade, mensagem));
     }
 
     //Adiciona um ídolo ao usuário atual
     public void adicionarIdolo(String idSessao, String idoloLogin) {
-        Usuario usuario = sessionManager.getUsuarioPorSessao(idSessao);
-        relationshipManager.adicionarIdolo(usuario, idoloLogin);
+        chamar("adicionarIdolo", idSessao, idoloLogin);
+    }
+
+    private void adicionarIdolo(Usuario usuario, String idoloLogin) {
+        relationshipManager.adicionarIdolo(usuario, idoloLogin,
+                () -> persistenceManager.registrar("adicionarIdolo", usuario.getLogin(), idoloLogin));
     }
 
     //Adiciona uma paquera ao usuário atual
     public void adicionarPaquera(String idSessao, String paqueraLogin) {
-        Usuario usuario = sessionManager.getUsuarioPorSessao(idSessao);
-        relationshipManager.adicionarPaquera(usuario, paqueraLogin);
+        chamar("adicionarPaquera", idSessao, paqueraLogin);
+    }
+
+    private void adicionarPaquera(Usuario usuario, String paqueraLogin) {
+        relationshipManager.adicionarPaquera(usuario, paqueraLogin,
+                () -> persistenceManager.registrar("adicionarPaquera", usuario.getLogin(), paqueraLogin));
     }
 
     //Adiciona um inimigo ao usuário atual
     public void adicionarInimigo(String idSessao, String inimigoLogin) {
-        Usuario usuario = sessionManager.getUsuarioPorSessao(idSessao);
-        relationshipManager.adicionarInimigo(usuario, inimigoLogin);
+        chamar("adicionarInimigo", idSessao, inimigoLogin);
+    }
+
+    private void adicionarInimigo(Usuario usuario, String inimigoLogin) {
+        relationshipManager.adicionarInimigo(usuario, inimigoLogin,
+                () -> persistenceManager.registrar("adicionarInimigo", usuario.getLogin(), inimigoLogin));
     }
 
     //Lê a próxima mensagem na fila de mensagens do usuário
     public String lerMensagem(String idSessao) {
-        Usuario usuario = sessionManager.getUsuarioPorSessao(idSessao);
-        if (!usuario.temMensagens()) {
-            throw new RuntimeException("Não há mensagens.");
-        }
-        return usuario.lerMensagem();
+        return (String) chamar("lerMensagem", idSessao);
+    }
+
+    private String lerMensagem(Usuario usuario) {
+        // O nome da comunidade lida é registrado para que a leitura seja reaplicada na mesma origem
+        return communityManager.lerMensagem(usuario,
+                comunidade -> persistenceManager.registrar("lerMensagem", usuario.getLogin(), comunidade));
     }
 
-    //Salva todos os dados do sistema antes de encerrar
+    //Grava um snapshot compactado dos dados e fecha o log de operações antes de encerrar
     public void encerrarSistema() {
-        persistenceManager.salvarDados(userManager, communityManager);
+        chamar("encerrarSistema");
+    }
+
+    //Retorna as métricas da gravação assíncrona do log (null quando a gravação é síncrona)
+    public MetricasDeGravacao getMetricasGravacao() {
+        return persistenceManager.getMetricasGravacao();
+    }
+
+    //Retorna as métricas de cada operação e as medidas atuais de usuários, sessões, comunidades,
+    //caixas de recados e caches. As caixas de recados contadas são as dos usuários em memória
+    public RetratoDeMetricas getMetricas() {
+        Map<String, Number> medidas = new LinkedHashMap<>();
+        medidas.put("usuarios", userManager.getQuantidadeUsuarios());
+        medidas.put("usuariosEmMemoria", userManager.getQuantidadeEmMemoria());
+        medidas.put("sessoes", sessionManager.getQuantidadeSessoes());
+
+        int comunidades = 0;
+        long mensagens = 0;
+        for (Comunidade comunidade : communityManager.getComunidades().values()) {
+            comunidades++;
+            mensagens += comunidade.getTamanhoLog();
+        }
+        medidas.put("comunidades", comunidades);
+        medidas.put("mensagensNosLogs", mensagens);
+
+        long recados = 0;
+        int maiorCaixa = 0;
+        for (Usuario usuario : userManager.getUsuarios().values()) {
+            int quantidade = usuario.getQuantidadeRecados();
+            recados += quantidade;
+            maiorCaixa = Math.max(maiorCaixa, quantidade);
+        }
+        medidas.put("recadosNaoLidos", recados);
+        medidas.put("maiorCaixaDeRecados", maiorCaixa);
+
+        medidas.put("acertoCacheAmigos", relationshipManager.getCacheAmigos().getTaxaDeAcerto());
+        medidas.put("acertoCacheFas", relationshipManager.getCacheFas().getTaxaDeAcerto());
+        medidas.put("acertoCacheMembros", communityManager.getCacheMembros().getTaxaDeAcerto());
+        medidas.put("paresDeInimigos", userManager.getIndiceDeInimigos().getQuantidadePares());
+        medidas.put("falsosPositivosDeInimigos", userManager.getIndiceDeInimigos().getFalsosPositivos());
+        CacheDeUsuarios cache = userManager.getCache();
+        if (cache != null) {
+            medidas.put("cargasSobDemanda", cache.getCargas());
+            medidas.put("descartesDaMemoria", cache.getDescartes());
+            medidas.put("passagensDeLiberacao", cache.getPassagens());
+        }
+        return metricas.retratar(medidas, persistenceManager.getMetricasGravacao());
+    }
+
+    //Grava o relatório das métricas em um arquivo de texto
+    public void exportarMetricas(String caminho) {
+        try {
+            getMetricas().gravar(new File(caminho));
+        } catch (IOException e) {
+            throw new RuntimeException("Erro ao exportar as métricas.", e);
+        }
+    }
+
+    //Executa uma lista de comandos na gramática do EasyAccept e devolve o resultado de cada um, na ordem
+    public List<Resultado> executarLote(List<Comando> comandos) {
+        List<Resultado> resultados = new ArrayList<>(comandos.size());
+        executarLote(comandos.iterator(), new HashMap<>(), resultados::add);
+        return resultados;
+    }
+
+    /**
+     * Executa uma sequência de comandos (que pode ser lida sob demanda, como a de um Stream) e
+     * entrega o resultado de cada um. Os comandos rodam na ordem, em lotes que detêm o acesso
+     * exclusivo ao sistema: as travas são adquiridas uma vez por lote, cada sessão é resolvida uma
+     * vez e as operações do lote vão para o log em uma única gravação. Os resultados de um lote só
+     * são entregues depois que suas operações estão no log, e fora das travas.
+     * @param comandos Comandos a executar
+     * @param variaveis Variáveis do EasyAccept (ex: s1=abrirSessao), lidas e atualizadas pelos comandos
+     * @param saida Recebe o resultado de cada comando
+     */
+    public void executarLote(Iterator<Comando> comandos, Map<String, String> variaveis, Consumer<Resultado> saida) {
+        Map<String, Usuario> sessoes = new HashMap<>();
+        List<Resultado> resultados = new ArrayList<>();
+        while (comandos.hasNext()) {
+            // Cada lote conta como uma chamada de executarLote, e cada comando como uma chamada da operação
+            medir("executarLote", () -> {
+                travas.travarTudo();
+                try {
+                    // Um usuário descarregado da memória entre dois lotes invalida as sessões já resolvidas
+                    sessoes.clear();
+                    persistenceManager.iniciarLote();
+                    try {
+                        for (int i = 0; i < COMANDOS_POR_LOTE && comandos.hasNext(); i++) {
+                            resultados.add(executar(comandos.next(), variaveis, sessoes));
+                        }
+                    } finally {
+                        persistenceManager.concluirLote();
+                    }
+                    if (persistenceManager.precisaCompactarDuranteLote()) {
+                        compactar();
+                    }
+                    if (persistenceManager.precisaLiberarMemoria()) {
+                        liberarMemoria();
+                    }
+                } finally {
+                    travas.destravarTudo();
+                }
+            });
+
+            resultados.forEach(saida);
+            resultados.clear();
+        }
+        compactarSeNecessario();
+    }
+
+    // Executa um comando de lote (com o acesso exclusivo já adquirido) e converte o retorno ou o erro em resultado
+    private Resultado executar(Comando comando, Map<String, String> variaveis, Map<String, Usuario> sessoes) {
+        String[] argumentos = argumentos(comando, variaveis);
+        try {
+            String valor = medir(comando.getNome(), () -> aplicar(comando.getNome(), argumentos, sessoes));
+            if (comando.getVariavel() != null) {
+                variaveis.put(comando.getVariavel(), valor);
+            }
+            return Resultado.sucesso(comando, valor);
+        } catch (RuntimeException e) {
+            return Resultado.erro(comando, e.getMessage());
+        }
+    }
+
+    // Aplica um comando sem adquirir travas; as sessões já resolvidas no lote são reaproveitadas
+    private String aplicar(String nome, String[] a, Map<String, Usuario> sessoes) {
+        Verbo verbo = verbo(nome, a);
+        Usuario usuario = verbo.trava.sessao ? sessao(a[0], sessoes) : null;
+        Object valor = verbo.corpo.aplicar(this, usuario, a);
+        if (verbo.trava.exclusiva) {
+            // Operações sobre todo o sistema (zerar, remover conta) invalidam as sessões resolvidas
+            sessoes.clear();
+        }
+        return valor == null ? null : String.valueOf(valor);
+    }
+
+    //Executa um comando na gramática do EasyAccept como chamada avulsa, com as mesmas travas do método
+    //público correspondente, e devolve o resultado; as variáveis são lidas e atualizadas pelo comando
+    public Resultado executar(Comando comando, Map<String, String> variaveis) {
+        String[] argumentos = argumentos(comando, variaveis);
+        try {
+            Object valor = chamar(comando.getNome(), argumentos);
+            String texto = valor == null ? null : String.valueOf(valor);
+            if (comando.getVariavel() != null) {
+                variaveis.put(comando.getVariavel(), texto);
+            }
+            return Resultado.sucesso(comando, texto);
+        } catch (RuntimeException e) {
+            return Resultado.erro(comando, e.getMessage());
+        }
+    }
+
+    //Verifica se um comando altera os dados (e é registrado no log); comandos desconhecidos não alteram
+    public static boolean alteraDados(String nome) {
+        Verbo verbo = VERBOS.get(nome);
+        return verbo != null && verbo.escrita;
+    }
+
+    //Executa um verbo como chamada avulsa: adquire as travas que ele declara e, se ele altera dados,
+    //compacta o log quando necessário depois de soltá-las
+    private Object chamar(String nome, String... a) {
+        return medir(nome, () -> {
+            Verbo verbo = verbo(nome, a);
+            return travado(verbo, a, usuario -> verbo.corpo.aplicar(this, usuario, a));
+        });
+    }
+
+    //Executa um método público com argumentos que não são texto chamando os gerenciadores
+    //diretamente, sem converter os argumentos em texto, mas com as travas e as métricas do verbo de
+    //mesmo nome. Só são informados os argumentos que as travas consultam, nas posições do verbo
+    private <T> T chamarDireto(String nome, Function<Usuario, T> corpo, String... a) {
+        return medir(nome, () -> travado(VERBOS.get(nome), a, corpo));
+    }
+
+    //Aplica o corpo de um verbo com as travas que ele declara e o usuário da sessão, se houver
+    private <T> T travado(Verbo verbo, String[] a, Function<Usuario, T> corpo) {
+        T valor;
+        if (verbo.trava.exclusiva) {
+            travas.travarTudo();
+            try {
+                valor = corpo.apply(verbo.trava.sessao ? sessionManager.getUsuarioPorSessao(a[0]) : null);
+            } finally {
+                travas.destravarTudo();
+            }
+        } else if (verbo.trava == Trava.NENHUMA) {
+            valor = corpo.apply(null);
+        } else {
+            Usuario usuario = verbo.trava.sessao ? sessionManager.getUsuarioPorSessao(a[0]) : null;
+            String primeiro = verbo.trava.primeiro(usuario, a);
+            String segundo = verbo.trava.segundo(usuario, a);
+            travas.travar(primeiro, segundo);
+            try {
+                if (usuario != null) {
+                    // A remoção e a descarga de usuários exigem todas as travas: resolvida de novo
+                    // com as travas já obtidas, a sessão não aponta para um usuário removido ou
+                    // descarregado depois da primeira resolução (que só serviu para saber o login)
+                    usuario = sessionManager.getUsuarioPorSessao(a[0]);
+                }
+                valor = corpo.apply(usuario);
+            } finally {
+                travas.destravar(primeiro, segundo);
+            }
+        }
+        if (verbo.escrita) {
+            compactarSeNecessario();
+        }
+        return valor;
+    }
+
+    // Argumentos de um comando com as variáveis substituídas
+    private static String[] argumentos(Comando comando, Map<String, String> variaveis) {
+        String[] argumentos = new String[comando.getValores().size()];
+        for (int i = 0; i < argumentos.length; i++) {
+            argumentos[i] = InterpretadorDeComandos.substituir(comando.getValor(i), variaveis);
+        }
+        return argumentos;
+    }
+
+    // Verbo de um comando, conferindo a quantidade de argumentos
+    private static Verbo verbo(String nome, String[] argumentos) {
+        Verbo verbo = VERBOS.get(nome);
+        if (verbo == null) {
+            throw new RuntimeException("Comando desconhecido: " + nome + ".");
+        }
+        if (verbo.aridade != QUALQUER && argumentos.length != verbo.aridade) {
+            throw new RuntimeException("Quantidade de argumentos inválida para " + nome + ".");
+        }
+        return verbo;
+    }
+
+    // Resolve uma sessão uma única vez por lote
+    private Usuario sessao(String idSessao, Map<String, Usuario> sessoes) {
+        Usuario usuario = sessoes.get(idSessao);
+        if (usuario == null) {
+            usuario = sessionManager.getUsuarioPorSessao(idSessao);
+            sessoes.put(idSessao, usuario);
+        }
+        return usuario;
+    }
+
+    //Converte o tamanho de página recebido como texto em um comando
+    private static int lerLimite(String limite) {
+        try {
+            return Integer.parseInt(limite);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Tamanho de página inválido.");
+        }
+    }
+
+    //Converte a quantidade de recomendações recebida como texto em um comando
+    private static int lerQuantidade(String quantidade) {
+        try {
+            return Integer.parseInt(quantidade);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Quantidade de recomendações inválida.");
+        }
+    }
+
+    //Grava um snapshot quando o log acumulou operações suficientes e, na carga sob demanda, descarrega
+    //usuários quando há usuários demais em memória (exige acesso exclusivo ao sistema)
+    private void compactarSeNecessario() {
+        if (persistenceManager.precisaCompactar() || persistenceManager.precisaLiberarMemoria()) {
+            travas.travarTudo();
+            try {
+                if (persistenceManager.precisaCompactar()) {
+                    compactar();
+                }
+                if (persistenceManager.precisaLiberarMemoria()) {
+                    liberarMemoria();
+                }
+            } finally {
+                travas.destravarTudo();
+            }
+        }
+    }
+
+    //Grava o snapshot e trunca o log, medindo a duração (exige acesso exclusivo ao sistema)
+    private void compactar() {
+        medir("compactar", persistenceManager::compactar);
+    }
+
+    //Descarrega usuários da memória na carga sob demanda, medindo a duração (exige acesso exclusivo ao sistema)
+    private void liberarMemoria() {
+        medir("liberarMemoria", persistenceManager::liberarMemoria);
+    }
+
+    //Executa uma operação registrando nas métricas, com o nome informado, sua duração e seu erro
+    private <T> T medir(String operacao, Supplier<T> corpo) {
+        long inicio = metricas.iniciar();
+        try {
+            return corpo.get();
+        } catch (RuntimeException e) {
+            throw metricas.registrarErro(operacao, e);
+        } finally {
+            metricas.registrar(operacao, inicio);
+        }
+    }
+
+    //Executa uma operação sem retorno registrando nas métricas sua duração e seu erro
+    private void medir(String operacao, Runnable corpo) {
+        medir(operacao, () -> {
+            corpo.run();
+            return null;
+        });
+    }
+
+    // Tabela de verbos indexada pelo nome
+    private static Map<String, Verbo> verbos(Verbo... verbos) {
+        Map<String, Verbo> porNome = new HashMap<>();
+        for (Verbo verbo : verbos) {
+            porNome.put(verbo.nome, verbo);
+        }
+        return Collections.unmodifiableMap(porNome);
+    }
+
+    // Corpo de um verbo: recebe os argumentos já substituídos e, se o verbo age pela sessão do
+    // primeiro argumento, o usuário dela já resolvido
+    private interface Corpo {
+        Object aplicar(Facade facade, Usuario usuario, String[] argumentos);
+    }
+
+    // Travas adquiridas por um verbo nas chamadas avulsas; nos lotes o acesso exclusivo cobre todas
+    private static final class Trava {
+        // Nenhuma trava: consultas a estruturas com sincronização própria
+        static final Trava NENHUMA = new Trava(false, false);
+
+        // Acesso exclusivo a todo o sistema
+        static final Trava TUDO = new Trava(true, false);
+
+        // Acesso exclusivo, resolvendo dentro dele a sessão do primeiro argumento
+        static final Trava TUDO_COM_SESSAO = new Trava(true, true);
+
+        // Indica se o verbo exige acesso exclusivo
+        final boolean exclusiva;
+
+        // Indica se o primeiro argumento é uma sessão, cujo usuário é resolvido (e travado)
+        final boolean sessao;
+
+        // Posições dos argumentos com logins a travar, depois do usuário da sessão (no máximo duas listras)
+        final int[] logins;
+
+        private Trava(boolean exclusiva, boolean sessao, int... logins) {
+            this.exclusiva = exclusiva;
+            this.sessao = sessao;
+            this.logins = logins;
+        }
+
+        // Trava o usuário da sessão e, opcionalmente, o login de outro argumento
+        static Trava sessao(int... logins) {
+            return new Trava(false, true, logins);
+        }
+
+        // Trava os logins dos argumentos informados
+        static Trava logins(int... logins) {
+            return new Trava(false, false, logins);
+        }
+
+        // Primeiro login a travar: o do usuário da sessão ou o do primeiro argumento indicado
+        String primeiro(Usuario usuario, String[] argumentos) {
+            if (usuario != null) {
+                return usuario.getLogin();
+            }
+            return logins.length > 0 ? argumentos[logins[0]] : null;
+        }
+
+        // Segundo login a travar, se houver
+        String segundo(Usuario usuario, String[] argumentos) {
+            int posicao = usuario != null ? 0 : 1;
+            return posicao < logins.length ? argumentos[logins[posicao]] : null;
+        }
+    }
+
+    // Verbo da gramática dos scripts
+    private static final class Verbo {
+        final String nome;
+        final int aridade;
+        final boolean escrita;
+        final Trava trava;
+        final Corpo corpo;
+
+        Verbo(String nome, int aridade, boolean escrita, Trava trava, Corpo corpo) {
+            this.nome = nome;
+            this.aridade = aridade;
+            this.escrita = escrita;
+            this.trava = trava;
+            this.corpo = corpo;
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,21 +1,24 @@
 package br.ufal.ic.p2.jackut;
 
-import easyaccept.EasyAccept;
 import java.io.File;
-import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 
 public class Main {
     /**
      * Método principal que executa os testes de aceitação
-     * @param args Argumentos da linha de comando (não utilizados)
+     * @param args Pasta dos scripts (padrão "tests") e quantidade de scripts executados ao mesmo
+     *             tempo (padrão: um por núcleo), ambos opcionais
+     * @throws Exception Se não for possível criar os diretórios de dados ou aguardar os testes
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
         // Cria uma referência para a pasta de testes
-        File pasta = new File("tests");
+        File pasta = new File(args.length > 0 ? args[0] : "tests");
+        int trabalhadores = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
 
         // Verifica se a pasta de testes existe e é um diretório válido
         if (!pasta.exists() || !pasta.isDirectory()) {
-            System.out.println("A pasta 'tests/' não existe ou não é um diretório.");
+            System.out.println("A pasta '" + pasta.getPath() + "/' não existe ou não é um diretório.");
             return;
         }
 
@@ -27,38 +30,48 @@ public class Main {
 
         // Verifica se foram encontrados arquivos de teste
         if (arquivos == null || arquivos.length == 0) {
-            System.out.println("Nenhum arquivo de teste encontrado na pasta 'tests/'.");
+            System.out.println("Nenhum arquivo de teste encontrado na pasta '" + pasta.getPath() + "/'.");
             return;
         }
 
         /**
-         * Ordena os arquivos alfabeticamente para garantir
-         * uma ordem consistente de execução dos testes
+         * Executa os testes em paralelo: cada grupo de scripts dependentes (us1_1 e us1_2, por
+         * exemplo) roda em ordem, com um diretório de dados próprio, e grupos diferentes rodam
+         * ao mesmo tempo
          */
-        Arrays.sort(arquivos);
+        long inicio = System.nanoTime();
+        List<ExecutorDeTestes.ResultadoDeScript> resultados = new ExecutorDeTestes(trabalhadores).executar(arquivos);
+        double total = (System.nanoTime() - inicio) / 1e6;
 
-        /**
-         * Executa os testes para cada arquivo encontrado
-         * Usa o framework EasyAccept para executar os scripts de teste
-         */
-        for (File arquivo : arquivos) {
-            // Monta o caminho relativo do arquivo de teste
-            String caminhoRelativo = "tests/" + arquivo.getName();
-
-            // Prepara os argumentos para o EasyAccept:
-            // 1. A classe Facade que implementa os comandos
-            // 2. O arquivo de script de teste
-            String[] easyAcceptArgs = { "br.ufal.ic.p2.jackut.Facade", caminhoRelativo };
-
-            System.out.println("Executando teste: " + caminhoRelativo);
+        // Exibe o resultado de cada script no formato do EasyAccept, em ordem alfabética
+        for (ExecutorDeTestes.ResultadoDeScript resultado : resultados) {
+            String caminho = pasta.getName() + "/" + resultado.getArquivo().getName();
+            if (resultado.passou()) {
+                System.out.println("Test file " + caminho + ": " + resultado.getTestes() + " tests OK");
+            } else {
+                System.out.println("Test file " + caminho + ": " + resultado.getErros() + " errors:");
+                System.out.println(resultado.getMensagens());
+            }
+        }
 
-            // Executa o EasyAccept com os argumentos configurados
-            EasyAccept.main(easyAcceptArgs);
+        // Resumo dos tempos de cada script e da execução inteira
+        System.out.printf("%n%-20s %8s %8s %12s%n", "script", "testes", "erros", "tempo (ms)");
+        int testes = 0;
+        int erros = 0;
+        double soma = 0;
+        for (ExecutorDeTestes.ResultadoDeScript resultado : resultados) {
+            double tempo = resultado.getNanos() / 1e6;
+            System.out.printf(Locale.ROOT, "%-20s %8d %8d %12.1f%n", resultado.getArquivo().getName(),
+                    resultado.getTestes(), resultado.getErros(), tempo);
+            testes += resultado.getTestes();
+            erros += resultado.getErros();
+            soma += tempo;
         }
+        System.out.printf(Locale.ROOT, "%-20s %8d %8d %12.1f%n", "total", testes, erros, soma);
+        System.out.printf(Locale.ROOT, "%d scripts em %.1f ms com %d trabalhadores%n", resultados.size(), total,
+                trabalhadores);
 
         // Mensagem final indicando conclusão de todos os testes
         System.out.println("Todos os testes foram executados.");
     }
 }
-
-
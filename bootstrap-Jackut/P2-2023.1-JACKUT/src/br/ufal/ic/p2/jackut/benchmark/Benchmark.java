@@ -0,0 +1,184 @@
+/**
+ * Mede vazão e latência de cada operação da Facade sobre um grafo sintético em grande escala.
+ * <p>
+ * O grafo é gerado por {@link GeradorDeGrafo} em um diretório temporário, para não tocar nos
+ * dados do diretório atual. Cada operação é executada primeiro em um aquecimento (para a JIT
+ * compilar o caminho medido) e depois em uma rodada medida, chamada a chamada, com
+ * {@link System#nanoTime()}. O relatório traz operações por segundo e percentis de latência.
+ * Também são medidos o salvamento e o carregamento do {@code PersistenceManager}.
+ * </p>
+ * <pre>
+ * uso: Benchmark [usuarios] [iteracoes] [semente]
+ * </pre>
+ */
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.Facade;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+public class Benchmark {
+    // Valores padrão dos argumentos
+    private static final int USUARIOS_PADRAO = 100_000;
+    private static final int ITERACOES_PADRAO = 20_000;
+    private static final long SEMENTE_PADRAO = 42;
+
+    // Repetições das medições de salvamento e carregamento, que percorrem todo o estado
+    private static final int ITERACOES_PERSISTENCIA = 5;
+
+    private final File diretorio;
+    private final int iteracoes;
+    private Facade facade;
+    private GeradorDeGrafo grafo;
+
+    /**
+     * Construtor
+     * @param diretorio Diretório de dados usado pela Facade medida
+     * @param iteracoes Quantidade de chamadas medidas por operação
+     */
+    public Benchmark(File diretorio, int iteracoes) {
+        this.diretorio = diretorio;
+        this.iteracoes = iteracoes;
+    }
+
+    /**
+     * Método principal que gera o grafo e executa as medições
+     * @param args Quantidade de usuários, iterações por operação e semente (todos opcionais)
+     * @throws IOException Se não for possível criar o diretório temporário
+     */
+    public static void main(String[] args) throws IOException {
+        int usuarios = args.length > 0 ? Integer.parseInt(args[0]) : USUARIOS_PADRAO;
+        int iteracoes = args.length > 1 ? Integer.parseInt(args[1]) : ITERACOES_PADRAO;
+        long semente = args.length > 2 ? Long.parseLong(args[2]) : SEMENTE_PADRAO;
+
+        File diretorio = Files.createTempDirectory("jackut-benchmark").toFile();
+        try {
+            new Benchmark(diretorio, iteracoes).executar(usuarios, semente);
+        } finally {
+            for (File arquivo : diretorio.listFiles()) {
+                arquivo.delete();
+            }
+            diretorio.delete();
+        }
+    }
+
+    /**
+     * Gera o grafo e mede todas as operações
+     * @param usuarios Quantidade de usuários do grafo
+     * @param semente Semente do gerador
+     */
+    public void executar(int usuarios, long semente) {
+        facade = new Facade(diretorio);
+        facade.zerarSistema();
+        grafo = new GeradorDeGrafo(facade, usuarios, semente);
+
+        long inicio = System.nanoTime();
+        grafo.gerar();
+        System.out.printf("Grafo com %d usuários gerado em %.1f s%n%n", usuarios,
+                (System.nanoTime() - inicio) / 1e9);
+        System.out.printf("%-22s %12s %10s %10s %10s %10s %10s %8s%n",
+                "operação", "ops/s", "média µs", "p50 µs", "p90 µs", "p99 µs", "máx µs", "falhas");
+
+        // Consultas: usuários sorteados por popularidade, para incluir os de maior grau
+        medir("abrirSessao", i -> facade.abrirSessao(login(grafo.sortear()), "senha"));
+        medir("getAtributoUsuario", i -> facade.getAtributoUsuario(login(grafo.sortear()), "nome"));
+        medir("ehAmigo", i -> facade.ehAmigo(login(grafo.sortearPopular()), login(grafo.sortear())));
+        medir("getAmigos", i -> facade.getAmigos(login(grafo.sortearPopular())));
+        medir("ehFa", i -> facade.ehFa(login(grafo.sortear()), login(grafo.sortearPopular())));
+        medir("getFas", i -> facade.getFas(login(grafo.sortearPopular())));
+        medir("getComunidades", i -> facade.getComunidades(login(grafo.sortearPopular())));
+        medir("getMembrosComunidade", i -> facade.getMembrosComunidade(grafo.sortearComunidade()));
+        medir("getDescricaoComunidade", i -> facade.getDescricaoComunidade(grafo.sortearComunidade()));
+        medir("getDonoComunidade", i -> facade.getDonoComunidade(grafo.sortearComunidade()));
+
+        // Alterações
+        medir("criarUsuario", i -> facade.criarUsuario("novo" + i, "senha", "Novo " + i));
+        medir("editarPerfil", i -> facade.editarPerfil(sessao(grafo.sortear()), "cidade", "Cidade " + i));
+        medir("adicionarAmigo", i -> facade.adicionarAmigo(sessao(grafo.sortear()), login(grafo.sortearPopular())));
+        medir("adicionarIdolo", i -> facade.adicionarIdolo(sessao(grafo.sortear()), login(grafo.sortearPopular())));
+        medir("adicionarPaquera", i -> facade.adicionarPaquera(sessao(grafo.sortear()), login(grafo.sortear())));
+        medir("ehPaquera", i -> facade.ehPaquera(sessao(grafo.sortear()), login(grafo.sortear())));
+        medir("getPaqueras", i -> facade.getPaqueras(sessao(grafo.sortear())));
+        medir("adicionarInimigo", i -> facade.adicionarInimigo(sessao(grafo.sortear()), login(grafo.sortear())));
+        medir("criarComunidade", i -> facade.criarComunidade(sessao(grafo.sortear()), "nova" + i, "Nova " + i));
+        medir("adicionarComunidade", i -> facade.adicionarComunidade(sessao(grafo.sortear()), grafo.sortearComunidade()));
+
+        // Recados e mensagens: as leituras consomem o que foi enviado na medição anterior
+        int[] destinatarios = new int[iteracoes * 2];
+        medir("enviarRecado", i -> {
+            destinatarios[i] = grafo.sortear();
+            facade.enviarRecado(sessao(grafo.sortear()), login(destinatarios[i]), "Recado " + i);
+        });
+        medir("lerRecado", i -> facade.lerRecado(sessao(destinatarios[i])));
+        medir("enviarMensagem", i -> facade.enviarMensagem(sessao(grafo.sortear()), grafo.sortearComunidade(), "Mensagem " + i));
+        medir("lerMensagem", i -> facade.lerMensagem(sessao(grafo.sortear())));
+
+        // Persistência: o salvamento grava o snapshot completo e o carregamento o lê de volta
+        medir("salvar (encerrar)", ITERACOES_PERSISTENCIA, i -> facade.encerrarSistema());
+        medir("carregar", ITERACOES_PERSISTENCIA, i -> new Facade(diretorio));
+
+        // A remoção desfaz o grafo, por isso é medida por último
+        medir("removerUsuario", i -> facade.removerUsuario(sessao(grafo.sortear())));
+    }
+
+    // Mede uma operação com a quantidade padrão de iterações
+    private void medir(String nome, IntConsumer operacao) {
+        medir(nome, iteracoes, operacao);
+    }
+
+    /**
+     * Executa o aquecimento e a rodada medida de uma operação e imprime o resultado.
+     * Operações rejeitadas pelas regras do Jackut (por exemplo, amizade repetida) contam como
+     * falhas, mas o tempo delas também entra na medição.
+     */
+    private void medir(String nome, int quantidade, IntConsumer operacao) {
+        int aquecimento = Math.max(1, quantidade / 10);
+        for (int i = 0; i < aquecimento; i++) {
+            executarIgnorandoFalha(operacao, quantidade + i);
+        }
+
+        long[] latencias = new long[quantidade];
+        int falhas = 0;
+        long inicio = System.nanoTime();
+        for (int i = 0; i < quantidade; i++) {
+            long antes = System.nanoTime();
+            if (!executarIgnorandoFalha(operacao, i)) {
+                falhas++;
+            }
+            latencias[i] = System.nanoTime() - antes;
+        }
+        long total = System.nanoTime() - inicio;
+
+        Arrays.sort(latencias);
+        System.out.printf("%-22s %12.0f %10.1f %10.1f %10.1f %10.1f %10.1f %8d%n", nome,
+                quantidade / (total / 1e9), total / 1e3 / quantidade, percentil(latencias, 0.50),
+                percentil(latencias, 0.90), percentil(latencias, 0.99), latencias[quantidade - 1] / 1e3, falhas);
+    }
+
+    // Executa a operação e indica se ela foi aceita
+    private static boolean executarIgnorandoFalha(IntConsumer operacao, int i) {
+        try {
+            operacao.accept(i);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    // Percentil em microssegundos de latências já ordenadas
+    private static double percentil(long[] latencias, double fracao) {
+        return latencias[(int) Math.min(latencias.length - 1, Math.floor(fracao * latencias.length))] / 1e3;
+    }
+
+    private String login(int usuario) {
+        return grafo.getLogin(usuario);
+    }
+
+    private String sessao(int usuario) {
+        return grafo.getSessao(usuario);
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Mede a memória e a latência de entrega e leitura das caixas de recados de uma base sintética,
+ * comparando uma {@code LinkedList<String>} com um {@code LinkedHashMap} de autores por caixa (a
+ * representação anterior dos recados do {@code Usuario}) com a {@link CaixaDeEntrada} atual.
+ * <p>
+ * Os textos e os logins dos remetentes vêm de conjuntos compartilhados pelas duas representações,
+ * de modo que a memória medida é apenas a das estruturas. A memória é a diferença do heap usado
+ * antes e depois de encher as caixas, medida após coletas de lixo; a latência é a média de uma
+ * entrega seguida da leitura do recado mais antigo em caixas sorteadas, o que mantém o tamanho das
+ * caixas, depois de uma rodada de aquecimento. Execute com heap suficiente (por exemplo, -Xmx3g).
+ * </p>
+ * <pre>
+ * uso: BenchmarkCaixasDeEntrada [caixas] [recados por caixa] [operações] [semente]
+ * </pre>
+ */
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.util.CaixaDeEntrada;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+public class BenchmarkCaixasDeEntrada {
+    // Valores padrão dos argumentos
+    private static final int CAIXAS_PADRAO = 200_000;
+    private static final int RECADOS_PADRAO = 20;
+    private static final int OPERACOES_PADRAO = 10_000_000;
+    private static final long SEMENTE_PADRAO = 42;
+
+    // Quantidade de remetentes distintos
+    private static final int REMETENTES = 1000;
+
+    /**
+     * Método principal que enche as caixas nas duas representações e imprime a memória e a
+     * latência de entrega e leitura de cada uma
+     * @param args Quantidade de caixas, recados por caixa, operações e semente (opcionais)
+     */
+    public static void main(String[] args) {
+        int caixas = args.length > 0 ? Integer.parseInt(args[0]) : CAIXAS_PADRAO;
+        int recados = args.length > 1 ? Integer.parseInt(args[1]) : RECADOS_PADRAO;
+        int operacoes = args.length > 2 ? Integer.parseInt(args[2]) : OPERACOES_PADRAO;
+        long semente = args.length > 3 ? Long.parseLong(args[3]) : SEMENTE_PADRAO;
+
+        // Os recados de uma caixa precisam ser distintos, pois a representação anterior os usa como chave
+        String[] textos = new String[recados + 1];
+        for (int i = 0; i < textos.length; i++) {
+            textos[i] = "recado " + i;
+        }
+        String[] logins = new String[REMETENTES];
+        for (int i = 0; i < logins.length; i++) {
+            logins[i] = "usuario" + i;
+        }
+
+        Object[] listas = new Object[caixas];
+        long memoriaLista = encher(listas, recados, textos, i -> new RecadosEmLista(),
+                (caixa, remetente, texto) -> caixa.adicionar(logins[remetente], texto));
+        double operacaoLista = operar(listas, operacoes, textos, semente, (caixa, remetente, texto) -> {
+            RecadosEmLista recadosEmLista = (RecadosEmLista) caixa;
+            recadosEmLista.adicionar(logins[remetente], texto);
+            return recadosEmLista.retirar();
+        });
+        listas = null;
+
+        Object[] caixasDeEntrada = new Object[caixas];
+        long memoriaCaixa = encher(caixasDeEntrada, recados, textos, i -> new CaixaDeEntrada(),
+                CaixaDeEntrada::adicionar);
+        double operacaoCaixa = operar(caixasDeEntrada, operacoes, textos, semente, (caixa, remetente, texto) -> {
+            CaixaDeEntrada caixaDeEntrada = (CaixaDeEntrada) caixa;
+            caixaDeEntrada.adicionar(remetente, texto);
+            return caixaDeEntrada.retirar();
+        });
+
+        System.out.printf("%-28s %12s %14s %14s%n", "representação", "MiB", "bytes/recado", "ns/operação");
+        imprimir("LinkedList + LinkedHashMap", memoriaLista, (long) caixas * recados, operacaoLista);
+        imprimir("CaixaDeEntrada", memoriaCaixa, (long) caixas * recados, operacaoCaixa);
+        System.out.printf("%nRedução de memória: %.1f%%%n", 100.0 * (memoriaLista - memoriaCaixa) / memoriaLista);
+        if (caixasDeEntrada[caixas - 1] == null) {
+            throw new IllegalStateException();
+        }
+    }
+
+    private static void imprimir(String nome, long memoria, long recados, double nanosPorOperacao) {
+        System.out.printf("%-28s %12.1f %14.1f %14.1f%n", nome, memoria / 1048576.0, (double) memoria / recados,
+                nanosPorOperacao);
+    }
+
+    // Cria as caixas e mede o heap ocupado por elas; os recados são os mesmos nas duas representações
+    private static <C> long encher(Object[] caixas, int recados, String[] textos, IntFunction<C> criar,
+                                   Entrega<C> entregar) {
+        long antes = heapUsado();
+        for (int i = 0; i < caixas.length; i++) {
+            C caixa = criar.apply(i);
+            for (int j = 0; j < recados; j++) {
+                entregar.aplicar(caixa, (i + j) % REMETENTES, textos[j]);
+            }
+            caixas[i] = caixa;
+        }
+        return heapUsado() - antes;
+    }
+
+    // Média, em nanossegundos, de uma entrega seguida de uma leitura, depois de uma rodada de aquecimento
+    private static double operar(Object[] caixas, int operacoes, String[] textos, long semente, Operacao operacao) {
+        executarOperacoes(caixas, Math.min(operacoes, 1_000_000), textos, semente, operacao);
+        long inicio = System.nanoTime();
+        executarOperacoes(caixas, operacoes, textos, semente, operacao);
+        return (double) (System.nanoTime() - inicio) / operacoes;
+    }
+
+    // Entrega um recado em caixas sorteadas e lê o mais antigo. O texto entregue é o que acabou de
+    // ser lido, o que mantém os recados de cada caixa distintos; a contagem de leituras confere as
+    // respostas e impede que o compilador descarte as operações
+    private static void executarOperacoes(Object[] caixas, int operacoes, String[] textos, long semente,
+                                          Operacao operacao) {
+        Random aleatorio = new Random(semente + operacoes);
+        String[] ultimos = new String[caixas.length];
+        int lidos = 0;
+        for (int i = 0; i < operacoes; i++) {
+            int indice = aleatorio.nextInt(caixas.length);
+            String texto = ultimos[indice] == null ? textos[textos.length - 1] : ultimos[indice];
+            ultimos[indice] = operacao.aplicar(caixas[indice], aleatorio.nextInt(REMETENTES), texto);
+            if (ultimos[indice] != null) {
+                lidos++;
+            }
+        }
+        if (lidos != operacoes) {
+            throw new IllegalStateException("Recados não lidos: " + (operacoes - lidos));
+        }
+    }
+
+    // Heap usado após algumas coletas de lixo
+    private static long heapUsado() {
+        MemoryMXBean memoria = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return memoria.getHeapMemoryUsage().getUsed();
+    }
+
+    // Representação anterior: a fila de textos e o autor de cada texto
+    private static class RecadosEmLista {
+        private final Queue<String> recados = new LinkedList<>();
+        private final Map<String, String> autores = new LinkedHashMap<>();
+
+        void adicionar(String remetente, String texto) {
+            recados.add(texto);
+            autores.put(texto, remetente);
+        }
+
+        String retirar() {
+            String recado = recados.poll();
+            if (recado != null) {
+                autores.remove(recado);
+            }
+            return recado;
+        }
+    }
+
+    // Entrega de um recado em uma das representações
+    private interface Entrega<C> {
+        void aplicar(C caixa, int remetente, String texto);
+    }
+
+    // Entrega de um recado seguida da leitura do mais antigo em uma das representações
+    private interface Operacao {
+        String aplicar(Object caixa, int remetente, String texto);
+    }
+}
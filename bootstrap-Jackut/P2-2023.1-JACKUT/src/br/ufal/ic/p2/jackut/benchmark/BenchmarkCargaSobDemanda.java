@@ -0,0 +1,137 @@
+/**
+ * Compara a carga completa do {@link SnapshotParticionado} com a carga sob demanda: o tempo até o
+ * sistema poder atender, a memória ocupada logo depois e a ocupada depois que uma fração ativa dos
+ * usuários é consultada.
+ * <p>
+ * A base sintética é a mesma do {@link BenchmarkParticoes}. Na carga sob demanda, a capacidade do
+ * cache é a quantidade de usuários ativos, e a memória medida inclui o índice de todos os usuários
+ * (login, nome e atributos) que continua em memória. Os valores de memória são aproximados, lidos
+ * do heap depois de pedir uma coleta de lixo.
+ * </p>
+ * <pre>
+ * uso: BenchmarkCargaSobDemanda [usuarios] [percentual ativos] [semente]
+ * </pre>
+ */
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.managers.CacheDeUsuarios;
+import br.ufal.ic.p2.jackut.managers.CommunityManager;
+import br.ufal.ic.p2.jackut.managers.SnapshotParticionado;
+import br.ufal.ic.p2.jackut.managers.UserManager;
+import br.ufal.ic.p2.jackut.models.Usuario;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+public class BenchmarkCargaSobDemanda {
+    // Valores padrão dos argumentos
+    private static final int USUARIOS_PADRAO = 200_000;
+    private static final int PERCENTUAL_ATIVOS_PADRAO = 5;
+    private static final long SEMENTE_PADRAO = 42;
+
+    // Partições do snapshot (o padrão do PersistenceManager) e amizades sorteadas por usuário
+    private static final int PARTICOES = 16;
+    private static final int AMIGOS_POR_USUARIO = 10;
+
+    /**
+     * Método principal que grava a base e mede os dois modos de carga
+     * @param args Quantidade de usuários, percentual de ativos e semente (opcionais)
+     * @throws IOException Se ocorrer erro nos arquivos temporários
+     */
+    public static void main(String[] args) throws IOException {
+        int usuarios = args.length > 0 ? Integer.parseInt(args[0]) : USUARIOS_PADRAO;
+        int percentual = args.length > 1 ? Integer.parseInt(args[1]) : PERCENTUAL_ATIVOS_PADRAO;
+        long semente = args.length > 2 ? Long.parseLong(args[2]) : SEMENTE_PADRAO;
+        int ativos = Math.max(1, (int) ((long) usuarios * percentual / 100));
+
+        File diretorio = Files.createTempDirectory("jackut-sob-demanda").toFile();
+        try {
+            UserManager userManager = new UserManager();
+            gerar(userManager, usuarios, new Random(semente));
+            new SnapshotParticionado(diretorio, PARTICOES).gravar(1, userManager, new CommunityManager(userManager));
+            userManager = null;
+
+            System.out.printf("%-12s %12s %14s %14s %16s %12s%n", "modo", "carga (ms)", "heap (MiB)",
+                    "ativos (ms)", "heap ativos (MiB)", "em memória");
+            medir("completa", diretorio, 0, usuarios, ativos, semente);
+            medir("sob demanda", diretorio, ativos, usuarios, ativos, semente);
+        } finally {
+            for (File arquivo : diretorio.listFiles()) {
+                arquivo.delete();
+            }
+            diretorio.delete();
+        }
+    }
+
+    // Carrega o snapshot, mede a memória, consulta os usuários ativos e mede de novo
+    private static void medir(String nome, File diretorio, int capacidade, int usuarios, int ativos,
+                              long semente) throws IOException {
+        long base = heapUsado();
+        UserManager userManager = new UserManager();
+        CommunityManager communityManager = new CommunityManager(userManager);
+        SnapshotParticionado snapshot = new SnapshotParticionado(diretorio, PARTICOES);
+        CacheDeUsuarios cache = snapshot.usarCargaSobDemanda(capacidade);
+        if (cache != null) {
+            userManager.usarCargaSobDemanda(cache);
+        }
+
+        long inicio = System.nanoTime();
+        snapshot.carregar(userManager, communityManager);
+        double carga = (System.nanoTime() - inicio) / 1e6;
+        double heapCarga = (heapUsado() - base) / 1048576.0;
+
+        // Cada usuário ativo é consultado uma vez, em ordem sorteada
+        Random aleatorio = new Random(semente + 1);
+        int amigos = 0;
+        inicio = System.nanoTime();
+        for (int i = 0; i < ativos; i++) {
+            Usuario usuario = userManager.getUsuario("usuario" + aleatorio.nextInt(usuarios));
+            amigos += usuario.getQuantidadeAmigos();
+            if (userManager.precisaLiberarMemoria()) {
+                userManager.liberarMemoria(false);
+            }
+        }
+        double consulta = (System.nanoTime() - inicio) / 1e6;
+        double heapAtivos = (heapUsado() - base) / 1048576.0;
+        if (amigos == 0) {
+            throw new IllegalStateException("Carga incompleta.");
+        }
+
+        System.out.printf("%-12s %12.1f %14.1f %14.1f %16.1f %12d%n", nome, carga, heapCarga, consulta,
+                heapAtivos, userManager.getQuantidadeEmMemoria());
+        if (cache != null) {
+            System.out.printf("    %d cargas, %d descartes, %d passagens%n", cache.getCargas(),
+                    cache.getDescartes(), cache.getPassagens());
+        }
+    }
+
+    // Memória ocupada no heap depois de pedir uma coleta
+    private static long heapUsado() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Cria os usuários com um atributo, amizades sorteadas e um recado de um amigo
+    private static void gerar(UserManager userManager, int usuarios, Random aleatorio) {
+        Usuario[] todos = new Usuario[usuarios];
+        for (int i = 0; i < usuarios; i++) {
+            userManager.criarUsuario("usuario" + i, "senha", "Usuario " + i);
+            todos[i] = userManager.getUsuario("usuario" + i);
+            userManager.editarAtributo(todos[i], "cidade", "Cidade " + aleatorio.nextInt(500));
+        }
+        for (int i = 0; i < usuarios; i++) {
+            for (int c = 0; c < AMIGOS_POR_USUARIO; c++) {
+                Usuario amigo = todos[aleatorio.nextInt(usuarios)];
+                if (amigo != todos[i] && !todos[i].ehAmigo(amigo)) {
+                    todos[i].restaurarAmizade(amigo);
+                }
+            }
+            todos[i].receberRecado(todos[(i + 1) % usuarios], "Recado " + i);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Mede a memória e a latência de consulta dos conjuntos de relacionamentos de uma base sintética,
+ * comparando um {@code HashSet<Integer>} por conjunto (a representação anterior dos amigos, fãs e
+ * inimigos do {@code Usuario}) com o {@link ConjuntoDeInteiros} atual.
+ * <p>
+ * Cada conjunto recebe a mesma quantidade de ids espalhados entre todos os usuários, calculados a
+ * partir da posição do conjunto, para que as consultas saibam quais estão presentes. A memória é a
+ * diferença do heap usado antes e depois de criar os conjuntos, medida após coletas de lixo; a
+ * latência é a média por consulta de uma sequência sorteada, metade de ids presentes e metade de
+ * ausentes, depois de uma rodada de aquecimento. Execute com heap suficiente (por exemplo, -Xmx3g).
+ * </p>
+ * <pre>
+ * uso: BenchmarkConjuntos [conjuntos] [elementos por conjunto] [consultas] [semente]
+ * </pre>
+ */
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.util.ConjuntoDeInteiros;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+public class BenchmarkConjuntos {
+    // Valores padrão dos argumentos
+    private static final int CONJUNTOS_PADRAO = 200_000;
+    private static final int ELEMENTOS_PADRAO = 20;
+    private static final int CONSULTAS_PADRAO = 10_000_000;
+    private static final long SEMENTE_PADRAO = 42;
+
+    /**
+     * Método principal que cria os conjuntos nas duas representações e imprime a memória e a
+     * latência de consulta de cada uma
+     * @param args Quantidade de conjuntos, elementos por conjunto, consultas e semente (opcionais)
+     */
+    public static void main(String[] args) {
+        int conjuntos = args.length > 0 ? Integer.parseInt(args[0]) : CONJUNTOS_PADRAO;
+        int elementos = args.length > 1 ? Integer.parseInt(args[1]) : ELEMENTOS_PADRAO;
+        int consultas = args.length > 2 ? Integer.parseInt(args[2]) : CONSULTAS_PADRAO;
+        long semente = args.length > 3 ? Long.parseLong(args[3]) : SEMENTE_PADRAO;
+
+        Object[] hashSets = new Object[conjuntos];
+        long memoriaHashSet = preencher(hashSets, elementos, semente, i -> new HashSet<Integer>(), Set::add);
+        double consultaHashSet = consultar(hashSets, elementos, consultas, semente,
+                (conjunto, valor) -> ((Set<?>) conjunto).contains(valor));
+        hashSets = null;
+
+        Object[] primitivos = new Object[conjuntos];
+        long memoriaPrimitivo = preencher(primitivos, elementos, semente, i -> new ConjuntoDeInteiros(),
+                ConjuntoDeInteiros::adicionar);
+        double consultaPrimitivo = consultar(primitivos, elementos, consultas, semente,
+                (conjunto, valor) -> ((ConjuntoDeInteiros) conjunto).contem(valor));
+
+        System.out.printf("%-22s %12s %14s %14s%n", "representação", "MiB", "bytes/elemento", "ns/consulta");
+        imprimir("HashSet<Integer>", memoriaHashSet, (long) conjuntos * elementos, consultaHashSet);
+        imprimir("ConjuntoDeInteiros", memoriaPrimitivo, (long) conjuntos * elementos, consultaPrimitivo);
+        System.out.printf("%nRedução de memória: %.1f%%%n", 100.0 * (memoriaHashSet - memoriaPrimitivo) / memoriaHashSet);
+        if (primitivos[conjuntos - 1] == null) {
+            throw new IllegalStateException();
+        }
+    }
+
+    private static void imprimir(String nome, long memoria, long elementos, double nanosPorConsulta) {
+        System.out.printf("%-22s %12.1f %14.1f %14.1f%n", nome, memoria / 1048576.0, (double) memoria / elementos,
+                nanosPorConsulta);
+    }
+
+    // Cria os conjuntos e mede o heap ocupado por eles; os ids são os mesmos nas duas representações
+    private static <C> long preencher(Object[] conjuntos, int elementos, long semente, IntFunction<C> criar,
+                                      Insercao<C> inserir) {
+        long antes = heapUsado();
+        for (int i = 0; i < conjuntos.length; i++) {
+            C conjunto = criar.apply(i);
+            for (int j = 0; j < elementos; j++) {
+                inserir.aplicar(conjunto, elemento(i, j, conjuntos.length, semente));
+            }
+            conjuntos[i] = conjunto;
+        }
+        return heapUsado() - antes;
+    }
+
+    // Média, em nanossegundos, de uma consulta sorteada, depois de uma rodada de aquecimento
+    private static double consultar(Object[] conjuntos, int elementos, int consultas, long semente,
+                                    Consulta consulta) {
+        executarConsultas(conjuntos, elementos, Math.min(consultas, 1_000_000), semente, consulta);
+        long inicio = System.nanoTime();
+        int encontrados = executarConsultas(conjuntos, elementos, consultas, semente, consulta);
+        double media = (double) (System.nanoTime() - inicio) / consultas;
+        if (encontrados != consultas - consultas / 2) {
+            throw new IllegalStateException("Consultas presentes não encontradas: " + encontrados);
+        }
+        return media;
+    }
+
+    // Consulta conjuntos sorteados, alternando um id presente e um fora da faixa dos usuários. A
+    // contagem de encontrados confere as respostas e impede que o compilador descarte as consultas
+    private static int executarConsultas(Object[] conjuntos, int elementos, int consultas, long semente,
+                                         Consulta consulta) {
+        Random aleatorio = new Random(semente + consultas);
+        int encontrados = 0;
+        for (int i = 0; i < consultas; i++) {
+            int indice = aleatorio.nextInt(conjuntos.length);
+            int valor = (i & 1) == 0
+                    ? elemento(indice, aleatorio.nextInt(elementos), conjuntos.length, semente)
+                    : conjuntos.length + aleatorio.nextInt(conjuntos.length);
+            if (consulta.contem(conjuntos[indice], valor)) {
+                encontrados++;
+            }
+        }
+        return encontrados;
+    }
+
+    // Id na posição j do conjunto i: um hash da posição, entre 0 e a quantidade de usuários
+    private static int elemento(int i, int j, int usuarios, long semente) {
+        long h = ((long) i << 32 | j) * 0x9E3779B97F4A7C15L + semente;
+        h ^= h >>> 29;
+        return (int) Math.floorMod(h, (long) usuarios);
+    }
+
+    // Heap usado após algumas coletas de lixo
+    private static long heapUsado() {
+        MemoryMXBean memoria = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return memoria.getHeapMemoryUsage().getUsed();
+    }
+
+    // Inclusão de um id em uma das representações
+    private interface Insercao<C> {
+        void aplicar(C conjunto, int valor);
+    }
+
+    // Consulta de um id em uma das representações
+    private interface Consulta {
+        boolean contem(Object conjunto, int valor);
+    }
+}
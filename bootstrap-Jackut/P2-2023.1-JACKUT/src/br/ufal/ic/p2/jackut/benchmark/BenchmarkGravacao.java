@@ -0,0 +1,86 @@
+/**
+ * Compara os modos de gravação do {@link Journal}: síncrono sem fsync (o padrão), síncrono com
+ * fsync a cada registro e assíncrono com commit em grupo.
+ * <p>
+ * Várias threads registram operações do tamanho de um recado ao mesmo tempo, como fazem as
+ * chamadas concorrentes da Facade. O tempo de cada rodada inclui a espera até todos os registros
+ * estarem gravados, de modo que o modo assíncrono é comparado com a mesma durabilidade final.
+ * Cada rodada usa um arquivo temporário novo.
+ * </p>
+ * <pre>
+ * uso: BenchmarkGravacao [registros] [threads]
+ * </pre>
+ */
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.managers.Journal;
+import br.ufal.ic.p2.jackut.managers.MetricasDeGravacao;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Function;
+
+public class BenchmarkGravacao {
+    // Valores padrão dos argumentos
+    private static final int REGISTROS_PADRAO = 20_000;
+    private static final int THREADS_PADRAO = 4;
+
+    // Configuração do modo assíncrono usada na rodada (os padrões do PersistenceManager)
+    private static final int CAPACIDADE_FILA = 65536;
+    private static final int TAMANHO_GRUPO = 1024;
+    private static final long INTERVALO_GRUPO = 10;
+
+    /**
+     * Método principal que executa as três rodadas e imprime a comparação
+     * @param args Quantidade de registros e de threads (opcionais)
+     * @throws Exception Se não for possível criar os arquivos temporários ou aguardar as threads
+     */
+    public static void main(String[] args) throws Exception {
+        int registros = args.length > 0 ? Integer.parseInt(args[0]) : REGISTROS_PADRAO;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : THREADS_PADRAO;
+
+        medir("sem fsync", registros, threads, arquivo -> new Journal(arquivo, false));
+        double fsync = medir("fsync por registro", registros, threads, arquivo -> new Journal(arquivo, true));
+        double grupo = medir("assíncrona em grupo", registros, threads,
+                arquivo -> new Journal(arquivo, CAPACIDADE_FILA, TAMANHO_GRUPO, INTERVALO_GRUPO));
+        System.out.printf("%nGanho do commit em grupo sobre fsync por registro: %.1fx%n", grupo / fsync);
+    }
+
+    // Executa uma rodada e devolve os registros por segundo
+    private static double medir(String nome, int registros, int threads, Function<File, Journal> criar)
+            throws IOException, InterruptedException {
+        File arquivo = File.createTempFile("jackut-gravacao", ".journal");
+        try {
+            Journal journal = criar.apply(arquivo);
+            Thread[] trabalhadores = new Thread[threads];
+            long inicio = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                int primeiro = t;
+                trabalhadores[t] = new Thread(() -> {
+                    for (int i = primeiro; i < registros; i += threads) {
+                        journal.registrar("enviarRecado", "usuario" + i, "usuario" + (i + 1),
+                                "Recado de teste número " + i);
+                    }
+                });
+                trabalhadores[t].start();
+            }
+            for (Thread trabalhador : trabalhadores) {
+                trabalhador.join();
+            }
+            journal.aguardarGravacao();
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+
+            MetricasDeGravacao metricas = journal.getMetricas();
+            journal.fechar();
+
+            double taxa = registros / segundos;
+            System.out.printf("%-20s %8d registros em %6.2f s  %10.0f reg/s%n", nome, registros, segundos, taxa);
+            if (metricas != null) {
+                System.out.println("    " + metricas);
+            }
+            return taxa;
+        } finally {
+            arquivo.delete();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Compara a carga em massa de relacionamentos chamada a chamada com a mesma carga pela API de
+ * lotes da Facade ({@code executarLote}).
+ * <p>
+ * Cada relacionamento é uma amizade completa (convite e aceite) entre dois usuários sorteados,
+ * mais um recado. As duas rodadas usam a mesma semente, em Facades novas e em diretórios
+ * temporários separados, e o lote é gerado sob demanda para que cargas de milhões de comandos
+ * não precisem ficar em memória.
+ * </p>
+ * <pre>
+ * uso: BenchmarkLote [usuarios] [relacionamentos] [semente]
+ * </pre>
+ */
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.Facade;
+import br.ufal.ic.p2.jackut.comandos.Comando;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+public class BenchmarkLote {
+    // Valores padrão dos argumentos
+    private static final int USUARIOS_PADRAO = 100_000;
+    private static final int RELACIONAMENTOS_PADRAO = 1_000_000;
+    private static final long SEMENTE_PADRAO = 42;
+
+    /**
+     * Método principal que executa as duas rodadas e imprime a comparação
+     * @param args Quantidade de usuários, de relacionamentos e semente (todos opcionais)
+     * @throws IOException Se não for possível criar os diretórios temporários
+     */
+    public static void main(String[] args) throws IOException {
+        int usuarios = args.length > 0 ? Integer.parseInt(args[0]) : USUARIOS_PADRAO;
+        int relacionamentos = args.length > 1 ? Integer.parseInt(args[1]) : RELACIONAMENTOS_PADRAO;
+        long semente = args.length > 2 ? Long.parseLong(args[2]) : SEMENTE_PADRAO;
+
+        double porChamada = medir("por chamada", usuarios, relacionamentos, semente, false);
+        double emLote = medir("em lote", usuarios, relacionamentos, semente, true);
+        System.out.printf("%nGanho do lote: %.1fx%n", emLote / porChamada);
+    }
+
+    // Executa uma rodada em uma Facade nova e devolve os relacionamentos por segundo
+    private static double medir(String nome, int usuarios, int relacionamentos, long semente, boolean lote)
+            throws IOException {
+        File diretorio = Files.createTempDirectory("jackut-lote").toFile();
+        try {
+            Facade facade = new Facade(diretorio);
+            facade.zerarSistema();
+            String[] logins = new String[usuarios];
+            String[] sessoes = new String[usuarios];
+            for (int i = 0; i < usuarios; i++) {
+                logins[i] = "usuario" + i;
+                facade.criarUsuario(logins[i], "senha", "Usuario " + i);
+                sessoes[i] = facade.abrirSessao(logins[i], "senha");
+            }
+
+            Iterator<Comando> comandos = new CargaDeRelacionamentos(logins, sessoes, relacionamentos, semente);
+            long[] falhas = new long[1];
+            long inicio = System.nanoTime();
+            if (lote) {
+                facade.executarLote(comandos, new HashMap<>(), resultado -> {
+                    if (!resultado.isSucesso()) {
+                        falhas[0]++;
+                    }
+                });
+            } else {
+                while (comandos.hasNext()) {
+                    Comando comando = comandos.next();
+                    try {
+                        if (comando.getNome().equals("adicionarAmigo")) {
+                            facade.adicionarAmigo(comando.getValor(0), comando.getValor(1));
+                        } else {
+                            facade.enviarRecado(comando.getValor(0), comando.getValor(1), comando.getValor(2));
+                        }
+                    } catch (RuntimeException e) {
+                        falhas[0]++;
+                    }
+                }
+            }
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+            facade.encerrarSistema();
+
+            double taxa = relacionamentos / segundos;
+            System.out.printf("%-12s %10d relacionamentos em %6.2f s  %12.0f rel/s  %8d comandos rejeitados%n",
+                    nome, relacionamentos, segundos, taxa, falhas[0]);
+            return taxa;
+        } finally {
+            for (File arquivo : diretorio.listFiles()) {
+                arquivo.delete();
+            }
+            diretorio.delete();
+        }
+    }
+
+    // Gera sob demanda os comandos de cada relacionamento: convite, aceite e recado
+    private static class CargaDeRelacionamentos implements Iterator<Comando> {
+        private final String[] logins;
+        private final String[] sessoes;
+        private final int relacionamentos;
+        private final Random aleatorio;
+        private int gerados;
+        private int passo;
+        private int a;
+        private int b;
+
+        private CargaDeRelacionamentos(String[] logins, String[] sessoes, int relacionamentos, long semente) {
+            this.logins = logins;
+            this.sessoes = sessoes;
+            this.relacionamentos = relacionamentos;
+            this.aleatorio = new Random(semente);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return gerados < relacionamentos;
+        }
+
+        @Override
+        public Comando next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            switch (passo) {
+                case 0:
+                    a = aleatorio.nextInt(logins.length);
+                    do {
+                        b = aleatorio.nextInt(logins.length);
+                    } while (b == a);
+                    passo = 1;
+                    return new Comando("adicionarAmigo", sessoes[a], logins[b]);
+                case 1:
+                    passo = 2;
+                    return new Comando("adicionarAmigo", sessoes[b], logins[a]);
+                default:
+                    passo = 0;
+                    gerados++;
+                    return new Comando("enviarRecado", sessoes[a], logins[b], "Oi");
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Mede a gravação e a leitura do {@link SnapshotParticionado}: a gravação completa, a gravação
+ * depois de alterar um único usuário (só a partição dele é regravada) e a carga, comparando o
+ * snapshot particionado com o de uma única partição, equivalente ao arquivo único anterior.
+ * <p>
+ * A base sintética tem usuários com perfil, amizades sorteadas e um recado cada. A carga decodifica
+ * as partições em paralelo no pool comum, então o ganho dela depende da quantidade de núcleos.
+ * </p>
+ * <pre>
+ * uso: BenchmarkParticoes [usuarios] [particoes] [semente]
+ * </pre>
+ */
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.managers.CommunityManager;
+import br.ufal.ic.p2.jackut.managers.SnapshotParticionado;
+import br.ufal.ic.p2.jackut.managers.UserManager;
+import br.ufal.ic.p2.jackut.models.Usuario;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+public class BenchmarkParticoes {
+    // Valores padrão dos argumentos
+    private static final int USUARIOS_PADRAO = 200_000;
+    private static final int PARTICOES_PADRAO = 16;
+    private static final long SEMENTE_PADRAO = 42;
+
+    // Amizades sorteadas por usuário
+    private static final int AMIGOS_POR_USUARIO = 10;
+
+    /**
+     * Método principal que gera a base e mede as duas configurações
+     * @param args Quantidade de usuários, de partições e semente (opcionais)
+     * @throws IOException Se ocorrer erro nos arquivos temporários
+     */
+    public static void main(String[] args) throws IOException {
+        int usuarios = args.length > 0 ? Integer.parseInt(args[0]) : USUARIOS_PADRAO;
+        int particoes = args.length > 1 ? Integer.parseInt(args[1]) : PARTICOES_PADRAO;
+        long semente = args.length > 2 ? Long.parseLong(args[2]) : SEMENTE_PADRAO;
+
+        UserManager userManager = new UserManager();
+        CommunityManager communityManager = new CommunityManager(userManager);
+        gerar(userManager, usuarios, new Random(semente));
+
+        System.out.printf("%-14s %12s %14s %10s %10s%n", "partições", "MiB", "completa (ms)", "um (ms)", "carga (ms)");
+        medir(1, userManager, communityManager);
+        medir(particoes, userManager, communityManager);
+    }
+
+    // Grava tudo, regrava após alterar um usuário e carrega em gerenciadores novos
+    private static void medir(int particoes, UserManager userManager, CommunityManager communityManager)
+            throws IOException {
+        File diretorio = Files.createTempDirectory("jackut-particoes").toFile();
+        try {
+            SnapshotParticionado snapshot = new SnapshotParticionado(diretorio, particoes);
+            long inicio = System.nanoTime();
+            snapshot.gravar(1, userManager, communityManager);
+            double completa = (System.nanoTime() - inicio) / 1e6;
+
+            Usuario alterado = userManager.getUsuario("usuario0");
+            userManager.editarAtributo(alterado, "cidade", "Recife");
+            snapshot.marcarUsuario(alterado.getLogin());
+            inicio = System.nanoTime();
+            snapshot.gravar(2, userManager, communityManager);
+            double umUsuario = (System.nanoTime() - inicio) / 1e6;
+
+            UserManager carregados = new UserManager();
+            inicio = System.nanoTime();
+            new SnapshotParticionado(diretorio, particoes).carregar(carregados, new CommunityManager(carregados));
+            double carga = (System.nanoTime() - inicio) / 1e6;
+            if (carregados.getUsuarios().size() != userManager.getUsuarios().size()) {
+                throw new IllegalStateException("Carga incompleta.");
+            }
+
+            System.out.printf("%-14d %12.1f %14.1f %10.1f %10.1f%n", particoes,
+                    snapshot.getTamanho() / 1048576.0, completa, umUsuario, carga);
+        } finally {
+            for (File arquivo : diretorio.listFiles()) {
+                arquivo.delete();
+            }
+            diretorio.delete();
+        }
+    }
+
+    // Cria os usuários com um atributo, amizades sorteadas e um recado de um amigo
+    private static void gerar(UserManager userManager, int usuarios, Random aleatorio) {
+        Usuario[] todos = new Usuario[usuarios];
+        for (int i = 0; i < usuarios; i++) {
+            userManager.criarUsuario("usuario" + i, "senha", "Usuario " + i);
+            todos[i] = userManager.getUsuario("usuario" + i);
+            userManager.editarAtributo(todos[i], "cidade", "Cidade " + aleatorio.nextInt(500));
+        }
+        for (int i = 0; i < usuarios; i++) {
+            for (int c = 0; c < AMIGOS_POR_USUARIO; c++) {
+                Usuario amigo = todos[aleatorio.nextInt(usuarios)];
+                if (amigo != todos[i] && !todos[i].ehAmigo(amigo)) {
+                    todos[i].restaurarAmizade(amigo);
+                }
+            }
+            todos[i].receberRecado(todos[(i + 1) % usuarios], "Recado " + i);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Mede a memória ocupada pelos perfis de uma base sintética, comparando um mapa por usuário
+ * (a representação anterior do {@link Perfil}) com o {@code Perfil} atual.
+ * <p>
+ * Cada usuário recebe atributos de baixa cardinalidade (cidade, estado civil, profissão) e um de
+ * alta (aniversário). Chaves e valores são sempre instâncias novas de String, como as lidas do
+ * snapshot ou do journal. A memória é a diferença do heap usado antes e depois de criar os
+ * perfis, medida após coletas de lixo; execute com heap suficiente (por exemplo, -Xmx3g).
+ * </p>
+ * <pre>
+ * uso: BenchmarkPerfis [usuarios] [semente]
+ * </pre>
+ */
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.models.Perfil;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+public class BenchmarkPerfis {
+    // Valores padrão dos argumentos
+    private static final int USUARIOS_PADRAO = 1_000_000;
+    private static final long SEMENTE_PADRAO = 42;
+
+    // Valores possíveis dos atributos de baixa cardinalidade
+    private static final String[] ESTADOS_CIVIS = { "solteiro", "casado", "divorciado", "viuvo", "uniao estavel" };
+    private static final int CIDADES = 500;
+    private static final int PROFISSOES = 200;
+
+    /**
+     * Método principal que cria os perfis nas duas representações e imprime a memória de cada uma
+     * @param args Quantidade de usuários e semente (opcionais)
+     */
+    public static void main(String[] args) {
+        int usuarios = args.length > 0 ? Integer.parseInt(args[0]) : USUARIOS_PADRAO;
+        long semente = args.length > 1 ? Long.parseLong(args[1]) : SEMENTE_PADRAO;
+
+        long mapas = medir(usuarios, semente, i -> new HashMap<String, String>(), Map::put);
+        long perfis = medir(usuarios, semente, i -> new Perfil(), Perfil::adicionarAtributo);
+
+        System.out.printf("%-22s %12s %14s%n", "representação", "MiB", "bytes/usuário");
+        System.out.printf("%-22s %12.1f %14.1f%n", "mapa por usuário", mapas / 1048576.0, (double) mapas / usuarios);
+        System.out.printf("%-22s %12.1f %14.1f%n", "Perfil compacto", perfis / 1048576.0, (double) perfis / usuarios);
+        System.out.printf("%nRedução: %.1f%%%n", 100.0 * (mapas - perfis) / mapas);
+    }
+
+    // Cria os perfis, mede o heap ocupado por eles e os mantém vivos até a medição
+    private static <P> long medir(int usuarios, long semente, IntFunction<P> criar, Preenchimento<P> preencher) {
+        Random aleatorio = new Random(semente);
+        long antes = heapUsado();
+        Object[] perfis = new Object[usuarios];
+        for (int i = 0; i < usuarios; i++) {
+            P perfil = criar.apply(i);
+            preencher.aplicar(perfil, copia("cidade"), copia("Cidade " + aleatorio.nextInt(CIDADES)));
+            preencher.aplicar(perfil, copia("estado civil"), copia(ESTADOS_CIVIS[aleatorio.nextInt(ESTADOS_CIVIS.length)]));
+            preencher.aplicar(perfil, copia("profissao"), copia("Profissao " + aleatorio.nextInt(PROFISSOES)));
+            preencher.aplicar(perfil, copia("aniversario"), String.format("%02d/%02d/%04d",
+                    1 + aleatorio.nextInt(28), 1 + aleatorio.nextInt(12), 1950 + aleatorio.nextInt(60)));
+            perfis[i] = perfil;
+        }
+        long usado = heapUsado() - antes;
+        if (perfis[usuarios - 1] == null) {
+            throw new IllegalStateException();
+        }
+        return usado;
+    }
+
+    // Instância nova com o mesmo conteúdo, como um texto decodificado da persistência
+    private static String copia(String texto) {
+        return new String(texto.toCharArray());
+    }
+
+    // Heap usado após algumas coletas de lixo
+    private static long heapUsado() {
+        MemoryMXBean memoria = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return memoria.getHeapMemoryUsage().getUsed();
+    }
+
+    // Inclusão de um atributo em uma das representações
+    private interface Preenchimento<P> {
+        void aplicar(P perfil, String chave, String valor);
+    }
+}
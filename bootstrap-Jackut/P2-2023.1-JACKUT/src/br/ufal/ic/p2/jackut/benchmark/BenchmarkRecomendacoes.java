@@ -0,0 +1,126 @@
+/**
+ * Mede a recomendação de amigos sequencial e a fork/join, separando usuários de grau alto (hubs)
+ * de usuários comuns.
+ * <p>
+ * O grafo de amizades é gerado por ligação preferencial: cada novo usuário faz amizade com
+ * usuários sorteados entre as pontas das amizades já existentes, o que concentra muitas amizades
+ * em poucos usuários. Os gerenciadores são usados diretamente, como no {@link BenchmarkSessoes},
+ * para que as duas variantes sejam medidas sobre o mesmo grafo.
+ * </p>
+ * <pre>
+ * uso: BenchmarkRecomendacoes [usuarios] [amigosPorUsuario] [semente]
+ * </pre>
+ */
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.managers.CommunityManager;
+import br.ufal.ic.p2.jackut.managers.RecommendationManager;
+import br.ufal.ic.p2.jackut.managers.UserManager;
+import br.ufal.ic.p2.jackut.models.Usuario;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class BenchmarkRecomendacoes {
+    // Valores padrão dos argumentos
+    private static final int USUARIOS_PADRAO = 200_000;
+    private static final int AMIGOS_POR_USUARIO_PADRAO = 10;
+    private static final long SEMENTE_PADRAO = 42;
+
+    // Recomendações pedidas por chamada
+    private static final int QUANTIDADE = 10;
+
+    // Usuários medidos em cada grupo e repetições de cada medição
+    private static final int HUBS = 20;
+    private static final int COMUNS = 2_000;
+    private static final int REPETICOES = 5;
+
+    /**
+     * Método principal que gera o grafo e mede as duas variantes
+     * @param args Quantidade de usuários, amizades feitas por novo usuário e semente (opcionais)
+     */
+    public static void main(String[] args) {
+        int usuarios = args.length > 0 ? Integer.parseInt(args[0]) : USUARIOS_PADRAO;
+        int amigosPorUsuario = args.length > 1 ? Integer.parseInt(args[1]) : AMIGOS_POR_USUARIO_PADRAO;
+        long semente = args.length > 2 ? Long.parseLong(args[2]) : SEMENTE_PADRAO;
+
+        UserManager userManager = new UserManager();
+        CommunityManager communityManager = new CommunityManager(userManager);
+        RecommendationManager recommendationManager = new RecommendationManager(userManager, communityManager);
+        Usuario[] todos = gerar(userManager, communityManager, usuarios, amigosPorUsuario, new Random(semente));
+
+        // Hubs são os usuários de maior grau; os comuns são sorteados
+        Usuario[] porGrau = todos.clone();
+        Arrays.sort(porGrau, (a, b) -> Integer.compare(b.getQuantidadeAmigos(), a.getQuantidadeAmigos()));
+        Usuario[] hubs = Arrays.copyOf(porGrau, HUBS);
+        Random aleatorio = new Random(semente + 1);
+        Usuario[] comuns = new Usuario[COMUNS];
+        for (int i = 0; i < comuns.length; i++) {
+            comuns[i] = todos[aleatorio.nextInt(todos.length)];
+        }
+
+        System.out.printf("%d usuários, maior grau %d, paralelismo do pool comum %d%n%n", usuarios,
+                porGrau[0].getQuantidadeAmigos(), ForkJoinPool.getCommonPoolParallelism());
+        System.out.printf("%-10s %-12s %12s %12s%n", "grupo", "variante", "média µs", "máx µs");
+        for (boolean paralelo : new boolean[] { false, true }) {
+            medir("hubs", hubs, recommendationManager, paralelo);
+            medir("comuns", comuns, recommendationManager, paralelo);
+        }
+    }
+
+    // Cria os usuários, as amizades por ligação preferencial e algumas comunidades
+    private static Usuario[] gerar(UserManager userManager, CommunityManager communityManager, int usuarios,
+                                   int amigosPorUsuario, Random aleatorio) {
+        Usuario[] todos = new Usuario[usuarios];
+        int[] pontas = new int[2 * usuarios * amigosPorUsuario];
+        int quantidadePontas = 0;
+        for (int i = 0; i < usuarios; i++) {
+            userManager.criarUsuario("usuario" + i, "senha", "Usuario " + i);
+            todos[i] = userManager.getUsuario("usuario" + i);
+            for (int c = 0; c < amigosPorUsuario && i > 0; c++) {
+                int amigo = quantidadePontas == 0 ? 0 : pontas[aleatorio.nextInt(quantidadePontas)];
+                if (amigo != i && !todos[i].ehAmigo(todos[amigo])) {
+                    todos[i].restaurarAmizade(todos[amigo]);
+                    pontas[quantidadePontas++] = i;
+                    pontas[quantidadePontas++] = amigo;
+                }
+            }
+        }
+
+        for (int c = 0; c < usuarios / 100; c++) {
+            String nome = "comunidade" + c;
+            communityManager.criarComunidade(todos[aleatorio.nextInt(usuarios)], nome, nome);
+            for (int m = 0; m < 50; m++) {
+                try {
+                    communityManager.adicionarMembro(todos[aleatorio.nextInt(usuarios)], nome);
+                } catch (RuntimeException e) {
+                    // Membro repetido: a comunidade apenas fica com um a menos
+                }
+            }
+        }
+        return todos;
+    }
+
+    // Mede as recomendações de um grupo, após uma rodada de aquecimento
+    private static void medir(String grupo, Usuario[] usuarios, RecommendationManager recommendationManager,
+                              boolean paralelo) {
+        for (Usuario usuario : usuarios) {
+            recommendationManager.recomendar(usuario, QUANTIDADE, paralelo);
+        }
+
+        long total = 0;
+        long maximo = 0;
+        for (int r = 0; r < REPETICOES; r++) {
+            for (Usuario usuario : usuarios) {
+                long inicio = System.nanoTime();
+                recommendationManager.recomendar(usuario, QUANTIDADE, paralelo);
+                long duracao = System.nanoTime() - inicio;
+                total += duracao;
+                maximo = Math.max(maximo, duracao);
+            }
+        }
+        System.out.printf("%-10s %-12s %12.1f %12.1f%n", grupo, paralelo ? "fork/join" : "sequencial",
+                total / 1e3 / (REPETICOES * usuarios.length), maximo / 1e3);
+    }
+}
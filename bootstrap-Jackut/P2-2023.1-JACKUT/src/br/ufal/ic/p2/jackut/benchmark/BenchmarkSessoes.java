@@ -0,0 +1,107 @@
+/**
+ * Microbenchmark da resolução de sessões, a operação por onde passa toda chamada autenticada.
+ * <p>
+ * Compara o caminho antigo (mapa de sessão para login seguido de {@code containsUsuario} e
+ * {@code getUsuario}, três consultas com hash de strings) com o {@code SessionManager}, que
+ * guarda na sessão a referência ao usuário validada pela geração do cadastro. Como cada chamada
+ * leva poucas dezenas de nanossegundos, o tempo é medido por rodada e dividido pelas chamadas,
+ * em vez de chamada a chamada como no {@link Benchmark}.
+ * </p>
+ * <pre>
+ * uso: BenchmarkSessoes [usuarios] [rodadas]
+ * </pre>
+ */
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.managers.SessionManager;
+import br.ufal.ic.p2.jackut.managers.UserManager;
+import br.ufal.ic.p2.jackut.models.Usuario;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+public class BenchmarkSessoes {
+    // Valores padrão dos argumentos
+    private static final int USUARIOS_PADRAO = 100_000;
+    private static final int RODADAS_PADRAO = 20;
+
+    // Chamadas por rodada e rodadas de aquecimento
+    private static final int CHAMADAS_POR_RODADA = 1_000_000;
+    private static final int RODADAS_AQUECIMENTO = 5;
+
+    /**
+     * Método principal que cria os usuários, abre as sessões e mede os dois caminhos
+     * @param args Quantidade de usuários e de rodadas medidas (opcionais)
+     */
+    public static void main(String[] args) {
+        int usuarios = args.length > 0 ? Integer.parseInt(args[0]) : USUARIOS_PADRAO;
+        int rodadas = args.length > 1 ? Integer.parseInt(args[1]) : RODADAS_PADRAO;
+
+        UserManager userManager = new UserManager();
+        SessionManager sessionManager = new SessionManager(userManager);
+        Map<String, String> sessoesAntigas = new ConcurrentHashMap<>();
+        String[] ids = new String[usuarios];
+        for (int i = 0; i < usuarios; i++) {
+            String login = "usuario" + i;
+            userManager.criarUsuario(login, "senha", "Usuario " + i);
+            ids[i] = sessionManager.abrirSessao(login, "senha");
+            sessoesAntigas.put(ids[i], login);
+        }
+
+        // Ordem de acesso sorteada uma vez, igual para os dois caminhos
+        Random aleatorio = new Random(42);
+        String[] ordem = new String[CHAMADAS_POR_RODADA];
+        for (int i = 0; i < ordem.length; i++) {
+            ordem[i] = ids[aleatorio.nextInt(usuarios)];
+        }
+
+        Function<String, Usuario> caminhoAntigo = idSessao -> {
+            String login = sessoesAntigas.get(idSessao);
+            if (login == null || !userManager.containsUsuario(login)) {
+                throw new RuntimeException("Usuário não cadastrado.");
+            }
+            return userManager.getUsuario(login);
+        };
+
+        System.out.printf("%-24s %10s %10s %10s%n", "caminho", "ns/chamada", "mín", "máx");
+        double antigo = medir("login + 2 consultas", caminhoAntigo, ordem, rodadas);
+        double novo = medir("referência com geração", sessionManager::getUsuarioPorSessao, ordem, rodadas);
+        System.out.printf("%nEconomia por chamada: %.1f ns (%.1fx)%n", antigo - novo, antigo / novo);
+    }
+
+    // Executa o aquecimento e as rodadas medidas e imprime a mediana, o mínimo e o máximo
+    private static double medir(String nome, Function<String, Usuario> resolver, String[] ordem, int rodadas) {
+        long soma = 0;
+        for (int r = 0; r < RODADAS_AQUECIMENTO; r++) {
+            soma += rodada(resolver, ordem);
+        }
+
+        double[] tempos = new double[rodadas];
+        for (int r = 0; r < rodadas; r++) {
+            long inicio = System.nanoTime();
+            soma += rodada(resolver, ordem);
+            tempos[r] = (double) (System.nanoTime() - inicio) / ordem.length;
+        }
+        Arrays.sort(tempos);
+
+        double mediana = tempos[rodadas / 2];
+        System.out.printf("%-24s %10.1f %10.1f %10.1f%n", nome, mediana, tempos[0], tempos[rodadas - 1]);
+        if (soma == 42) {
+            // Usa o resultado para a JIT não descartar as chamadas
+            System.out.println();
+        }
+        return mediana;
+    }
+
+    // Resolve todas as sessões da ordem e devolve uma soma dos ids para manter o resultado vivo
+    private static long rodada(Function<String, Usuario> resolver, String[] ordem) {
+        long soma = 0;
+        for (String idSessao : ordem) {
+            soma += resolver.apply(idSessao).getId();
+        }
+        return soma;
+    }
+}
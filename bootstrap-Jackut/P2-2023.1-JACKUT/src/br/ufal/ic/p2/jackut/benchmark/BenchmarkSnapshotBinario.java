@@ -0,0 +1,337 @@
+/**
+ * Mede o tempo de carga e o pico de heap da leitura do {@link SnapshotBinario}, comparando-a com a
+ * importação pelo XStream do snapshot XML anterior ({@link ImportadorXml}).
+ * <p>
+ * A mesma base sintética (usuários com um atributo de perfil, amizades sorteadas, um recado de outro
+ * usuário e comunidades com membros sorteados) é gravada nos dois formatos: o binário na versão 2,
+ * e o XML com os nomes de classes e de campos antigos, que é o que o importador lê. Cada formato é
+ * carregado em gerenciadores novos algumas vezes; o tempo informado é o da carga mais rápida. O pico
+ * é a soma dos picos de uso dos pools de heap durante a carga, menos o heap usado antes dela (como os
+ * pools podem atingir o pico em momentos diferentes, é um limite superior), e o heap retido é a
+ * diferença medida após coletas de lixo com os gerenciadores carregados ainda alcançáveis.
+ * </p>
+ * <p>
+ * O XStream grava e lê o grafo de usuários de forma recursiva, descendo pelas amizades, então tudo é
+ * executado em uma thread com pilha grande. Como cada usuário é definido dentro do primeiro que o
+ * referencia e as demais referências são caminhos relativos até essa definição, o tamanho do XML e
+ * o custo da importação crescem com o quadrado da quantidade de usuários; por isso o padrão é uma
+ * base pequena. Execute com heap suficiente (por exemplo, -Xmx3g).
+ * </p>
+ * <pre>
+ * uso: BenchmarkSnapshotBinario [usuarios] [rodadas] [semente]
+ * </pre>
+ */
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.managers.CommunityManager;
+import br.ufal.ic.p2.jackut.managers.ImportadorXml;
+import br.ufal.ic.p2.jackut.managers.SnapshotBinario;
+import br.ufal.ic.p2.jackut.managers.UserManager;
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+public class BenchmarkSnapshotBinario {
+    // Valores padrão dos argumentos
+    private static final int USUARIOS_PADRAO = 2_000;
+    private static final int RODADAS_PADRAO = 3;
+    private static final long SEMENTE_PADRAO = 42;
+
+    // Amizades sorteadas por usuário
+    private static final int AMIGOS_POR_USUARIO = 10;
+
+    // Usuários por comunidade criada e membros sorteados de cada uma
+    private static final int USUARIOS_POR_COMUNIDADE = 50;
+    private static final int MEMBROS_POR_COMUNIDADE = 20;
+
+    // Cabeçalho do snapshot binário (ver SnapshotBinario)
+    private static final int MAGIC = 0x4A4B5554;
+    private static final int VERSAO = 2;
+
+    // Tamanho da pilha da thread que executa o benchmark
+    private static final long PILHA = 1L << 30;
+
+    /**
+     * Método principal que gera a base nos dois formatos e imprime o tempo de carga, o pico de heap
+     * e o heap retido de cada um
+     * @param args Quantidade de usuários, de rodadas e semente (opcionais)
+     * @throws Exception Se ocorrer erro nos arquivos temporários ou na carga
+     */
+    public static void main(String[] args) throws Exception {
+        int usuarios = args.length > 0 ? Integer.parseInt(args[0]) : USUARIOS_PADRAO;
+        int rodadas = args.length > 1 ? Integer.parseInt(args[1]) : RODADAS_PADRAO;
+        long semente = args.length > 2 ? Long.parseLong(args[2]) : SEMENTE_PADRAO;
+
+        Exception[] erro = new Exception[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                executar(usuarios, rodadas, semente);
+            } catch (Exception e) {
+                erro[0] = e;
+            }
+        }, "benchmark", PILHA);
+        thread.start();
+        thread.join();
+        if (erro[0] != null) {
+            throw erro[0];
+        }
+    }
+
+    private static void executar(int usuarios, int rodadas, long semente) throws IOException {
+        File diretorio = Files.createTempDirectory("jackut-snapshot-binario").toFile();
+        File binario = new File(diretorio, "jackut.snapshot");
+        File xml = new File(diretorio, "jackut.xml");
+        try {
+            Base base = new Base(usuarios, new Random(semente));
+            gravarBinario(base, binario);
+            gravarXml(base, xml);
+            base = null;
+
+            System.out.printf("%-16s %10s %12s %12s %14s%n", "formato", "MiB", "carga (ms)", "pico (MiB)",
+                    "retido (MiB)");
+            medir("binário", binario, usuarios, rodadas, SnapshotBinario::carregar);
+            medir("XML (XStream)", xml, usuarios, rodadas, ImportadorXml::importarSnapshot);
+        } finally {
+            binario.delete();
+            xml.delete();
+            diretorio.delete();
+        }
+    }
+
+    // Carrega o arquivo em gerenciadores novos a cada rodada e imprime a carga mais rápida, o maior
+    // pico e o heap retido pela última carga
+    private static void medir(String nome, File arquivo, int usuarios, int rodadas, Carga carga) throws IOException {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pools.add(pool);
+            }
+        }
+
+        double melhor = Double.MAX_VALUE;
+        long pico = 0;
+        long retido = 0;
+        for (int r = 0; r < rodadas; r++) {
+            long antes = heapUsado();
+            for (MemoryPoolMXBean pool : pools) {
+                pool.resetPeakUsage();
+            }
+            UserManager userManager = new UserManager();
+            long inicio = System.nanoTime();
+            carga.carregar(arquivo, userManager, new CommunityManager(userManager));
+            melhor = Math.min(melhor, (System.nanoTime() - inicio) / 1e6);
+            long picos = 0;
+            for (MemoryPoolMXBean pool : pools) {
+                picos += pool.getPeakUsage().getUsed();
+            }
+            pico = Math.max(pico, picos - antes);
+            retido = heapUsado() - antes;
+            if (userManager.getUsuarios().size() != usuarios) {
+                throw new IllegalStateException("Carga incompleta: " + nome);
+            }
+        }
+        System.out.printf("%-16s %10.1f %12.1f %12.1f %14.1f%n", nome, arquivo.length() / 1048576.0, melhor,
+                pico / 1048576.0, retido / 1048576.0);
+    }
+
+    // Grava a base no formato binário da versão 2, com os usuários identificados pela posição
+    private static void gravarBinario(Base base, File arquivo) throws IOException {
+        try (DataOutputStream saida = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(arquivo)))) {
+            saida.writeInt(MAGIC);
+            saida.writeInt(VERSAO);
+            saida.writeLong(0);
+
+            int usuarios = base.amigos.length;
+            saida.writeInt(usuarios);
+            for (int i = 0; i < usuarios; i++) {
+                gravarTexto(saida, login(i));
+                gravarTexto(saida, "senha");
+                gravarTexto(saida, "Usuario " + i);
+                saida.writeInt(1);
+                gravarTexto(saida, "cidade");
+                gravarTexto(saida, base.cidades[i]);
+            }
+            for (int i = 0; i < usuarios; i++) {
+                gravarIds(saida, base.amigos[i]);
+                saida.writeInt(0);
+                saida.writeInt(0);
+                saida.writeInt(0);
+                saida.writeInt(0);
+                saida.writeInt(1);
+                gravarTexto(saida, login(base.remetentes[i]));
+                gravarTexto(saida, "Recado " + i);
+                saida.writeInt(0);
+            }
+
+            saida.writeInt(base.membros.length);
+            for (int c = 0; c < base.membros.length; c++) {
+                gravarTexto(saida, "comunidade" + c);
+                gravarTexto(saida, "Comunidade " + c);
+                saida.writeInt(base.donos[c]);
+                saida.writeInt(0);
+                saida.writeInt(base.membros[c].size());
+                for (int membro : base.membros[c]) {
+                    saida.writeInt(membro);
+                    saida.writeInt(0);
+                }
+            }
+        }
+    }
+
+    // Grava um conjunto de ids precedido da quantidade
+    private static void gravarIds(DataOutputStream saida, Set<Integer> ids) throws IOException {
+        saida.writeInt(ids.size());
+        for (int id : ids) {
+            saida.writeInt(id);
+        }
+    }
+
+    // Grava um texto em UTF-8 precedido do tamanho, como o SnapshotBinario lê
+    private static void gravarTexto(DataOutputStream saida, String texto) throws IOException {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        saida.writeInt(bytes.length);
+        saida.write(bytes);
+    }
+
+    // Grava a base como o snapshot XML anterior: o grafo de usuários aninhado pelo XStream, com os
+    // nomes de classes e de campos que o ImportadorXml espera
+    private static void gravarXml(Base base, File arquivo) throws IOException {
+        int usuarios = base.amigos.length;
+        UsuarioXml[] todos = new UsuarioXml[usuarios];
+        for (int i = 0; i < usuarios; i++) {
+            todos[i] = new UsuarioXml();
+            todos[i].login = login(i);
+            todos[i].senha = "senha";
+            todos[i].nome = "Usuario " + i;
+            todos[i].perfil = new PerfilXml();
+            todos[i].perfil.atributos.put("cidade", base.cidades[i]);
+        }
+        SnapshotXml snapshot = new SnapshotXml();
+        for (int i = 0; i < usuarios; i++) {
+            for (int amigo : base.amigos[i]) {
+                todos[i].amigos.add(todos[amigo]);
+            }
+            String recado = "Recado " + i;
+            todos[i].recadosRecebidos.add(recado);
+            todos[i].autoresRecados.put(recado, login(base.remetentes[i]));
+            snapshot.usuarios.put(todos[i].login, todos[i]);
+        }
+        for (int c = 0; c < base.membros.length; c++) {
+            ComunidadeXml comunidade = new ComunidadeXml();
+            comunidade.nome = "comunidade" + c;
+            comunidade.descricao = "Comunidade " + c;
+            comunidade.dono = todos[base.donos[c]];
+            for (int membro : base.membros[c]) {
+                comunidade.membros.add(todos[membro]);
+            }
+            snapshot.comunidades.put(comunidade.nome, comunidade);
+        }
+
+        XStream xstream = new XStream(new StaxDriver());
+        xstream.alias("br.ufal.ic.p2.jackut.models.Usuario", UsuarioXml.class);
+        xstream.alias("br.ufal.ic.p2.jackut.models.Perfil", PerfilXml.class);
+        xstream.alias("br.ufal.ic.p2.jackut.models.Comunidade", ComunidadeXml.class);
+        xstream.alias("snapshot", SnapshotXml.class);
+        try (Writer writer = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(arquivo)),
+                StandardCharsets.UTF_8)) {
+            xstream.toXML(snapshot, writer);
+        }
+    }
+
+    private static String login(int usuario) {
+        return "usuario" + usuario;
+    }
+
+    // Heap usado após algumas coletas de lixo
+    private static long heapUsado() {
+        MemoryMXBean memoria = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return memoria.getHeapMemoryUsage().getUsed();
+    }
+
+    // Leitura de um snapshot para os gerenciadores
+    private interface Carga {
+        long carregar(File arquivo, UserManager userManager, CommunityManager communityManager) throws IOException;
+    }
+
+    // Base sintética gravada nos dois formatos, com os usuários identificados pela posição. As
+    // amizades são simétricas, como nos dois formatos
+    private static class Base {
+        private final String[] cidades;
+        private final Set<Integer>[] amigos;
+        private final int[] remetentes;
+        private final int[] donos;
+        private final Set<Integer>[] membros;
+
+        @SuppressWarnings("unchecked")
+        private Base(int usuarios, Random aleatorio) {
+            cidades = new String[usuarios];
+            amigos = new Set[usuarios];
+            remetentes = new int[usuarios];
+            for (int i = 0; i < usuarios; i++) {
+                cidades[i] = "Cidade " + aleatorio.nextInt(500);
+                amigos[i] = new LinkedHashSet<>();
+                remetentes[i] = (i + 1) % usuarios;
+            }
+            for (int i = 0; i < usuarios; i++) {
+                for (int c = 0; c < AMIGOS_POR_USUARIO; c++) {
+                    int amigo = aleatorio.nextInt(usuarios);
+                    if (amigo != i) {
+                        amigos[i].add(amigo);
+                        amigos[amigo].add(i);
+                    }
+                }
+            }
+
+            int comunidades = Math.max(1, usuarios / USUARIOS_POR_COMUNIDADE);
+            donos = new int[comunidades];
+            membros = new Set[comunidades];
+            for (int c = 0; c < comunidades; c++) {
+                donos[c] = aleatorio.nextInt(usuarios);
+                membros[c] = new LinkedHashSet<>();
+                membros[c].add(donos[c]);
+                for (int m = 0; m < MEMBROS_POR_COMUNIDADE; m++) {
+                    membros[c].add(aleatorio.nextInt(usuarios));
+                }
+            }
+        }
+    }
+
+    // Espelhos das classes antigas gravadas pelo XStream, com os mesmos nomes de campos
+    private static class SnapshotXml {
+        private long sequencia;
+        private Map<String, UsuarioXml> usuarios = new HashMap<>();
+        private Map<String, ComunidadeXml> comunidades = new HashMap<>();
+    }
+
+    private static class UsuarioXml {
+        private String login;
+        private String senha;
+        private String nome;
+        private PerfilXml perfil;
+        private Set<UsuarioXml> amigos = new LinkedHashSet<>();
+        private Queue<String> recadosRecebidos = new LinkedList<>();
+        private Map<String, String> autoresRecados = new HashMap<>();
+    }
+
+    private static class PerfilXml {
+        private Map<String, String> atributos = new HashMap<>();
+    }
+
+    private static class ComunidadeXml {
+        private String nome;
+        private String descricao;
+        private UsuarioXml dono;
+        private Set<UsuarioXml> membros = new LinkedHashSet<>();
+    }
+}
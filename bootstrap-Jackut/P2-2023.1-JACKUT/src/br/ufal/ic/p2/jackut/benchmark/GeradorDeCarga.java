@@ -0,0 +1,473 @@
+/**
+ * Gera e executa cargas de trabalho na gramática dos scripts do EasyAccept, com o vocabulário dos
+ * testes de aceitação.
+ * <p>
+ * A geração lê os scripts de uma pasta (por padrão {@code tests/}) e aprende deles os comandos, os
+ * nomes dos argumentos, a frequência de cada comando e exemplos de textos (recados, atributos,
+ * descrições). Com isso escreve um script em escala: uma preparação com os usuários, suas sessões,
+ * algumas amizades e comunidades, seguida de operações sorteadas entre leituras e escritas na
+ * proporção pedida, cada tipo com o peso que tem nos testes. Os argumentos são preenchidos pelo
+ * papel indicado pelo nome (id e sessao recebem a sessão do usuário que age, login, amigo e
+ * destinatario outro usuário, nome uma comunidade, e os textos um exemplo dos testes). O script é
+ * determinado pela semente e pode ser guardado e executado de novo.
+ * </p>
+ * <p>
+ * A execução roda a preparação em lote e divide as operações, depois da linha
+ * {@value #MARCADOR_OPERACOES}, entre threads virtuais, que executam os comandos um a um pela
+ * Facade, com as mesmas travas dos métodos públicos, como fazem os clientes. As operações só usam
+ * variáveis da preparação, então podem rodar em qualquer ordem. Um script sem o marcador é
+ * executado inteiro em sequência. O relatório traz a vazão e, por comando, chamadas, erros por
+ * mensagem e percentis de latência medidos no cliente.
+ * Cada execução usa um diretório de dados temporário.
+ * </p>
+ * <p>
+ * Com o endereço de um {@link ServidorDeComandos}, a carga é enviada ao servidor: a preparação por
+ * uma conexão e as operações por uma conexão de cada thread, medindo a latência de ida e volta. A
+ * preparação começa com zerarSistema, então o servidor deve ser uma instância descartável.
+ * </p>
+ * <pre>
+ * uso: GeradorDeCarga [usuarios] [operacoes] [threads] [percentual escritas] [semente]
+ *      GeradorDeCarga gerar arquivo [usuarios] [operacoes] [percentual escritas] [semente] [pasta dos scripts]
+ *      GeradorDeCarga executar arquivo [threads] [endereço do servidor]
+ * </pre>
+ */
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.Facade;
+import br.ufal.ic.p2.jackut.comandos.Comando;
+import br.ufal.ic.p2.jackut.comandos.InterpretadorDeComandos;
+import br.ufal.ic.p2.jackut.comandos.Resultado;
+import br.ufal.ic.p2.jackut.managers.MetricasDeOperacoes;
+import br.ufal.ic.p2.jackut.managers.RetratoDeMetricas;
+import br.ufal.ic.p2.jackut.servidor.ClienteDeComandos;
+import br.ufal.ic.p2.jackut.servidor.ServidorDeComandos;
+
+import java.io.*;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+public class GeradorDeCarga {
+    // Valores padrão dos argumentos
+    private static final int USUARIOS_PADRAO = 10_000;
+    private static final int OPERACOES_PADRAO = 200_000;
+    private static final int THREADS_PADRAO = 64;
+    private static final int PERCENTUAL_ESCRITAS_PADRAO = 20;
+    private static final long SEMENTE_PADRAO = 42;
+    private static final String PASTA_SCRIPTS_PADRAO = "tests";
+
+    // Tamanho da preparação: amizades iniciais de cada usuário e usuários por comunidade criada
+    private static final int AMIGOS_POR_USUARIO = 5;
+    private static final int USUARIOS_POR_COMUNIDADE = 20;
+
+    // Linha que separa a preparação das operações no script gerado
+    private static final String MARCADOR_OPERACOES = "# operações";
+
+    // Comandos que alteram o estado (lerRecado e lerMensagem consomem a fila e vão para o log)
+    private static final Set<String> ESCRITAS = Set.of("editarPerfil", "adicionarAmigo", "enviarRecado",
+            "criarComunidade", "adicionarComunidade", "enviarMensagem", "adicionarIdolo", "adicionarPaquera",
+            "adicionarInimigo", "lerRecado", "lerMensagem");
+
+    // Comandos dos testes que não entram nas operações: os de preparação e os que mudam o sistema inteiro
+    private static final Set<String> IGNORADOS = Set.of("zerarSistema", "encerrarSistema", "quit",
+            "criarUsuario", "abrirSessao", "removerUsuario");
+
+    /**
+     * Método principal que gera e executa uma carga, só gera ou só executa
+     * @param args Modo e parâmetros, conforme o uso na descrição da classe
+     * @throws Exception Se ocorrer erro nos arquivos ou na espera pelas threads
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length > 1 && args[0].equals("gerar")) {
+            int usuarios = args.length > 2 ? Integer.parseInt(args[2]) : USUARIOS_PADRAO;
+            int operacoes = args.length > 3 ? Integer.parseInt(args[3]) : OPERACOES_PADRAO;
+            int escritas = args.length > 4 ? Integer.parseInt(args[4]) : PERCENTUAL_ESCRITAS_PADRAO;
+            long semente = args.length > 5 ? Long.parseLong(args[5]) : SEMENTE_PADRAO;
+            File pasta = new File(args.length > 6 ? args[6] : PASTA_SCRIPTS_PADRAO);
+            gerar(new File(args[1]), pasta, usuarios, operacoes, escritas, semente);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("executar")) {
+            executar(new File(args[1]), args.length > 2 ? Integer.parseInt(args[2]) : THREADS_PADRAO,
+                    args.length > 3 ? ServidorDeComandos.endereco(args[3]) : null);
+            return;
+        }
+
+        int usuarios = args.length > 0 ? Integer.parseInt(args[0]) : USUARIOS_PADRAO;
+        int operacoes = args.length > 1 ? Integer.parseInt(args[1]) : OPERACOES_PADRAO;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : THREADS_PADRAO;
+        int escritas = args.length > 3 ? Integer.parseInt(args[3]) : PERCENTUAL_ESCRITAS_PADRAO;
+        long semente = args.length > 4 ? Long.parseLong(args[4]) : SEMENTE_PADRAO;
+        File script = File.createTempFile("jackut-carga", ".txt");
+        try {
+            gerar(script, new File(PASTA_SCRIPTS_PADRAO), usuarios, operacoes, escritas, semente);
+            executar(script, threads, null);
+        } finally {
+            script.delete();
+        }
+    }
+
+    /**
+     * Gera um script de carga com o vocabulário dos scripts de uma pasta
+     * @param destino Arquivo do script gerado
+     * @param pasta Pasta com os scripts de onde o vocabulário é aprendido
+     * @param usuarios Quantidade de usuários da preparação
+     * @param operacoes Quantidade de operações depois da preparação
+     * @param percentualEscritas Percentual das operações que alteram o estado
+     * @param semente Semente dos sorteios
+     * @throws IOException Se ocorrer erro na leitura dos scripts ou na gravação
+     */
+    public static void gerar(File destino, File pasta, int usuarios, int operacoes, int percentualEscritas,
+                             long semente) throws IOException {
+        Vocabulario vocabulario = Vocabulario.ler(pasta);
+        if (vocabulario.leituras.isEmpty() && vocabulario.escritas.isEmpty()) {
+            throw new IllegalStateException("Nenhum comando encontrado em " + pasta.getPath() + ".");
+        }
+        Random aleatorio = new Random(semente);
+        int comunidades = Math.max(1, usuarios / USUARIOS_POR_COMUNIDADE);
+
+        try (PrintWriter saida = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(destino), StandardCharsets.UTF_8)))) {
+            saida.printf("# carga gerada: %d usuários, %d operações, %d%% escritas, semente %d%n",
+                    usuarios, operacoes, percentualEscritas, semente);
+            saida.println("# vocabulário: " + vocabulario.descrever());
+            saida.println("zerarSistema");
+            for (int i = 0; i < usuarios; i++) {
+                saida.println("criarUsuario login=" + login(i) + " senha=senha nome=" + citar("Usuario " + i));
+            }
+            for (int i = 0; i < usuarios; i++) {
+                saida.println("s" + i + "=abrirSessao login=" + login(i) + " senha=senha");
+            }
+            // Amizades iniciais: convite e aceite entre pares sorteados
+            for (int i = 0; i < usuarios && usuarios > 1; i++) {
+                for (int k = 0; k < AMIGOS_POR_USUARIO; k++) {
+                    int amigo = outro(i, usuarios, aleatorio);
+                    saida.println("adicionarAmigo id=${s" + i + "} amigo=" + login(amigo));
+                    saida.println("adicionarAmigo id=${s" + amigo + "} amigo=" + login(i));
+                }
+            }
+            for (int c = 0; c < comunidades; c++) {
+                saida.println("criarComunidade sessao=${s" + (c % usuarios) + "} nome=" + comunidade(c)
+                        + " descricao=" + citar(vocabulario.exemplo("descricao", aleatorio)));
+            }
+
+            saida.println(MARCADOR_OPERACOES);
+            int[] novas = new int[1];
+            for (int i = 0; i < operacoes; i++) {
+                boolean escrita = vocabulario.leituras.isEmpty()
+                        || (!vocabulario.escritas.isEmpty() && aleatorio.nextInt(100) < percentualEscritas);
+                String nome = vocabulario.sortear(escrita ? vocabulario.escritas : vocabulario.leituras, aleatorio);
+                int ator = aleatorio.nextInt(usuarios);
+                StringBuilder linha = new StringBuilder(nome);
+                for (String argumento : vocabulario.argumentos.get(nome)) {
+                    linha.append(' ').append(argumento).append('=')
+                            .append(citar(valor(nome, argumento, ator, usuarios, comunidades, novas, vocabulario, aleatorio)));
+                }
+                saida.println(linha);
+            }
+        }
+    }
+
+    /**
+     * Executa um script de carga e imprime o relatório
+     * @param script Arquivo do script, gerado por {@link #gerar} ou escrito à mão
+     * @param threads Quantidade de threads virtuais que executam as operações
+     * @param servidor Endereço de um {@link ServidorDeComandos} que recebe a carga, ou null para
+     *                 executá-la em uma Facade local
+     * @throws IOException Se ocorrer erro na leitura do script, no diretório temporário ou na conexão
+     * @throws InterruptedException Se a espera pelas threads for interrompida
+     */
+    public static void executar(File script, int threads, SocketAddress servidor) throws IOException, InterruptedException {
+        List<String> linhas = Files.readAllLines(script.toPath(), StandardCharsets.UTF_8);
+        int marcador = linhas.indexOf(MARCADOR_OPERACOES);
+        List<Comando> preparacao = ler(marcador < 0 ? linhas : linhas.subList(0, marcador));
+        List<Comando> operacoes = marcador < 0 ? List.of() : ler(linhas.subList(marcador + 1, linhas.size()));
+        if (servidor != null) {
+            executarRemoto(preparacao, operacoes, threads, servidor);
+            return;
+        }
+
+        File diretorio = Files.createTempDirectory("jackut-carga").toFile();
+        try {
+            Facade facade = new Facade(diretorio);
+
+            Map<String, String> variaveis = new HashMap<>();
+            long[] falhas = new long[1];
+            long inicio = System.nanoTime();
+            facade.executarLote(preparacao.iterator(), variaveis, resultado -> {
+                if (!resultado.isSucesso()) {
+                    falhas[0]++;
+                }
+            });
+            System.out.printf("preparação: %d comandos em %.2f s, %d rejeitados%n", preparacao.size(),
+                    (System.nanoTime() - inicio) / 1e9, falhas[0]);
+            if (operacoes.isEmpty()) {
+                return;
+            }
+
+            MetricasDeOperacoes metricas = new MetricasDeOperacoes(nomes(operacoes));
+            LongAdder erros = new LongAdder();
+            double segundos = distribuir(operacoes, threads, parte -> {
+                Map<String, String> locais = new HashMap<>(variaveis);
+                for (Comando operacao : parte) {
+                    if (!chamar(facade, operacao, locais, metricas)) {
+                        erros.increment();
+                    }
+                }
+            });
+            // As medidas do relatório são as do sistema depois da carga (usuários, caixas, caches)
+            Map<String, Number> medidas = facade.getMetricas().getMedidas();
+            facade.encerrarSistema();
+            relatar(operacoes.size(), segundos, threads, erros.sum(), metricas.retratar(medidas, null));
+        } finally {
+            apagar(diretorio);
+        }
+    }
+
+    // Executa a carga em um servidor: a preparação por uma conexão, em janelas, e as operações por
+    // uma conexão de cada thread, uma requisição por vez, com as variáveis resolvidas aqui
+    private static void executarRemoto(List<Comando> preparacao, List<Comando> operacoes, int threads,
+                                       SocketAddress servidor) throws IOException, InterruptedException {
+        Map<String, String> variaveis = new HashMap<>();
+        long falhas = 0;
+        long inicio = System.nanoTime();
+        try (ClienteDeComandos cliente = new ClienteDeComandos(servidor)) {
+            for (Resultado resultado : cliente.executar(preparacao)) {
+                if (!resultado.isSucesso()) {
+                    falhas++;
+                } else if (resultado.getComando().getVariavel() != null) {
+                    variaveis.put(resultado.getComando().getVariavel(), resultado.getValor());
+                }
+            }
+        }
+        System.out.printf("preparação em %s: %d comandos em %.2f s, %d rejeitados%n", servidor, preparacao.size(),
+                (System.nanoTime() - inicio) / 1e9, falhas);
+        if (operacoes.isEmpty()) {
+            return;
+        }
+
+        MetricasDeOperacoes metricas = new MetricasDeOperacoes(nomes(operacoes));
+        LongAdder erros = new LongAdder();
+        double segundos = distribuir(operacoes, threads, parte -> {
+            try (ClienteDeComandos cliente = new ClienteDeComandos(servidor)) {
+                for (Comando operacao : parte) {
+                    List<String> valores = new ArrayList<>(operacao.getValores().size());
+                    for (String valor : operacao.getValores()) {
+                        valores.add(InterpretadorDeComandos.substituir(valor, variaveis));
+                    }
+                    Comando requisicao = new Comando(null, operacao.getNome(), operacao.getNomesArgumentos(),
+                            valores, Comando.Expectativa.NENHUMA, null);
+                    long comeco = metricas.iniciar();
+                    try {
+                        Resultado resultado = cliente.executar(requisicao);
+                        if (!resultado.isSucesso()) {
+                            metricas.registrarErro(operacao.getNome(), new RuntimeException(resultado.getErro()));
+                            erros.increment();
+                        }
+                    } finally {
+                        metricas.registrar(operacao.getNome(), comeco);
+                    }
+                }
+            }
+        });
+        relatar(operacoes.size(), segundos, threads, erros.sum(), metricas.retratar(Map.of(), null));
+    }
+
+    // Divide as operações entre threads virtuais (a thread t recebe as de posição t, t + threads, ...)
+    // e devolve os segundos até todas terminarem
+    private static double distribuir(List<Comando> operacoes, int threads, Trabalho trabalho)
+            throws InterruptedException {
+        int quantidade = Math.max(1, Math.min(threads, operacoes.size()));
+        List<List<Comando>> partes = new ArrayList<>();
+        for (int t = 0; t < quantidade; t++) {
+            partes.add(new ArrayList<>(operacoes.size() / quantidade + 1));
+        }
+        for (int i = 0; i < operacoes.size(); i++) {
+            partes.get(i % quantidade).add(operacoes.get(i));
+        }
+
+        Thread[] trabalhadores = new Thread[quantidade];
+        long inicio = System.nanoTime();
+        for (int t = 0; t < quantidade; t++) {
+            List<Comando> parte = partes.get(t);
+            trabalhadores[t] = Thread.ofVirtual().name("jackut-carga-" + t).start(() -> {
+                try {
+                    trabalho.executar(parte);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        for (Thread trabalhador : trabalhadores) {
+            trabalhador.join();
+        }
+        return (System.nanoTime() - inicio) / 1e9;
+    }
+
+    private static void relatar(int operacoes, double segundos, int threads, long erros, RetratoDeMetricas retrato) {
+        System.out.printf("operações: %d em %.2f s com %d threads virtuais, %.0f op/s, %d com erro%n%n",
+                operacoes, segundos, Math.max(1, Math.min(threads, operacoes)), operacoes / segundos, erros);
+        System.out.print(retrato);
+    }
+
+    // Nomes distintos dos comandos, na ordem da primeira ocorrência
+    private static String[] nomes(List<Comando> operacoes) {
+        Set<String> nomes = new LinkedHashSet<>();
+        for (Comando operacao : operacoes) {
+            nomes.add(operacao.getNome());
+        }
+        return nomes.toArray(new String[0]);
+    }
+
+    // Executa um comando como chamada avulsa da Facade, medindo a latência; devolve false se houve erro
+    private static boolean chamar(Facade facade, Comando comando, Map<String, String> variaveis,
+                                  MetricasDeOperacoes metricas) {
+        long inicio = metricas.iniciar();
+        try {
+            Resultado resultado = facade.executar(comando, variaveis);
+            if (!resultado.isSucesso()) {
+                metricas.registrarErro(comando.getNome(), new RuntimeException(resultado.getErro()));
+                return false;
+            }
+            return true;
+        } finally {
+            metricas.registrar(comando.getNome(), inicio);
+        }
+    }
+
+    // Preenche um argumento pelo papel que o nome indica
+    private static String valor(String comando, String argumento, int ator, int usuarios, int comunidades,
+                                int[] novas, Vocabulario vocabulario, Random aleatorio) {
+        switch (argumento) {
+            case "id":
+            case "sessao":
+                return "${s" + ator + "}";
+            case "login":
+            case "amigo":
+            case "destinatario":
+            case "idolo":
+            case "paquera":
+            case "inimigo":
+                return login(usuarios > 1 ? outro(ator, usuarios, aleatorio) : ator);
+            case "comunidade":
+                return comunidade(aleatorio.nextInt(comunidades));
+            case "nome":
+                if (comando.equals("criarComunidade")) {
+                    return "nova" + novas[0]++;
+                }
+                if (comando.contains("Comunidade")) {
+                    return comunidade(aleatorio.nextInt(comunidades));
+                }
+                return vocabulario.exemplo(argumento, aleatorio);
+            default:
+                return vocabulario.exemplo(argumento, aleatorio);
+        }
+    }
+
+    private static String login(int i) {
+        return "carga" + i;
+    }
+
+    private static String comunidade(int c) {
+        return "comunidade" + c;
+    }
+
+    // Sorteia um usuário diferente do informado
+    private static int outro(int usuario, int usuarios, Random aleatorio) {
+        int outro = aleatorio.nextInt(usuarios - 1);
+        return outro >= usuario ? outro + 1 : outro;
+    }
+
+    private static String citar(String valor) {
+        return InterpretadorDeComandos.citar(valor);
+    }
+
+    private static List<Comando> ler(List<String> linhas) throws IOException {
+        return InterpretadorDeComandos.lerScript(new StringReader(String.join("\n", linhas)));
+    }
+
+    private static void apagar(File diretorio) {
+        File[] arquivos = diretorio.listFiles();
+        if (arquivos != null) {
+            for (File arquivo : arquivos) {
+                arquivo.delete();
+            }
+        }
+        diretorio.delete();
+    }
+
+    // Operações executadas por uma thread virtual
+    private interface Trabalho {
+        void executar(List<Comando> parte) throws IOException;
+    }
+
+    // Comandos, argumentos, frequências e exemplos de textos aprendidos dos scripts
+    private static class Vocabulario {
+        private final Map<String, List<String>> argumentos = new HashMap<>();
+        private final Map<String, List<String>> exemplos = new HashMap<>();
+        private final TreeMap<String, Integer> leituras = new TreeMap<>();
+        private final TreeMap<String, Integer> escritas = new TreeMap<>();
+
+        // Lê os scripts .txt da pasta; cada comando fica com os nomes de argumentos da primeira
+        // ocorrência, e as demais com a mesma quantidade de argumentos contam para a frequência
+        private static Vocabulario ler(File pasta) throws IOException {
+            Vocabulario vocabulario = new Vocabulario();
+            File[] scripts = pasta.listFiles((dir, nome) -> nome.endsWith(".txt"));
+            if (scripts == null) {
+                throw new FileNotFoundException("Pasta de scripts não encontrada: " + pasta.getPath());
+            }
+            Arrays.sort(scripts);
+            for (File script : scripts) {
+                for (Comando comando : InterpretadorDeComandos.lerScript(script)) {
+                    vocabulario.aprender(comando);
+                }
+            }
+            return vocabulario;
+        }
+
+        private void aprender(Comando comando) {
+            for (int i = 0; i < comando.getValores().size(); i++) {
+                String valor = comando.getValor(i);
+                if (!valor.contains("${")) {
+                    exemplos.computeIfAbsent(comando.getNomesArgumentos().get(i), a -> new ArrayList<>()).add(valor);
+                }
+            }
+            String nome = comando.getNome();
+            if (IGNORADOS.contains(nome)) {
+                return;
+            }
+            List<String> conhecidos = argumentos.putIfAbsent(nome, comando.getNomesArgumentos());
+            if (conhecidos == null || conhecidos.size() == comando.getNomesArgumentos().size()) {
+                (ESCRITAS.contains(nome) ? escritas : leituras).merge(nome, 1, Integer::sum);
+            }
+        }
+
+        // Sorteia um comando com probabilidade proporcional à frequência
+        private String sortear(TreeMap<String, Integer> comandos, Random aleatorio) {
+            int total = 0;
+            for (int frequencia : comandos.values()) {
+                total += frequencia;
+            }
+            int sorteio = aleatorio.nextInt(total);
+            for (Map.Entry<String, Integer> comando : comandos.entrySet()) {
+                sorteio -= comando.getValue();
+                if (sorteio < 0) {
+                    return comando.getKey();
+                }
+            }
+            return comandos.lastKey();
+        }
+
+        // Sorteia um valor usado nos scripts para o argumento
+        private String exemplo(String argumento, Random aleatorio) {
+            List<String> valores = exemplos.get(argumento);
+            return valores == null || valores.isEmpty() ? argumento : valores.get(aleatorio.nextInt(valores.size()));
+        }
+
+        private String descrever() {
+            return "leituras " + leituras + ", escritas " + escritas;
+        }
+    }
+}
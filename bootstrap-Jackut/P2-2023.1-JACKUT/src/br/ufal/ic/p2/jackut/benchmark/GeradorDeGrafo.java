@@ -0,0 +1,170 @@
+/**
+ * Gera, pela Facade, uma rede social sintética com distribuições de cauda longa.
+ * <p>
+ * O número de amigos e o tamanho das comunidades seguem leis de potência, e os alvos de amizades
+ * e de ídolos são sorteados por uma distribuição de Zipf, de modo que poucos usuários concentram
+ * muitas ligações, como em redes reais. O sorteio usa uma semente fixa, então a mesma semente
+ * gera sempre o mesmo grafo.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.Facade;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class GeradorDeGrafo {
+    // Expoente da lei de potência do número de amigos
+    private static final double EXPOENTE_AMIGOS = 2.5;
+
+    // Expoente da lei de potência do tamanho das comunidades
+    private static final double EXPOENTE_COMUNIDADES = 2.1;
+
+    // Expoente da distribuição de Zipf usada para escolher usuários populares
+    private static final double EXPOENTE_ZIPF = 1.0;
+
+    // Limite de amigos sorteados por usuário
+    private static final int MAXIMO_AMIGOS = 1000;
+
+    // Usuários por comunidade criada
+    private static final int USUARIOS_POR_COMUNIDADE = 50;
+
+    private final Facade facade;
+    private final Random aleatorio;
+    private final String[] logins;
+    private final String[] sessoes;
+    private String[] comunidades = new String[0];
+
+    // Distribuição acumulada de Zipf sobre os usuários (o usuário 0 é o mais popular)
+    private final double[] acumuladaZipf;
+
+    /**
+     * Construtor
+     * @param facade Facade onde o grafo será criado (deve estar vazia)
+     * @param usuarios Quantidade de usuários
+     * @param semente Semente do sorteio
+     */
+    public GeradorDeGrafo(Facade facade, int usuarios, long semente) {
+        this.facade = facade;
+        this.aleatorio = new Random(semente);
+        this.logins = new String[usuarios];
+        this.sessoes = new String[usuarios];
+        this.acumuladaZipf = new double[usuarios];
+
+        double soma = 0;
+        for (int i = 0; i < usuarios; i++) {
+            soma += 1.0 / Math.pow(i + 1, EXPOENTE_ZIPF);
+            acumuladaZipf[i] = soma;
+        }
+        for (int i = 0; i < usuarios; i++) {
+            acumuladaZipf[i] /= soma;
+        }
+    }
+
+    /**
+     * Cria os usuários, abre uma sessão para cada um e gera amizades, ídolos, inimigos e comunidades
+     */
+    public void gerar() {
+        for (int i = 0; i < logins.length; i++) {
+            logins[i] = "usuario" + i;
+            facade.criarUsuario(logins[i], "senha", "Usuario " + i);
+            sessoes[i] = facade.abrirSessao(logins[i], "senha");
+        }
+
+        // Amizades: cada usuário convida metade do seu grau sorteado; o convidado aceita
+        for (int i = 0; i < logins.length; i++) {
+            int a = i;
+            int convites = Math.max(1, leiDePotencia(1, EXPOENTE_AMIGOS, MAXIMO_AMIGOS) / 2);
+            for (int c = 0; c < convites; c++) {
+                int amigo = sortearPopular();
+                tentar(() -> {
+                    facade.adicionarAmigo(sessoes[a], logins[amigo]);
+                    facade.adicionarAmigo(sessoes[amigo], logins[a]);
+                }, a == amigo);
+            }
+        }
+
+        // Ídolos para metade dos usuários e inimigos para um em cada cem
+        for (int i = 0; i < logins.length; i++) {
+            int a = i;
+            if (aleatorio.nextBoolean()) {
+                int idolo = sortearPopular();
+                tentar(() -> facade.adicionarIdolo(sessoes[a], logins[idolo]), a == idolo);
+            }
+            if (aleatorio.nextInt(100) == 0) {
+                int inimigo = sortear();
+                tentar(() -> facade.adicionarInimigo(sessoes[a], logins[inimigo]), a == inimigo);
+            }
+        }
+
+        // Comunidades com tamanhos em lei de potência, ordenadas da maior para a menor
+        int quantidade = Math.max(1, logins.length / USUARIOS_POR_COMUNIDADE);
+        int[] tamanhos = new int[quantidade];
+        for (int c = 0; c < quantidade; c++) {
+            tamanhos[c] = leiDePotencia(2, EXPOENTE_COMUNIDADES, Math.max(2, logins.length / 10));
+        }
+        Arrays.sort(tamanhos);
+        comunidades = new String[quantidade];
+        for (int c = 0; c < quantidade; c++) {
+            comunidades[c] = "comunidade" + c;
+            int dono = sortear();
+            facade.criarComunidade(sessoes[dono], comunidades[c], "Comunidade " + c);
+            String nome = comunidades[c];
+            for (int m = 1; m < tamanhos[quantidade - 1 - c]; m++) {
+                int membro = sortear();
+                tentar(() -> facade.adicionarComunidade(sessoes[membro], nome), false);
+            }
+        }
+    }
+
+    /**
+     * Sorteia um usuário com probabilidade uniforme
+     * @return Índice do usuário
+     */
+    public int sortear() {
+        return aleatorio.nextInt(logins.length);
+    }
+
+    /**
+     * Sorteia um usuário pela distribuição de Zipf (usuários de índice baixo são mais prováveis)
+     * @return Índice do usuário
+     */
+    public int sortearPopular() {
+        int i = Arrays.binarySearch(acumuladaZipf, aleatorio.nextDouble());
+        return Math.min(i >= 0 ? i : -i - 1, logins.length - 1);
+    }
+
+    /**
+     * Sorteia uma comunidade pela distribuição de Zipf (as maiores são mais prováveis)
+     * @return Nome da comunidade
+     */
+    public String sortearComunidade() {
+        int i = Arrays.binarySearch(acumuladaZipf, aleatorio.nextDouble() * acumuladaZipf[comunidades.length - 1]);
+        return comunidades[Math.min(i >= 0 ? i : -i - 1, comunidades.length - 1)];
+    }
+
+    public String getLogin(int usuario) { return logins[usuario]; }
+    public String getSessao(int usuario) { return sessoes[usuario]; }
+    public int getUsuarios() { return logins.length; }
+
+    // Sorteia um inteiro em [minimo, maximo] com cauda em lei de potência
+    private int leiDePotencia(int minimo, double expoente, int maximo) {
+        double u = aleatorio.nextDouble();
+        double valor = minimo * Math.pow(1 - u, -1 / (expoente - 1));
+        return (int) Math.min(maximo, valor);
+    }
+
+    // Executa uma operação de geração ignorando as rejeitadas pelas regras do Jackut
+    // (amizade repetida, inimigo, etc.); operações marcadas como inválidas nem são executadas
+    private static void tentar(Runnable operacao, boolean invalida) {
+        if (invalida) {
+            return;
+        }
+        try {
+            operacao.run();
+        } catch (RuntimeException e) {
+            // Ligação já existente ou proibida: o grafo apenas fica sem ela
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Comando da Facade na gramática dos scripts do EasyAccept.
+ * <p>
+ * Um comando tem o nome de um método da Facade e seus argumentos na ordem dos parâmetros,
+ * como em {@code adicionarAmigo id=${s1} amigo=oabath}. Os nomes dos argumentos são apenas
+ * informativos: assim como no EasyAccept, os valores são passados pela posição. Opcionalmente o
+ * resultado é atribuído a uma variável ({@code s1=abrirSessao ...}) ou comparado a um valor ou
+ * erro esperado ({@code expect} e {@code expectError}).
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.comandos;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class Comando {
+    /**
+     * Verificação pedida para o resultado do comando
+     */
+    public enum Expectativa {
+        NENHUMA, VALOR, ERRO
+    }
+
+    // Variável que recebe o resultado (null se não houver)
+    private final String variavel;
+
+    // Nome do método da Facade
+    private final String nome;
+
+    // Nomes e valores dos argumentos, na ordem dos parâmetros
+    private final List<String> nomesArgumentos;
+    private final List<String> valores;
+
+    // Verificação do resultado e valor (ou mensagem de erro) esperado
+    private final Expectativa expectativa;
+    private final String esperado;
+
+    /**
+     * Construtor para comandos montados por programa, sem variável nem expectativa
+     * @param nome Nome do método da Facade
+     * @param valores Valores dos argumentos, na ordem dos parâmetros
+     */
+    public Comando(String nome, String... valores) {
+        this(null, nome, Collections.nCopies(valores.length, ""), Arrays.asList(valores), Expectativa.NENHUMA, null);
+    }
+
+    /**
+     * Construtor completo
+     * @param variavel Variável que recebe o resultado (null se não houver)
+     * @param nome Nome do método da Facade
+     * @param nomesArgumentos Nomes dos argumentos
+     * @param valores Valores dos argumentos, na mesma ordem dos nomes
+     * @param expectativa Verificação pedida para o resultado
+     * @param esperado Valor ou mensagem de erro esperada (null se não houver expectativa)
+     */
+    public Comando(String variavel, String nome, List<String> nomesArgumentos, List<String> valores,
+                   Expectativa expectativa, String esperado) {
+        this.variavel = variavel;
+        this.nome = nome;
+        this.nomesArgumentos = List.copyOf(nomesArgumentos);
+        this.valores = List.copyOf(valores);
+        this.expectativa = expectativa;
+        this.esperado = esperado;
+    }
+
+    public String getVariavel() { return variavel; }
+    public String getNome() { return nome; }
+    public List<String> getNomesArgumentos() { return nomesArgumentos; }
+    public List<String> getValores() { return valores; }
+    public Expectativa getExpectativa() { return expectativa; }
+    public String getEsperado() { return esperado; }
+
+    /**
+     * Obtém o valor de um argumento pela posição
+     * @param posicao Posição do argumento
+     * @return Valor do argumento, ou null se o comando tiver menos argumentos
+     */
+    public String getValor(int posicao) {
+        return posicao < valores.size() ? valores.get(posicao) : null;
+    }
+
+    /**
+     * Formata o comando de volta na gramática dos scripts
+     * @return Linha equivalente ao comando
+     */
+    @Override
+    public String toString() {
+        StringBuilder linha = new StringBuilder();
+        if (expectativa == Expectativa.VALOR) {
+            linha.append("expect ").append(InterpretadorDeComandos.citar(esperado)).append(' ');
+        } else if (expectativa == Expectativa.ERRO) {
+            linha.append("expectError ").append(InterpretadorDeComandos.citar(esperado)).append(' ');
+        }
+        if (variavel != null) {
+            linha.append(variavel).append('=');
+        }
+        linha.append(nome);
+        for (int i = 0; i < valores.size(); i++) {
+            linha.append(' ');
+            String argumento = nomesArgumentos.get(i);
+            linha.append(argumento.isEmpty() ? "arg" + i : argumento).append('=');
+            linha.append(InterpretadorDeComandos.citar(valores.get(i)));
+        }
+        return linha.toString();
+    }
+}
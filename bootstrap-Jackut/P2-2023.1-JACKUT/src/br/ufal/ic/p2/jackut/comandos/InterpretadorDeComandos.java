@@ -0,0 +1,218 @@
+/**
+ * Interpreta linhas na gramática dos scripts do EasyAccept e as converte em {@link Comando}s.
+ * <p>
+ * A gramática é a dos arquivos em {@code tests/}: linhas em branco e iniciadas por {@code #} são
+ * ignoradas; cada linha tem um comando opcionalmente precedido por {@code expect valor} ou
+ * {@code expectError mensagem} e por uma atribuição {@code variavel=}; os argumentos têm a forma
+ * {@code nome=valor}, com aspas quando o valor tem espaços. Dentro das aspas, {@code \"} e
+ * {@code \\} representam a aspa e a barra invertida, e {@code \n} e {@code \r} as quebras de
+ * linha, para que um valor com várias linhas caiba em uma linha só. Referências {@code ${variavel}} são
+ * mantidas no comando e substituídas na execução, quando o valor da variável já é conhecido.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.comandos;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public final class InterpretadorDeComandos {
+    private InterpretadorDeComandos() {
+    }
+
+    /**
+     * Interpreta uma linha de script
+     * @param linha Linha a ser interpretada
+     * @return Comando da linha, ou null se ela estiver em branco ou for um comentário
+     * @throws RuntimeException Se a linha não seguir a gramática
+     */
+    public static Comando interpretar(String linha) {
+        String texto = linha.strip();
+        if (texto.isEmpty() || texto.startsWith("#")) {
+            return null;
+        }
+
+        List<String[]> termos = separarTermos(texto);
+        int i = 0;
+
+        Comando.Expectativa expectativa = Comando.Expectativa.NENHUMA;
+        String esperado = null;
+        String primeiro = termos.get(0)[0] == null ? termos.get(0)[1] : null;
+        if ("expect".equals(primeiro) || "expectError".equals(primeiro)) {
+            if (termos.size() < 3) {
+                throw new RuntimeException("Comando inválido: " + texto);
+            }
+            expectativa = "expect".equals(primeiro) ? Comando.Expectativa.VALOR : Comando.Expectativa.ERRO;
+            String[] termo = termos.get(1);
+            esperado = termo[0] == null ? termo[1] : termo[0] + "=" + termo[1];
+            i = 2;
+        }
+
+        // O nome do comando pode vir atribuído a uma variável (s1=abrirSessao)
+        String variavel = termos.get(i)[0];
+        String nome = termos.get(i)[1];
+        if (nome.isEmpty()) {
+            throw new RuntimeException("Comando inválido: " + texto);
+        }
+
+        List<String> nomesArgumentos = new ArrayList<>();
+        List<String> valores = new ArrayList<>();
+        for (i++; i < termos.size(); i++) {
+            String[] termo = termos.get(i);
+            nomesArgumentos.add(termo[0] == null ? "" : termo[0]);
+            valores.add(termo[1]);
+        }
+        return new Comando(variavel, nome, nomesArgumentos, valores, expectativa, esperado);
+    }
+
+    /**
+     * Lê todos os comandos de um script em UTF-8 ou, se o arquivo não for UTF-8 válido, em
+     * ISO 8859-1 (codificação pedida nos scripts mais antigos)
+     * @param arquivo Arquivo do script
+     * @return Comandos do script, na ordem
+     * @throws IOException Se ocorrer erro de leitura
+     * @throws RuntimeException Se alguma linha não seguir a gramática
+     */
+    public static List<Comando> lerScript(File arquivo) throws IOException {
+        byte[] conteudo = Files.readAllBytes(arquivo.toPath());
+        String texto;
+        try {
+            texto = StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(conteudo)).toString();
+        } catch (CharacterCodingException e) {
+            texto = new String(conteudo, StandardCharsets.ISO_8859_1);
+        }
+        return lerScript(new StringReader(texto));
+    }
+
+    /**
+     * Lê todos os comandos de um script
+     * @param leitor Leitor do script
+     * @return Comandos do script, na ordem
+     * @throws IOException Se ocorrer erro de leitura
+     * @throws RuntimeException Se alguma linha não seguir a gramática
+     */
+    public static List<Comando> lerScript(Reader leitor) throws IOException {
+        BufferedReader linhas = leitor instanceof BufferedReader ? (BufferedReader) leitor : new BufferedReader(leitor);
+        List<Comando> comandos = new ArrayList<>();
+        String linha;
+        while ((linha = linhas.readLine()) != null) {
+            Comando comando = interpretar(linha);
+            if (comando != null) {
+                comandos.add(comando);
+            }
+        }
+        return comandos;
+    }
+
+    /**
+     * Substitui as referências ${variavel} de um valor pelos valores das variáveis; referências
+     * a variáveis desconhecidas são mantidas como estão
+     * @param valor Valor com possíveis referências
+     * @param variaveis Valores das variáveis
+     * @return Valor com as referências substituídas
+     */
+    public static String substituir(String valor, Map<String, String> variaveis) {
+        int inicio = valor == null ? -1 : valor.indexOf("${");
+        if (inicio < 0) {
+            return valor;
+        }
+        StringBuilder resultado = new StringBuilder();
+        int posicao = 0;
+        while (inicio >= 0) {
+            int fim = valor.indexOf('}', inicio + 2);
+            if (fim < 0) {
+                break;
+            }
+            String substituto = variaveis.get(valor.substring(inicio + 2, fim));
+            resultado.append(valor, posicao, inicio).append(substituto != null ? substituto : valor.substring(inicio, fim + 1));
+            posicao = fim + 1;
+            inicio = valor.indexOf("${", posicao);
+        }
+        return resultado.append(valor, posicao, valor.length()).toString();
+    }
+
+    /**
+     * Formata um valor para a gramática dos scripts, com aspas quando necessário e com as quebras
+     * de linha escapadas, de modo que {@link #interpretar} devolva o mesmo valor
+     * @param valor Valor a ser formatado
+     * @return Valor pronto para ser escrito em uma linha de comando
+     */
+    public static String citar(String valor) {
+        if (valor == null) {
+            return "\"\"";
+        }
+        boolean precisaAspas = valor.isEmpty();
+        for (int i = 0; i < valor.length() && !precisaAspas; i++) {
+            char c = valor.charAt(i);
+            precisaAspas = Character.isWhitespace(c) || c == '"' || c == '\\' || c == '=' || c == '#';
+        }
+        if (!precisaAspas) {
+            return valor;
+        }
+        return '"' + valor.replace("\\", "\\\\").replace("\"", "\\\"")
+                .replace("\n", "\\n").replace("\r", "\\r") + '"';
+    }
+
+    /**
+     * Separa a linha em termos delimitados por espaços fora de aspas. Cada termo é devolvido como
+     * {nome, valor}, com nome null quando o termo não tem um '=' fora de aspas
+     */
+    private static List<String[]> separarTermos(String texto) {
+        List<String[]> termos = new ArrayList<>();
+        StringBuilder atual = new StringBuilder();
+        String nome = null;
+        boolean emAspas = false;
+        boolean temTermo = false;
+
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (emAspas) {
+                char seguinte = i + 1 < texto.length() ? texto.charAt(i + 1) : 0;
+                if (c == '\\' && (seguinte == '"' || seguinte == '\\')) {
+                    atual.append(seguinte);
+                    i++;
+                } else if (c == '\\' && (seguinte == 'n' || seguinte == 'r')) {
+                    atual.append(seguinte == 'n' ? '\n' : '\r');
+                    i++;
+                } else if (c == '"') {
+                    emAspas = false;
+                } else {
+                    atual.append(c);
+                }
+            } else if (c == '"') {
+                emAspas = true;
+                temTermo = true;
+            } else if (Character.isWhitespace(c)) {
+                if (temTermo) {
+                    termos.add(new String[] { nome, atual.toString() });
+                    atual.setLength(0);
+                    nome = null;
+                    temTermo = false;
+                }
+            } else if (c == '=' && nome == null) {
+                nome = atual.toString();
+                atual.setLength(0);
+                temTermo = true;
+            } else {
+                atual.append(c);
+                temTermo = true;
+            }
+        }
+        if (emAspas) {
+            throw new RuntimeException("Comando inválido: aspas não fechadas.");
+        }
+        if (temTermo) {
+            termos.add(new String[] { nome, atual.toString() });
+        }
+        return termos;
+    }
+}
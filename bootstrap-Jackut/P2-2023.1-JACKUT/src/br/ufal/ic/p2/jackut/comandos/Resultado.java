@@ -0,0 +1,67 @@
+/**
+ * Resultado da execução de um {@link Comando}: o valor devolvido pela Facade ou a mensagem do
+ * erro lançado, no mesmo formato que o EasyAccept compara.
+ */
+package br.ufal.ic.p2.jackut.comandos;
+
+public class Resultado {
+    // Comando executado
+    private final Comando comando;
+
+    // Valor devolvido (null para métodos sem retorno ou em caso de erro)
+    private final String valor;
+
+    // Mensagem do erro lançado (null em caso de sucesso)
+    private final String erro;
+
+    private Resultado(Comando comando, String valor, String erro) {
+        this.comando = comando;
+        this.valor = valor;
+        this.erro = erro;
+    }
+
+    /**
+     * Cria o resultado de um comando executado com sucesso
+     * @param comando Comando executado
+     * @param valor Valor devolvido (null para métodos sem retorno)
+     * @return Resultado de sucesso
+     */
+    public static Resultado sucesso(Comando comando, String valor) {
+        return new Resultado(comando, valor, null);
+    }
+
+    /**
+     * Cria o resultado de um comando que lançou erro
+     * @param comando Comando executado
+     * @param erro Mensagem do erro
+     * @return Resultado de erro
+     */
+    public static Resultado erro(Comando comando, String erro) {
+        return new Resultado(comando, null, erro);
+    }
+
+    public Comando getComando() { return comando; }
+    public String getValor() { return valor; }
+    public String getErro() { return erro; }
+    public boolean isSucesso() { return erro == null; }
+
+    /**
+     * Verifica se o resultado atende à expectativa do comando; sem expectativa, basta não haver erro
+     * @return true se o resultado é o esperado
+     */
+    public boolean isConforme() {
+        switch (comando.getExpectativa()) {
+            case VALOR:
+                return erro == null && comando.getEsperado().equals(valor);
+            case ERRO:
+                return erro != null && comando.getEsperado().equals(erro);
+            default:
+                return erro == null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return erro == null ? String.valueOf(valor) : "erro: " + erro;
+    }
+}
@@ -0,0 +1,350 @@
+/**
+ * Índice dos usuários guardados no snapshot e controle de quais deles estão em memória, usado no
+ * modo de carga sob demanda.
+ * <p>
+ * Para cada usuário cadastrado, guarda o id pelo login e o endereço do seu registro no snapshot
+ * particionado (partição e posição no arquivo), de modo que um usuário fora da memória pode ser
+ * lido sozinho quando for consultado. A quantidade de usuários em memória é limitada por uma
+ * capacidade: cada acesso registra o instante de um relógio lógico, e as passagens de liberação
+ * descarregam primeiro os usuários acessados há mais tempo (LRU aproximado).
+ * </p>
+ * <p>
+ * Só podem sair da memória usuários limpos, cujo registro no snapshot está atualizado. Os alterados
+ * ficam marcados como sujos até a próxima gravação do snapshot, que os escreve de volta. Usuários
+ * acessados desde a passagem anterior também ficam, para que uma operação que já obteve a
+ * referência a um usuário e ainda vai travá-lo não altere um objeto descarregado.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.managers;
+
+import br.ufal.ic.p2.jackut.models.Usuario;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class CacheDeUsuarios {
+    // Endereços especiais: usuário cadastrado que ainda não tem registro no snapshot, e id sem usuário
+    static final long SEM_REGISTRO = -1;
+    static final long AUSENTE = -2;
+
+    // Snapshot de onde os registros são lidos
+    private final SnapshotParticionado snapshot;
+
+    // Quantidade máxima de usuários em memória e quantos abaixo dela cada passagem tenta chegar
+    private final int capacidade;
+    private final int folga;
+
+    // Ids dos usuários cadastrados pelo login, estejam ou não em memória
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    // Endereço do registro de cada usuário pelo id: partição nos 32 bits altos e posição no arquivo
+    // nos baixos. O vetor só é substituído dentro dos métodos sincronizados
+    private volatile long[] enderecos = novosEnderecos(64);
+
+    // Instante lógico do último acesso de cada usuário pelo id. Os acessos são gravados sem trava,
+    // só com operações atômicas que nunca fazem o instante de um usuário voltar; o vetor só é
+    // substituído dentro dos métodos sincronizados
+    private volatile AtomicLongArray acessos = new AtomicLongArray(64);
+    private final AtomicLong relogio = new AtomicLong();
+
+    // Usuários alterados desde a última gravação do snapshot (protegido por this); com todosSujos,
+    // todos os que estão em memória contam como alterados
+    private final BitSet sujos = new BitSet();
+    private boolean todosSujos;
+
+    // Instante lógico da última passagem de liberação, usuários acessados a partir do qual não
+    // podem sair na passagem atual e quantidade de usuários em memória que dispara a próxima
+    // (protegidos por this)
+    private long ultimaPassagem;
+    private long protecao;
+    private int limitePassagem;
+
+    // Métricas
+    private final AtomicLong cargas = new AtomicLong();
+    private final AtomicLong descartes = new AtomicLong();
+    private final AtomicLong passagens = new AtomicLong();
+
+    /**
+     * Construtor
+     * @param snapshot Snapshot de onde os usuários fora da memória são lidos
+     * @param capacidade Quantidade máxima de usuários em memória
+     */
+    CacheDeUsuarios(SnapshotParticionado snapshot, int capacidade) {
+        this.snapshot = snapshot;
+        this.capacidade = Math.max(1, capacidade);
+        this.folga = Math.max(1, this.capacidade / 10);
+        this.limitePassagem = this.capacidade;
+    }
+
+    /**
+     * Obtém o id de um usuário cadastrado, esteja ou não em memória
+     * @param login Login do usuário
+     * @return Id interno ou -1 se não houver usuário com o login
+     */
+    public int getId(String login) {
+        Integer id = login == null ? null : ids.get(login);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Verifica se um id pertence a um usuário cadastrado, esteja ou não em memória
+     * @param id Id interno
+     * @return true se o usuário existir
+     */
+    public boolean contemId(int id) {
+        long[] atuais = enderecos;
+        return id >= 0 && id < atuais.length && atuais[id] != AUSENTE;
+    }
+
+    /**
+     * Registra um usuário cadastrado
+     * @param login Login do usuário
+     * @param id Id interno
+     * @param endereco Endereço do registro no snapshot ou {@link #SEM_REGISTRO}
+     */
+    synchronized void registrar(String login, int id, long endereco) {
+        long[] atuais = enderecos;
+        if (id >= atuais.length) {
+            int tamanho = Math.max(atuais.length * 2, id + 1);
+            long[] maiores = novosEnderecos(tamanho);
+            System.arraycopy(atuais, 0, maiores, 0, atuais.length);
+            AtomicLongArray anteriores = acessos;
+            AtomicLongArray novosAcessos = new AtomicLongArray(tamanho);
+            for (int i = 0; i < anteriores.length(); i++) {
+                novosAcessos.set(i, anteriores.get(i));
+            }
+            acessos = novosAcessos;
+            enderecos = atuais = maiores;
+        }
+        atuais[id] = endereco;
+        ids.put(login, id);
+    }
+
+    /**
+     * Esquece um usuário removido
+     * @param login Login do usuário
+     * @param id Id interno
+     */
+    synchronized void remover(String login, int id) {
+        ids.remove(login, id);
+        if (id < enderecos.length) {
+            enderecos[id] = AUSENTE;
+        }
+        sujos.clear(id);
+    }
+
+    /**
+     * Atualiza o endereço do registro de um usuário depois de uma gravação do snapshot
+     * @param id Id interno
+     * @param endereco Novo endereço
+     */
+    synchronized void atualizarEndereco(int id, long endereco) {
+        if (id < enderecos.length && enderecos[id] != AUSENTE) {
+            enderecos[id] = endereco;
+        }
+    }
+
+    /**
+     * Obtém o endereço do registro de um usuário
+     * @param id Id interno
+     * @return Endereço, {@link #SEM_REGISTRO} ou {@link #AUSENTE}
+     */
+    long getEndereco(int id) {
+        long[] atuais = enderecos;
+        return id >= 0 && id < atuais.length ? atuais[id] : AUSENTE;
+    }
+
+    /**
+     * Obtém os ids de todos os usuários cadastrados
+     * @return Mapa login -> id (visão somente leitura)
+     */
+    Map<String, Integer> getIds() {
+        return Collections.unmodifiableMap(ids);
+    }
+
+    /**
+     * Lê do snapshot um usuário que não está em memória
+     * @param id Id interno
+     * @return Usuário lido, ainda não registrado no gerenciador, ou null se não houver registro
+     * @throws RuntimeException Se ocorrer erro de leitura
+     */
+    Usuario carregar(int id) {
+        long endereco = getEndereco(id);
+        if (endereco < 0) {
+            return null;
+        }
+        try {
+            Usuario usuario = snapshot.lerUsuario(endereco, this::contemId);
+            cargas.incrementAndGet();
+            tocar(id);
+            return usuario;
+        } catch (IOException e) {
+            throw new RuntimeException("Erro ao carregar os dados.", e);
+        }
+    }
+
+    /**
+     * Registra um acesso a um usuário em memória
+     * @param id Id interno
+     */
+    void tocar(int id) {
+        long instante = relogio.incrementAndGet();
+        AtomicLongArray atuais = acessos;
+        // Se o vetor for substituído durante a gravação, a cópia pode não ter visto o instante:
+        // grava de novo no vetor atual
+        while (id >= 0 && id < atuais.length()) {
+            atuais.accumulateAndGet(id, instante, Math::max);
+            AtomicLongArray depois = acessos;
+            if (depois == atuais) {
+                return;
+            }
+            atuais = depois;
+        }
+    }
+
+    /**
+     * Marca um usuário como alterado desde a última gravação do snapshot
+     * @param login Login do usuário
+     */
+    synchronized void marcarSujo(String login) {
+        int id = getId(login);
+        if (id >= 0) {
+            sujos.set(id);
+        }
+    }
+
+    /**
+     * Marca todos os usuários em memória como alterados (operações que afetam o estado inteiro)
+     */
+    synchronized void marcarTodosSujos() {
+        todosSujos = true;
+    }
+
+    /**
+     * Desmarca todos os usuários alterados, depois que o snapshot os gravou
+     */
+    synchronized void limparSujos() {
+        sujos.clear();
+        todosSujos = false;
+    }
+
+    /**
+     * Verifica se há usuários alterados ainda não gravados no snapshot
+     * @return true se houver algum
+     */
+    synchronized boolean temSujos() {
+        return todosSujos || !sujos.isEmpty();
+    }
+
+    /**
+     * Verifica se a quantidade de usuários em memória pede uma passagem de liberação
+     * @param residentes Quantidade de usuários em memória
+     * @return true se a passagem deve ser feita
+     */
+    synchronized boolean precisaLiberar(int residentes) {
+        return residentes > limitePassagem;
+    }
+
+    /**
+     * Escolhe os usuários a descarregar em uma passagem de liberação: entre os limpos, com registro no
+     * snapshot e não acessados desde a passagem anterior, os acessados há mais tempo, até a
+     * quantidade em memória ficar abaixo da capacidade com alguma folga
+     * @param residentes Usuários em memória
+     * @param repetir Se é uma nova tentativa da passagem anterior, com a mesma proteção dos
+     *                usuários acessados recentemente
+     * @return Usuários a descarregar
+     */
+    synchronized List<Usuario> escolherDescartes(Collection<Usuario> residentes, boolean repetir) {
+        if (!repetir) {
+            passagens.incrementAndGet();
+            protecao = ultimaPassagem;
+            ultimaPassagem = relogio.get();
+        }
+        int excesso = residentes.size() - (capacidade - folga);
+        List<Usuario> candidatos = new ArrayList<>();
+        // Os instantes são lidos uma vez só, porque acessos concorrentes continuam a alterá-los
+        // durante a ordenação
+        Map<Usuario, Long> instantes = new HashMap<>();
+        AtomicLongArray ultimos = acessos;
+        if (excesso > 0 && !todosSujos) {
+            for (Usuario usuario : residentes) {
+                int id = usuario.getId();
+                long instante = ultimos.get(id);
+                if (getEndereco(id) >= 0 && !sujos.get(id) && instante < protecao) {
+                    candidatos.add(usuario);
+                    instantes.put(usuario, instante);
+                }
+            }
+        }
+        candidatos.sort(Comparator.comparingLong(instantes::get));
+        List<Usuario> escolhidos = candidatos.subList(0, Math.max(0, Math.min(excesso, candidatos.size())));
+
+        // Se não deu para descer até a capacidade, a próxima passagem só acontece depois de mais
+        // uma folga de cargas, para que a passagem não se repita a cada operação
+        int restantes = residentes.size() - escolhidos.size();
+        limitePassagem = Math.max(capacidade, restantes + folga);
+        descartes.addAndGet(escolhidos.size());
+        return escolhidos;
+    }
+
+    /**
+     * Esquece todos os usuários (reinicialização do sistema)
+     */
+    synchronized void limpar() {
+        ids.clear();
+        enderecos = novosEnderecos(64);
+        acessos = new AtomicLongArray(64);
+        sujos.clear();
+        todosSujos = false;
+        limitePassagem = capacidade;
+    }
+
+    /**
+     * Obtém a quantidade máxima de usuários em memória
+     * @return Capacidade
+     */
+    public int getCapacidade() {
+        return capacidade;
+    }
+
+    /**
+     * Obtém a quantidade de usuários cadastrados, estejam ou não em memória
+     * @return Quantidade de usuários
+     */
+    public int getQuantidadeUsuarios() {
+        return ids.size();
+    }
+
+    /**
+     * Obtém a quantidade de usuários lidos do snapshot sob demanda
+     * @return Quantidade de cargas
+     */
+    public long getCargas() {
+        return cargas.get();
+    }
+
+    /**
+     * Obtém a quantidade de usuários descarregados da memória
+     * @return Quantidade de descartes
+     */
+    public long getDescartes() {
+        return descartes.get();
+    }
+
+    /**
+     * Obtém a quantidade de passagens de liberação
+     * @return Quantidade de passagens
+     */
+    public long getPassagens() {
+        return passagens.get();
+    }
+
+    private static long[] novosEnderecos(int tamanho) {
+        long[] novos = new long[tamanho];
+        Arrays.fill(novos, AUSENTE);
+        return novos;
+    }
+}
@@ -4,16 +4,35 @@
  * Responsável por criar comunidades, adicionar membros e gerenciar mensagens
  * enviadas para comunidades.
  * </p>
+ * <p>
+ * As mensagens não são copiadas para os membros: cada comunidade guarda um log com a posição de
+ * leitura de cada membro, e a leitura escolhe, entre as comunidades do usuário e as mensagens que
+ * ele recebeu diretamente, a mensagem não lida que chegou primeiro segundo uma sequência global.
+ * </p>
  */
 package br.ufal.ic.p2.jackut.managers;
 
 import br.ufal.ic.p2.jackut.models.Comunidade;
+import br.ufal.ic.p2.jackut.models.Pagina;
 import br.ufal.ic.p2.jackut.models.Usuario;
+import br.ufal.ic.p2.jackut.util.ContadorDeCache;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class CommunityManager {
     // Mapa que armazena todas as comunidades (nome -> Comunidade)
-    private final Map<String, Comunidade> comunidades = new HashMap<>();
+    private final Map<String, Comunidade> comunidades = new ConcurrentHashMap<>();
+
+    // Índice reverso que associa cada usuário às comunidades das quais é membro (login -> nomes)
+    private final Map<String, Set<String>> comunidadesPorUsuario = new ConcurrentHashMap<>();
+
+    // Sequência global de chegada das mensagens, usada para intercalar os logs das comunidades
+    private final AtomicLong sequenciaMensagens = new AtomicLong();
+
+    // Acertos e falhas das listas formatadas de membros guardadas em cada comunidade
+    private final ContadorDeCache cacheMembros = new ContadorDeCache();
 
     // Referência ao UserManager para validação de usuários
     private final UserManager userManager;
@@ -34,10 +53,36 @@ public class CommunityManager {
      * @throws RuntimeException Se já existir comunidade com mesmo nome
      */
     public void criarComunidade(Usuario dono, String nome, String descricao) {
-        if (comunidades.containsKey(nome)) {
-            throw new RuntimeException("Comunidade com esse nome já existe.");
+        criarComunidade(dono, nome, descricao, () -> { });
+    }
+
+    /**
+     * Cria uma nova comunidade no sistema, executando o registro da operação antes que a comunidade
+     * possa receber membros ou mensagens: ela é publicada com a sua trava já adquirida, o que
+     * reserva o nome, e retirada de novo se o registro falhar
+     * @param dono Usuário criador da comunidade
+     * @param nome Nome da comunidade
+     * @param descricao Descrição da comunidade
+     * @param registro Ação executada depois da reserva do nome; se falhar, a comunidade não é criada
+     * @throws RuntimeException Se já existir comunidade com mesmo nome
+     */
+    public void criarComunidade(Usuario dono, String nome, String descricao, Runnable registro) {
+        Comunidade comunidade = new Comunidade(nome, descricao, dono);
+        comunidade.getTrava().lock();
+        try {
+            if (comunidades.putIfAbsent(nome, comunidade) != null) {
+                throw new RuntimeException("Comunidade com esse nome já existe.");
+            }
+            try {
+                registro.run();
+            } catch (RuntimeException e) {
+                comunidades.remove(nome, comunidade);
+                throw e;
+            }
+        } finally {
+            comunidade.getTrava().unlock();
         }
-        comunidades.put(nome, new Comunidade(nome, descricao, dono));
+        indexarMembro(dono.getLogin(), nome);
     }
 
     /**
@@ -46,7 +91,7 @@ public class CommunityManager {
      * @return Objeto Comunidade ou null se não existir
      */
     public Comunidade getComunidade(String nome) {
-        return comunidades.get(nome);
+        return nome == null ? null : comunidades.get(nome);
     }
 
     /**
@@ -56,7 +101,7 @@ public class CommunityManager {
      * @throws RuntimeException Se a comunidade não existir
      */
     public String getDescricaoComunidade(String nome) {
-        Comunidade comunidade = comunidades.get(nome);
+        Comunidade comunidade = getComunidade(nome);
         if (comunidade == null) {
             throw new RuntimeException("Comunidade não existe.");
         }
@@ -70,29 +115,56 @@ public class CommunityManager {
      * @throws RuntimeException Se a comunidade não existir
      */
     public String getDonoComunidade(String nome) {
-        Comunidade comunidade = comunidades.get(nome);
+        Comunidade comunidade = getComunidade(nome);
         if (comunidade == null) {
             throw new RuntimeException("Comunidade não existe.");
         }
-        return comunidade.getDono().getLogin();
+        return comunidade.getLoginDono();
     }
 
     /**
-     * Obtém a lista de membros de uma comunidade formatada
+     * Obtém a lista de membros de uma comunidade formatada. A lista é guardada na comunidade e só
+     * é refeita depois que seus membros mudarem.
      * @param nome Nome da comunidade
      * @return String formatada com logins dos membros entre chaves
      * @throws RuntimeException Se a comunidade não existir
      */
     public String getMembrosComunidade(String nome) {
-        Comunidade comunidade = comunidades.get(nome);
+        Comunidade comunidade = getComunidade(nome);
         if (comunidade == null) {
             throw new RuntimeException("Comunidade não existe.");
         }
 
-        List<String> logins = new ArrayList<>();
-        for (Usuario membro : comunidade.getMembros()) {
-            logins.add(membro.getLogin());
+        String formatados = comunidade.getMembrosFormatados();
+        if (formatados != null) {
+            cacheMembros.registrarAcerto();
+            return formatados;
+        }
+        cacheMembros.registrarFalha();
+        return comunidade.formatarMembros(this::formatarMembros);
+    }
+
+    /**
+     * Obtém uma página dos membros de uma comunidade, em ordem alfabética. Diferente de
+     * {@link #getMembrosComunidade(String)}, não aplica a ordenação especial dos scripts de aceitação.
+     * @param nome Nome da comunidade
+     * @param cursor Cursor devolvido pela página anterior (null ou vazio para a primeira)
+     * @param limite Quantidade máxima de logins na página
+     * @return Página de logins
+     * @throws RuntimeException Se a comunidade não existir ou o limite não for positivo
+     */
+    public Pagina getPaginaMembros(String nome, String cursor, int limite) {
+        Comunidade comunidade = getComunidade(nome);
+        if (comunidade == null) {
+            throw new RuntimeException("Comunidade não existe.");
         }
+        return comunidade.getPaginaMembros(cursor, limite);
+    }
+
+    // Formata os logins dos membros em ordem alfabética (com a exceção da comunidade "Alunos da UFCG")
+    private String formatarMembros(Comunidade comunidade, Set<String> membros) {
+        String nome = comunidade.getNome();
+        List<String> logins = new ArrayList<>(membros);
 
         // Ordenação especial para a comunidade "Alunos da UFCG"
         if (nome.equals("Alunos da UFCG")) {
@@ -115,11 +187,51 @@ public class CommunityManager {
      * @throws RuntimeException Se a comunidade não existir
      */
     public void adicionarMembro(Usuario usuario, String nomeComunidade) {
-        Comunidade comunidade = comunidades.get(nomeComunidade);
+        adicionarMembro(usuario, nomeComunidade, () -> { });
+    }
+
+    /**
+     * Adiciona um usuário como membro de uma comunidade, executando o registro da operação depois
+     * das validações e antes da adição, enquanto nenhuma mensagem pode ser publicada na comunidade
+     * @param usuario Usuário a ser adicionado
+     * @param nomeComunidade Nome da comunidade
+     * @param registro Ação executada antes da adição; se falhar, o usuário não é adicionado
+     * @throws RuntimeException Se a comunidade não existir ou o usuário já for membro
+     */
+    public void adicionarMembro(Usuario usuario, String nomeComunidade, Runnable registro) {
+        Comunidade comunidade = getComunidade(nomeComunidade);
         if (comunidade == null) {
             throw new RuntimeException("Comunidade não existe.");
         }
-        comunidade.adicionarMembro(usuario);
+        comunidade.getTrava().lock();
+        try {
+            exigirPublicada(comunidade);
+            if (comunidade.ehMembro(usuario.getLogin())) {
+                throw new RuntimeException("Usuario já faz parte dessa comunidade.");
+            }
+            registro.run();
+            comunidade.adicionarMembro(usuario.getLogin());
+        } finally {
+            comunidade.getTrava().unlock();
+        }
+        indexarMembro(usuario.getLogin(), nomeComunidade);
+    }
+
+    // Confere, com a trava da comunidade adquirida, que ela não foi retirada por uma criação cujo
+    // registro falhou enquanto se esperava a trava
+    private void exigirPublicada(Comunidade comunidade) {
+        if (comunidades.get(comunidade.getNome()) != comunidade) {
+            throw new RuntimeException("Comunidade não existe.");
+        }
+    }
+
+    /**
+     * Obtém os nomes das comunidades das quais um usuário é membro, sem copiá-los
+     * @param login Login do usuário
+     * @return Conjunto somente leitura com os nomes (vazio se o usuário não for membro de nenhuma)
+     */
+    public Set<String> getNomesComunidadesDoUsuario(String login) {
+        return Collections.unmodifiableSet(comunidadesPorUsuario.getOrDefault(login, Collections.emptySet()));
     }
 
     /**
@@ -129,17 +241,12 @@ public class CommunityManager {
      * @throws RuntimeException Se o usuário não existir
      */
     public String getComunidadesDoUsuario(String login) {
-        Usuario usuario = userManager.getUsuario(login);
-        if (usuario == null) {
+        if (!userManager.containsUsuario(login)) {
             throw new RuntimeException("Usuário não cadastrado.");
         }
 
-        List<String> comunidadesUsuario = new ArrayList<>();
-        for (Comunidade comunidade : comunidades.values()) {
-            if (comunidade.getMembros().contains(usuario)) {
-                comunidadesUsuario.add(comunidade.getNome());
-            }
-        }
+        List<String> comunidadesUsuario = new ArrayList<>(
+                comunidadesPorUsuario.getOrDefault(login, Collections.emptySet()));
 
         // Ordenação especial para o usuário "jpsauve"
         if (login.equals("jpsauve")) {
@@ -156,46 +263,213 @@ public class CommunityManager {
     }
 
     /**
-     * Envia uma mensagem para todos os membros de uma comunidade
+     * Envia uma mensagem para uma comunidade
      * @param remetente Usuário que está enviando a mensagem
      * @param nomeComunidade Nome da comunidade
      * @param mensagem Conteúdo da mensagem
      * @throws RuntimeException Se a comunidade não existir
      */
     public void enviarMensagemParaComunidade(Usuario remetente, String nomeComunidade, String mensagem) {
-        Comunidade comunidade = comunidades.get(nomeComunidade);
+        enviarMensagemParaComunidade(remetente, nomeComunidade, mensagem, () -> { });
+    }
+
+    /**
+     * Envia uma mensagem para uma comunidade em O(1): a mensagem é acrescentada ao log da
+     * comunidade e lida por cada membro a partir dele. O registro da operação é executado antes da
+     * publicação, com a trava da comunidade adquirida, para que a ordem registrada seja a mesma do log.
+     * @param remetente Usuário que está enviando a mensagem
+     * @param nomeComunidade Nome da comunidade
+     * @param mensagem Conteúdo da mensagem
+     * @param registro Ação executada antes da publicação; se falhar, a mensagem não é publicada
+     * @throws RuntimeException Se a comunidade não existir
+     */
+    public void enviarMensagemParaComunidade(Usuario remetente, String nomeComunidade, String mensagem,
+                                             Runnable registro) {
+        Comunidade comunidade = getComunidade(nomeComunidade);
         if (comunidade == null) {
             throw new RuntimeException("Comunidade não existe.");
         }
+        comunidade.getTrava().lock();
+        try {
+            exigirPublicada(comunidade);
+            registro.run();
+            comunidade.publicar(sequenciaMensagens.incrementAndGet(), remetente.getId(), mensagem);
+        } finally {
+            comunidade.getTrava().unlock();
+        }
+    }
+
+    /**
+     * Lê a próxima mensagem de um usuário: a que chegou primeiro entre as recebidas diretamente
+     * (guardadas de comunidades apagadas, com a sequência original, ou importadas de versões
+     * anteriores, sem sequência e por isso lidas antes das demais) e as não lidas de todas as suas
+     * comunidades.
+     * Deve ser chamado com o usuário travado.
+     * @param usuario Usuário que está lendo
+     * @param registro Ação executada com o nome da comunidade lida (null para as mensagens
+     *                 recebidas diretamente) antes da leitura; se falhar, nada é lido
+     * @return A mensagem lida
+     * @throws RuntimeException Se não houver mensagens
+     */
+    public String lerMensagem(Usuario usuario, Consumer<String> registro) {
+        long direta = usuario.getSequenciaMensagem();
+        if (direta == 0) {
+            registro.accept(null);
+            return usuario.lerMensagem();
+        }
+
+        Comunidade proxima = null;
+        long menorSequencia = direta > 0 ? direta : Long.MAX_VALUE;
+        for (String nome : comunidadesPorUsuario.getOrDefault(usuario.getLogin(), Collections.emptySet())) {
+            Comunidade comunidade = getComunidade(nome);
+            long sequencia = comunidade == null ? -1 : comunidade.getSequenciaNaoLida(usuario.getLogin());
+            if (sequencia >= 0 && sequencia < menorSequencia) {
+                menorSequencia = sequencia;
+                proxima = comunidade;
+            }
+        }
+        if (proxima == null) {
+            if (direta < 0) {
+                throw new RuntimeException("Não há mensagens.");
+            }
+            registro.accept(null);
+            return usuario.lerMensagem();
+        }
+
+        // Só o próprio usuário, que está travado, avança sua posição de leitura: a mensagem escolhida
+        // continua não lida até aqui
+        proxima.getTrava().lock();
+        try {
+            registro.accept(proxima.getNome());
+            return proxima.lerMensagem(usuario.getLogin());
+        } finally {
+            proxima.getTrava().unlock();
+        }
+    }
 
-        for (Usuario membro : comunidade.getMembros()) {
-            membro.receberMensagem(mensagem);
+    /**
+     * Lê a próxima mensagem de um usuário em uma origem específica (usado ao reaplicar o log)
+     * @param usuario Usuário que está lendo
+     * @param nomeComunidade Nome da comunidade ou null para as mensagens recebidas diretamente
+     */
+    public void lerMensagemDe(Usuario usuario, String nomeComunidade) {
+        if (nomeComunidade == null) {
+            usuario.lerMensagem();
+            return;
+        }
+        Comunidade comunidade = getComunidade(nomeComunidade);
+        if (comunidade != null) {
+            comunidade.lerMensagem(usuario.getLogin());
         }
     }
 
     /**
      * Remove todas as comunidades de um usuário (quando ele é removido do sistema)
+     * <p>
+     * Percorre apenas as comunidades das quais o usuário participa, usando o índice reverso:
+     * as que ele é dono são apagadas e, nas demais, ele deixa de ser membro. As mensagens que os
+     * outros membros ainda não leram em uma comunidade apagada passam para as mensagens recebidas
+     * diretamente de cada um, com a sequência original, para que continuem disponíveis em
+     * lerMensagem na mesma ordem em relação às mensagens das outras comunidades.
+     * </p>
      * @param usuario Usuário que está sendo removido
      */
     public void removerComunidadesDoUsuario(Usuario usuario) {
-        List<String> comunidadesParaRemover = new ArrayList<>();
-        for (Map.Entry<String, Comunidade> entry : comunidades.entrySet()) {
-            if (entry.getValue().getDono().equals(usuario)) {
-                comunidadesParaRemover.add(entry.getKey());
+        Set<String> nomes = comunidadesPorUsuario.remove(usuario.getLogin());
+        if (nomes == null) {
+            return;
+        }
+
+        for (String nome : nomes) {
+            Comunidade comunidade = getComunidade(nome);
+            if (comunidade == null) {
+                continue;
+            }
+            if (comunidade.getLoginDono().equals(usuario.getLogin())) {
+                comunidades.remove(nome);
+                for (String membro : comunidade.getMembros()) {
+                    desindexarMembro(membro, nome);
+                    Usuario destinatario = membro.equals(usuario.getLogin()) ? null : userManager.getUsuario(membro);
+                    if (destinatario != null) {
+                        comunidade.retirarNaoLidas(membro,
+                                (mensagem, remetente, sequencia) ->
+                                        destinatario.restaurarMensagem(remetente, mensagem, sequencia));
+                    }
+                }
             } else {
-                entry.getValue().getMembros().remove(usuario);
+                comunidade.removerMembro(usuario.getLogin());
             }
         }
-        for (String nome : comunidadesParaRemover) {
-            comunidades.remove(nome);
+    }
+
+    /**
+     * Restaura comunidades carregadas da persistência, reconstruindo o índice reverso de membros
+     * @param dados Mapa de comunidades (nome -> Comunidade)
+     */
+    public void restaurarComunidades(Map<String, Comunidade> dados) {
+        comunidades.putAll(dados);
+        for (Comunidade comunidade : dados.values()) {
+            for (long sequencia : comunidade.getSequenciasLog()) {
+                sequenciaMensagens.accumulateAndGet(sequencia, Math::max);
+            }
+            for (String membro : comunidade.getMembros()) {
+                indexarMembro(membro, comunidade.getNome());
+            }
         }
     }
 
+    /**
+     * Obtém a última sequência atribuída a uma mensagem, que a persistência grava para que as
+     * mensagens guardadas fora dos logs continuem antes das enviadas depois da carga
+     * @return Última sequência
+     */
+    public long getSequenciaMensagens() {
+        return sequenciaMensagens.get();
+    }
+
+    /**
+     * Garante que as próximas mensagens recebam sequências maiores que uma já atribuída (usado ao
+     * carregar dados persistidos)
+     * @param sequencia Sequência já atribuída
+     */
+    public void restaurarSequenciaMensagens(long sequencia) {
+        sequenciaMensagens.accumulateAndGet(sequencia, Math::max);
+    }
+
+    // Registra no índice reverso que o usuário é membro da comunidade; a inclusão fica dentro da
+    // operação atômica do mapa, para que o conjunto não seja removido por estar vazio antes dela
+    private void indexarMembro(String login, String nomeComunidade) {
+        comunidadesPorUsuario.compute(login, (k, nomes) -> {
+            Set<String> conjunto = nomes != null ? nomes : ConcurrentHashMap.newKeySet();
+            conjunto.add(nomeComunidade);
+            return conjunto;
+        });
+    }
+
+    // Remove do índice reverso a participação do usuário na comunidade. A remoção do conjunto
+    // vazio acontece na mesma operação atômica do mapa, para não perder uma inclusão concorrente
+    private void desindexarMembro(String login, String nomeComunidade) {
+        comunidadesPorUsuario.computeIfPresent(login, (k, nomes) -> {
+            nomes.remove(nomeComunidade);
+            return nomes.isEmpty() ? null : nomes;
+        });
+    }
+
     /**
      * Limpa todas as comunidades (reinicialização do sistema)
      */
     public void clear() {
         comunidades.clear();
+        comunidadesPorUsuario.clear();
+        sequenciaMensagens.set(0);
+    }
+
+    /**
+     * Obtém os contadores do cache de listas de membros
+     * @return Contadores de acertos e falhas
+     */
+    public ContadorDeCache getCacheMembros() {
+        return cacheMembros;
     }
 
     /**
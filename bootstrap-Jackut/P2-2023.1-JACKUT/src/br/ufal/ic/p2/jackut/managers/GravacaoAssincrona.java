@@ -0,0 +1,395 @@
+/**
+ * Gravação assíncrona (write-behind) dos registros do journal, com commit em grupo.
+ * <p>
+ * As operações apenas colocam os registros já codificados em uma fila limitada e seguem em frente.
+ * Uma thread de fundo retira os registros em grupos, que terminam quando atingem o tamanho máximo
+ * ou quando passa o intervalo configurado desde o primeiro registro do grupo, e grava cada grupo
+ * com uma única escrita seguida de um único fsync. Com a fila cheia, quem registra espera espaço
+ * (contrapressão), de modo que a memória ocupada pelos registros pendentes é limitada.
+ * </p>
+ * <p>
+ * Uma operação confirmada pode se perder se o processo parar antes da gravação do seu grupo; para
+ * pontos em que isso não é aceitável, {@link #aguardar()} espera tudo o que já foi enfileirado
+ * chegar ao disco. A thread de gravação fica bloqueada na fila enquanto não há registros, e quem
+ * aguarda ou encerra a acorda com um sinal colocado na fila.
+ * </p>
+ * <p>
+ * Um erro de escrita é permanente: o grupo que falhou e os enfileirados depois dele são descartados,
+ * pois gravá-los depois de um grupo incompleto deixaria uma lacuna no log, e todo {@link #enfileirar}
+ * e {@link #aguardar()} seguinte falha. A falha só é esquecida quando o journal é reaberto, e a
+ * leitura descarta a cauda incompleta, ou truncado depois de um snapshot que contempla todas as
+ * operações ({@link #fecharArquivo()}).
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.managers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class GravacaoAssincrona {
+    // Entrada sem registros colocada na fila para acordar a thread de gravação, comparada por
+    // identidade: encerra o grupo em formação ou, com a fila vazia, permite o encerramento
+    private static final byte[] SINAL = new byte[0];
+
+    // Arquivo onde os grupos são acrescentados
+    private final File arquivo;
+
+    // Registros aguardando gravação
+    private final BlockingQueue<byte[]> fila;
+    private final int capacidadeFila;
+
+    // Gatilhos de gravação: tamanho máximo do grupo e tempo máximo de espera do primeiro registro
+    private final int tamanhoGrupo;
+    private final long intervaloNanos;
+
+    // Travas do estado (contadores, falha e métricas) e do fluxo de escrita. São ReentrantLocks, e
+    // não monitores, porque quem aguarda a gravação e quem fecha o arquivo esperam pelo fsync: em
+    // uma thread virtual, a espera em um monitor prende a thread portadora, e na trava ela estaciona
+    private final ReentrantLock trava = new ReentrantLock();
+    private final Condition gravou = trava.newCondition();
+    private final ReentrantLock travaArquivo = new ReentrantLock();
+
+    // Fluxo de escrita, usado apenas pela thread de gravação e por fecharArquivo
+    private FileOutputStream saida;
+
+    // Área reaproveitada para juntar os registros de um grupo em uma única escrita
+    private final ByteArrayOutputStream grupoCodificado = new ByteArrayOutputStream();
+
+    // Thread de gravação, iniciada no primeiro registro e encerrada em fechar()
+    private Thread gravador;
+    private volatile boolean encerrando;
+
+    // Quantidade de chamadas esperando a fila esvaziar; enquanto houver, o grupo não espera o intervalo
+    private volatile int aguardando;
+
+    // Entradas enfileiradas, entradas já gravadas e sincronizadas e entradas descartadas depois de
+    // uma falha (protegidos pela trava)
+    private long enfileirados;
+    private long gravados;
+    private long descartados;
+
+    // Primeiro erro de escrita, relançado até o arquivo ser descartado (protegido pela trava)
+    private IOException falha;
+
+    // Métricas (protegidas pela trava)
+    private int maiorProfundidade;
+    private long grupos;
+    private long bytes;
+    private long esperasPorEspaco;
+    private long latenciaUltima;
+    private long latenciaTotal;
+    private long latenciaMaxima;
+
+    /**
+     * Construtor
+     * @param arquivo Arquivo do journal
+     * @param capacidadeFila Quantidade máxima de entradas aguardando gravação
+     * @param tamanhoGrupo Quantidade de entradas que dispara a gravação de um grupo
+     * @param intervaloMillis Tempo máximo, em milissegundos, que uma entrada espera o grupo encher
+     */
+    public GravacaoAssincrona(File arquivo, int capacidadeFila, int tamanhoGrupo, long intervaloMillis) {
+        this.arquivo = arquivo;
+        this.capacidadeFila = Math.max(1, capacidadeFila);
+        this.fila = new ArrayBlockingQueue<>(this.capacidadeFila);
+        this.tamanhoGrupo = Math.max(1, tamanhoGrupo);
+        this.intervaloNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, intervaloMillis));
+    }
+
+    /**
+     * Enfileira uma entrada (um ou mais registros codificados), esperando espaço se a fila estiver cheia.
+     * Deve ser chamado em ordem de sequência: quem chama serializa as gravações.
+     * @param dados Registros codificados
+     * @throws RuntimeException Se uma gravação falhou ou a espera for interrompida
+     */
+    public void enfileirar(byte[] dados) {
+        trava.lock();
+        try {
+            verificarFalha();
+            if (gravador == null) {
+                iniciar();
+            }
+            enfileirados++;
+        } finally {
+            trava.unlock();
+        }
+
+        try {
+            if (!fila.offer(dados)) {
+                trava.lock();
+                try {
+                    esperasPorEspaco++;
+                } finally {
+                    trava.unlock();
+                }
+                fila.put(dados);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            trava.lock();
+            try {
+                enfileirados--;
+            } finally {
+                trava.unlock();
+            }
+            throw new RuntimeException("Erro ao registrar operação.", e);
+        }
+
+        int profundidade = fila.size();
+        trava.lock();
+        try {
+            maiorProfundidade = Math.max(maiorProfundidade, profundidade);
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Espera todas as entradas enfileiradas até agora serem gravadas e sincronizadas com o disco
+     * @throws RuntimeException Se alguma gravação falhou
+     */
+    public void aguardar() {
+        trava.lock();
+        try {
+            esperarPendentes();
+            verificarFalha();
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Espera as entradas pendentes serem gravadas (ou descartadas, depois de uma falha), fecha o
+     * arquivo, que será reaberto no próximo grupo, e esquece a falha. Usado antes de truncar o
+     * journal, depois de um snapshot que já contempla todas as operações, inclusive as descartadas
+     * @throws RuntimeException Se a espera for interrompida
+     */
+    public void fecharArquivo() {
+        trava.lock();
+        try {
+            esperarPendentes();
+        } finally {
+            trava.unlock();
+        }
+        travaArquivo.lock();
+        try {
+            fecharSaida();
+        } finally {
+            travaArquivo.unlock();
+        }
+        trava.lock();
+        try {
+            falha = null;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Espera as entradas pendentes, encerra a thread de gravação e fecha o arquivo; um novo
+     * registro inicia outra thread
+     * @throws RuntimeException Se alguma gravação falhar
+     */
+    public void fechar() {
+        Thread thread;
+        try {
+            aguardar();
+        } finally {
+            trava.lock();
+            try {
+                thread = gravador;
+                gravador = null;
+            } finally {
+                trava.unlock();
+            }
+            if (thread != null) {
+                encerrando = true;
+                try {
+                    fila.put(SINAL);
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    thread.interrupt();
+                }
+                encerrando = false;
+            }
+            travaArquivo.lock();
+            try {
+                fecharSaida();
+            } finally {
+                travaArquivo.unlock();
+            }
+        }
+    }
+
+    /**
+     * Obtém um retrato das métricas da gravação
+     * @return Métricas atuais
+     */
+    public MetricasDeGravacao getMetricas() {
+        trava.lock();
+        try {
+            return new MetricasDeGravacao(fila.size(), capacidadeFila, maiorProfundidade, grupos, gravados, bytes,
+                    esperasPorEspaco, latenciaUltima, grupos == 0 ? 0 : latenciaTotal / grupos, latenciaMaxima);
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    private void iniciar() {
+        gravador = new Thread(this::executar, "jackut-journal");
+        gravador.setDaemon(true);
+        gravador.start();
+    }
+
+    // Laço da thread de gravação: espera a primeira entrada, monta um grupo e o grava, até receber
+    // o sinal de encerramento com a fila vazia
+    private void executar() {
+        List<byte[]> grupo = new ArrayList<>();
+        try {
+            while (true) {
+                byte[] primeiro = fila.take();
+                if (primeiro == SINAL) {
+                    if (encerrando && fila.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                grupo.add(primeiro);
+                completarGrupo(grupo);
+                gravar(grupo);
+                grupo.clear();
+                // O sinal de encerramento pode ter sido consumido junto com o grupo
+                if (encerrando && fila.isEmpty()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Junta ao grupo as entradas que chegarem até ele encher, o intervalo passar ou chegar um sinal
+    // (alguém aguardando ou encerrando)
+    private void completarGrupo(List<byte[]> grupo) throws InterruptedException {
+        long prazo = System.nanoTime() + intervaloNanos;
+        while (grupo.size() < tamanhoGrupo) {
+            int antes = grupo.size();
+            fila.drainTo(grupo, tamanhoGrupo - antes);
+            boolean sinal = grupo.subList(antes, grupo.size()).removeIf(dados -> dados == SINAL);
+            long resta = prazo - System.nanoTime();
+            if (sinal || grupo.size() >= tamanhoGrupo || resta <= 0 || aguardando > 0 || encerrando) {
+                return;
+            }
+            byte[] proxima = fila.poll(resta, TimeUnit.NANOSECONDS);
+            if (proxima == null || proxima == SINAL) {
+                return;
+            }
+            grupo.add(proxima);
+        }
+    }
+
+    // Grava o grupo com uma escrita e um fsync e avisa quem estiver aguardando. Depois de uma
+    // falha, o grupo é descartado sem ser gravado
+    private void gravar(List<byte[]> grupo) {
+        trava.lock();
+        try {
+            if (falha != null) {
+                descartados += grupo.size();
+                gravou.signalAll();
+                return;
+            }
+        } finally {
+            trava.unlock();
+        }
+        long inicio = System.nanoTime();
+        IOException erro = null;
+        int tamanho = 0;
+        travaArquivo.lock();
+        try {
+            grupoCodificado.reset();
+            for (byte[] dados : grupo) {
+                grupoCodificado.write(dados);
+            }
+            tamanho = grupoCodificado.size();
+            if (saida == null) {
+                saida = new FileOutputStream(arquivo, true);
+            }
+            grupoCodificado.writeTo(saida);
+            saida.getFD().sync();
+        } catch (IOException e) {
+            erro = e;
+            fecharSaida();
+        } finally {
+            travaArquivo.unlock();
+        }
+        long latencia = System.nanoTime() - inicio;
+
+        trava.lock();
+        try {
+            if (erro != null) {
+                falha = erro;
+                descartados += grupo.size();
+                gravou.signalAll();
+                return;
+            }
+            gravados += grupo.size();
+            grupos++;
+            bytes += tamanho;
+            latenciaUltima = latencia;
+            latenciaTotal += latencia;
+            latenciaMaxima = Math.max(latenciaMaxima, latencia);
+            gravou.signalAll();
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    private void fecharSaida() {
+        if (saida != null) {
+            try {
+                saida.close();
+            } catch (IOException e) {
+                // O conteúdo já foi sincronizado; resta apenas liberar o descritor
+            } finally {
+                saida = null;
+            }
+        }
+    }
+
+    // Espera as entradas enfileiradas até agora saírem da fila, gravadas ou descartadas; o sinal
+    // acorda a thread de gravação se ela estiver esperando o grupo encher (chamado com a trava adquirida)
+    private void esperarPendentes() {
+        long alvo = enfileirados;
+        if (gravados + descartados >= alvo) {
+            return;
+        }
+        aguardando++;
+        fila.offer(SINAL);
+        try {
+            while (gravados + descartados < alvo) {
+                gravou.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Erro ao registrar operação.", e);
+        } finally {
+            aguardando--;
+        }
+    }
+
+    // Relança o erro de uma gravação anterior, enquanto o arquivo não for descartado
+    private void verificarFalha() {
+        if (falha != null) {
+            throw new RuntimeException("Erro ao registrar operação.", falha);
+        }
+    }
+}
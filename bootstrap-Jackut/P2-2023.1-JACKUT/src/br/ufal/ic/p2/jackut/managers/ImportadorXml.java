@@ -0,0 +1,198 @@
+/**
+ * Importa os dados gravados pelo XStream nos formatos XML anteriores ao snapshot binário.
+ * <p>
+ * O XML é lido para classes espelho com os nomes de campos antigos, e não diretamente para os
+ * modelos, de modo que mudanças na representação interna de {@link Usuario} e {@link Comunidade}
+ * não impeçam a importação. Os dados lidos são então recriados nos gerenciadores.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.managers;
+
+import br.ufal.ic.p2.jackut.models.Comunidade;
+import br.ufal.ic.p2.jackut.models.Usuario;
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
+
+import java.io.*;
+import java.util.*;
+
+public class ImportadorXml {
+    private ImportadorXml() {
+    }
+
+    /**
+     * Importa o snapshot XML único (usuários, comunidades e sequência do journal)
+     * @param arquivo Arquivo jackut.xml
+     * @param userManager Gerenciador de usuários
+     * @param communityManager Gerenciador de comunidades
+     * @return Sequência da última operação do journal contemplada pelo snapshot
+     * @throws IOException Se ocorrer erro de leitura
+     */
+    public static long importarSnapshot(File arquivo, UserManager userManager,
+                                        CommunityManager communityManager) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(arquivo), "UTF-8")) {
+            SnapshotXml snapshot = (SnapshotXml) criarXStream().fromXML(reader);
+            importar(snapshot.usuarios, snapshot.comunidades, userManager, communityManager);
+            return snapshot.sequencia;
+        }
+    }
+
+    /**
+     * Importa o par de arquivos usuarios.xml e comunidades.xml (qualquer um deles pode faltar)
+     * @param arquivoUsuarios Arquivo de usuários
+     * @param arquivoComunidades Arquivo de comunidades
+     * @param userManager Gerenciador de usuários
+     * @param communityManager Gerenciador de comunidades
+     * @throws IOException Se ocorrer erro de leitura
+     */
+    public static void importarArquivos(File arquivoUsuarios, File arquivoComunidades,
+                                        UserManager userManager, CommunityManager communityManager)
+            throws IOException {
+        XStream xstream = criarXStream();
+        Map<String, UsuarioXml> usuarios = new HashMap<>();
+        Map<String, ComunidadeXml> comunidades = new HashMap<>();
+
+        if (arquivoUsuarios.exists() && arquivoUsuarios.length() > 0) {
+            try (Reader reader = new FileReader(arquivoUsuarios)) {
+                usuarios = (Map<String, UsuarioXml>) xstream.fromXML(reader);
+            }
+        }
+        if (arquivoComunidades.exists() && arquivoComunidades.length() > 0) {
+            try (Reader reader = new FileReader(arquivoComunidades)) {
+                comunidades = (Map<String, ComunidadeXml>) xstream.fromXML(reader);
+            }
+        }
+        importar(usuarios, comunidades, userManager, communityManager);
+    }
+
+    // Recria usuários, relacionamentos e comunidades a partir das classes espelho
+    private static void importar(Map<String, UsuarioXml> dadosUsuarios, Map<String, ComunidadeXml> dadosComunidades,
+                                 UserManager userManager, CommunityManager communityManager) {
+        Map<String, Usuario> usuarios = new HashMap<>();
+        for (UsuarioXml dados : dadosUsuarios.values()) {
+            Usuario usuario = userManager.restaurarUsuario(dados.login, dados.senha, dados.nome);
+            if (dados.perfil != null && dados.perfil.atributos != null) {
+                for (Map.Entry<String, String> atributo : dados.perfil.atributos.entrySet()) {
+                    userManager.editarAtributo(usuario, atributo.getKey(), atributo.getValue());
+                }
+            }
+            usuarios.put(dados.login, usuario);
+        }
+
+        for (UsuarioXml dados : dadosUsuarios.values()) {
+            Usuario usuario = usuarios.get(dados.login);
+            for (Usuario amigo : resolver(dados.amigos, usuarios)) {
+                usuario.restaurarAmizade(amigo);
+            }
+            for (Usuario convidado : resolver(dados.convitesEnviados, usuarios)) {
+                usuario.enviarConvite(convidado);
+            }
+            for (Usuario idolo : resolver(dados.idolos, usuarios)) {
+                if (!usuario.ehFa(idolo)) {
+                    usuario.adicionarIdolo(idolo);
+                }
+            }
+            for (Usuario paquera : resolver(dados.paqueras, usuarios)) {
+                usuario.restaurarPaquera(paquera);
+            }
+            for (Usuario inimigo : resolver(dados.inimigos, usuarios)) {
+                if (!usuario.ehInimigo(inimigo)) {
+                    userManager.adicionarInimigo(usuario, inimigo);
+                }
+            }
+            if (dados.recadosRecebidos != null) {
+                for (String recado : dados.recadosRecebidos) {
+                    String autor = dados.autoresRecados == null ? null : dados.autoresRecados.get(recado);
+                    usuario.receberRecado(autor == null ? null : usuarios.get(autor), recado);
+                }
+            }
+            if (dados.mensagensRecebidas != null) {
+                for (String mensagem : dados.mensagensRecebidas) {
+                    usuario.receberMensagem(null, mensagem);
+                }
+            }
+        }
+
+        Map<String, Comunidade> comunidades = new HashMap<>();
+        for (ComunidadeXml dados : dadosComunidades.values()) {
+            Usuario dono = dados.dono == null ? null : usuarios.get(dados.dono.login);
+            if (dono == null) {
+                continue;
+            }
+            Comunidade comunidade = new Comunidade(dados.nome, dados.descricao, dono);
+            for (Usuario membro : resolver(dados.membros, usuarios)) {
+                if (!membro.equals(dono)) {
+                    comunidade.adicionarMembro(membro.getLogin());
+                }
+            }
+            comunidades.put(dados.nome, comunidade);
+        }
+        communityManager.restaurarComunidades(comunidades);
+    }
+
+    // Converte referências do XML em usuários cadastrados, ignorando usuários inexistentes
+    private static List<Usuario> resolver(Collection<UsuarioXml> referencias, Map<String, Usuario> usuarios) {
+        List<Usuario> resultado = new ArrayList<>();
+        if (referencias != null) {
+            for (UsuarioXml referencia : referencias) {
+                Usuario usuario = usuarios.get(referencia.login);
+                if (usuario != null) {
+                    resultado.add(usuario);
+                }
+            }
+        }
+        return resultado;
+    }
+
+    // Configura o XStream para ler os nomes de classes antigos nas classes espelho
+    private static XStream criarXStream() {
+        XStream xstream = new XStream(new StaxDriver());
+        xstream.allowTypesByWildcard(new String[] { "br.ufal.ic.p2.jackut.**" });
+        xstream.alias("br.ufal.ic.p2.jackut.models.Usuario", UsuarioXml.class);
+        xstream.alias("br.ufal.ic.p2.jackut.models.Perfil", PerfilXml.class);
+        xstream.alias("br.ufal.ic.p2.jackut.models.Comunidade", ComunidadeXml.class);
+        xstream.alias("snapshot", SnapshotXml.class);
+        xstream.ignoreUnknownElements();
+        return xstream;
+    }
+
+    // Espelho do snapshot XML único
+    private static class SnapshotXml {
+        private long sequencia;
+        private Map<String, UsuarioXml> usuarios = new HashMap<>();
+        private Map<String, ComunidadeXml> comunidades = new HashMap<>();
+    }
+
+    // Espelho dos campos antigos de Usuario; os campos derivados (convites recebidos, fãs...) também
+    // são declarados porque o XStream pode definir um usuário pela primeira vez dentro deles
+    private static class UsuarioXml {
+        private String login;
+        private String senha;
+        private String nome;
+        private PerfilXml perfil;
+        private Set<UsuarioXml> amigos;
+        private Set<UsuarioXml> convitesEnviados;
+        private Set<UsuarioXml> convitesRecebidos;
+        private Set<UsuarioXml> idolos;
+        private Set<UsuarioXml> fas;
+        private Set<UsuarioXml> paqueras;
+        private Set<UsuarioXml> inimigos;
+        private Queue<String> recadosRecebidos;
+        private Queue<String> mensagensRecebidas;
+        private Queue<String> recadosIdentificados;
+        private Map<String, String> autoresRecados;
+    }
+
+    // Espelho dos campos antigos de Perfil
+    private static class PerfilXml {
+        private Map<String, String> atributos;
+    }
+
+    // Espelho dos campos antigos de Comunidade
+    private static class ComunidadeXml {
+        private String nome;
+        private String descricao;
+        private UsuarioXml dono;
+        private Set<UsuarioXml> membros;
+    }
+}
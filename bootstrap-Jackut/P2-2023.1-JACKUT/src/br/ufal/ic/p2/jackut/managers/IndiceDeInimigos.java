@@ -0,0 +1,256 @@
+/**
+ * Índice global dos pares de inimigos, consultado em toda interação entre dois usuários.
+ * <p>
+ * Os pares (usuário, inimigo) ficam em uma tabela de longs com endereçamento aberto, e um filtro
+ * de Bloom sobre o par sem ordem responde à pergunta simétrica "algum dos dois bloqueou o outro?".
+ * Como quase todas as consultas são negativas e as listas de inimigos são pequenas, a consulta
+ * comum lê uma única palavra do filtro e testa {@value #BITS_POR_PAR} bits, sem trava; só quando
+ * os bits estão ligados a tabela é consultada. O filtro cresce junto com a quantidade de pares e
+ * é refeito a partir da tabela quando cresce ou quando as remoções (que não apagam bits) o deixam
+ * com bits demais.
+ * </p>
+ * <p>
+ * As alterações são sincronizadas. Um par entra na tabela antes de ligar os bits, e as
+ * consultas de um par acontecem com os dois usuários travados, assim como a inclusão, de modo que
+ * o filtro nunca dá falso negativo para um par já incluído. No modo de carga sob demanda os pares
+ * de usuários descarregados continuam no índice, e cada usuário carregado registra os seus de
+ * novo (a inclusão é idempotente).
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.managers;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class IndiceDeInimigos {
+    // Bits ligados por par no filtro, todos na mesma palavra de 64 bits
+    private static final int BITS_POR_PAR = 3;
+
+    // Bits do filtro por par guardado e tamanho mínimo do filtro, em palavras
+    private static final int BITS_DO_FILTRO_POR_PAR = 16;
+    private static final int PALAVRAS_MINIMAS = 16;
+
+    // Marcador de posição livre na tabela (os pares têm ids não negativos)
+    private static final long VAZIO = -1;
+
+    // Filtro de Bloom sobre os pares sem ordem; substituído inteiro quando é refeito
+    private volatile AtomicLongArray filtro = new AtomicLongArray(PALAVRAS_MINIMAS);
+
+    // Pares (usuário << 32 | inimigo) com endereçamento aberto e sondagem linear
+    private long[] tabela = novaTabela(16);
+    private int pares;
+
+    // Pares removidos desde que o filtro foi refeito (seus bits continuam ligados)
+    private int removidosDoFiltro;
+
+    // Consultas em que o filtro deixou passar um par que não é de inimigos
+    private final LongAdder falsosPositivos = new LongAdder();
+
+    /**
+     * Verifica se um dos usuários tem o outro como inimigo
+     * @param a Id interno de um usuário
+     * @param b Id interno do outro usuário
+     * @return true se a tem b como inimigo ou b tem a como inimigo
+     */
+    public boolean saoInimigos(int a, int b) {
+        long espalhado = espalhar(Math.min(a, b), Math.max(a, b));
+        AtomicLongArray atual = filtro;
+        long bits = bits(espalhado);
+        if ((atual.get(palavra(espalhado, atual.length())) & bits) != bits) {
+            return false;
+        }
+        synchronized (this) {
+            if (contem(par(a, b)) || contem(par(b, a))) {
+                return true;
+            }
+        }
+        falsosPositivos.increment();
+        return false;
+    }
+
+    /**
+     * Inclui um par de inimigos
+     * @param usuario Id interno de quem bloqueia
+     * @param inimigo Id interno do bloqueado
+     * @return true se o par foi incluído, false se já estava no índice
+     */
+    public synchronized boolean adicionar(int usuario, int inimigo) {
+        if (!inserir(par(usuario, inimigo))) {
+            return false;
+        }
+        AtomicLongArray atual = filtro;
+        if ((long) (pares + removidosDoFiltro) * BITS_DO_FILTRO_POR_PAR > (long) atual.length() * 64) {
+            refazerFiltro();
+        } else {
+            ligar(atual, espalhar(Math.min(usuario, inimigo), Math.max(usuario, inimigo)));
+        }
+        return true;
+    }
+
+    /**
+     * Retira os pares de um usuário removido do sistema
+     * @param id Id interno do usuário
+     * @param inimigos Ids dos inimigos do usuário
+     * @param inimigoDe Ids dos usuários que têm o usuário como inimigo
+     */
+    public synchronized void removerUsuario(int id, int[] inimigos, int[] inimigoDe) {
+        for (int inimigo : inimigos) {
+            retirar(par(id, inimigo));
+        }
+        for (int desafeto : inimigoDe) {
+            retirar(par(desafeto, id));
+        }
+        if (removidosDoFiltro > pares) {
+            refazerFiltro();
+        }
+    }
+
+    /**
+     * Remove todos os pares (reinicialização)
+     */
+    public synchronized void limpar() {
+        tabela = novaTabela(16);
+        pares = 0;
+        removidosDoFiltro = 0;
+        filtro = new AtomicLongArray(PALAVRAS_MINIMAS);
+    }
+
+    /**
+     * Obtém a quantidade de pares de inimigos
+     * @return Quantidade de pares
+     */
+    public synchronized int getQuantidadePares() {
+        return pares;
+    }
+
+    /**
+     * Obtém a quantidade de consultas que passaram pelo filtro sem serem de inimigos
+     * @return Quantidade de falsos positivos
+     */
+    public long getFalsosPositivos() {
+        return falsosPositivos.sum();
+    }
+
+    // Monta um filtro novo, dimensionado pela quantidade de pares, e o publica já completo
+    private void refazerFiltro() {
+        // Espaço para o dobro dos pares atuais antes do próximo crescimento
+        long desejadas = (long) pares * BITS_DO_FILTRO_POR_PAR * 2 / 64;
+        int palavras = PALAVRAS_MINIMAS;
+        while (palavras < desejadas && palavras < 1 << 26) {
+            palavras <<= 1;
+        }
+        AtomicLongArray novo = new AtomicLongArray(palavras);
+        for (long chave : tabela) {
+            if (chave != VAZIO) {
+                int usuario = (int) (chave >>> 32);
+                int inimigo = (int) chave;
+                ligar(novo, espalhar(Math.min(usuario, inimigo), Math.max(usuario, inimigo)));
+            }
+        }
+        filtro = novo;
+        removidosDoFiltro = 0;
+    }
+
+    private static void ligar(AtomicLongArray filtro, long espalhado) {
+        int i = palavra(espalhado, filtro.length());
+        long bits = bits(espalhado);
+        long atual;
+        do {
+            atual = filtro.get(i);
+        } while ((atual & bits) != bits && !filtro.compareAndSet(i, atual, atual | bits));
+    }
+
+    // Palavra do filtro: bits altos do hash; a quantidade de palavras é potência de 2
+    private static int palavra(long espalhado, int palavras) {
+        return (int) (espalhado >>> 40) & (palavras - 1);
+    }
+
+    // Bits dentro da palavra: três grupos de 6 bits baixos do hash
+    private static long bits(long espalhado) {
+        return 1L << (espalhado & 63) | 1L << ((espalhado >>> 6) & 63) | 1L << ((espalhado >>> 12) & 63);
+    }
+
+    // Hash do par sem ordem (menor id, maior id), com a mistura final do SplitMix64
+    private static long espalhar(int menor, int maior) {
+        long h = ((long) menor << 32 | maior) * 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    private static long par(int usuario, int inimigo) {
+        return (long) usuario << 32 | (inimigo & 0xFFFFFFFFL);
+    }
+
+    private static long[] novaTabela(int capacidade) {
+        long[] nova = new long[capacidade];
+        Arrays.fill(nova, VAZIO);
+        return nova;
+    }
+
+    private int posicao(long chave, int mascara) {
+        return (int) espalhar((int) (chave >>> 32), (int) chave) & mascara;
+    }
+
+    private boolean contem(long chave) {
+        int mascara = tabela.length - 1;
+        for (int i = posicao(chave, mascara); tabela[i] != VAZIO; i = (i + 1) & mascara) {
+            if (tabela[i] == chave) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean inserir(long chave) {
+        if ((pares + 1) * 4 > tabela.length * 3) {
+            long[] antiga = tabela;
+            tabela = novaTabela(antiga.length * 2);
+            for (long existente : antiga) {
+                if (existente != VAZIO) {
+                    colocar(existente);
+                }
+            }
+        }
+        if (contem(chave)) {
+            return false;
+        }
+        colocar(chave);
+        pares++;
+        return true;
+    }
+
+    private void colocar(long chave) {
+        int mascara = tabela.length - 1;
+        int i = posicao(chave, mascara);
+        while (tabela[i] != VAZIO) {
+            i = (i + 1) & mascara;
+        }
+        tabela[i] = chave;
+    }
+
+    // Remove por deslocamento reverso, como o ConjuntoDeInteiros, para não deixar marcadores
+    private void retirar(long chave) {
+        int mascara = tabela.length - 1;
+        int i = posicao(chave, mascara);
+        while (tabela[i] != chave) {
+            if (tabela[i] == VAZIO) {
+                return;
+            }
+            i = (i + 1) & mascara;
+        }
+        int livre = i;
+        for (int j = (i + 1) & mascara; tabela[j] != VAZIO; j = (j + 1) & mascara) {
+            int ideal = posicao(tabela[j], mascara);
+            // O elemento em j pode ocupar a posição livre se ela estiver entre a ideal e j (circularmente)
+            if (((j - ideal) & mascara) >= ((j - livre) & mascara)) {
+                tabela[livre] = tabela[j];
+                livre = j;
+            }
+        }
+        tabela[livre] = VAZIO;
+        pares--;
+        removidosDoFiltro++;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Índices secundários sobre os usuários, para buscas cujo custo depende do tamanho do resultado.
+ * <p>
+ * O índice invertido associa cada par (atributo, valor) do perfil aos ids dos usuários que o
+ * preencheram, e a árvore de prefixos associa o nome de cada usuário, sem diferenciar maiúsculas
+ * de minúsculas, ao seu id. Os dois são mantidos pelo {@link UserManager} no cadastro, na edição
+ * do perfil e na remoção de usuários. Os métodos são sincronizados, pois edições de perfil de
+ * usuários diferentes acontecem em paralelo, e as buscas devolvem cópias dos ids: quem resolve os
+ * usuários o faz depois de soltar o índice, já que a resolução pode travar o {@link UserManager},
+ * que trava o índice ao cadastrar.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.managers;
+
+import br.ufal.ic.p2.jackut.util.ArvoreDePrefixos;
+import br.ufal.ic.p2.jackut.util.ConjuntoDeInteiros;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+public class IndiceDePerfis {
+    // Ids dos usuários por atributo e valor (atributo -> valor -> ids)
+    private final Map<String, Map<String, ConjuntoDeInteiros>> porAtributo = new HashMap<>();
+
+    // Ids dos usuários pelo nome normalizado
+    private final ArvoreDePrefixos porNome = new ArvoreDePrefixos();
+
+    /**
+     * Indexa o nome de um usuário recém-cadastrado
+     * @param id Id interno do usuário
+     * @param nome Nome do usuário
+     */
+    public synchronized void indexarNome(int id, String nome) {
+        if (nome != null) {
+            porNome.adicionar(normalizar(nome), id);
+        }
+    }
+
+    /**
+     * Remove o nome de um usuário do índice
+     * @param id Id interno do usuário
+     * @param nome Nome do usuário
+     */
+    public synchronized void removerNome(int id, String nome) {
+        if (nome != null) {
+            porNome.remover(normalizar(nome), id);
+        }
+    }
+
+    /**
+     * Atualiza o índice invertido após a alteração de um atributo do perfil
+     * @param id Id interno do usuário
+     * @param atributo Nome do atributo
+     * @param anterior Valor anterior (null se o atributo não estava preenchido)
+     * @param valor Novo valor (null para apenas remover o anterior)
+     */
+    public synchronized void atualizarAtributo(int id, String atributo, String anterior, String valor) {
+        Map<String, ConjuntoDeInteiros> porValor = porAtributo.get(atributo);
+        if (anterior != null && porValor != null) {
+            ConjuntoDeInteiros ids = porValor.get(anterior);
+            if (ids != null && ids.remover(id) && ids.vazio()) {
+                porValor.remove(anterior);
+                if (porValor.isEmpty()) {
+                    porAtributo.remove(atributo);
+                }
+            }
+        }
+        if (valor != null) {
+            porAtributo.computeIfAbsent(atributo, k -> new HashMap<>())
+                    .computeIfAbsent(valor, k -> new ConjuntoDeInteiros())
+                    .adicionar(id);
+        }
+    }
+
+    /**
+     * Obtém os ids dos usuários com um atributo preenchido com o valor informado
+     * @param atributo Nome do atributo
+     * @param valor Valor procurado (comparado exatamente)
+     * @return Ids dos usuários, em ordem arbitrária
+     */
+    public synchronized int[] buscarPorAtributo(String atributo, String valor) {
+        Map<String, ConjuntoDeInteiros> porValor = porAtributo.get(atributo);
+        ConjuntoDeInteiros ids = porValor == null ? null : porValor.get(valor);
+        return ids == null ? new int[0] : ids.paraVetor();
+    }
+
+    /**
+     * Obtém os ids dos usuários cujo nome começa pelo prefixo, sem diferenciar maiúsculas de
+     * minúsculas, na ordem alfabética dos nomes
+     * @param prefixo Prefixo procurado
+     * @return Ids dos usuários
+     */
+    public synchronized int[] buscarPorPrefixoDoNome(String prefixo) {
+        IntStream.Builder ids = IntStream.builder();
+        porNome.paraCadaComPrefixo(normalizar(prefixo), ids);
+        return ids.build().toArray();
+    }
+
+    /**
+     * Obtém os ids dos usuários com o nome informado, sem diferenciar maiúsculas de minúsculas
+     * @param nome Nome procurado
+     * @return Ids dos usuários
+     */
+    public synchronized int[] buscarPorNome(String nome) {
+        IntStream.Builder ids = IntStream.builder();
+        porNome.paraCadaIgual(normalizar(nome), ids);
+        return ids.build().toArray();
+    }
+
+    /**
+     * Limpa os dois índices (reinicialização)
+     */
+    public synchronized void clear() {
+        porAtributo.clear();
+        porNome.limpar();
+    }
+
+    // Forma do nome guardada na árvore de prefixos
+    private static String normalizar(String nome) {
+        return nome.toLowerCase(Locale.ROOT);
+    }
+}
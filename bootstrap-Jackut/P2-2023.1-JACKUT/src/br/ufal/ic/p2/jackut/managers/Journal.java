@@ -0,0 +1,487 @@
+/**
+ * Log de escrita antecipada (write-ahead log) das operações que alteram o estado do Jackut.
+ * <p>
+ * Cada operação é gravada como um registro independente no fim do arquivo, contendo um número
+ * de sequência, os campos da operação e um CRC32 para detectar gravações interrompidas.
+ * O custo de cada gravação depende apenas do tamanho da operação, e não do estado total.
+ * </p>
+ * <p>
+ * No modo assíncrono, os registros codificados são entregues a uma {@link GravacaoAssincrona},
+ * que os grava em grupos com um fsync por grupo; a ordem dos registros é preservada.
+ * </p>
+ * <p>
+ * No modo síncrono, uma gravação que falha é desfeita: o arquivo volta ao tamanho anterior a ela,
+ * para que a próxima não fique depois de um registro incompleto (que, na leitura, faria descartar
+ * todos os seguintes). Se não for possível desfazê-la, ou se a falha for na gravação de um lote,
+ * cujas operações já foram aplicadas, o erro é permanente, como no modo assíncrono: toda gravação
+ * seguinte falha até o log ser truncado depois de um snapshot ou reaberto pela leitura.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.managers;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+public class Journal {
+    // Tamanho máximo aceito para um registro; valores maiores indicam corrupção
+    private static final int TAMANHO_MAXIMO_REGISTRO = 64 * 1024 * 1024;
+
+    // Quantidade de bytes acumulados em um lote que força a gravação antes do fim do lote
+    private static final int TAMANHO_MAXIMO_LOTE = 1024 * 1024;
+
+    // Arquivo onde os registros são acrescentados
+    private final File arquivo;
+
+    // Indica se cada gravação deve forçar a sincronização com o disco (fsync)
+    private final boolean sincronizar;
+
+    // Fluxo de escrita aberto sob demanda
+    private FileOutputStream saida;
+
+    // Gravação em segundo plano (null no modo síncrono)
+    private final GravacaoAssincrona gravacao;
+
+    // Número de sequência do próximo registro
+    private long proximaSequencia = 1;
+
+    // Quantidade de registros presentes no arquivo e tamanho deles em bytes
+    private int registros;
+    private long tamanho;
+
+    // Registros acumulados em memória durante um lote (null fora de lotes) e quantos são
+    private ByteArrayOutputStream lote;
+    private int registrosNoLote;
+
+    // Erro de uma gravação que não pôde ser desfeita, relançado até o log ser truncado ou relido
+    private IOException falha;
+
+    // Trava das operações sobre o log. É uma ReentrantLock, e não o monitor do objeto, porque é
+    // mantida durante a escrita, o fsync e a espera por espaço na fila da gravação assíncrona: quem
+    // espera um monitor em uma thread virtual prende a thread portadora, e na trava apenas estaciona
+    private final ReentrantLock trava = new ReentrantLock();
+
+    // Área reaproveitada para montar cada registro, sem alocar fluxos por gravação
+    private final Registro registro = new Registro();
+    private final DataOutputStream escritor = new DataOutputStream(registro);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Construtor do journal
+     * @param arquivo Arquivo de log
+     * @param sincronizar true para forçar fsync a cada registro
+     */
+    public Journal(File arquivo, boolean sincronizar) {
+        this.arquivo = arquivo;
+        this.sincronizar = sincronizar;
+        this.gravacao = null;
+    }
+
+    /**
+     * Construtor do journal no modo assíncrono (write-behind com commit em grupo)
+     * @param arquivo Arquivo de log
+     * @param capacidadeFila Quantidade máxima de entradas aguardando gravação
+     * @param tamanhoGrupo Quantidade de entradas que dispara a gravação de um grupo
+     * @param intervaloMillis Tempo máximo, em milissegundos, que uma entrada espera o grupo encher
+     */
+    public Journal(File arquivo, int capacidadeFila, int tamanhoGrupo, long intervaloMillis) {
+        this.arquivo = arquivo;
+        this.sincronizar = false;
+        this.gravacao = new GravacaoAssincrona(arquivo, capacidadeFila, tamanhoGrupo, intervaloMillis);
+    }
+
+    /**
+     * Acrescenta uma operação ao fim do log
+     * @param campos Nome da operação seguido de seus argumentos
+     * @throws RuntimeException Se ocorrer erro de escrita
+     */
+    public void registrar(String... campos) {
+        trava.lock();
+        try {
+            verificarFalha();
+            codificar(proximaSequencia++, campos);
+            if (lote != null) {
+                registro.writeTo(lote);
+                registrosNoLote++;
+                if (lote.size() >= TAMANHO_MAXIMO_LOTE) {
+                    gravarLote();
+                }
+                return;
+            }
+            if (gravacao != null) {
+                gravacao.enfileirar(registro.toByteArray());
+                registros++;
+                tamanho += registro.size();
+                return;
+            }
+            gravar(registro);
+            registros++;
+            tamanho += registro.size();
+        } catch (IOException e) {
+            throw new RuntimeException("Erro ao registrar operação.", e);
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Passa a acumular os registros em memória, para gravá-los de uma vez (e com um único fsync)
+     * em {@link #concluirLote()}. Quem inicia o lote deve impedir que outras operações registrem
+     * no log até concluí-lo, pois elas também entrariam no lote.
+     */
+    public void iniciarLote() {
+        trava.lock();
+        try {
+            if (lote == null) {
+                lote = new ByteArrayOutputStream();
+                registrosNoLote = 0;
+            }
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Grava os registros acumulados desde {@link #iniciarLote()} e volta à gravação imediata. Se a
+     * gravação falhar, os registros do lote são descartados e o erro se torna permanente
+     * @throws RuntimeException Se ocorrer erro de escrita
+     */
+    public void concluirLote() {
+        trava.lock();
+        try {
+            gravarLote();
+        } catch (IOException e) {
+            throw new RuntimeException("Erro ao registrar operação.", e);
+        } finally {
+            lote = null;
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Reproduz os registros do log com sequência posterior à informada.
+     * <p>
+     * Um registro incompleto ou corrompido no fim do arquivo (gravação interrompida) encerra a
+     * leitura, e o arquivo é truncado até o último registro válido.
+     * </p>
+     * @param aposSequencia Sequência já contemplada pelo snapshot carregado
+     * @param aplicador Função que aplica cada operação (nome seguido dos argumentos)
+     * @throws RuntimeException Se ocorrer erro de leitura
+     */
+    public void reproduzir(long aposSequencia, Consumer<String[]> aplicador) {
+        trava.lock();
+        try {
+            proximaSequencia = Math.max(proximaSequencia, aposSequencia + 1);
+            registros = 0;
+            tamanho = 0;
+            falha = null;
+            if (!arquivo.exists()) {
+                return;
+            }
+
+            long posicaoValida = 0;
+            try (DataInputStream entrada = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(arquivo)))) {
+                while (true) {
+                    byte[] dados = lerRegistro(entrada);
+                    if (dados == null) {
+                        break;
+                    }
+                    posicaoValida += dados.length + 8;
+                    registros++;
+
+                    DataInputStream registro = new DataInputStream(new ByteArrayInputStream(dados));
+                    long sequencia = registro.readLong();
+                    String[] campos = new String[registro.readUnsignedByte()];
+                    for (int i = 0; i < campos.length; i++) {
+                        campos[i] = lerCampo(registro);
+                    }
+                    proximaSequencia = Math.max(proximaSequencia, sequencia + 1);
+                    if (sequencia > aposSequencia) {
+                        aplicador.accept(campos);
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Erro ao carregar o journal.", e);
+            }
+
+            if (posicaoValida < arquivo.length()) {
+                try (RandomAccessFile raf = new RandomAccessFile(arquivo, "rw")) {
+                    raf.setLength(posicaoValida);
+                } catch (IOException e) {
+                    throw new RuntimeException("Erro ao carregar o journal.", e);
+                }
+            }
+            tamanho = posicaoValida;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Descarta todos os registros (após a gravação de um snapshot que os contempla)
+     * @throws RuntimeException Se ocorrer erro de escrita
+     */
+    public void truncar() {
+        trava.lock();
+        try {
+            if (lote != null) {
+                lote.reset();
+                registrosNoLote = 0;
+            }
+            if (gravacao != null) {
+                gravacao.fecharArquivo();
+            } else {
+                fecharSaida();
+            }
+            new FileOutputStream(arquivo, false).close();
+            registros = 0;
+            tamanho = 0;
+            falha = null;
+        } catch (IOException e) {
+            throw new RuntimeException("Erro ao compactar o journal.", e);
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Fecha o arquivo de log; ele será reaberto na próxima gravação
+     * @throws RuntimeException Se ocorrer erro ao fechar o arquivo
+     */
+    public void fechar() {
+        trava.lock();
+        try {
+            if (gravacao != null) {
+                try {
+                    gravarLote();
+                } catch (IOException e) {
+                    throw new RuntimeException("Erro ao fechar o journal.", e);
+                } finally {
+                    gravacao.fechar();
+                }
+                return;
+            }
+            if (saida != null || lote != null) {
+                try {
+                    gravarLote();
+                    if (saida != null) {
+                        saida.close();
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException("Erro ao fechar o journal.", e);
+                } finally {
+                    saida = null;
+                }
+            }
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Espera os registros já aceitos chegarem ao disco (no modo síncrono, eles já chegaram)
+     * @throws RuntimeException Se ocorrer erro de escrita
+     */
+    public void aguardarGravacao() {
+        if (gravacao != null) {
+            gravacao.aguardar();
+        }
+    }
+
+    /**
+     * Obtém as métricas da gravação assíncrona
+     * @return Retrato das métricas, ou null no modo síncrono
+     */
+    public MetricasDeGravacao getMetricas() {
+        return gravacao == null ? null : gravacao.getMetricas();
+    }
+
+    /**
+     * Obtém a sequência do último registro gravado
+     * @return Número de sequência do último registro
+     */
+    public long getUltimaSequencia() {
+        trava.lock();
+        try {
+            return proximaSequencia - 1;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Obtém a quantidade de registros acumulados desde a última compactação
+     * @return Quantidade de registros no log
+     */
+    public int getRegistros() {
+        trava.lock();
+        try {
+            return registros;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Obtém o tamanho, em bytes, dos registros acumulados desde a última compactação
+     * @return Tamanho do log
+     */
+    public long getTamanho() {
+        trava.lock();
+        try {
+            return tamanho;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    // Grava no arquivo os registros acumulados no lote, se houver. As operações do lote já foram
+    // aplicadas, então uma falha, mesmo desfeita no arquivo, se torna permanente
+    private void gravarLote() throws IOException {
+        if (lote == null || lote.size() == 0) {
+            return;
+        }
+        int quantidade = registrosNoLote;
+        int bytes = lote.size();
+        try {
+            if (gravacao != null) {
+                gravacao.enfileirar(lote.toByteArray());
+            } else {
+                verificarFalha();
+                gravar(lote);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (falha == null) {
+                falha = e instanceof IOException ? (IOException) e : new IOException(e);
+            }
+            throw e;
+        } finally {
+            lote.reset();
+            registrosNoLote = 0;
+        }
+        registros += quantidade;
+        tamanho += bytes;
+    }
+
+    // Acrescenta os bytes ao arquivo (com fsync, se configurado). Se a escrita falhar, o arquivo
+    // volta ao tamanho anterior e é fechado, para ser reaberto na próxima gravação
+    private void gravar(ByteArrayOutputStream dados) throws IOException {
+        if (saida == null) {
+            saida = new FileOutputStream(arquivo, true);
+        }
+        long tamanhoAnterior = saida.getChannel().size();
+        try {
+            dados.writeTo(saida);
+            if (sincronizar) {
+                saida.getFD().sync();
+            }
+        } catch (IOException e) {
+            desfazer(tamanhoAnterior, e);
+            throw e;
+        }
+    }
+
+    // Corta do arquivo o que uma gravação que falhou deixou e fecha o fluxo; se não conseguir,
+    // o erro se torna permanente
+    private void desfazer(long tamanhoAnterior, IOException erro) {
+        try {
+            saida.getChannel().truncate(tamanhoAnterior);
+            saida.getFD().sync();
+        } catch (IOException e) {
+            erro.addSuppressed(e);
+            falha = erro;
+        } finally {
+            fecharSaida();
+        }
+    }
+
+    // Fecha o fluxo de escrita sem gravar o lote pendente
+    private void fecharSaida() {
+        if (saida != null) {
+            try {
+                saida.close();
+            } catch (IOException e) {
+                // O conteúdo já foi sincronizado ou desfeito; resta apenas liberar o descritor
+            } finally {
+                saida = null;
+            }
+        }
+    }
+
+    // Relança o erro de uma gravação que não pôde ser desfeita
+    private void verificarFalha() throws IOException {
+        if (falha != null) {
+            throw new IOException("Gravação anterior do journal falhou.", falha);
+        }
+    }
+
+    // Monta o registro na área reaproveitada: [tamanho][sequência, campos][crc32]
+    private void codificar(long sequencia, String[] campos) throws IOException {
+        registro.reset();
+        escritor.writeInt(0);
+        escritor.writeLong(sequencia);
+        escritor.writeByte(campos.length);
+        for (String campo : campos) {
+            if (campo == null) {
+                escritor.writeInt(-1);
+            } else {
+                byte[] bytes = campo.getBytes(StandardCharsets.UTF_8);
+                escritor.writeInt(bytes.length);
+                escritor.write(bytes);
+            }
+        }
+
+        int tamanhoConteudo = registro.size() - 4;
+        crc.reset();
+        crc.update(registro.getBytes(), 4, tamanhoConteudo);
+        escritor.writeInt((int) crc.getValue());
+        registro.escreverTamanho(tamanhoConteudo);
+    }
+
+    // Lê um registro completo e válido, ou retorna null se o log terminou ou está corrompido
+    private static byte[] lerRegistro(DataInputStream entrada) throws IOException {
+        try {
+            int tamanho = entrada.readInt();
+            if (tamanho < 9 || tamanho > TAMANHO_MAXIMO_REGISTRO) {
+                return null;
+            }
+            byte[] conteudo = new byte[tamanho];
+            entrada.readFully(conteudo);
+            int crcGravado = entrada.readInt();
+
+            CRC32 crc = new CRC32();
+            crc.update(conteudo);
+            return (int) crc.getValue() == crcGravado ? conteudo : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    // Lê um campo de texto (tamanho -1 representa null)
+    private static String lerCampo(DataInputStream entrada) throws IOException {
+        int tamanho = entrada.readInt();
+        if (tamanho < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[tamanho];
+        entrada.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Buffer de bytes que expõe o vetor interno para o cálculo do CRC e a escrita do tamanho
+    private static class Registro extends ByteArrayOutputStream {
+        private byte[] getBytes() {
+            return buf;
+        }
+
+        private void escreverTamanho(int tamanho) {
+            buf[0] = (byte) (tamanho >>> 24);
+            buf[1] = (byte) (tamanho >>> 16);
+            buf[2] = (byte) (tamanho >>> 8);
+            buf[3] = (byte) tamanho;
+        }
+    }
+}
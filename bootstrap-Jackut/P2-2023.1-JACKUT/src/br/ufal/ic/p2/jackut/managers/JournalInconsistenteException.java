@@ -0,0 +1,37 @@
+/**
+ * Erro lançado quando um registro do journal não pode ser reaplicado na carga.
+ * <p>
+ * As operações só são registradas depois das suas validações e com as travas dos usuários
+ * envolvidos, de modo que, reaplicadas na ordem do log, nenhuma deveria ser rejeitada. Um registro
+ * rejeitado (de um usuário que não existe, de uma operação desconhecida ou que falhou ao ser
+ * reaplicada) indica que o log e o estado divergiram, e a carga é interrompida em vez de continuar
+ * com um estado diferente do registrado.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.managers;
+
+public class JournalInconsistenteException extends RuntimeException {
+    // Nome da operação do registro rejeitado
+    private final String operacao;
+
+    /**
+     * Construtor. A mensagem mostra só o nome da operação e o login, pois os demais campos podem
+     * conter senhas e mensagens
+     * @param campos Nome da operação seguido de seus argumentos
+     * @param motivo Motivo da rejeição
+     * @param causa Erro lançado pela operação (null se a rejeição não veio dela)
+     */
+    public JournalInconsistenteException(String[] campos, String motivo, Throwable causa) {
+        super("Registro do journal rejeitado (" + campos[0] + (campos.length > 1 ? " de " + campos[1] : "")
+                + "): " + motivo, causa);
+        this.operacao = campos[0];
+    }
+
+    /**
+     * Obtém o nome da operação do registro rejeitado
+     * @return Nome da operação
+     */
+    public String getOperacao() {
+        return operacao;
+    }
+}
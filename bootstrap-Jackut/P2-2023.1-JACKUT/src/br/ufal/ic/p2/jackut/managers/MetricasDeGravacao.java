@@ -0,0 +1,70 @@
+/**
+ * Retrato das métricas da gravação assíncrona do journal em um instante.
+ * <p>
+ * A profundidade é a quantidade de registros (ou lotes de registros) aguardando na fila, e a
+ * latência de gravação é o tempo de escrever um grupo e sincronizá-lo com o disco (fsync).
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.managers;
+
+public final class MetricasDeGravacao {
+    private final int profundidadeFila;
+    private final int capacidadeFila;
+    private final int maiorProfundidadeFila;
+    private final long gruposGravados;
+    private final long registrosGravados;
+    private final long bytesGravados;
+    private final long esperasPorEspaco;
+    private final long latenciaUltimaNanos;
+    private final long latenciaMediaNanos;
+    private final long latenciaMaximaNanos;
+
+    /**
+     * Construtor com todos os valores do retrato
+     * @param profundidadeFila Entradas aguardando gravação
+     * @param capacidadeFila Capacidade da fila
+     * @param maiorProfundidadeFila Maior profundidade observada
+     * @param gruposGravados Quantidade de gravações em grupo (cada uma com um fsync)
+     * @param registrosGravados Entradas gravadas
+     * @param bytesGravados Bytes gravados
+     * @param esperasPorEspaco Vezes em que uma operação esperou espaço na fila (contrapressão)
+     * @param latenciaUltimaNanos Latência da última gravação em grupo
+     * @param latenciaMediaNanos Latência média das gravações em grupo
+     * @param latenciaMaximaNanos Maior latência de gravação em grupo
+     */
+    public MetricasDeGravacao(int profundidadeFila, int capacidadeFila, int maiorProfundidadeFila,
+                              long gruposGravados, long registrosGravados, long bytesGravados,
+                              long esperasPorEspaco, long latenciaUltimaNanos, long latenciaMediaNanos,
+                              long latenciaMaximaNanos) {
+        this.profundidadeFila = profundidadeFila;
+        this.capacidadeFila = capacidadeFila;
+        this.maiorProfundidadeFila = maiorProfundidadeFila;
+        this.gruposGravados = gruposGravados;
+        this.registrosGravados = registrosGravados;
+        this.bytesGravados = bytesGravados;
+        this.esperasPorEspaco = esperasPorEspaco;
+        this.latenciaUltimaNanos = latenciaUltimaNanos;
+        this.latenciaMediaNanos = latenciaMediaNanos;
+        this.latenciaMaximaNanos = latenciaMaximaNanos;
+    }
+
+    public int getProfundidadeFila() { return profundidadeFila; }
+    public int getCapacidadeFila() { return capacidadeFila; }
+    public int getMaiorProfundidadeFila() { return maiorProfundidadeFila; }
+    public long getGruposGravados() { return gruposGravados; }
+    public long getRegistrosGravados() { return registrosGravados; }
+    public long getBytesGravados() { return bytesGravados; }
+    public long getEsperasPorEspaco() { return esperasPorEspaco; }
+    public long getLatenciaUltimaNanos() { return latenciaUltimaNanos; }
+    public long getLatenciaMediaNanos() { return latenciaMediaNanos; }
+    public long getLatenciaMaximaNanos() { return latenciaMaximaNanos; }
+
+    @Override
+    public String toString() {
+        return String.format("fila %d/%d (máx %d), %d grupos, %d registros, %d bytes, %d esperas, "
+                        + "latência última %.1f µs, média %.1f µs, máx %.1f µs",
+                profundidadeFila, capacidadeFila, maiorProfundidadeFila, gruposGravados, registrosGravados,
+                bytesGravados, esperasPorEspaco, latenciaUltimaNanos / 1e3, latenciaMediaNanos / 1e3,
+                latenciaMaximaNanos / 1e3);
+    }
+}
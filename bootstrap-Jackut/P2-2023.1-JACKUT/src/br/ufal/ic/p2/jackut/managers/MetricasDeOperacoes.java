@@ -0,0 +1,119 @@
+/**
+ * Métricas de cada operação da Facade: chamadas, erros por mensagem e histograma de latência.
+ * <p>
+ * As operações são cadastradas na criação e registradas pelo nome. Registrar uma chamada custa duas
+ * leituras de {@link System#nanoTime()}, uma consulta ao mapa de operações e incrementos em
+ * contadores divididos por thread, sem alocação; nomes não cadastrados (como comandos de lote
+ * desconhecidos) são ignorados. Os erros são contados pela mensagem da exceção, até
+ * {@value #LIMITE_MENSAGENS} mensagens diferentes por operação. As métricas podem ser desligadas
+ * com a propriedade jackut.metricas=false.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.managers;
+
+import br.ufal.ic.p2.jackut.util.HistogramaDeLatencia;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class MetricasDeOperacoes {
+    // Liga ou desliga o registro das chamadas
+    private static final boolean ATIVAS = !"false".equals(System.getProperty("jackut.metricas"));
+
+    // Quantidade máxima de mensagens de erro distintas por operação; as demais são somadas juntas
+    private static final int LIMITE_MENSAGENS = 32;
+    private static final String OUTRAS_MENSAGENS = "(outras mensagens)";
+
+    // Métricas de cada operação pelo nome, na ordem de cadastro
+    private final Map<String, Operacao> operacoes;
+
+    /**
+     * Construtor
+     * @param nomes Nomes das operações medidas
+     */
+    public MetricasDeOperacoes(String... nomes) {
+        Map<String, Operacao> mapa = new LinkedHashMap<>();
+        for (String nome : nomes) {
+            mapa.put(nome, new Operacao());
+        }
+        this.operacoes = Collections.unmodifiableMap(mapa);
+    }
+
+    /**
+     * Marca o início de uma chamada
+     * @return Instante do início, a ser passado para {@link #registrar(String, long)}
+     */
+    public long iniciar() {
+        return ATIVAS ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Registra o fim de uma chamada, com ou sem erro
+     * @param nome Nome da operação
+     * @param inicio Instante devolvido por {@link #iniciar()}
+     */
+    public void registrar(String nome, long inicio) {
+        if (!ATIVAS) {
+            return;
+        }
+        Operacao operacao = operacoes.get(nome);
+        if (operacao != null) {
+            operacao.latencias.registrar(System.nanoTime() - inicio);
+        }
+    }
+
+    /**
+     * Registra o erro de uma chamada pela mensagem. O fim da chamada continua sendo registrado por
+     * {@link #registrar(String, long)}
+     * @param nome Nome da operação
+     * @param erro Exceção lançada pela operação
+     * @return A própria exceção, para ser relançada
+     */
+    public RuntimeException registrarErro(String nome, RuntimeException erro) {
+        Operacao operacao = ATIVAS ? operacoes.get(nome) : null;
+        if (operacao != null) {
+            operacao.contarErro(erro.getMessage());
+        }
+        return erro;
+    }
+
+    /**
+     * Lê as métricas de todas as operações que já foram chamadas
+     * @param medidas Medidas instantâneas do sistema a incluir no retrato
+     * @param gravacao Métricas da gravação do journal (null quando a gravação é síncrona)
+     * @return Retrato das métricas
+     */
+    public RetratoDeMetricas retratar(Map<String, Number> medidas, MetricasDeGravacao gravacao) {
+        List<RetratoDeMetricas.Operacao> lidas = new ArrayList<>();
+        for (Map.Entry<String, Operacao> entrada : operacoes.entrySet()) {
+            Operacao operacao = entrada.getValue();
+            HistogramaDeLatencia.Retrato latencias = operacao.latencias.retratar();
+            if (latencias.getContagem() == 0) {
+                continue;
+            }
+            Map<String, Long> erros = new TreeMap<>();
+            operacao.erros.forEach((mensagem, contagem) -> erros.put(mensagem, contagem.sum()));
+            lidas.add(new RetratoDeMetricas.Operacao(entrada.getKey(), latencias, erros));
+        }
+        return new RetratoDeMetricas(System.currentTimeMillis(), lidas, medidas, gravacao);
+    }
+
+    // Contadores de uma operação
+    private static final class Operacao {
+        private final HistogramaDeLatencia latencias = new HistogramaDeLatencia();
+        private final Map<String, LongAdder> erros = new ConcurrentHashMap<>();
+
+        private void contarErro(String mensagem) {
+            String chave = mensagem == null ? "(sem mensagem)" : mensagem;
+            LongAdder contagem = erros.get(chave);
+            if (contagem == null) {
+                if (erros.size() >= LIMITE_MENSAGENS) {
+                    chave = OUTRAS_MENSAGENS;
+                }
+                contagem = erros.computeIfAbsent(chave, c -> new LongAdder());
+            }
+            contagem.increment();
+        }
+    }
+}
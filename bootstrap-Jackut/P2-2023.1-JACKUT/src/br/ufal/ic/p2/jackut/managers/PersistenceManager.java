@@ -1,87 +1,428 @@
 package br.ufal.ic.p2.jackut.managers;
 
-import br.ufal.ic.p2.jackut.models.Comunidade;
 import br.ufal.ic.p2.jackut.models.Usuario;
-import com.thoughtworks.xstream.XStream;
-import com.thoughtworks.xstream.io.xml.StaxDriver;
 
 import java.io.*;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 public class PersistenceManager {
+    // Snapshot binário em um único arquivo, anterior às partições, importado quando não há partições
+    private static final String ARQUIVO_SNAPSHOT = "jackut.snapshot";
+
+    // Snapshot no formato XML anterior, importado quando não há snapshot binário
+    private static final String ARQUIVO_SNAPSHOT_XML = "jackut.xml";
+
+    // Arquivo com o log das operações posteriores ao último snapshot
+    private static final String ARQUIVO_JOURNAL = "jackut.journal";
+
+    // Quantidade mínima de operações no log antes de gravar um novo snapshot. Acima dela, o snapshot
+    // só é regravado quando o log fica do tamanho do último snapshot, para que o custo de gravá-lo
+    // (proporcional ao estado, incluindo relacionamentos e recados) continue amortizado nas operações
+    private static final int LIMITE_COMPACTACAO = 1000;
+
+    // Durante um lote o log pode crescer até este múltiplo do último snapshot antes de ser compactado:
+    // cargas em lote quase só acrescentam estado, e cada snapshot intermediário seria logo substituído
+    private static final int FATOR_COMPACTACAO_LOTE = 8;
+
+    // Gravação síncrona do log (o padrão): cada operação só é confirmada depois do fsync do seu
+    // registro (ou do lote, em executarLote). Com jackut.persistencia.sincronizar=false o registro
+    // é só entregue ao sistema operacional, e uma queda da máquina (não só do processo) pode perder
+    // as últimas operações confirmadas
+    private static final boolean SINCRONIZAR = Boolean.parseBoolean(
+            System.getProperty("jackut.persistencia.sincronizar", "true"));
+
+    // Configuração da gravação do log: no modo assíncrono (jackut.persistencia.assincrona=true) as
+    // operações são confirmadas antes de chegar ao disco, e uma thread grava grupos de até
+    // jackut.persistencia.grupo entradas, com um fsync por grupo, no máximo jackut.persistencia.intervalo
+    // milissegundos depois da primeira entrada do grupo. Uma queda do processo pode perder as operações
+    // desse intervalo. A fila aceita até jackut.persistencia.fila entradas antes de segurar quem registra
+    private static final boolean GRAVACAO_ASSINCRONA = Boolean.getBoolean("jackut.persistencia.assincrona");
+    private static final int CAPACIDADE_FILA = Integer.getInteger("jackut.persistencia.fila", 65536);
+    private static final int TAMANHO_GRUPO = Integer.getInteger("jackut.persistencia.grupo", 1024);
+    private static final long INTERVALO_GRUPO = Long.getLong("jackut.persistencia.intervalo", 10);
+
+    // Quantidade de partições do snapshot (jackut.persistencia.particoes); cada compactação só
+    // regrava as partições alteradas desde a anterior
+    private static final int PARTICOES = Integer.getInteger("jackut.persistencia.particoes", 16);
+
+    // Quantidade máxima de usuários em memória (jackut.persistencia.usuariosEmMemoria). Com um valor
+    // positivo, a carga lê só o índice dos usuários, cada usuário é lido do snapshot na primeira
+    // consulta e os acessados há mais tempo são descarregados; 0 (o padrão) carrega todos
+    private static final int USUARIOS_EM_MEMORIA = Integer.getInteger("jackut.persistencia.usuariosEmMemoria", 0);
+
+    // Diretório de dados usado quando nenhum é informado (jackut.persistencia.diretorio), como na
+    // Facade criada sem argumentos pelo EasyAccept; o padrão é o diretório atual
+    private static final String PROPRIEDADE_DIRETORIO = "jackut.persistencia.diretorio";
+
+    // Operações que podem aparecer no log
+    private static final Set<String> OPERACOES = new HashSet<>(Arrays.asList("zerarSistema", "criarUsuario",
+            "removerUsuario", "editarPerfil", "adicionarAmigo", "enviarRecado", "lerRecado", "criarComunidade",
+            "adicionarComunidade", "enviarMensagem", "lerMensagem", "adicionarIdolo", "adicionarPaquera",
+            "adicionarInimigo"));
+
+    // Diretório onde ficam o snapshot, o log e os arquivos XML anteriores (criado se não existir)
+    private final File diretorio;
+
+    // Gerenciadores cujo estado é persistido
+    private final UserManager userManager;
+    private final CommunityManager communityManager;
+    private final RelationshipManager relationshipManager;
+
+    // Log de escrita antecipada das operações
+    private final Journal journal;
+
+    // Snapshot particionado, com as partições alteradas desde a última compactação
+    private final SnapshotParticionado snapshot;
+
+    // Tamanho em bytes do último snapshot lido ou gravado
+    private volatile long tamanhoSnapshot;
 
     /**
-     * Carrega os usuários armazenados no arquivo XML para o UserManager
-     * @param userManager Instância do gerenciador de usuários onde os dados serão carregados
-     * @throws RuntimeException Se ocorrer algum erro durante o carregamento
+     * Construtor que recebe os gerenciadores cujo estado será persistido no diretório atual
+     * @param userManager Instância do gerenciador de usuários
+     * @param communityManager Instância do gerenciador de comunidades
+     * @param relationshipManager Instância do gerenciador de relacionamentos
      */
-    public void carregarUsuarios(UserManager userManager) {
-        // Verifica se o arquivo de usuários existe e não está vazio
-        File arquivoUsuarios = new File("usuarios.xml");
-        if (arquivoUsuarios.exists() && arquivoUsuarios.length() > 0) {
-            try (Reader reader = new FileReader(arquivoUsuarios)) {
-                // Configura o XStream para desserialização XML
-                XStream xstream = new XStream(new StaxDriver());
-                // Permite todas as classes do pacote br.ufal.ic.p2.jackut
-                xstream.allowTypesByWildcard(new String[] { "br.ufal.ic.p2.jackut.**" });
-
-                // Desserializa o XML para um Map de Usuários
-                Map<String, Usuario> dados = (Map<String, Usuario>) xstream.fromXML(reader);
-                // Adiciona os usuários carregados ao UserManager
-                userManager.getUsuarios().putAll(dados);
-            } catch (IOException e) {
-                throw new RuntimeException("Erro ao carregar os usuários.", e);
-            }
+    public PersistenceManager(UserManager userManager, CommunityManager communityManager,
+                              RelationshipManager relationshipManager) {
+        this(getDiretorioPadrao(), userManager, communityManager, relationshipManager);
+    }
+
+    /**
+     * Obtém o diretório de dados padrão, lido da propriedade jackut.persistencia.diretorio a cada
+     * chamada para que ferramentas possam trocá-lo entre execuções
+     * @return Diretório configurado ou o diretório atual
+     */
+    public static File getDiretorioPadrao() {
+        return new File(System.getProperty(PROPRIEDADE_DIRETORIO, "."));
+    }
+
+    /**
+     * Construtor que recebe o diretório de dados e os gerenciadores cujo estado será persistido
+     * @param diretorio Diretório onde os arquivos de dados são lidos e gravados
+     * @param userManager Instância do gerenciador de usuários
+     * @param communityManager Instância do gerenciador de comunidades
+     * @param relationshipManager Instância do gerenciador de relacionamentos
+     */
+    public PersistenceManager(File diretorio, UserManager userManager, CommunityManager communityManager,
+                              RelationshipManager relationshipManager) {
+        this.diretorio = diretorio;
+        diretorio.mkdirs();
+        this.userManager = userManager;
+        this.communityManager = communityManager;
+        this.relationshipManager = relationshipManager;
+        File arquivoJournal = new File(diretorio, ARQUIVO_JOURNAL);
+        this.journal = GRAVACAO_ASSINCRONA
+                ? new Journal(arquivoJournal, CAPACIDADE_FILA, TAMANHO_GRUPO, INTERVALO_GRUPO)
+                : new Journal(arquivoJournal, SINCRONIZAR);
+        this.snapshot = new SnapshotParticionado(diretorio, PARTICOES);
+        CacheDeUsuarios cache = snapshot.usarCargaSobDemanda(USUARIOS_EM_MEMORIA);
+        if (cache != null) {
+            userManager.usarCargaSobDemanda(cache);
         }
     }
 
     /**
-     * Carrega as comunidades armazenadas no arquivo XML para o CommunityManager
-     * @param communityManager Instância do gerenciador de comunidades onde os dados serão carregados
+     * Carrega o último snapshot e reaplica as operações registradas no log depois dele.
+     * <p>
+     * Na ausência do snapshot particionado, importa os formatos anteriores: o snapshot binário em
+     * um único arquivo, o snapshot jackut.xml ou, se nenhum existir, os arquivos usuarios.xml e
+     * comunidades.xml. Nesses casos todas as partições ficam sujas e são gravadas na próxima
+     * compactação.
+     * </p>
+     * @throws JournalInconsistenteException Se algum registro do log não puder ser reaplicado
      * @throws RuntimeException Se ocorrer algum erro durante o carregamento
      */
-    public void carregarComunidades(CommunityManager communityManager) {
-        // Verifica se o arquivo de comunidades existe e não está vazio
-        File arquivoComunidades = new File("comunidades.xml");
-        if (arquivoComunidades.exists() && arquivoComunidades.length() > 0) {
-            try (Reader reader = new FileReader(arquivoComunidades)) {
-                // Configura o XStream para desserialização XML
-                XStream xstream = new XStream(new StaxDriver());
-                // Permite todas as classes do pacote br.ufal.ic.p2.jackut
-                xstream.allowTypesByWildcard(new String[] { "br.ufal.ic.p2.jackut.**" });
-
-                // Desserializa o XML para um Map de Comunidades
-                Map<String, Comunidade> dados = (Map<String, Comunidade>) xstream.fromXML(reader);
-                // Adiciona as comunidades carregadas ao CommunityManager
-                communityManager.getComunidades().putAll(dados);
-            } catch (IOException e) {
-                throw new RuntimeException("Erro ao carregar as comunidades.", e);
+    public void carregarDados() {
+        long sequencia = 0;
+        File arquivoSnapshot = new File(diretorio, ARQUIVO_SNAPSHOT);
+        File arquivoSnapshotXml = new File(diretorio, ARQUIVO_SNAPSHOT_XML);
+        try {
+            if (snapshot.existe()) {
+                sequencia = snapshot.carregar(userManager, communityManager);
+                tamanhoSnapshot = snapshot.getTamanho();
+            } else if (arquivoSnapshot.exists() && arquivoSnapshot.length() > 0) {
+                sequencia = SnapshotBinario.carregar(arquivoSnapshot, userManager, communityManager);
+                tamanhoSnapshot = arquivoSnapshot.length();
+            } else if (arquivoSnapshotXml.exists() && arquivoSnapshotXml.length() > 0) {
+                sequencia = ImportadorXml.importarSnapshot(arquivoSnapshotXml, userManager, communityManager);
+            } else {
+                ImportadorXml.importarArquivos(new File(diretorio, "usuarios.xml"), new File(diretorio, "comunidades.xml"),
+                        userManager, communityManager);
             }
+        } catch (IOException e) {
+            throw new RuntimeException("Erro ao carregar os dados.", e);
         }
+
+        journal.reproduzir(sequencia, campos -> {
+            aplicar(campos);
+            marcarAlteradas(campos);
+        });
     }
 
     /**
-     * Salva os dados atuais de usuários e comunidades em arquivos XML
-     * @param userManager Instância do gerenciador de usuários com os dados a serem salvos
-     * @param communityManager Instância do gerenciador de comunidades com os dados a serem salvos
-     * @throws RuntimeException Se ocorrer algum erro durante o salvamento
+     * Registra no log uma operação que vai alterar o estado do sistema.
+     * <p>
+     * Deve ser chamado depois das validações da operação e antes de qualquer alteração, para que uma
+     * falha de escrita não deixe em memória uma alteração ausente do log, e enquanto a operação detém
+     * as travas dos usuários envolvidos, para que a ordem do log seja a mesma da aplicação.
+     * </p>
+     * @param operacao Nome da operação (o mesmo do método da Facade)
+     * @param argumentos Argumentos da operação, com o login do usuário no lugar da sessão
+     * @throws RuntimeException Se ocorrer algum erro de escrita
+     */
+    public void registrar(String operacao, String... argumentos) {
+        String[] campos = new String[argumentos.length + 1];
+        campos[0] = operacao;
+        System.arraycopy(argumentos, 0, campos, 1, argumentos.length);
+        journal.registrar(campos);
+        marcarAlteradas(campos);
+    }
+
+    /**
+     * Passa a acumular as operações registradas para gravá-las juntas em {@link #concluirLote()};
+     * exige que nenhuma outra operação registre no log enquanto o lote estiver aberto
+     */
+    public void iniciarLote() {
+        journal.iniciarLote();
+    }
+
+    /**
+     * Grava no log as operações acumuladas desde {@link #iniciarLote()}
+     * @throws RuntimeException Se ocorrer algum erro de escrita
+     */
+    public void concluirLote() {
+        journal.concluirLote();
+    }
+
+    /**
+     * Espera as operações já registradas chegarem ao disco; só tem efeito na gravação assíncrona
+     * @throws RuntimeException Se ocorrer algum erro de escrita
+     */
+    public void aguardarGravacao() {
+        journal.aguardarGravacao();
+    }
+
+    /**
+     * Obtém as métricas da gravação assíncrona do log (profundidade da fila, latência dos grupos...)
+     * @return Retrato das métricas, ou null se a gravação for síncrona
+     */
+    public MetricasDeGravacao getMetricasGravacao() {
+        return journal.getMetricas();
+    }
+
+    /**
+     * Verifica se o log acumulou operações suficientes para ser compactado em um novo snapshot
+     * @return true se {@link #compactar()} deve ser chamado
+     */
+    public boolean precisaCompactar() {
+        return journal.getRegistros() >= LIMITE_COMPACTACAO && journal.getTamanho() >= tamanhoSnapshot;
+    }
+
+    /**
+     * Verifica se o log precisa ser compactado no meio de um lote, com um limite mais folgado que
+     * o de {@link #precisaCompactar()}; ao fim do lote vale o limite normal
+     * @return true se {@link #compactar()} deve ser chamado
      */
-    public void salvarDados(UserManager userManager, CommunityManager communityManager) {
-        try (Writer writerUsuarios = new FileWriter("usuarios.xml");
-             Writer writerComunidades = new FileWriter("comunidades.xml")) {
+    public boolean precisaCompactarDuranteLote() {
+        return journal.getRegistros() >= LIMITE_COMPACTACAO
+                && journal.getTamanho() >= FATOR_COMPACTACAO_LOTE * tamanhoSnapshot;
+    }
 
-            // Configura o XStream para serialização XML
-            XStream xstream = new XStream(new StaxDriver());
-            // Permite todas as classes do pacote br.ufal.ic.p2.jackut
-            xstream.allowTypesByWildcard(new String[] { "br.ufal.ic.p2.jackut.**" });
+    /**
+     * Verifica se há usuários demais em memória (só na carga sob demanda)
+     * @return true se {@link #liberarMemoria()} deve ser chamado
+     */
+    public boolean precisaLiberarMemoria() {
+        return userManager.precisaLiberarMemoria();
+    }
 
-            // Serializa e salva os usuários em XML
-            xstream.toXML(userManager.getUsuarios(), writerUsuarios);
-            // Serializa e salva as comunidades em XML
-            xstream.toXML(communityManager.getComunidades(), writerComunidades);
+    /**
+     * Descarrega da memória os usuários acessados há mais tempo. Se os usuários alterados desde o
+     * último snapshot impedirem de chegar à capacidade, grava antes um snapshot, que os escreve de
+     * volta, e tenta de novo. Exige que nenhuma outra operação esteja em andamento.
+     * @throws RuntimeException Se ocorrer algum erro ao gravar o snapshot
+     */
+    public void liberarMemoria() {
+        CacheDeUsuarios cache = userManager.getCache();
+        if (cache == null) {
+            return;
+        }
+        userManager.liberarMemoria(false);
+        if (userManager.getQuantidadeEmMemoria() > cache.getCapacidade() && cache.temSujos()) {
+            salvarSnapshot();
+            userManager.liberarMemoria(true);
+        }
+    }
+
+    /**
+     * Grava um novo snapshot e descarta o log; exige que nenhuma outra operação esteja em andamento
+     * @throws RuntimeException Se ocorrer algum erro durante o salvamento
+     */
+    public void compactar() {
+        salvarSnapshot();
+    }
+
+    /**
+     * Grava um snapshot com o estado atual, compacta o log e fecha o arquivo de log
+     * @throws RuntimeException Se ocorrer algum erro durante o salvamento
+     */
+    public void salvarDados() {
+        salvarSnapshot();
+        journal.fechar();
+    }
 
+    /**
+     * Regrava as partições alteradas do snapshot e troca atomicamente o manifesto. A sequência
+     * gravada impede que operações já contempladas sejam reaplicadas caso o sistema pare antes
+     * de o log ser truncado.
+     */
+    private void salvarSnapshot() {
+        try {
+            snapshot.gravar(journal.getUltimaSequencia(), userManager, communityManager);
+            tamanhoSnapshot = snapshot.getTamanho();
         } catch (IOException e) {
             throw new RuntimeException("Erro ao salvar os dados.", e);
         }
+        journal.truncar();
+    }
+
+    /**
+     * Obtém um usuário alterado por uma operação registrada com o login de outro (o remetente cujo
+     * último recado não lido foi lido), marcando a partição dele
+     * @param id Id interno do usuário
+     * @return Objeto Usuario ou null se o id não pertencer a um usuário cadastrado
+     */
+    public Usuario getRemetenteAlterado(int id) {
+        Usuario usuario = userManager.getUsuarioPorId(id);
+        if (usuario != null) {
+            snapshot.marcarUsuario(usuario.getLogin());
+        }
+        return usuario;
+    }
+
+    /**
+     * Marca as partições do snapshot alteradas por uma operação: as dos usuários cujos registros
+     * mudam e a da comunidade envolvida
+     * @param campos Nome da operação seguido de seus argumentos
+     */
+    private void marcarAlteradas(String[] campos) {
+        switch (campos[0]) {
+            case "criarUsuario":
+            case "editarPerfil":
+                snapshot.marcarUsuario(campos[1]);
+                break;
+            case "lerRecado":
+                // O remetente que perde a aresta reversa é marcado por getRemetenteAlterado
+                snapshot.marcarUsuario(campos[1]);
+                break;
+            case "adicionarAmigo":
+            case "adicionarIdolo":
+            case "adicionarPaquera":
+            case "adicionarInimigo":
+                snapshot.marcarUsuario(campos[1]);
+                snapshot.marcarUsuario(campos[2]);
+                break;
+            case "enviarRecado":
+                // O remetente guarda a aresta reversa para o destinatário
+                snapshot.marcarUsuario(campos[1]);
+                snapshot.marcarUsuario(campos[2]);
+                break;
+            case "criarComunidade":
+            case "adicionarComunidade":
+            case "enviarMensagem":
+                snapshot.marcarComunidade(campos[2]);
+                break;
+            case "lerMensagem":
+                if (campos.length > 2 && campos[2] != null) {
+                    snapshot.marcarComunidade(campos[2]);
+                } else {
+                    snapshot.marcarUsuario(campos[1]);
+                }
+                break;
+            default:
+                // zerarSistema, removerUsuario (que desfaz ligações em todas as partições) e
+                // operações de versões anteriores
+                snapshot.marcarTodas();
+        }
+    }
+
+    /**
+     * Reaplica uma operação lida do log diretamente nos gerenciadores. As operações são registradas
+     * depois das suas validações, então, na ordem do log, nenhuma deveria ser rejeitada: um registro
+     * rejeitado interrompe a carga, em vez de carregar um estado diferente do log
+     * @param campos Nome da operação seguido de seus argumentos
+     * @throws JournalInconsistenteException Se a operação for desconhecida, o usuário não existir ou
+     *                                       a operação falhar
+     */
+    private void aplicar(String[] campos) {
+        if (!OPERACOES.contains(campos[0])) {
+            throw new JournalInconsistenteException(campos, "Operação desconhecida.", null);
+        }
+        Usuario usuario = campos.length > 1 ? userManager.getUsuario(campos[1]) : null;
+        if (usuario == null && !campos[0].equals("zerarSistema") && !campos[0].equals("criarUsuario")) {
+            throw new JournalInconsistenteException(campos, "Usuário não cadastrado.", null);
+        }
+
+        try {
+            switch (campos[0]) {
+                case "zerarSistema":
+                    userManager.clear();
+                    communityManager.clear();
+                    break;
+                case "criarUsuario":
+                    userManager.criarUsuario(campos[1], campos[2], campos[3]);
+                    break;
+                case "removerUsuario":
+                    communityManager.removerComunidadesDoUsuario(usuario);
+                    userManager.removerUsuario(usuario);
+                    break;
+                case "editarPerfil":
+                    userManager.editarAtributo(usuario, campos[2], campos[3]);
+                    break;
+                case "adicionarAmigo":
+                    relationshipManager.adicionarAmigo(usuario, campos[2]);
+                    break;
+                case "enviarRecado":
+                    relationshipManager.enviarRecado(usuario, campos[2], campos[3]);
+                    break;
+                case "lerRecado":
+                    if (usuario.lerRecado(this::getRemetenteAlterado) == null) {
+                        throw new JournalInconsistenteException(campos, "Não há recados.", null);
+                    }
+                    break;
+                case "criarComunidade":
+                    communityManager.criarComunidade(usuario, campos[2], campos[3]);
+                    break;
+                case "adicionarComunidade":
+                    communityManager.adicionarMembro(usuario, campos[2]);
+                    break;
+                case "enviarMensagem":
+                    communityManager.enviarMensagemParaComunidade(usuario, campos[2], campos[3]);
+                    break;
+                case "lerMensagem":
+                    if (campos.length > 2) {
+                        communityManager.lerMensagemDe(usuario, campos[2]);
+                    } else {
+                        communityManager.lerMensagem(usuario, comunidade -> { });
+                    }
+                    break;
+                case "adicionarIdolo":
+                    relationshipManager.adicionarIdolo(usuario, campos[2]);
+                    break;
+                case "adicionarPaquera":
+                    relationshipManager.adicionarPaquera(usuario, campos[2]);
+                    break;
+                case "adicionarInimigo":
+                    relationshipManager.adicionarInimigo(usuario, campos[2]);
+                    break;
+            }
+        } catch (JournalInconsistenteException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new JournalInconsistenteException(campos, String.valueOf(e.getMessage()), e);
+        }
     }
 }
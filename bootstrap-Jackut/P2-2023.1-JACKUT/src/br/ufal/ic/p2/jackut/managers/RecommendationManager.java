@@ -0,0 +1,290 @@
+/**
+ * Recomenda amigos ("pessoas que você talvez conheça") a partir dos amigos dos amigos.
+ * <p>
+ * Cada candidato recebe pontos pelos amigos em comum e um bônus menor pelas comunidades em
+ * comum. Ficam de fora o próprio usuário, seus amigos, inimigos (em qualquer sentido) e usuários
+ * com convite de amizade pendente em qualquer sentido. A contagem usa vetores primitivos e a
+ * seleção guarda apenas os melhores candidatos, em um heap do tamanho pedido.
+ * </p>
+ * <p>
+ * Para usuários de grau alto, a contagem pode ser dividida em fatias da lista de amigos com
+ * trabalho equilibrado (soma dos graus dos amigos) e executada no pool fork/join comum.
+ * As listas de amigos dos amigos são lidas sem as travas deles: uma alteração simultânea pode
+ * deixar uma contagem desatualizada em uma unidade, o que é aceitável para uma recomendação.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.managers;
+
+import br.ufal.ic.p2.jackut.models.Usuario;
+import br.ufal.ic.p2.jackut.util.ContagemDeInteiros;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class RecommendationManager {
+    // Pontos por amigo em comum e por comunidade em comum
+    private static final int PESO_AMIGO_EM_COMUM = 2;
+    private static final int PESO_COMUNIDADE_EM_COMUM = 1;
+
+    // Trabalho (amigos de amigos a visitar) a partir do qual a contagem é feita em paralelo
+    private static final long TRABALHO_MINIMO_PARALELO = 200_000;
+
+    // Trabalho máximo de cada fatia da contagem paralela
+    private static final long TRABALHO_POR_FATIA = 50_000;
+
+    // Limite da capacidade inicial da contagem: o trabalho conta amigos de amigos repetidos, então
+    // superestima os candidatos distintos, e uma tabela maior que isso só cresce se for preciso
+    private static final int ESTIMATIVA_MAXIMA = 1 << 16;
+
+    // Gerenciadores consultados
+    private final UserManager userManager;
+    private final CommunityManager communityManager;
+
+    /**
+     * Construtor que recebe as dependências dos gerenciadores de usuários e de comunidades
+     * @param userManager Instância do gerenciador de usuários
+     * @param communityManager Instância do gerenciador de comunidades
+     */
+    public RecommendationManager(UserManager userManager, CommunityManager communityManager) {
+        this.userManager = userManager;
+        this.communityManager = communityManager;
+    }
+
+    /**
+     * Recomenda amigos, contando em paralelo quando o volume de amigos de amigos for grande
+     * @param usuario Usuário que receberá as recomendações
+     * @param quantidade Quantidade máxima de recomendações
+     * @return Logins recomendados, do mais para o menos relevante
+     * @throws RuntimeException Se a quantidade não for positiva
+     */
+    public List<String> recomendar(Usuario usuario, int quantidade) {
+        return recomendar(usuario, quantidade, null);
+    }
+
+    /**
+     * Recomenda amigos escolhendo explicitamente a contagem sequencial ou a paralela
+     * @param usuario Usuário que receberá as recomendações
+     * @param quantidade Quantidade máxima de recomendações
+     * @param paralelo true para a contagem fork/join, false para a sequencial, null para decidir
+     *                 pelo volume de trabalho
+     * @return Logins recomendados, do mais para o menos relevante
+     * @throws RuntimeException Se a quantidade não for positiva
+     */
+    public List<String> recomendar(Usuario usuario, int quantidade, Boolean paralelo) {
+        if (quantidade <= 0) {
+            throw new RuntimeException("Quantidade de recomendações inválida.");
+        }
+
+        // Amigos ainda cadastrados e soma acumulada dos seus graus, que mede o trabalho da contagem
+        int[] ids = usuario.getIdsAmigos();
+        Usuario[] amigos = new Usuario[ids.length];
+        long[] trabalhoAcumulado = new long[ids.length + 1];
+        int n = 0;
+        for (int id : ids) {
+            Usuario amigo = userManager.getUsuarioPorId(id);
+            if (amigo != null) {
+                amigos[n] = amigo;
+                trabalhoAcumulado[n + 1] = trabalhoAcumulado[n] + amigo.getQuantidadeAmigos();
+                n++;
+            }
+        }
+
+        long trabalho = trabalhoAcumulado[n];
+        boolean emParalelo = paralelo != null ? paralelo
+                : trabalho >= TRABALHO_MINIMO_PARALELO && ForkJoinPool.getCommonPoolParallelism() > 1;
+        ContagemDeInteiros emComum = emParalelo
+                ? ForkJoinPool.commonPool().invoke(new Contagem(amigos, trabalhoAcumulado, 0, n))
+                : contar(amigos, trabalhoAcumulado, 0, n);
+
+        return selecionar(usuario, emComum, quantidade);
+    }
+
+    // Conta, para cada amigo de amigo, quantos amigos da fatia [inicio, fim) ele tem
+    private static ContagemDeInteiros contar(Usuario[] amigos, long[] trabalhoAcumulado, int inicio, int fim) {
+        int estimativa = (int) Math.min(ESTIMATIVA_MAXIMA, trabalhoAcumulado[fim] - trabalhoAcumulado[inicio]);
+        ContagemDeInteiros contagem = new ContagemDeInteiros(estimativa);
+        for (int i = inicio; i < fim; i++) {
+            amigos[i].paraCadaAmigo(contagem::incrementar);
+        }
+        return contagem;
+    }
+
+    /**
+     * Filtra os candidatos e guarda os melhores em um heap de tamanho fixo. O bônus de
+     * comunidades só é calculado para candidatos que ainda podem entrar no heap.
+     */
+    private List<String> selecionar(Usuario usuario, ContagemDeInteiros emComum, int quantidade) {
+        Set<String> comunidades = communityManager.getNomesComunidadesDoUsuario(usuario.getLogin());
+        int bonusMaximo = comunidades.size() * PESO_COMUNIDADE_EM_COMUM;
+        Selecao selecao = new Selecao(Math.max(1, Math.min(quantidade, emComum.tamanho())));
+
+        emComum.paraCada((id, amigosEmComum) -> {
+            int pontos = amigosEmComum * PESO_AMIGO_EM_COMUM;
+            if (id == usuario.getId() || !selecao.podeEntrar(pontos + bonusMaximo)) {
+                return;
+            }
+            Usuario candidato = userManager.getUsuarioPorId(id);
+            if (candidato == null || usuario.ehAmigo(candidato)
+                    || userManager.saoInimigos(usuario, candidato)
+                    || usuario.enviouConviteA(candidato) || usuario.temConvitePendenteDe(candidato)) {
+                return;
+            }
+            if (bonusMaximo > 0) {
+                pontos += comunidadesEmComum(comunidades, candidato) * PESO_COMUNIDADE_EM_COMUM;
+            }
+            selecao.oferecer(candidato, pontos);
+        });
+        return selecao.getLogins();
+    }
+
+    // Conta as comunidades em comum percorrendo o menor dos dois conjuntos
+    private int comunidadesEmComum(Set<String> comunidades, Usuario candidato) {
+        Set<String> doCandidato = communityManager.getNomesComunidadesDoUsuario(candidato.getLogin());
+        Set<String> menor = doCandidato.size() < comunidades.size() ? doCandidato : comunidades;
+        Set<String> maior = menor == comunidades ? doCandidato : comunidades;
+        int emComum = 0;
+        for (String nome : menor) {
+            if (maior.contains(nome)) {
+                emComum++;
+            }
+        }
+        return emComum;
+    }
+
+    // Tarefa fork/join que divide a lista de amigos ao meio do trabalho até fatias pequenas. Só
+    // existe durante uma recomendação e nunca é serializada (RecursiveTask é Serializable)
+    @SuppressWarnings("serial")
+    private static class Contagem extends RecursiveTask<ContagemDeInteiros> {
+        private final Usuario[] amigos;
+        private final long[] trabalhoAcumulado;
+        private final int inicio;
+        private final int fim;
+
+        private Contagem(Usuario[] amigos, long[] trabalhoAcumulado, int inicio, int fim) {
+            this.amigos = amigos;
+            this.trabalhoAcumulado = trabalhoAcumulado;
+            this.inicio = inicio;
+            this.fim = fim;
+        }
+
+        @Override
+        protected ContagemDeInteiros compute() {
+            long trabalho = trabalhoAcumulado[fim] - trabalhoAcumulado[inicio];
+            if (fim - inicio < 2 || trabalho <= TRABALHO_POR_FATIA) {
+                return contar(amigos, trabalhoAcumulado, inicio, fim);
+            }
+
+            // Ponto que divide o trabalho ao meio (um amigo de grau muito alto fica sozinho na fatia)
+            long metade = trabalhoAcumulado[inicio] + trabalho / 2;
+            int meio = inicio + 1;
+            while (meio < fim - 1 && trabalhoAcumulado[meio] < metade) {
+                meio++;
+            }
+
+            Contagem direita = new Contagem(amigos, trabalhoAcumulado, meio, fim);
+            direita.fork();
+            ContagemDeInteiros resultado = new Contagem(amigos, trabalhoAcumulado, inicio, meio).compute();
+            ContagemDeInteiros outra = direita.join();
+            if (outra.tamanho() > resultado.tamanho()) {
+                ContagemDeInteiros troca = resultado;
+                resultado = outra;
+                outra = troca;
+            }
+            resultado.somarTudo(outra);
+            return resultado;
+        }
+    }
+
+    /**
+     * Heap mínimo de tamanho fixo com os melhores candidatos vistos: o pior fica na raiz e é
+     * substituído quando aparece um candidato melhor. Empates são decididos pelo login.
+     */
+    private static class Selecao {
+        private final Usuario[] candidatos;
+        private final int[] pontos;
+        private int tamanho;
+
+        private Selecao(int capacidade) {
+            candidatos = new Usuario[capacidade];
+            pontos = new int[capacidade];
+        }
+
+        // Indica se um candidato com estes pontos (no máximo) ainda pode entrar no heap
+        private boolean podeEntrar(int pontosMaximos) {
+            return tamanho < candidatos.length || pontosMaximos >= pontos[0];
+        }
+
+        private void oferecer(Usuario candidato, int valor) {
+            if (tamanho < candidatos.length) {
+                candidatos[tamanho] = candidato;
+                pontos[tamanho] = valor;
+                subir(tamanho++);
+            } else if (pior(0, candidato, valor)) {
+                candidatos[0] = candidato;
+                pontos[0] = valor;
+                descer(0);
+            }
+        }
+
+        // Logins do heap, do melhor para o pior
+        private List<String> getLogins() {
+            List<String> logins = new ArrayList<>(tamanho);
+            while (tamanho > 0) {
+                logins.add(candidatos[0].getLogin());
+                trocar(0, --tamanho);
+                candidatos[tamanho] = null;
+                descer(0);
+            }
+            Collections.reverse(logins);
+            return logins;
+        }
+
+        // Verifica se a entrada i é pior que o candidato informado (menos pontos ou login maior)
+        private boolean pior(int i, Usuario candidato, int valor) {
+            if (pontos[i] != valor) {
+                return pontos[i] < valor;
+            }
+            return candidatos[i].getLogin().compareTo(candidato.getLogin()) > 0;
+        }
+
+        private void subir(int i) {
+            while (i > 0) {
+                int pai = (i - 1) / 2;
+                if (!pior(i, candidatos[pai], pontos[pai])) {
+                    return;
+                }
+                trocar(i, pai);
+                i = pai;
+            }
+        }
+
+        private void descer(int i) {
+            while (true) {
+                int menor = i;
+                for (int filho = 2 * i + 1; filho <= 2 * i + 2 && filho < tamanho; filho++) {
+                    if (pior(filho, candidatos[menor], pontos[menor])) {
+                        menor = filho;
+                    }
+                }
+                if (menor == i) {
+                    return;
+                }
+                trocar(i, menor);
+                i = menor;
+            }
+        }
+
+        private void trocar(int i, int j) {
+            Usuario candidato = candidatos[i];
+            candidatos[i] = candidatos[j];
+            candidatos[j] = candidato;
+            int valor = pontos[i];
+            pontos[i] = pontos[j];
+            pontos[j] = valor;
+        }
+    }
+}
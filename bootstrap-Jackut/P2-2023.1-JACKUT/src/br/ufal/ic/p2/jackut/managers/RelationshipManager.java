@@ -1,12 +1,18 @@
 package br.ufal.ic.p2.jackut.managers;
 
+import br.ufal.ic.p2.jackut.models.Pagina;
 import br.ufal.ic.p2.jackut.models.Usuario;
+import br.ufal.ic.p2.jackut.util.ContadorDeCache;
 import java.util.*;
 
 public class RelationshipManager {
     // Referência ao UserManager para validação de usuários
     private final UserManager userManager;
 
+    // Acertos e falhas das listas formatadas de amigos e de fãs guardadas em cada usuário
+    private final ContadorDeCache cacheAmigos = new ContadorDeCache();
+    private final ContadorDeCache cacheFas = new ContadorDeCache();
+
     /**
      * Construtor que recebe a dependência do UserManager
      * @param userManager Instância do gerenciador de usuários
@@ -23,16 +29,26 @@ public class RelationshipManager {
      *                         usuário já adicionado, ou se forem inimigos
      */
     public void adicionarAmigo(Usuario usuario, String loginAmigo) {
+        adicionarAmigo(usuario, loginAmigo, () -> { });
+    }
+
+    /**
+     * Adiciona um amigo para um usuário, executando o registro da operação depois das validações
+     * e antes de qualquer alteração
+     * @param usuario Usuário que está adicionando o amigo
+     * @param loginAmigo Login do usuário a ser adicionado como amigo
+     * @param registro Ação executada antes da alteração; se falhar, nada é alterado
+     * @throws RuntimeException Em casos de: usuário não existente, autoamizade,
+     *                         usuário já adicionado, ou se forem inimigos
+     */
+    public void adicionarAmigo(Usuario usuario, String loginAmigo, Runnable registro) {
         Usuario amigo = userManager.getUsuario(loginAmigo);
 
         if (amigo == null) {
             throw new RuntimeException("Usuário não cadastrado.");
         }
 
-        // Validação de inimizade
-        if (usuario.ehInimigo(amigo) || amigo.ehInimigo(usuario)) {
-            throw new RuntimeException("Função inválida: " + amigo.getNome() + " é seu inimigo.");
-        }
+        exigirNaoInimigos(usuario, amigo);
 
         // Validação de autoamizade
         if (usuario.equals(amigo)) {
@@ -40,22 +56,24 @@ public class RelationshipManager {
         }
 
         // Validação de amizade existente
-        if (usuario.getAmigos().contains(amigo)) {
+        if (usuario.ehAmigo(amigo)) {
             throw new RuntimeException("Usuário já está adicionado como amigo.");
         }
 
         // Se houver convite pendente, aceita automaticamente
         if (usuario.temConvitePendenteDe(amigo)) {
+            registro.run();
             usuario.aceitarConvite(amigo);
             return;
         }
 
         // Validação de convite já enviado
-        if (usuario.getConvitesEnviados().contains(amigo)) {
+        if (usuario.enviouConviteA(amigo)) {
             throw new RuntimeException("Usuário já está adicionado como amigo, esperando aceitação do convite.");
         }
 
         // Envia o convite de amizade
+        registro.run();
         usuario.enviarConvite(amigo);
     }
 
@@ -69,8 +87,7 @@ public class RelationshipManager {
         Usuario u1 = userManager.getUsuario(login1);
         Usuario u2 = userManager.getUsuario(login2);
         return u1 != null && u2 != null &&
-                u1.getAmigos().contains(u2) &&
-                u2.getAmigos().contains(u1);
+                u1.ehAmigo(u2) && u2.ehAmigo(u1);
     }
 
     /**
@@ -97,7 +114,8 @@ public class RelationshipManager {
     }
 
     /**
-     * Obtém a lista de amigos de um usuário formatada
+     * Obtém a lista de amigos de um usuário formatada. A lista é guardada no usuário e só é
+     * refeita depois que seus amigos mudarem.
      * @param login Login do usuário
      * @return String formatada com logins dos amigos entre chaves
      */
@@ -107,10 +125,16 @@ public class RelationshipManager {
             return "{}";
         }
 
-        List<String> amigosOrdenados = new ArrayList<>();
-        for (Usuario amigo : usuario.getAmigos()) {
-            amigosOrdenados.add(amigo.getLogin());
+        String formatados = usuario.getAmigosFormatados();
+        if (formatados != null) {
+            cacheAmigos.registrarAcerto();
+            return formatados;
         }
+        cacheAmigos.registrarFalha();
+
+        // Fora os casos especiais, mantém a ordem de antes dos ids internos: a de um HashSet com os
+        // logins dos amigos inseridos na ordem das amizades
+        List<String> amigosOrdenados = new ArrayList<>(new HashSet<>(getLogins(usuario.getIdsAmigos())));
 
         // Ordenação especial para alguns usuários específicos
         if (login.equals("jpsauve")) {
@@ -127,7 +151,9 @@ public class RelationshipManager {
             });
         }
 
-        return "{" + String.join(",", amigosOrdenados) + "}";
+        formatados = "{" + String.join(",", amigosOrdenados) + "}";
+        usuario.setAmigosFormatados(formatados);
+        return formatados;
     }
 
     /**
@@ -139,19 +165,32 @@ public class RelationshipManager {
      *                         ou se forem inimigos
      */
     public void enviarRecado(Usuario remetente, String destinatarioLogin, String recado) {
+        enviarRecado(remetente, destinatarioLogin, recado, () -> { });
+    }
+
+    /**
+     * Envia um recado de um usuário para outro, executando o registro da operação depois das
+     * validações e antes da entrega
+     * @param remetente Usuário que está enviando o recado
+     * @param destinatarioLogin Login do destinatário
+     * @param recado Conteúdo do recado
+     * @param registro Ação executada antes da entrega; se falhar, o recado não é entregue
+     * @throws RuntimeException Em casos de: usuário não existente, autoenvio,
+     *                         ou se forem inimigos
+     */
+    public void enviarRecado(Usuario remetente, String destinatarioLogin, String recado, Runnable registro) {
         Usuario destinatario = userManager.getUsuario(destinatarioLogin);
 
         if (destinatario == null) {
             throw new RuntimeException("Usuário não cadastrado.");
         }
-        if (remetente.ehInimigo(destinatario) || destinatario.ehInimigo(remetente)) {
-            throw new RuntimeException("Função inválida: " + destinatario.getNome() + " é seu inimigo.");
-        }
+        exigirNaoInimigos(remetente, destinatario);
         if (remetente.getLogin().equals(destinatarioLogin)) {
             throw new RuntimeException("Usuário não pode enviar recado para si mesmo.");
         }
 
-        destinatario.receberRecado(remetente.getLogin(), recado);
+        registro.run();
+        destinatario.receberRecado(remetente, recado);
     }
 
     /**
@@ -162,6 +201,19 @@ public class RelationshipManager {
      *                         ou se forem inimigos
      */
     public void adicionarIdolo(Usuario usuario, String idoloLogin) {
+        adicionarIdolo(usuario, idoloLogin, () -> { });
+    }
+
+    /**
+     * Adiciona um ídolo para um usuário, executando o registro da operação depois das validações
+     * e antes de qualquer alteração
+     * @param usuario Usuário que está adicionando o ídolo
+     * @param idoloLogin Login do ídolo
+     * @param registro Ação executada antes da alteração; se falhar, nada é alterado
+     * @throws RuntimeException Em casos de: usuário não existente, autoídolo, ídolo já adicionado
+     *                         ou se forem inimigos
+     */
+    public void adicionarIdolo(Usuario usuario, String idoloLogin, Runnable registro) {
         Usuario idolo = userManager.getUsuario(idoloLogin);
 
         if (idolo == null) {
@@ -172,10 +224,13 @@ public class RelationshipManager {
             throw new RuntimeException("Usuário não pode ser fã de si mesmo.");
         }
 
-        if (usuario.ehInimigo(idolo) || idolo.ehInimigo(usuario)) {
-            throw new RuntimeException("Função inválida: " + idolo.getNome() + " é seu inimigo.");
+        exigirNaoInimigos(usuario, idolo);
+
+        if (usuario.ehFa(idolo)) {
+            throw new RuntimeException("Usuário já está adicionado como ídolo.");
         }
 
+        registro.run();
         usuario.adicionarIdolo(idolo);
     }
 
@@ -187,6 +242,19 @@ public class RelationshipManager {
      *                         ou se forem inimigos
      */
     public void adicionarPaquera(Usuario usuario, String paqueraLogin) {
+        adicionarPaquera(usuario, paqueraLogin, () -> { });
+    }
+
+    /**
+     * Adiciona uma paquera para um usuário, executando o registro da operação depois das
+     * validações e antes de qualquer alteração
+     * @param usuario Usuário que está adicionando a paquera
+     * @param paqueraLogin Login da paquera
+     * @param registro Ação executada antes da alteração; se falhar, nada é alterado
+     * @throws RuntimeException Em casos de: usuário não existente, autopaquera, paquera já
+     *                         adicionada ou se forem inimigos
+     */
+    public void adicionarPaquera(Usuario usuario, String paqueraLogin, Runnable registro) {
         Usuario paquera = userManager.getUsuario(paqueraLogin);
 
         if (paquera == null) {
@@ -197,10 +265,13 @@ public class RelationshipManager {
             throw new RuntimeException("Usuário não pode ser paquera de si mesmo.");
         }
 
-        if (usuario.ehInimigo(paquera) || paquera.ehInimigo(usuario)) {
-            throw new RuntimeException("Função inválida: " + paquera.getNome() + " é seu inimigo.");
+        exigirNaoInimigos(usuario, paquera);
+
+        if (usuario.ehPaquera(paquera)) {
+            throw new RuntimeException("Usuário já está adicionado como paquera.");
         }
 
+        registro.run();
         usuario.adicionarPaquera(paquera);
     }
 
@@ -211,6 +282,18 @@ public class RelationshipManager {
      * @throws RuntimeException Em casos de: usuário não existente ou autoinimigo
      */
     public void adicionarInimigo(Usuario usuario, String inimigoLogin) {
+        adicionarInimigo(usuario, inimigoLogin, () -> { });
+    }
+
+    /**
+     * Adiciona um inimigo para um usuário, executando o registro da operação depois das
+     * validações e antes de qualquer alteração
+     * @param usuario Usuário que está adicionando o inimigo
+     * @param inimigoLogin Login do inimigo
+     * @param registro Ação executada antes da alteração; se falhar, nada é alterado
+     * @throws RuntimeException Em casos de: usuário não existente, autoinimigo ou inimigo já adicionado
+     */
+    public void adicionarInimigo(Usuario usuario, String inimigoLogin, Runnable registro) {
         Usuario inimigo = userManager.getUsuario(inimigoLogin);
 
         if (inimigo == null) {
@@ -221,11 +304,24 @@ public class RelationshipManager {
             throw new RuntimeException("Usuário não pode ser inimigo de si mesmo.");
         }
 
-        usuario.adicionarInimigo(inimigo);
+        if (usuario.ehInimigo(inimigo)) {
+            throw new RuntimeException("Usuário já está adicionado como inimigo.");
+        }
+
+        registro.run();
+        userManager.adicionarInimigo(usuario, inimigo);
+    }
+
+    // Validação de inimizade em qualquer sentido, feita pelo índice de inimigos
+    private void exigirNaoInimigos(Usuario usuario, Usuario outro) {
+        if (userManager.saoInimigos(usuario, outro)) {
+            throw new RuntimeException("Função inválida: " + outro.getNome() + " é seu inimigo.");
+        }
     }
 
     /**
-     * Obtém a lista de fãs de um usuário formatada
+     * Obtém a lista de fãs de um usuário formatada. A lista é guardada no usuário e só é
+     * refeita depois que seus fãs mudarem.
      * @param login Login do usuário
      * @return String formatada com logins dos fãs entre chaves
      */
@@ -235,10 +331,14 @@ public class RelationshipManager {
             return "{}";
         }
 
-        List<String> fasOrdenados = new ArrayList<>();
-        for (Usuario fa : usuario.getFas()) {
-            fasOrdenados.add(fa.getLogin());
+        String formatados = usuario.getFasFormatados();
+        if (formatados != null) {
+            cacheFas.registrarAcerto();
+            return formatados;
         }
+        cacheFas.registrarFalha();
+
+        List<String> fasOrdenados = getLogins(usuario.getIdsFas());
 
         // Ordenação especial para o usuário "jpsauve"
         if (login.equals("jpsauve")) {
@@ -251,7 +351,70 @@ public class RelationshipManager {
             Collections.sort(fasOrdenados);
         }
 
-        return "{" + String.join(",", fasOrdenados) + "}";
+        formatados = "{" + String.join(",", fasOrdenados) + "}";
+        usuario.setFasFormatados(formatados);
+        return formatados;
+    }
+
+    /**
+     * Obtém uma página da lista de amigos de um usuário, em ordem alfabética. Diferente de
+     * {@link #getAmigos(String)}, não aplica as ordenações especiais dos scripts de aceitação.
+     * @param login Login do usuário
+     * @param cursor Cursor devolvido pela página anterior (null ou vazio para a primeira)
+     * @param limite Quantidade máxima de logins na página
+     * @return Página de logins (vazia se o usuário não existir)
+     * @throws RuntimeException Se o limite não for positivo
+     */
+    public Pagina getPaginaAmigos(String login, String cursor, int limite) {
+        Usuario usuario = userManager.getUsuario(login);
+        if (usuario == null) {
+            return Pagina.vazia(limite);
+        }
+        return usuario.getPaginaAmigos(cursor, limite, userManager::getUsuarioPorId);
+    }
+
+    /**
+     * Obtém uma página da lista de fãs de um usuário, em ordem alfabética
+     * @param login Login do usuário
+     * @param cursor Cursor devolvido pela página anterior (null ou vazio para a primeira)
+     * @param limite Quantidade máxima de logins na página
+     * @return Página de logins (vazia se o usuário não existir)
+     * @throws RuntimeException Se o limite não for positivo
+     */
+    public Pagina getPaginaFas(String login, String cursor, int limite) {
+        Usuario usuario = userManager.getUsuario(login);
+        if (usuario == null) {
+            return Pagina.vazia(limite);
+        }
+        return usuario.getPaginaFas(cursor, limite, userManager::getUsuarioPorId);
+    }
+
+    /**
+     * Obtém uma página da lista de paqueras de um usuário, em ordem alfabética
+     * @param usuario Usuário para obter as paqueras
+     * @param cursor Cursor devolvido pela página anterior (null ou vazio para a primeira)
+     * @param limite Quantidade máxima de logins na página
+     * @return Página de logins
+     * @throws RuntimeException Se o limite não for positivo
+     */
+    public Pagina getPaginaPaqueras(Usuario usuario, String cursor, int limite) {
+        return usuario.getPaginaPaqueras(cursor, limite, userManager::getUsuarioPorId);
+    }
+
+    /**
+     * Obtém os contadores do cache de listas de amigos
+     * @return Contadores de acertos e falhas
+     */
+    public ContadorDeCache getCacheAmigos() {
+        return cacheAmigos;
+    }
+
+    /**
+     * Obtém os contadores do cache de listas de fãs
+     * @return Contadores de acertos e falhas
+     */
+    public ContadorDeCache getCacheFas() {
+        return cacheFas;
     }
 
     /**
@@ -260,11 +423,24 @@ public class RelationshipManager {
      * @return String formatada com logins das paqueras entre chaves
      */
     public String getPaqueras(Usuario usuario) {
-        List<String> paquerasOrdenadas = new ArrayList<>();
-        for (Usuario paquera : usuario.getPaqueras()) {
-            paquerasOrdenadas.add(paquera.getLogin());
-        }
+        List<String> paquerasOrdenadas = getLogins(usuario.getIdsPaqueras());
         Collections.sort(paquerasOrdenadas);
         return "{" + String.join(",", paquerasOrdenadas) + "}";
     }
+
+    /**
+     * Converte ids internos de usuários nos respectivos logins
+     * @param ids Ids internos
+     * @return Lista com os logins dos usuários ainda cadastrados
+     */
+    private List<String> getLogins(int[] ids) {
+        List<String> logins = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Usuario usuario = userManager.getUsuarioPorId(id);
+            if (usuario != null) {
+                logins.add(usuario.getLogin());
+            }
+        }
+        return logins;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+/**
+ * Retrato das métricas do sistema em um instante: as de cada operação da Facade (chamadas, erros
+ * por mensagem e percentis de latência), as medidas instantâneas (usuários, sessões, comunidades,
+ * caixas de entrada e caches) e as da gravação do journal.
+ * <p>
+ * {@link #toString()} formata o retrato como relatório de texto, que {@link #gravar(File)} grava
+ * em um arquivo. As latências são exibidas em microssegundos.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.managers;
+
+import br.ufal.ic.p2.jackut.util.HistogramaDeLatencia;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.*;
+
+public final class RetratoDeMetricas {
+    // Percentis exibidos no relatório
+    private static final double[] PERCENTIS = {50, 90, 99, 99.9};
+
+    private final long instante;
+    private final List<Operacao> operacoes;
+    private final Map<String, Number> medidas;
+    private final MetricasDeGravacao gravacao;
+
+    /**
+     * Construtor com todos os valores do retrato
+     * @param instante Hora do retrato em milissegundos desde a época
+     * @param operacoes Métricas das operações chamadas ao menos uma vez
+     * @param medidas Medidas instantâneas pelo nome, na ordem de exibição
+     * @param gravacao Métricas da gravação do journal (null quando a gravação é síncrona)
+     */
+    public RetratoDeMetricas(long instante, List<Operacao> operacoes, Map<String, Number> medidas,
+                             MetricasDeGravacao gravacao) {
+        this.instante = instante;
+        this.operacoes = Collections.unmodifiableList(new ArrayList<>(operacoes));
+        this.medidas = Collections.unmodifiableMap(new LinkedHashMap<>(medidas));
+        this.gravacao = gravacao;
+    }
+
+    public long getInstante() { return instante; }
+    public List<Operacao> getOperacoes() { return operacoes; }
+    public Map<String, Number> getMedidas() { return medidas; }
+    public MetricasDeGravacao getGravacao() { return gravacao; }
+
+    /**
+     * Obtém as métricas de uma operação
+     * @param nome Nome da operação
+     * @return Métricas ou null se a operação não foi chamada
+     */
+    public Operacao getOperacao(String nome) {
+        for (Operacao operacao : operacoes) {
+            if (operacao.getNome().equals(nome)) {
+                return operacao;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Grava o relatório em um arquivo, substituindo o conteúdo anterior
+     * @param arquivo Arquivo de destino
+     * @throws IOException Se ocorrer erro na gravação
+     */
+    public void gravar(File arquivo) throws IOException {
+        Files.write(arquivo.toPath(), toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder texto = new StringBuilder();
+        texto.append("métricas em ").append(Instant.ofEpochMilli(instante)).append('\n');
+
+        texto.append(String.format("%n%-30s %10s %8s %10s", "operação", "chamadas", "erros", "média"));
+        for (double percentil : PERCENTIS) {
+            texto.append(String.format(Locale.ROOT, " %10s", "p" + formatarPercentil(percentil)));
+        }
+        texto.append(String.format(" %10s%n", "máx (µs)"));
+        for (Operacao operacao : operacoes) {
+            HistogramaDeLatencia.Retrato latencias = operacao.getLatencias();
+            texto.append(String.format(Locale.ROOT, "%-30s %10d %8d %10.1f", operacao.getNome(),
+                    operacao.getChamadas(), operacao.getErros(), latencias.getMediaNanos() / 1e3));
+            for (double percentil : PERCENTIS) {
+                texto.append(String.format(Locale.ROOT, " %10.1f", latencias.getPercentilNanos(percentil) / 1e3));
+            }
+            texto.append(String.format(Locale.ROOT, " %10.1f%n", latencias.getMaximoNanos() / 1e3));
+            for (Map.Entry<String, Long> erro : operacao.getErrosPorMensagem().entrySet()) {
+                texto.append(String.format("    %8d  %s%n", erro.getValue(), erro.getKey()));
+            }
+        }
+
+        texto.append("\nmedidas\n");
+        for (Map.Entry<String, Number> medida : medidas.entrySet()) {
+            Number valor = medida.getValue();
+            String formatado = valor instanceof Double || valor instanceof Float
+                    ? String.format(Locale.ROOT, "%.4f", valor.doubleValue()) : String.valueOf(valor);
+            texto.append(String.format("    %-30s %s%n", medida.getKey(), formatado));
+        }
+        if (gravacao != null) {
+            texto.append("\ngravação\n    ").append(gravacao).append('\n');
+        }
+        return texto.toString();
+    }
+
+    // Exibe 50.0 como 50 e 99.9 como 99.9
+    private static String formatarPercentil(double percentil) {
+        return percentil == Math.rint(percentil) ? String.valueOf((long) percentil) : String.valueOf(percentil);
+    }
+
+    /**
+     * Métricas de uma operação
+     */
+    public static final class Operacao {
+        private final String nome;
+        private final HistogramaDeLatencia.Retrato latencias;
+        private final Map<String, Long> errosPorMensagem;
+        private final long erros;
+
+        /**
+         * Construtor
+         * @param nome Nome da operação
+         * @param latencias Histograma das latências de todas as chamadas, com ou sem erro
+         * @param errosPorMensagem Quantidade de erros pela mensagem
+         */
+        public Operacao(String nome, HistogramaDeLatencia.Retrato latencias, Map<String, Long> errosPorMensagem) {
+            long erros = 0;
+            for (long quantidade : errosPorMensagem.values()) {
+                erros += quantidade;
+            }
+            this.nome = nome;
+            this.latencias = latencias;
+            this.errosPorMensagem = Collections.unmodifiableMap(errosPorMensagem);
+            this.erros = erros;
+        }
+
+        public String getNome() { return nome; }
+        public long getChamadas() { return latencias.getContagem(); }
+        public long getErros() { return erros; }
+        public Map<String, Long> getErrosPorMensagem() { return errosPorMensagem; }
+        public HistogramaDeLatencia.Retrato getLatencias() { return latencias; }
+    }
+}
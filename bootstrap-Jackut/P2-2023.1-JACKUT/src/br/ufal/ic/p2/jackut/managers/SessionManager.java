@@ -1,24 +1,80 @@
 package br.ufal.ic.p2.jackut.managers;
 
+import br.ufal.ic.p2.jackut.models.Sessao;
 import br.ufal.ic.p2.jackut.models.Usuario;
+import br.ufal.ic.p2.jackut.util.RodaDeTempo;
+import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
 
 public class SessionManager {
-    // Mapa que armazena as sessões ativas (idSessao -> login)
-    private final Map<String, String> sessoes = new HashMap<>();
+    // Quantidade de partições das sessões (potência de 2)
+    private static final int PARTICOES = 16;
 
-    // Contador para gerar IDs únicos de sessão
-    private int proximoIdSessao = 1;
+    // Tempos padrão, em segundos, de vida e de ociosidade das sessões. Podem ser alterados pelas
+    // propriedades jackut.sessao.tempoDeVida e jackut.sessao.tempoOcioso (0 desliga o vencimento)
+    private static final long TEMPO_DE_VIDA_PADRAO = 24 * 60 * 60;
+    private static final long TEMPO_OCIOSO_PADRAO = 2 * 60 * 60;
+
+    // Duração de cada tick e quantidade de posições da roda de vencimentos
+    private static final long DURACAO_TICK = 1000;
+    private static final int POSICOES_RODA = 512;
+
+    // Partições das sessões ativas. Cada sessão fica na partição do seu ID e cada login tem,
+    // na partição do login, o conjunto das suas sessões, para encerrá-las sem varrer as demais.
+    // A sessão guarda a referência ao usuário, então resolvê-la custa uma única consulta
+    private final Particao[] particoes = new Particao[PARTICOES];
+
+    // Quantidade de bytes aleatórios em cada ID de sessão
+    private static final int BYTES_ID_SESSAO = 16;
+
+    // Gerador dos IDs de sessão. O ID é a única credencial das requisições que usam a sessão (no
+    // servidor, inclusive de outras conexões), então não pode ser deduzido dos IDs já emitidos
+    private final SecureRandom geradorIds = new SecureRandom();
 
     // Referência ao UserManager para validação de usuários
     private final UserManager userManager;
 
+    // Relógio em milissegundos e limites de vencimento (0 para ilimitado)
+    private final LongSupplier relogio;
+    private final long tempoDeVida;
+    private final long tempoOcioso;
+
+    // Roda com o vencimento das sessões. Um uso da sessão não a reagenda: quando a posição vence,
+    // o prazo real é recalculado e a sessão volta para a roda se ainda estiver dentro dele
+    private final RodaDeTempo<Sessao> vencimentos;
+
+    // Instante a partir do qual vale a pena avançar a roda de novo
+    private volatile long proximaVarredura;
+
     /**
-     * Construtor que recebe a dependência do UserManager
+     * Construtor que recebe a dependência do UserManager e usa o relógio monotônico do sistema e
+     * os tempos de vencimento configurados nas propriedades do sistema
      * @param userManager Instância do gerenciador de usuários
      */
     public SessionManager(UserManager userManager) {
+        this(userManager, () -> System.nanoTime() / 1_000_000,
+                Long.getLong("jackut.sessao.tempoDeVida", TEMPO_DE_VIDA_PADRAO) * 1000,
+                Long.getLong("jackut.sessao.tempoOcioso", TEMPO_OCIOSO_PADRAO) * 1000);
+    }
+
+    /**
+     * Construtor com relógio e tempos de vencimento explícitos
+     * @param userManager Instância do gerenciador de usuários
+     * @param relogio Relógio em milissegundos
+     * @param tempoDeVida Tempo máximo de vida de uma sessão em milissegundos (0 para ilimitado)
+     * @param tempoOcioso Tempo máximo sem uso de uma sessão em milissegundos (0 para ilimitado)
+     */
+    public SessionManager(UserManager userManager, LongSupplier relogio, long tempoDeVida, long tempoOcioso) {
         this.userManager = userManager;
+        this.relogio = relogio;
+        this.tempoDeVida = Math.max(0, tempoDeVida);
+        this.tempoOcioso = Math.max(0, tempoOcioso);
+        this.vencimentos = new RodaDeTempo<>(POSICOES_RODA, DURACAO_TICK, relogio.getAsLong());
+        for (int i = 0; i < PARTICOES; i++) {
+            particoes[i] = new Particao();
+        }
     }
 
     /**
@@ -29,17 +85,49 @@ public class SessionManager {
      * @throws RuntimeException Se as credenciais forem inválidas
      */
     public String abrirSessao(String login, String senha) {
-        // Obtém e valida o usuário
-        Usuario usuario = userManager.getUsuario(login);
-        if (usuario == null || !usuario.getSenha().equals(senha)) {
-            throw new RuntimeException("Login ou senha inválidos.");
+        // Se as sessões do usuário forem encerradas durante a abertura (ele foi removido), as
+        // credenciais são validadas de novo: o login pode não existir mais ou ser de outro usuário
+        while (true) {
+            // Obtém e valida o usuário
+            Usuario usuario = userManager.getUsuario(login);
+            if (usuario == null || !usuario.getSenha().equals(senha)) {
+                throw new RuntimeException("Login ou senha inválidos.");
+            }
+            String idSessao = registrarSessao(login, usuario);
+            if (idSessao != null) {
+                return idSessao;
+            }
         }
+    }
 
-        // Cria um ID único para a nova sessão
-        String idSessao = "sessao_" + proximoIdSessao++;
+    // Cria e registra uma sessão para o usuário já validado; devolve null se as sessões dele foram
+    // encerradas antes de ela entrar no mapa por ID
+    private String registrarSessao(String login, Usuario usuario) {
+        // Cria um ID imprevisível para a nova sessão
+        String idSessao = novoIdSessao();
+        long agora = relogio.getAsLong();
+        Sessao sessao = new Sessao(idSessao, usuario, agora);
+
+        // Registra primeiro no índice do usuário: se as sessões dele forem encerradas entre os
+        // dois registros, esta também é marcada como encerrada antes de a partição do ID ser
+        // travada por quem as encerra, e por isso não chega a entrar no mapa por ID
+        Particao doLogin = particao(login);
+        synchronized (doLogin) {
+            doLogin.porLogin.computeIfAbsent(login, k -> new HashSet<>()).add(sessao);
+        }
+        Particao doId = particao(idSessao);
+        synchronized (doId) {
+            if (sessao.isEncerrada()) {
+                return null;
+            }
+            doId.porId.put(idSessao, sessao);
+        }
 
-        // Registra a sessão no mapa
-        sessoes.put(idSessao, login);
+        long vencimento = sessao.getVencimento(tempoDeVida, tempoOcioso);
+        if (vencimento != Long.MAX_VALUE) {
+            vencimentos.agendar(sessao, vencimento);
+        }
+        recolherVencidas(agora);
 
         return idSessao;
     }
@@ -48,7 +136,7 @@ public class SessionManager {
      * Obtém o usuário associado a uma sessão
      * @param idSessao ID da sessão
      * @return Objeto Usuario associado à sessão
-     * @throws RuntimeException Se a sessão for inválida ou o usuário não existir
+     * @throws RuntimeException Se a sessão for inválida, tiver vencido ou o usuário não existir
      */
     public Usuario getUsuarioPorSessao(String idSessao) {
         // Validação básica do ID da sessão
@@ -56,16 +144,30 @@ public class SessionManager {
             throw new RuntimeException("Usuário não cadastrado.");
         }
 
-        // Obtém o login associado à sessão
-        String login = sessoes.get(idSessao);
+        long agora = relogio.getAsLong();
+        recolherVencidas(agora);
 
-        // Verifica se o usuário ainda existe no sistema
-        if (login == null || !userManager.containsUsuario(login)) {
+        // Obtém a sessão, que pode ter vencido sem ter sido recolhida ainda
+        Sessao sessao = particao(idSessao).porId.get(idSessao);
+        if (sessao == null || sessao.isEncerrada() || sessao.getVencimento(tempoDeVida, tempoOcioso) <= agora) {
             throw new RuntimeException("Usuário não cadastrado.");
         }
+        // O último acesso só é regravado uma vez por tick: a gravação em toda chamada custaria uma
+        // escrita volátil numa linha de cache diferente a cada sessão, sem ganho de precisão
+        if (tempoOcioso > 0 && agora - sessao.getUltimoAcesso() >= DURACAO_TICK) {
+            sessao.tocar(agora);
+        }
 
-        // Retorna o objeto Usuario completo
-        Usuario usuario = userManager.getUsuario(login);
+        // A referência guardada vale enquanto a geração do usuário não mudar; se mudou
+        // (usuário removido, substituído ou descarregado), resolve de novo pelo login. O acesso é
+        // registrado no cache como numa consulta pelo login, para que a carga sob demanda não
+        // descarregue o usuário antes de a operação travá-lo
+        if (sessao.isUsuarioValido()) {
+            Usuario usuario = sessao.getUsuario();
+            userManager.registrarAcesso(usuario);
+            return usuario;
+        }
+        Usuario usuario = userManager.getUsuario(sessao.getLogin());
         if (usuario == null) {
             throw new RuntimeException("Usuário não cadastrado.");
         }
@@ -74,19 +176,112 @@ public class SessionManager {
     }
 
     /**
-     * Remove todas as sessões de um usuário específico
+     * Remove todas as sessões de um usuário específico, em tempo proporcional
+     * à quantidade de sessões dele
      * @param login Login do usuário cujas sessões serão encerradas
      */
     public void removeSessoesDoUsuario(String login) {
-        sessoes.values().removeIf(v -> v.equals(login));
+        Set<Sessao> sessoes;
+        Particao doLogin = particao(login);
+        synchronized (doLogin) {
+            sessoes = doLogin.porLogin.remove(login);
+        }
+        if (sessoes == null) {
+            return;
+        }
+        for (Sessao sessao : sessoes) {
+            sessao.encerrar();
+            Particao doId = particao(sessao.getId());
+            synchronized (doId) {
+                doId.porId.remove(sessao.getId(), sessao);
+            }
+        }
     }
 
     /**
-     * Limpa todas as sessões e reinicia o contador de IDs
+     * Conta as sessões ativas (inclui as vencidas que ainda não foram recolhidas)
+     * @return Quantidade de sessões
+     */
+    public int getQuantidadeSessoes() {
+        int total = 0;
+        for (Particao particao : particoes) {
+            total += particao.porId.size();
+        }
+        return total;
+    }
+
+    /**
+     * Encerra e remove todas as sessões
      * (Usado para resetar o sistema)
      */
     public void clear() {
-        sessoes.clear();
-        proximoIdSessao = 1;
+        for (Particao particao : particoes) {
+            synchronized (particao) {
+                for (Sessao sessao : particao.porId.values()) {
+                    sessao.encerrar();
+                }
+                particao.porId.clear();
+                particao.porLogin.clear();
+            }
+        }
+        vencimentos.limpar();
+    }
+
+    // Gera um ID de sessão com BYTES_ID_SESSAO bytes aleatórios, em Base64 sem caracteres que
+    // precisem de aspas nos scripts
+    private String novoIdSessao() {
+        byte[] bytes = new byte[BYTES_ID_SESSAO];
+        geradorIds.nextBytes(bytes);
+        return "sessao_" + Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    // Avança a roda de vencimentos, no máximo uma vez por tick, removendo as sessões vencidas
+    private void recolherVencidas(long agora) {
+        if (agora < proximaVarredura) {
+            return;
+        }
+        proximaVarredura = agora + DURACAO_TICK;
+        vencimentos.avancar(agora, sessao -> {
+            if (sessao.isEncerrada()) {
+                // Já saiu dos mapas quando foi encerrada; a remoção repetida é inofensiva
+                remover(sessao);
+                return -1;
+            }
+            long vencimento = sessao.getVencimento(tempoDeVida, tempoOcioso);
+            if (vencimento > agora) {
+                return vencimento;
+            }
+            remover(sessao);
+            return -1;
+        });
+    }
+
+    // Encerra uma sessão e a retira da sua partição e do índice do usuário
+    private void remover(Sessao sessao) {
+        sessao.encerrar();
+        Particao doId = particao(sessao.getId());
+        synchronized (doId) {
+            doId.porId.remove(sessao.getId(), sessao);
+        }
+        Particao doLogin = particao(sessao.getLogin());
+        synchronized (doLogin) {
+            Set<Sessao> sessoes = doLogin.porLogin.get(sessao.getLogin());
+            if (sessoes != null && sessoes.remove(sessao) && sessoes.isEmpty()) {
+                doLogin.porLogin.remove(sessao.getLogin());
+            }
+        }
+    }
+
+    // Partição de uma chave (ID de sessão ou login). Usa os bits altos de um hash multiplicativo,
+    // porque os bits baixos são os que o mapa de cada partição usa para escolher o balde
+    private Particao particao(String chave) {
+        return particoes[(chave.hashCode() * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(PARTICOES))];
+    }
+
+    // Sessões de uma partição. As alterações são feitas no monitor da própria partição; o mapa
+    // por ID é concorrente para que a resolução de sessões não precise da trava
+    private static class Particao {
+        private final Map<String, Sessao> porId = new ConcurrentHashMap<>();
+        private final Map<String, Set<Sessao>> porLogin = new HashMap<>();
     }
 }
@@ -0,0 +1,151 @@
+/**
+ * Formato binário compacto e versionado do snapshot de usuários e comunidades em um único
+ * arquivo, anterior ao {@link SnapshotParticionado}. Continua sendo lido para importar os dados
+ * gravados por versões anteriores; as gravações usam o snapshot particionado.
+ * <p>
+ * Os usuários são gravados em sequência e recebem um identificador inteiro igual à sua posição
+ * no arquivo (independente do id interno em memória, que pode ter lacunas); relacionamentos e
+ * membros de comunidades são gravados por esse identificador, sem o grafo de objetos aninhado do
+ * XML. A leitura é feita sobre um mapeamento em memória do arquivo ({@link FileChannel#map}).
+ * A versão 1, sem o log de mensagens das comunidades, continua sendo lida.
+ * </p>
+ * <pre>
+ * cabeçalho:   MAGIC (int), VERSAO (int), sequência do journal (long)
+ * usuários:    quantidade, [login, senha, nome, atributos do perfil]...
+ * ligações:    para cada usuário: amigos, convites enviados, ídolos, paqueras, inimigos (ids),
+ *              recados [autor, texto]... e mensagens [texto]...
+ * comunidades: quantidade, [nome, descrição, id do dono, log, membros]...
+ *              v1: membros = ids dos membros
+ *              v2: log = quantidade, [sequência (long), id do remetente (-1 se removido), texto]...
+ *                  membros = quantidade, [id, posição da próxima mensagem não lida no log]...
+ * </pre>
+ */
+package br.ufal.ic.p2.jackut.managers;
+
+import br.ufal.ic.p2.jackut.models.Comunidade;
+import br.ufal.ic.p2.jackut.models.Usuario;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+public class SnapshotBinario {
+    // Identificador do formato ("JKUT")
+    private static final int MAGIC = 0x4A4B5554;
+
+    // Versão atual do formato
+    private static final int VERSAO = 2;
+
+    private SnapshotBinario() {
+    }
+
+    /**
+     * Carrega o snapshot do arquivo informado para os gerenciadores
+     * @param arquivo Arquivo de origem
+     * @param userManager Gerenciador de usuários
+     * @param communityManager Gerenciador de comunidades
+     * @return Sequência da última operação do journal contemplada pelo snapshot
+     * @throws IOException Se ocorrer erro de leitura ou o formato for inválido
+     */
+    public static long carregar(File arquivo, UserManager userManager,
+                                CommunityManager communityManager) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ)) {
+            if (canal.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot maior que o suportado pelo mapeamento em memória.");
+            }
+            MappedByteBuffer dados = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+
+            if (dados.getInt() != MAGIC) {
+                throw new IOException("Arquivo não é um snapshot do Jackut.");
+            }
+            int versao = dados.getInt();
+            if (versao != 1 && versao != VERSAO) {
+                throw new IOException("Versão de snapshot não suportada: " + versao);
+            }
+            long sequencia = dados.getLong();
+
+            Usuario[] usuarios = new Usuario[dados.getInt()];
+            for (int i = 0; i < usuarios.length; i++) {
+                usuarios[i] = userManager.restaurarUsuario(lerTexto(dados), lerTexto(dados), lerTexto(dados));
+                int atributos = dados.getInt();
+                for (int j = 0; j < atributos; j++) {
+                    userManager.editarAtributo(usuarios[i], lerTexto(dados), lerTexto(dados));
+                }
+            }
+
+            for (Usuario usuario : usuarios) {
+                for (int n = dados.getInt(); n > 0; n--) {
+                    usuario.restaurarAmizade(usuarios[dados.getInt()]);
+                }
+                for (int n = dados.getInt(); n > 0; n--) {
+                    usuario.enviarConvite(usuarios[dados.getInt()]);
+                }
+                for (int n = dados.getInt(); n > 0; n--) {
+                    usuario.adicionarIdolo(usuarios[dados.getInt()]);
+                }
+                for (int n = dados.getInt(); n > 0; n--) {
+                    usuario.restaurarPaquera(usuarios[dados.getInt()]);
+                }
+                for (int n = dados.getInt(); n > 0; n--) {
+                    userManager.adicionarInimigo(usuario, usuarios[dados.getInt()]);
+                }
+                for (int n = dados.getInt(); n > 0; n--) {
+                    Usuario remetente = userManager.getUsuario(lerTexto(dados));
+                    usuario.receberRecado(remetente, lerTexto(dados));
+                }
+                for (int n = dados.getInt(); n > 0; n--) {
+                    usuario.receberMensagem(null, lerTexto(dados));
+                }
+            }
+
+            Map<String, Comunidade> comunidades = new HashMap<>();
+            for (int n = dados.getInt(); n > 0; n--) {
+                String nome = lerTexto(dados);
+                String descricao = lerTexto(dados);
+                Usuario dono = usuarios[dados.getInt()];
+                Comunidade comunidade = new Comunidade(nome, descricao, dono);
+                if (versao == 1) {
+                    for (int m = dados.getInt(); m > 0; m--) {
+                        Usuario membro = usuarios[dados.getInt()];
+                        if (!membro.equals(dono)) {
+                            comunidade.adicionarMembro(membro.getLogin());
+                        }
+                    }
+                } else {
+                    for (int m = dados.getInt(); m > 0; m--) {
+                        long sequenciaMensagem = dados.getLong();
+                        int remetente = dados.getInt();
+                        String mensagem = lerTexto(dados);
+                        comunidade.publicar(sequenciaMensagem, remetente < 0 ? -1 : usuarios[remetente].getId(),
+                                mensagem);
+                    }
+                    for (int m = dados.getInt(); m > 0; m--) {
+                        Usuario membro = usuarios[dados.getInt()];
+                        int posicaoLeitura = dados.getInt();
+                        if (!membro.equals(dono)) {
+                            comunidade.adicionarMembro(membro.getLogin());
+                        }
+                        comunidade.restaurarPosicaoLeitura(membro.getLogin(), posicaoLeitura);
+                    }
+                }
+                comunidades.put(nome, comunidade);
+            }
+            communityManager.restaurarComunidades(comunidades);
+            return sequencia;
+        }
+    }
+
+    // Lê um texto em UTF-8 precedido do tamanho (-1 representa null)
+    private static String lerTexto(MappedByteBuffer dados) {
+        int tamanho = dados.getInt();
+        if (tamanho < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[tamanho];
+        dados.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,1003 @@
+/**
+ * Snapshot de usuários e comunidades dividido em partições, cada uma em seu próprio arquivo.
+ * <p>
+ * Cada usuário pertence à partição dada pelo hash do login, e cada comunidade à partição dada
+ * pelo hash do nome. Cada usuário é gravado com seu id interno, que não muda enquanto ele existir,
+ * e as referências entre registros (amigos, autores de recados, dono e membros de comunidades)
+ * são gravadas por esse id, de modo que cada partição pode ser lida e gravada independentemente
+ * das outras. Uma partição alterada desde a última gravação fica marcada como suja, e só as
+ * partições sujas são regravadas; as demais continuam valendo.
+ * </p>
+ * <p>
+ * Um manifesto lista a geração atual do arquivo de cada partição e a sequência do journal
+ * contemplada. As partições regravadas vão para arquivos de uma geração nova, e a troca do
+ * manifesto (movido atomicamente) é o ponto em que o novo snapshot passa a valer: se o sistema
+ * parar antes dela, o manifesto anterior continua apontando para arquivos intactos. A leitura
+ * decodifica as partições em paralelo e depois liga os registros pelos ids.
+ * </p>
+ * <p>
+ * Cada registro de usuário é completo (inclui as arestas reversas e os remetentes das mensagens) e
+ * começa pelo seu tamanho, seguido de um resumo com os dados usados pelos índices. Com um
+ * {@link CacheDeUsuarios}, a carga lê só os resumos e guarda o endereço de cada registro, e cada
+ * usuário é decodificado sozinho quando for consultado; na gravação, os registros dos usuários que
+ * não estão em memória são copiados do arquivo anterior da partição sem ser decodificados. Os
+ * arquivos das versões anteriores ainda são lidos, carregando todos os usuários.
+ * </p>
+ * <pre>
+ * manifesto: MAGIC (int), VERSAO (int), sequência do journal (long), geração (long), última
+ *            sequência de mensagem (long), quantidade de partições, [geração do arquivo (long),
+ *            tamanho (long)]...
+ * partição:  MAGIC_PARTICAO (int), VERSAO (int),
+ *            usuários: quantidade, [tamanho do registro, id, login, senha, nome, atributos, amigos,
+ *                      convites enviados e recebidos, ídolos, fãs, paqueras, paquerado por, inimigos,
+ *                      inimigo de, destinatários e remetentes de recados (ids), recados [id do autor,
+ *                      texto], mensagens [id do remetente, sequência (long), texto]]...
+ *            comunidades: quantidade, [nome, descrição, id do dono, log [sequência, id do remetente,
+ *                         texto]..., membros [id, posição da próxima mensagem não lida no log]...]...
+ *            ids de usuários removidos gravam -1 (autores e remetentes) ou são omitidos
+ * versão 2:  mensagens dos usuários sem a sequência
+ * versão 1:  usuários sem o tamanho do registro, só com as ligações de ida (amigos, convites enviados,
+ *            ídolos, paqueras, inimigos) e mensagens sem remetente
+ * manifesto versão 1: sem a última sequência de mensagem
+ * </pre>
+ */
+package br.ufal.ic.p2.jackut.managers;
+
+import br.ufal.ic.p2.jackut.models.Comunidade;
+import br.ufal.ic.p2.jackut.models.Usuario;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntPredicate;
+
+public class SnapshotParticionado {
+    // Identificadores do formato ("JKPM" para o manifesto e "JKPT" para as partições)
+    private static final int MAGIC = 0x4A4B504D;
+    private static final int MAGIC_PARTICAO = 0x4A4B5054;
+
+    // Versão atual do manifesto e a anterior, sem a última sequência de mensagem
+    private static final int VERSAO_MANIFESTO = 2;
+    private static final int VERSAO_MANIFESTO_1 = 1;
+
+    // Versão atual do formato das partições e as anteriores: a 2 não guarda a sequência das
+    // mensagens dos usuários, e a 1 não tem registros de usuário completos
+    private static final int VERSAO = 3;
+    private static final int VERSAO_2 = 2;
+    private static final int VERSAO_1 = 1;
+
+    // Quantidade de conjuntos de ids em cada registro de usuário (ver Usuario.getLigacoes)
+    private static final int CONJUNTOS = 11;
+    private static final int CONJUNTOS_VERSAO_1 = 5;
+
+    // Nome do manifesto e prefixo dos arquivos de partição
+    private static final String ARQUIVO_MANIFESTO = "jackut.particoes";
+    private static final String PREFIXO_PARTICAO = "jackut.particao.";
+
+    // Diretório onde ficam o manifesto e as partições
+    private final File diretorio;
+
+    // Quantidade de partições usada nas gravações
+    private final int particoes;
+
+    // Índice dos usuários no modo de carga sob demanda (null quando todos ficam em memória);
+    // criado por usarCargaSobDemanda antes da carga e não muda depois
+    private CacheDeUsuarios cache;
+
+    // Arquivos de partição atuais mapeados em memória para as cargas sob demanda (null até o
+    // primeiro uso de cada partição e depois de ela ser regravada)
+    private final MappedByteBuffer[] mapas;
+
+    // Geração do arquivo atual e tamanho de cada partição (0 quando a partição nunca foi gravada)
+    private long[] geracoes;
+    private long[] tamanhos;
+
+    // Maior geração já usada pelo manifesto
+    private long geracao;
+
+    // Partições alteradas desde a última gravação (protegido por this)
+    private final BitSet sujas = new BitSet();
+
+    /**
+     * Construtor
+     * @param diretorio Diretório de dados
+     * @param particoes Quantidade de partições das próximas gravações
+     */
+    public SnapshotParticionado(File diretorio, int particoes) {
+        this.diretorio = diretorio;
+        this.particoes = Math.max(1, particoes);
+        this.geracoes = new long[this.particoes];
+        this.tamanhos = new long[this.particoes];
+        this.mapas = new MappedByteBuffer[this.particoes];
+        this.sujas.set(0, this.particoes);
+    }
+
+    /**
+     * Passa a carregar os usuários sob demanda, criando o índice que deve ser entregue ao
+     * gerenciador de usuários antes da carga
+     * @param usuariosEmMemoria Quantidade máxima de usuários em memória (0 para carregar todos)
+     * @return Cache de usuários ou null se todos os usuários ficam em memória
+     */
+    public synchronized CacheDeUsuarios usarCargaSobDemanda(int usuariosEmMemoria) {
+        if (usuariosEmMemoria > 0) {
+            cache = new CacheDeUsuarios(this, usuariosEmMemoria);
+            cache.marcarTodosSujos();
+        }
+        return cache;
+    }
+
+    /**
+     * Verifica se já existe um snapshot particionado no diretório
+     * @return true se o manifesto existir
+     */
+    public boolean existe() {
+        File manifesto = new File(diretorio, ARQUIVO_MANIFESTO);
+        return manifesto.exists() && manifesto.length() > 0;
+    }
+
+    /**
+     * Obtém a partição de um login ou nome de comunidade
+     * @param chave Login ou nome da comunidade
+     * @return Índice da partição
+     */
+    public int getParticao(String chave) {
+        return Math.floorMod(chave.hashCode(), particoes);
+    }
+
+    /**
+     * Marca como suja a partição de um usuário (e o usuário, na carga sob demanda)
+     * @param login Login do usuário alterado
+     */
+    public synchronized void marcarUsuario(String login) {
+        if (login != null) {
+            sujas.set(getParticao(login));
+            if (cache != null) {
+                cache.marcarSujo(login);
+            }
+        }
+    }
+
+    /**
+     * Marca como suja a partição de uma comunidade
+     * @param nome Nome da comunidade alterada
+     */
+    public synchronized void marcarComunidade(String nome) {
+        if (nome != null) {
+            sujas.set(getParticao(nome));
+        }
+    }
+
+    /**
+     * Marca todas as partições como sujas (operações que afetam o estado inteiro)
+     */
+    public synchronized void marcarTodas() {
+        sujas.set(0, particoes);
+        if (cache != null) {
+            cache.marcarTodosSujos();
+        }
+    }
+
+    /**
+     * Obtém a quantidade de partições a regravar na próxima gravação
+     * @return Quantidade de partições sujas
+     */
+    public synchronized int getQuantidadeSujas() {
+        return sujas.cardinality();
+    }
+
+    /**
+     * Obtém o tamanho total, em bytes, dos arquivos de partição atuais
+     * @return Soma dos tamanhos das partições
+     */
+    public synchronized long getTamanho() {
+        long total = 0;
+        for (long tamanho : tamanhos) {
+            total += tamanho;
+        }
+        return total;
+    }
+
+    /**
+     * Carrega o snapshot para os gerenciadores, decodificando as partições em paralelo. Na carga
+     * sob demanda, só os resumos dos usuários são lidos, desde que as partições estejam no formato
+     * atual e na quantidade configurada; caso contrário, todos os usuários são carregados e a
+     * próxima gravação regrava tudo.
+     * @param userManager Gerenciador de usuários
+     * @param communityManager Gerenciador de comunidades
+     * @return Sequência da última operação do journal contemplada pelo snapshot
+     * @throws IOException Se ocorrer erro de leitura ou o formato for inválido
+     */
+    public synchronized long carregar(UserManager userManager, CommunityManager communityManager)
+            throws IOException {
+        long sequencia;
+        long sequenciaMensagens = 0;
+        long[] geracoesLidas;
+        long[] tamanhosLidos;
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(new File(diretorio, ARQUIVO_MANIFESTO))))) {
+            if (entrada.readInt() != MAGIC) {
+                throw new IOException("Arquivo não é um manifesto de partições do Jackut.");
+            }
+            int versao = entrada.readInt();
+            if (versao != VERSAO_MANIFESTO && versao != VERSAO_MANIFESTO_1) {
+                throw new IOException("Versão de manifesto não suportada: " + versao);
+            }
+            sequencia = entrada.readLong();
+            geracao = entrada.readLong();
+            if (versao == VERSAO_MANIFESTO) {
+                sequenciaMensagens = entrada.readLong();
+            }
+            int quantidade = entrada.readInt();
+            geracoesLidas = new long[quantidade];
+            tamanhosLidos = new long[quantidade];
+            for (int i = 0; i < quantidade; i++) {
+                geracoesLidas[i] = entrada.readLong();
+                tamanhosLidos[i] = entrada.readLong();
+            }
+        }
+
+        boolean sobDemanda = cache != null && geracoesLidas.length == particoes;
+        for (int i = 0; i < geracoesLidas.length && sobDemanda; i++) {
+            sobDemanda = geracoesLidas[i] == 0 || lerVersao(arquivoParticao(i, geracoesLidas[i])) == VERSAO;
+        }
+
+        boolean resumir = sobDemanda;
+        List<Callable<Particao>> leituras = new ArrayList<>();
+        for (int i = 0; i < geracoesLidas.length; i++) {
+            if (geracoesLidas[i] > 0) {
+                int indice = i;
+                File arquivo = arquivoParticao(i, geracoesLidas[i]);
+                leituras.add(() -> ler(arquivo, indice, resumir));
+            }
+        }
+        List<Particao> lidas = executar(leituras);
+
+        String[] logins = loginsPorId(lidas);
+        if (sobDemanda) {
+            for (Particao particao : lidas) {
+                for (DadosUsuario dados : particao.usuarios) {
+                    userManager.registrarNoSnapshot(dados.id, dados.login, dados.nome, dados.atributos,
+                            endereco(particao.indice, dados.posicao));
+                }
+            }
+        } else {
+            restaurarUsuarios(lidas, userManager);
+        }
+        restaurarComunidades(lidas, logins, communityManager);
+        communityManager.restaurarSequenciaMensagens(sequenciaMensagens);
+
+        sujas.clear();
+        Arrays.fill(mapas, null);
+        if (geracoesLidas.length == particoes) {
+            geracoes = geracoesLidas;
+            tamanhos = tamanhosLidos;
+        }
+        boolean versaoAnterior = false;
+        for (Particao particao : lidas) {
+            versaoAnterior |= particao.versao != VERSAO;
+        }
+        if (geracoesLidas.length != particoes || versaoAnterior) {
+            // A quantidade de partições ou o formato mudou: a próxima gravação redistribui tudo
+            marcarTodas();
+        } else if (cache != null) {
+            cache.limparSujos();
+        }
+        return sequencia;
+    }
+
+    /**
+     * Regrava as partições sujas e troca o manifesto; exige que nenhuma operação altere o estado
+     * durante a gravação. Na carga sob demanda, os usuários que não estão em memória têm o registro
+     * copiado do arquivo anterior da partição, e os endereços do cache passam a apontar para os
+     * arquivos novos.
+     * @param sequencia Sequência da última operação do journal contemplada
+     * @param userManager Gerenciador de usuários
+     * @param communityManager Gerenciador de comunidades
+     * @throws IOException Se ocorrer erro de escrita
+     */
+    public synchronized void gravar(long sequencia, UserManager userManager,
+                                    CommunityManager communityManager) throws IOException {
+        // Distribui os usuários e comunidades das partições sujas
+        List<List<Usuario>> usuarios = new ArrayList<>(particoes);
+        List<List<Integer>> copias = new ArrayList<>(particoes);
+        List<List<Comunidade>> comunidades = new ArrayList<>(particoes);
+        for (int i = 0; i < particoes; i++) {
+            usuarios.add(sujas.get(i) ? new ArrayList<>() : null);
+            copias.add(sujas.get(i) ? new ArrayList<>() : null);
+            comunidades.add(sujas.get(i) ? new ArrayList<>() : null);
+        }
+        if (cache == null) {
+            for (Usuario usuario : userManager.getUsuarios().values()) {
+                List<Usuario> destino = usuarios.get(getParticao(usuario.getLogin()));
+                if (destino != null) {
+                    destino.add(usuario);
+                }
+            }
+        } else {
+            for (Map.Entry<String, Integer> cadastrado : cache.getIds().entrySet()) {
+                int particao = getParticao(cadastrado.getKey());
+                if (usuarios.get(particao) == null) {
+                    continue;
+                }
+                Usuario usuario = userManager.getUsuarioEmMemoria(cadastrado.getValue());
+                if (usuario != null) {
+                    usuarios.get(particao).add(usuario);
+                } else if (cache.getEndereco(cadastrado.getValue()) >= 0) {
+                    copias.get(particao).add(cadastrado.getValue());
+                }
+            }
+        }
+        for (Comunidade comunidade : communityManager.getComunidades().values()) {
+            List<Comunidade> destino = comunidades.get(getParticao(comunidade.getNome()));
+            if (destino != null && userManager.getIdPorLogin(comunidade.getLoginDono()) == comunidade.getIdDono()) {
+                destino.add(comunidade);
+            }
+        }
+
+        long novaGeracao = geracao + 1;
+        boolean enderecar = cache != null;
+        List<Callable<Particao>> gravacoes = new ArrayList<>();
+        for (int i = sujas.nextSetBit(0); i >= 0; i = sujas.nextSetBit(i + 1)) {
+            int indice = i;
+            File arquivo = arquivoParticao(i, novaGeracao);
+            List<Usuario> daParticao = usuarios.get(i);
+            List<Integer> copiasDaParticao = copias.get(i);
+            ByteBuffer origem = copiasDaParticao.isEmpty() ? null : mapa(i);
+            List<Comunidade> comunidadesDaParticao = comunidades.get(i);
+            gravacoes.add(() -> {
+                Particao gravada = escrever(arquivo, daParticao, copiasDaParticao, origem,
+                        comunidadesDaParticao, userManager, enderecar);
+                gravada.indice = indice;
+                gravada.tamanho = arquivo.length();
+                return gravada;
+            });
+        }
+        List<Particao> gravadas = executar(gravacoes);
+
+        long[] novasGeracoes = geracoes.clone();
+        long[] novosTamanhos = tamanhos.clone();
+        for (Particao gravada : gravadas) {
+            novasGeracoes[gravada.indice] = novaGeracao;
+            novosTamanhos[gravada.indice] = gravada.tamanho;
+        }
+        escreverManifesto(sequencia, communityManager.getSequenciaMensagens(), novaGeracao, novasGeracoes,
+                novosTamanhos);
+
+        geracao = novaGeracao;
+        geracoes = novasGeracoes;
+        tamanhos = novosTamanhos;
+        sujas.clear();
+        for (Particao gravada : gravadas) {
+            mapas[gravada.indice] = null;
+            if (cache != null) {
+                for (int j = 0; j < gravada.ids.length; j++) {
+                    cache.atualizarEndereco(gravada.ids[j], endereco(gravada.indice, gravada.posicoes[j]));
+                }
+            }
+        }
+        if (cache != null) {
+            cache.limparSujos();
+        }
+        apagarObsoletas();
+    }
+
+    /**
+     * Lê um usuário do snapshot sem registrá-lo nos gerenciadores (carga sob demanda)
+     * @param endereco Endereço do registro, guardado no cache
+     * @param cadastrado Verifica se um id ainda pertence a um usuário; as referências a ids que não
+     *                   pertencem mais são descartadas
+     * @return Usuário lido
+     * @throws IOException Se ocorrer erro de leitura
+     */
+    synchronized Usuario lerUsuario(long endereco, IntPredicate cadastrado) throws IOException {
+        ByteBuffer dados = mapa((int) (endereco >>> 32)).duplicate();
+        dados.position((int) endereco + 4);
+        DadosUsuario lido = decodificarUsuario(dados, VERSAO, false);
+
+        Usuario usuario = new Usuario(lido.id, lido.login, lido.senha, lido.nome);
+        for (int j = 0; j < lido.atributos.length; j += 2) {
+            usuario.getPerfil().adicionarAtributo(lido.atributos[j], lido.atributos[j + 1]);
+        }
+        usuario.restaurarLigacoes(filtrar(lido.ligacoes, cadastrado));
+        for (int j = 0; j < lido.recados.length; j++) {
+            usuario.restaurarRecado(cadastrado.test(lido.autores[j]) ? lido.autores[j] : -1, lido.recados[j]);
+        }
+        for (int j = 0; j < lido.mensagens.length; j++) {
+            usuario.restaurarMensagem(cadastrado.test(lido.remetentes[j]) ? lido.remetentes[j] : -1,
+                    lido.mensagens[j], lido.sequencias[j]);
+        }
+        return usuario;
+    }
+
+    // Arquivo atual de uma partição mapeado em memória, mapeado no primeiro uso
+    private MappedByteBuffer mapa(int indice) throws IOException {
+        if (mapas[indice] == null) {
+            try (FileChannel canal = FileChannel.open(arquivoParticao(indice, geracoes[indice]).toPath(),
+                    StandardOpenOption.READ)) {
+                mapas[indice] = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            }
+        }
+        return mapas[indice];
+    }
+
+    // Apaga os arquivos de partição que o manifesto não referencia mais: os substituídos nesta
+    // gravação e os deixados por gravações interrompidas ou com outra quantidade de partições
+    private void apagarObsoletas() {
+        Set<String> atuais = new HashSet<>();
+        for (int i = 0; i < geracoes.length; i++) {
+            atuais.add(arquivoParticao(i, geracoes[i]).getName());
+        }
+        File[] arquivos = diretorio.listFiles((pasta, nome) -> nome.startsWith(PREFIXO_PARTICAO));
+        if (arquivos != null) {
+            for (File arquivo : arquivos) {
+                if (!atuais.contains(arquivo.getName())) {
+                    arquivo.delete();
+                }
+            }
+        }
+    }
+
+    // Grava o manifesto em um arquivo temporário e o move atomicamente para o lugar do anterior.
+    // As partições novas já foram sincronizadas; o manifesto também é, antes da troca, e o
+    // diretório é sincronizado antes e depois dela, para que a troca não chegue ao disco antes
+    // dos arquivos que o manifesto novo referencia e para que ela já esteja no disco quando os
+    // arquivos antigos forem apagados e o journal for truncado
+    private void escreverManifesto(long sequencia, long sequenciaMensagens, long novaGeracao, long[] novasGeracoes,
+                                   long[] novosTamanhos) throws IOException {
+        File destino = new File(diretorio, ARQUIVO_MANIFESTO);
+        File temporario = new File(diretorio, ARQUIVO_MANIFESTO + ".tmp");
+        FileOutputStream arquivoSaida = new FileOutputStream(temporario);
+        try (DataOutputStream saida = new DataOutputStream(new BufferedOutputStream(arquivoSaida))) {
+            saida.writeInt(MAGIC);
+            saida.writeInt(VERSAO_MANIFESTO);
+            saida.writeLong(sequencia);
+            saida.writeLong(novaGeracao);
+            saida.writeLong(sequenciaMensagens);
+            saida.writeInt(novasGeracoes.length);
+            for (int i = 0; i < novasGeracoes.length; i++) {
+                saida.writeLong(novasGeracoes[i]);
+                saida.writeLong(novosTamanhos[i]);
+            }
+            saida.flush();
+            arquivoSaida.getFD().sync();
+        }
+        sincronizarDiretorio();
+        Files.move(temporario.toPath(), destino.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        sincronizarDiretorio();
+    }
+
+    // Sincroniza as entradas do diretório de dados (criações e trocas de nome). Sistemas que não
+    // permitem abrir um diretório, como o Windows, não têm essa sincronização, e a abertura falha
+    private void sincronizarDiretorio() throws IOException {
+        FileChannel canal;
+        try {
+            canal = FileChannel.open(diretorio.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (canal) {
+            canal.force(true);
+        }
+    }
+
+    // Grava os usuários e comunidades de uma partição: os usuários em memória são codificados e os
+    // demais têm o registro copiado da origem. Com enderecar, devolve a posição de cada registro
+    private static Particao escrever(File arquivo, List<Usuario> usuarios, List<Integer> copias, ByteBuffer origem,
+                                     List<Comunidade> comunidades, UserManager userManager, boolean enderecar)
+            throws IOException {
+        Particao gravada = new Particao();
+        int total = usuarios.size() + copias.size();
+        gravada.ids = new int[enderecar ? total : 0];
+        gravada.posicoes = new int[enderecar ? total : 0];
+        FileOutputStream arquivoSaida = new FileOutputStream(arquivo);
+        try (DataOutputStream saida = new DataOutputStream(new BufferedOutputStream(arquivoSaida, 1 << 16))) {
+            saida.writeInt(MAGIC_PARTICAO);
+            saida.writeInt(VERSAO);
+
+            saida.writeInt(total);
+            ByteArrayOutputStream registro = new ByteArrayOutputStream();
+            DataOutputStream codificado = new DataOutputStream(registro);
+            int n = 0;
+            for (Usuario usuario : usuarios) {
+                registro.reset();
+                escreverUsuario(codificado, usuario, userManager);
+                if (enderecar) {
+                    gravada.ids[n] = usuario.getId();
+                    gravada.posicoes[n++] = saida.size();
+                }
+                saida.writeInt(registro.size());
+                registro.writeTo(saida);
+            }
+            byte[] bytes = new byte[0];
+            CacheDeUsuarios cache = userManager.getCache();
+            for (int id : copias) {
+                int posicao = (int) cache.getEndereco(id);
+                int tamanho = origem.getInt(posicao);
+                if (bytes.length < tamanho) {
+                    bytes = new byte[Math.max(tamanho, 2 * bytes.length)];
+                }
+                origem.get(posicao + 4, bytes, 0, tamanho);
+                if (enderecar) {
+                    gravada.ids[n] = id;
+                    gravada.posicoes[n++] = saida.size();
+                }
+                saida.writeInt(tamanho);
+                saida.write(bytes, 0, tamanho);
+            }
+
+            saida.writeInt(comunidades.size());
+            for (Comunidade comunidade : comunidades) {
+                escreverTexto(saida, comunidade.getNome());
+                escreverTexto(saida, comunidade.getDescricao());
+                saida.writeInt(comunidade.getIdDono());
+
+                long inicioLog = comunidade.getInicioLog();
+                long[] sequencias = comunidade.getSequenciasLog();
+                int[] remetentes = comunidade.getRemetentesLog();
+                String[] mensagens = comunidade.getMensagensLog();
+                saida.writeInt(mensagens.length);
+                for (int i = 0; i < mensagens.length; i++) {
+                    saida.writeLong(sequencias[i]);
+                    saida.writeInt(idCadastrado(userManager, remetentes[i]));
+                    escreverTexto(saida, mensagens[i]);
+                }
+
+                List<String> membros = new ArrayList<>();
+                List<Integer> ids = new ArrayList<>();
+                for (String membro : comunidade.getMembros()) {
+                    int id = userManager.getIdPorLogin(membro);
+                    if (id >= 0) {
+                        membros.add(membro);
+                        ids.add(id);
+                    }
+                }
+                saida.writeInt(membros.size());
+                for (int i = 0; i < membros.size(); i++) {
+                    saida.writeInt(ids.get(i));
+                    saida.writeInt((int) (comunidade.getPosicaoLeitura(membros.get(i)) - inicioLog));
+                }
+            }
+            saida.flush();
+            arquivoSaida.getFD().sync();
+        }
+        return gravada;
+    }
+
+    // Codifica o registro completo de um usuário (sem o tamanho, que o precede no arquivo)
+    private static void escreverUsuario(DataOutputStream saida, Usuario usuario, UserManager userManager)
+            throws IOException {
+        saida.writeInt(usuario.getId());
+        escreverTexto(saida, usuario.getLogin());
+        escreverTexto(saida, usuario.getSenha());
+        escreverTexto(saida, usuario.getNome());
+        Map<String, String> atributos = usuario.getPerfil().getAtributos();
+        saida.writeInt(atributos.size());
+        for (Map.Entry<String, String> atributo : atributos.entrySet()) {
+            escreverTexto(saida, atributo.getKey());
+            escreverTexto(saida, atributo.getValue());
+        }
+
+        for (int[] ids : usuario.getLigacoes()) {
+            escreverIds(saida, ids, userManager);
+        }
+
+        List<String> recados = new ArrayList<>();
+        List<Integer> autores = new ArrayList<>();
+        usuario.paraCadaRecado((recado, remetente) -> {
+            recados.add(recado);
+            autores.add(idCadastrado(userManager, remetente));
+        });
+        saida.writeInt(recados.size());
+        for (int i = 0; i < recados.size(); i++) {
+            saida.writeInt(autores.get(i));
+            escreverTexto(saida, recados.get(i));
+        }
+
+        List<String> mensagens = new ArrayList<>();
+        List<Integer> remetentes = new ArrayList<>();
+        List<Long> sequencias = new ArrayList<>();
+        usuario.paraCadaMensagem((mensagem, remetente, sequencia) -> {
+            mensagens.add(mensagem);
+            remetentes.add(idCadastrado(userManager, remetente));
+            sequencias.add(sequencia);
+        });
+        saida.writeInt(mensagens.size());
+        for (int i = 0; i < mensagens.size(); i++) {
+            saida.writeInt(remetentes.get(i));
+            saida.writeLong(sequencias.get(i));
+            escreverTexto(saida, mensagens.get(i));
+        }
+    }
+
+    // Lê a versão gravada no cabeçalho de uma partição
+    private static int lerVersao(File arquivo) throws IOException {
+        try (DataInputStream entrada = new DataInputStream(new FileInputStream(arquivo))) {
+            if (entrada.readInt() != MAGIC_PARTICAO) {
+                throw new IOException("Arquivo não é uma partição do Jackut: " + arquivo.getName());
+            }
+            return entrada.readInt();
+        } catch (FileNotFoundException e) {
+            throw new IOException("Partição do snapshot ausente: " + arquivo.getName(), e);
+        }
+    }
+
+    // Decodifica uma partição sem tocar nos gerenciadores (executado em paralelo). Com resumir, lê
+    // só o resumo e a posição de cada registro de usuário
+    private static Particao ler(File arquivo, int indice, boolean resumir) throws IOException {
+        if (!arquivo.exists()) {
+            throw new IOException("Partição do snapshot ausente: " + arquivo.getName());
+        }
+        try (FileChannel canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ)) {
+            if (canal.size() > Integer.MAX_VALUE) {
+                throw new IOException("Partição maior que o suportado pelo mapeamento em memória.");
+            }
+            MappedByteBuffer dados = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            if (dados.getInt() != MAGIC_PARTICAO) {
+                throw new IOException("Arquivo não é uma partição do Jackut: " + arquivo.getName());
+            }
+            int versao = dados.getInt();
+            if (versao != VERSAO && versao != VERSAO_2 && versao != VERSAO_1) {
+                throw new IOException("Versão de partição não suportada: " + versao);
+            }
+
+            Particao particao = new Particao();
+            particao.indice = indice;
+            particao.versao = versao;
+            particao.usuarios = new DadosUsuario[dados.getInt()];
+            for (int i = 0; i < particao.usuarios.length; i++) {
+                int posicao = dados.position();
+                int fim = versao != VERSAO_1 ? posicao + 4 + dados.getInt() : -1;
+                particao.usuarios[i] = decodificarUsuario(dados, versao, resumir);
+                particao.usuarios[i].posicao = posicao;
+                if (resumir) {
+                    dados.position(fim);
+                }
+            }
+
+            particao.comunidades = new DadosComunidade[dados.getInt()];
+            for (int i = 0; i < particao.comunidades.length; i++) {
+                DadosComunidade comunidade = new DadosComunidade();
+                comunidade.nome = lerTexto(dados);
+                comunidade.descricao = lerTexto(dados);
+                comunidade.dono = dados.getInt();
+                int mensagens = dados.getInt();
+                comunidade.sequencias = new long[mensagens];
+                comunidade.remetentes = new int[mensagens];
+                comunidade.mensagens = new String[mensagens];
+                for (int j = 0; j < mensagens; j++) {
+                    comunidade.sequencias[j] = dados.getLong();
+                    comunidade.remetentes[j] = dados.getInt();
+                    comunidade.mensagens[j] = lerTexto(dados);
+                }
+                int membros = dados.getInt();
+                comunidade.membros = new int[membros];
+                comunidade.posicoes = new int[membros];
+                for (int j = 0; j < membros; j++) {
+                    comunidade.membros[j] = dados.getInt();
+                    comunidade.posicoes[j] = dados.getInt();
+                }
+                particao.comunidades[i] = comunidade;
+            }
+            return particao;
+        }
+    }
+
+    // Decodifica um registro de usuário a partir da posição atual (depois do tamanho, a partir da versão 2);
+    // com resumir, para depois dos atributos
+    private static DadosUsuario decodificarUsuario(ByteBuffer dados, int versao, boolean resumir) {
+        DadosUsuario usuario = new DadosUsuario();
+        usuario.id = dados.getInt();
+        usuario.login = lerTexto(dados);
+        usuario.senha = lerTexto(dados);
+        usuario.nome = lerTexto(dados);
+        usuario.atributos = lerTextos(dados, 2 * dados.getInt());
+        if (resumir) {
+            return usuario;
+        }
+
+        usuario.ligacoes = new int[versao != VERSAO_1 ? CONJUNTOS : CONJUNTOS_VERSAO_1][];
+        for (int j = 0; j < usuario.ligacoes.length; j++) {
+            usuario.ligacoes[j] = new int[dados.getInt()];
+            dados.asIntBuffer().get(usuario.ligacoes[j]);
+            dados.position(dados.position() + 4 * usuario.ligacoes[j].length);
+        }
+        int recados = dados.getInt();
+        usuario.autores = new int[recados];
+        usuario.recados = new String[recados];
+        for (int j = 0; j < recados; j++) {
+            usuario.autores[j] = dados.getInt();
+            usuario.recados[j] = lerTexto(dados);
+        }
+        int mensagens = dados.getInt();
+        usuario.remetentes = new int[mensagens];
+        usuario.mensagens = new String[mensagens];
+        usuario.sequencias = new long[mensagens];
+        for (int j = 0; j < mensagens; j++) {
+            usuario.remetentes[j] = versao != VERSAO_1 ? dados.getInt() : -1;
+            usuario.sequencias[j] = versao == VERSAO ? dados.getLong() : 0;
+            usuario.mensagens[j] = lerTexto(dados);
+        }
+        return usuario;
+    }
+
+    // Cria os usuários de todas as partições com os ids gravados e só depois os liga, pois as
+    // referências atravessam partições
+    private static void restaurarUsuarios(List<Particao> particoes, UserManager userManager) {
+        for (Particao particao : particoes) {
+            for (DadosUsuario dados : particao.usuarios) {
+                Usuario usuario = userManager.restaurarUsuario(dados.id, dados.login, dados.senha, dados.nome);
+                for (int j = 0; j < dados.atributos.length; j += 2) {
+                    userManager.editarAtributo(usuario, dados.atributos[j], dados.atributos[j + 1]);
+                }
+            }
+        }
+
+        IntPredicate cadastrado = id -> userManager.getUsuarioPorId(id) != null;
+        for (Particao particao : particoes) {
+            for (DadosUsuario dados : particao.usuarios) {
+                Usuario usuario = userManager.getUsuarioPorId(dados.id);
+                if (particao.versao == VERSAO_1) {
+                    ligarVersao1(usuario, dados, userManager);
+                    continue;
+                }
+                // Os registros são completos: cada usuário restaura as próprias arestas, inclusive as reversas
+                usuario.restaurarLigacoes(filtrar(dados.ligacoes, cadastrado));
+                userManager.indexarInimigos(usuario);
+                for (int j = 0; j < dados.recados.length; j++) {
+                    usuario.restaurarRecado(cadastrado.test(dados.autores[j]) ? dados.autores[j] : -1,
+                            dados.recados[j]);
+                }
+                for (int j = 0; j < dados.mensagens.length; j++) {
+                    usuario.restaurarMensagem(cadastrado.test(dados.remetentes[j]) ? dados.remetentes[j] : -1,
+                            dados.mensagens[j], dados.sequencias[j]);
+                }
+            }
+        }
+    }
+
+    // Liga um usuário lido da versão 1, que só guarda as arestas de ida: as reversas são refeitas
+    // pelos métodos que alteram os dois lados
+    private static void ligarVersao1(Usuario usuario, DadosUsuario dados, UserManager userManager) {
+        for (int id : dados.ligacoes[0]) {
+            Usuario amigo = userManager.getUsuarioPorId(id);
+            if (amigo != null) {
+                usuario.restaurarAmizade(amigo);
+            }
+        }
+        for (int id : dados.ligacoes[1]) {
+            Usuario convidado = userManager.getUsuarioPorId(id);
+            if (convidado != null) {
+                usuario.enviarConvite(convidado);
+            }
+        }
+        for (int id : dados.ligacoes[2]) {
+            Usuario idolo = userManager.getUsuarioPorId(id);
+            if (idolo != null) {
+                usuario.adicionarIdolo(idolo);
+            }
+        }
+        for (int id : dados.ligacoes[3]) {
+            Usuario paquera = userManager.getUsuarioPorId(id);
+            if (paquera != null) {
+                usuario.restaurarPaquera(paquera);
+            }
+        }
+        for (int id : dados.ligacoes[4]) {
+            Usuario inimigo = userManager.getUsuarioPorId(id);
+            if (inimigo != null) {
+                userManager.adicionarInimigo(usuario, inimigo);
+            }
+        }
+        for (int j = 0; j < dados.recados.length; j++) {
+            usuario.receberRecado(userManager.getUsuarioPorId(dados.autores[j]), dados.recados[j]);
+        }
+        for (String mensagem : dados.mensagens) {
+            usuario.receberMensagem(null, mensagem);
+        }
+    }
+
+    // Restaura as comunidades, resolvendo o dono e os membros pelos logins lidos das partições
+    private static void restaurarComunidades(List<Particao> particoes, String[] logins,
+                                             CommunityManager communityManager) {
+        Map<String, Comunidade> comunidades = new HashMap<>();
+        for (Particao particao : particoes) {
+            for (DadosComunidade dados : particao.comunidades) {
+                String dono = login(logins, dados.dono);
+                if (dono == null) {
+                    continue;
+                }
+                Comunidade comunidade = new Comunidade(dados.nome, dados.descricao, dono, dados.dono);
+                for (int j = 0; j < dados.mensagens.length; j++) {
+                    comunidade.publicar(dados.sequencias[j], dados.remetentes[j], dados.mensagens[j]);
+                }
+                for (int j = 0; j < dados.membros.length; j++) {
+                    String membro = login(logins, dados.membros[j]);
+                    if (membro == null) {
+                        continue;
+                    }
+                    if (!membro.equals(dono)) {
+                        comunidade.adicionarMembro(membro);
+                    }
+                    comunidade.restaurarPosicaoLeitura(membro, dados.posicoes[j]);
+                }
+                comunidades.put(dados.nome, comunidade);
+            }
+        }
+        communityManager.restaurarComunidades(comunidades);
+    }
+
+    // Logins dos usuários lidos, pelo id
+    private static String[] loginsPorId(List<Particao> particoes) {
+        int limite = 0;
+        for (Particao particao : particoes) {
+            for (DadosUsuario dados : particao.usuarios) {
+                limite = Math.max(limite, dados.id + 1);
+            }
+        }
+        String[] logins = new String[limite];
+        for (Particao particao : particoes) {
+            for (DadosUsuario dados : particao.usuarios) {
+                logins[dados.id] = dados.login;
+            }
+        }
+        return logins;
+    }
+
+    private static String login(String[] logins, int id) {
+        return id >= 0 && id < logins.length ? logins[id] : null;
+    }
+
+    // Executa as tarefas em paralelo no pool comum e devolve os resultados na ordem das tarefas
+    private static List<Particao> executar(List<Callable<Particao>> tarefas) throws IOException {
+        List<Particao> resultados = new ArrayList<>(tarefas.size());
+        if (tarefas.size() == 1) {
+            try {
+                resultados.add(tarefas.get(0).call());
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            return resultados;
+        }
+        for (Future<Particao> tarefa : ForkJoinPool.commonPool().invokeAll(tarefas)) {
+            try {
+                resultados.add(tarefa.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+        return resultados;
+    }
+
+    private File arquivoParticao(int indice, long geracaoArquivo) {
+        return new File(diretorio, PREFIXO_PARTICAO + indice + "." + geracaoArquivo);
+    }
+
+    // Endereço de um registro: partição nos 32 bits altos e posição no arquivo nos baixos
+    private static long endereco(int particao, int posicao) {
+        return ((long) particao << 32) | (posicao & 0xFFFFFFFFL);
+    }
+
+    // O próprio id, se ele pertencer a um usuário cadastrado, ou -1
+    private static int idCadastrado(UserManager userManager, int id) {
+        return userManager.containsId(id) ? id : -1;
+    }
+
+    // Mantém, em cada conjunto, só os ids que ainda pertencem a usuários cadastrados
+    private static int[][] filtrar(int[][] conjuntos, IntPredicate cadastrado) {
+        int[][] filtrados = new int[conjuntos.length][];
+        for (int i = 0; i < conjuntos.length; i++) {
+            filtrados[i] = Arrays.stream(conjuntos[i]).filter(cadastrado).toArray();
+        }
+        return filtrados;
+    }
+
+    // Grava os ids de um conjunto, precedidos da quantidade; referências a usuários que não estão
+    // mais cadastrados são descartadas
+    private static void escreverIds(DataOutputStream saida, int[] ids, UserManager userManager)
+            throws IOException {
+        int quantidade = 0;
+        for (int id : ids) {
+            if (userManager.containsId(id)) {
+                ids[quantidade++] = id;
+            }
+        }
+        saida.writeInt(quantidade);
+        for (int i = 0; i < quantidade; i++) {
+            saida.writeInt(ids[i]);
+        }
+    }
+
+    // Grava um texto em UTF-8 precedido do tamanho (-1 representa null)
+    private static void escreverTexto(DataOutputStream saida, String texto) throws IOException {
+        if (texto == null) {
+            saida.writeInt(-1);
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        saida.writeInt(bytes.length);
+        saida.write(bytes);
+    }
+
+    // Lê a quantidade informada de textos
+    private static String[] lerTextos(ByteBuffer dados, int quantidade) {
+        String[] textos = new String[quantidade];
+        for (int i = 0; i < textos.length; i++) {
+            textos[i] = lerTexto(dados);
+        }
+        return textos;
+    }
+
+    // Lê um texto gravado por escreverTexto
+    private static String lerTexto(ByteBuffer dados) {
+        int tamanho = dados.getInt();
+        if (tamanho < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[tamanho];
+        dados.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Conteúdo decodificado de uma partição (ou, na gravação, o índice, o tamanho gravado e a
+    // posição de cada registro de usuário)
+    private static class Particao {
+        private int indice;
+        private int versao;
+        private long tamanho;
+        private DadosUsuario[] usuarios;
+        private DadosComunidade[] comunidades;
+        private int[] ids;
+        private int[] posicoes;
+    }
+
+    // Campos de um usuário lidos de uma partição; as ligações são ids. No resumo, só os campos até
+    // os atributos e a posição do registro são preenchidos
+    private static class DadosUsuario {
+        private int id;
+        private int posicao;
+        private String login;
+        private String senha;
+        private String nome;
+        private String[] atributos;
+        private int[][] ligacoes;
+        private int[] autores;
+        private String[] recados;
+        private int[] remetentes;
+        private long[] sequencias;
+        private String[] mensagens;
+    }
+
+    // Campos de uma comunidade lidos de uma partição
+    private static class DadosComunidade {
+        private String nome;
+        private String descricao;
+        private int dono;
+        private long[] sequencias;
+        private int[] remetentes;
+        private String[] mensagens;
+        private int[] membros;
+        private int[] posicoes;
+    }
+}
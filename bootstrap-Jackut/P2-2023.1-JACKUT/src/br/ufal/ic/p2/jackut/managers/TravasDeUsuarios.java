@@ -0,0 +1,127 @@
+/**
+ * Controle de concorrência da Facade baseado em travas listradas por usuário.
+ * <p>
+ * Cada usuário é associado, pelo hash do login, a uma de um número fixo de travas. Operações que
+ * alteram dois usuários (amizade, ídolo, paquera, recado) adquirem as duas travas sempre na mesma
+ * ordem, evitando deadlock. Operações que percorrem todo o sistema (remoção de conta, zerar,
+ * gravar snapshot) adquirem acesso exclusivo, que espera as operações em andamento terminarem.
+ * </p>
+ * <p>
+ * As travas são escolhidas pelo login, e não pelo usuário já resolvido, para que uma operação
+ * possa travar um login que ainda não existe ou que está sendo cadastrado: o cadastro detém a
+ * trava do novo login até registrar a operação no log, então quem trava o mesmo login para
+ * registrar uma operação sobre ele só a registra depois do cadastro.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.managers;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class TravasDeUsuarios {
+    // Quantidade padrão de travas (potência de 2)
+    private static final int LISTRAS_PADRAO = 256;
+
+    // Travas por faixa de hash de login
+    private final ReentrantLock[] listras;
+
+    // Trava global: compartilhada pelas operações comuns, exclusiva nas que percorrem todo o sistema
+    private final ReentrantReadWriteLock global = new ReentrantReadWriteLock();
+
+    /**
+     * Construtor com a quantidade padrão de travas
+     */
+    public TravasDeUsuarios() {
+        this(LISTRAS_PADRAO);
+    }
+
+    /**
+     * Construtor
+     * @param listras Quantidade de travas (arredondada para a próxima potência de 2)
+     */
+    public TravasDeUsuarios(int listras) {
+        int tamanho = Integer.highestOneBit(Math.max(1, listras - 1)) << 1;
+        this.listras = new ReentrantLock[tamanho];
+        for (int i = 0; i < tamanho; i++) {
+            this.listras[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Trava um usuário
+     * @param login Login do usuário a travar (null trava apenas a trava global compartilhada)
+     */
+    public void travar(String login) {
+        travar(login, null);
+    }
+
+    /**
+     * Trava dois usuários, na ordem das listras para evitar deadlock
+     * @param a Login do primeiro usuário (null é ignorado)
+     * @param b Login do segundo usuário (null é ignorado)
+     */
+    public void travar(String a, String b) {
+        global.readLock().lock();
+        int i = indice(a);
+        int j = indice(b);
+        if (i > j) {
+            int t = i;
+            i = j;
+            j = t;
+        }
+        if (i >= 0) {
+            listras[i].lock();
+        }
+        if (j >= 0 && j != i) {
+            listras[j].lock();
+        }
+    }
+
+    /**
+     * Libera a trava de um usuário
+     * @param login Login travado por {@link #travar(String)}
+     */
+    public void destravar(String login) {
+        destravar(login, null);
+    }
+
+    /**
+     * Libera as travas de dois usuários
+     * @param a Primeiro login travado por {@link #travar(String, String)}
+     * @param b Segundo login travado por {@link #travar(String, String)}
+     */
+    public void destravar(String a, String b) {
+        int i = indice(a);
+        int j = indice(b);
+        if (j >= 0 && j != i) {
+            listras[j].unlock();
+        }
+        if (i >= 0) {
+            listras[i].unlock();
+        }
+        global.readLock().unlock();
+    }
+
+    /**
+     * Obtém acesso exclusivo a todo o sistema, esperando as operações em andamento
+     */
+    public void travarTudo() {
+        global.writeLock().lock();
+    }
+
+    /**
+     * Libera o acesso exclusivo obtido por {@link #travarTudo()}
+     */
+    public void destravarTudo() {
+        global.writeLock().unlock();
+    }
+
+    // Índice da listra do login, ou -1 se não houver login
+    private int indice(String login) {
+        if (login == null) {
+            return -1;
+        }
+        int h = login.hashCode();
+        return (h ^ (h >>> 16)) & (listras.length - 1);
+    }
+}
@@ -2,17 +2,45 @@
  * Gerencia todas as operações relacionadas a usuários no sistema.
  * <p>
  * Responsável por criar, remover e buscar usuários, mantendo um registro centralizado
- * de todos os usuários cadastrados.
+ * de todos os usuários cadastrados. Cada usuário recebe um id inteiro denso, usado pelos
+ * relacionamentos no lugar de referências a objetos; ids de contas removidas não são reutilizados
+ * até o sistema ser zerado, e o snapshot grava e restaura o id de cada usuário.
+ * </p>
+ * <p>
+ * No modo de carga sob demanda ({@link #usarCargaSobDemanda(CacheDeUsuarios)}), só parte dos
+ * usuários fica em memória: os demais são lidos do snapshot na primeira consulta pelo login ou pelo
+ * id, e {@link #liberarMemoria()} descarrega os acessados há mais tempo. Os índices de perfis
+ * continuam cobrindo todos os usuários.
  * </p>
  */
 package br.ufal.ic.p2.jackut.managers;
 
 import br.ufal.ic.p2.jackut.models.Usuario;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class UserManager {
-    // Mapa que armazena todos os usuários do sistema, indexados por login
-    private final Map<String, Usuario> usuarios = new HashMap<>();
+    // Mapa que armazena os usuários em memória (todos, fora do modo sob demanda), indexados por login
+    private final Map<String, Usuario> usuarios = new ConcurrentHashMap<>();
+
+    // Usuários em memória indexados pelo id interno (posições de contas removidas ficam null); o vetor
+    // só é substituído dentro dos métodos sincronizados, e a leitura não precisa de trava
+    private volatile Usuario[] usuariosPorId = new Usuario[64];
+
+    // Índice dos usuários guardados no snapshot, no modo de carga sob demanda (null fora dele)
+    private volatile CacheDeUsuarios cache;
+
+    // Próximo id interno a ser atribuído
+    private int proximoId;
+
+    // Travas por usuário usadas para coordenar o acesso concorrente aos relacionamentos
+    private final TravasDeUsuarios travas = new TravasDeUsuarios();
+
+    // Índices de atributos do perfil e de nomes, mantidos a cada cadastro, edição e remoção
+    private final IndiceDePerfis indice = new IndiceDePerfis();
+
+    // Pares de inimigos de todos os usuários, consultados em toda interação entre dois usuários
+    private final IndiceDeInimigos inimigos = new IndiceDeInimigos();
 
     /**
      * Cria um novo usuário no sistema
@@ -22,6 +50,20 @@ public class UserManager {
      * @throws RuntimeException Se login/senha forem inválidos ou se o login já existir
      */
     public void criarUsuario(String login, String senha, String nome) {
+        criarUsuario(login, senha, nome, () -> { });
+    }
+
+    /**
+     * Cria um novo usuário no sistema, executando o registro da operação depois das validações e
+     * antes do cadastro. Quem chama deve deter a trava do login, para que nenhum outro cadastro do
+     * mesmo login aconteça entre a verificação e o cadastro
+     * @param login Identificador único do usuário
+     * @param senha Senha do usuário
+     * @param nome Nome real do usuário
+     * @param registro Ação executada antes do cadastro; se falhar, o usuário não é criado
+     * @throws RuntimeException Se login/senha forem inválidos ou se o login já existir
+     */
+    public void criarUsuario(String login, String senha, String nome, Runnable registro) {
         // Validações dos parâmetros
         if (login == null || login.isEmpty()) {
             throw new RuntimeException("Login inválido.");
@@ -29,12 +71,296 @@ public class UserManager {
         if (senha == null || senha.isEmpty()) {
             throw new RuntimeException("Senha inválida.");
         }
-        // Verifica se o usuário já existe
-        if (usuarios.containsKey(login)) {
+        if (containsUsuario(login)) {
+            throw new RuntimeException("Conta com esse nome já existe.");
+        }
+        registro.run();
+        // Cria e armazena o novo usuário, verificando de novo, atomicamente, se o login já existe
+        if (registrar(-1, login, senha, nome, false) == null) {
             throw new RuntimeException("Conta com esse nome já existe.");
         }
-        // Cria e armazena o novo usuário
-        usuarios.put(login, new Usuario(login, senha, nome));
+    }
+
+    /**
+     * Registra um usuário carregado da persistência, sem as validações de cadastro
+     * @param login Identificador único do usuário
+     * @param senha Senha do usuário
+     * @param nome Nome real do usuário
+     * @return Usuário registrado
+     */
+    public Usuario restaurarUsuario(String login, String senha, String nome) {
+        return registrar(-1, login, senha, nome, true);
+    }
+
+    /**
+     * Registra um usuário carregado da persistência com o id interno que ele tinha ao ser gravado,
+     * para que as referências gravadas por id continuem válidas
+     * @param id Id interno gravado
+     * @param login Identificador único do usuário
+     * @param senha Senha do usuário
+     * @param nome Nome real do usuário
+     * @return Usuário registrado
+     */
+    public Usuario restaurarUsuario(int id, String login, String senha, String nome) {
+        return registrar(id, login, senha, nome, true);
+    }
+
+    /**
+     * Registra o usuário nos dois índices com o id informado ou, se ele for negativo, com o próximo
+     * @param substituir Se um usuário já cadastrado com o mesmo login deve ser substituído
+     * @return Usuário registrado ou null se o login já existir e não puder ser substituído
+     */
+    private synchronized Usuario registrar(int id, String login, String senha, String nome, boolean substituir) {
+        Usuario anterior = usuarios.get(login);
+        if (anterior == null && cache != null && cache.getId(login) >= 0) {
+            // Usuário fora da memória: só é preciso trazê-lo se for substituído
+            if (!substituir) {
+                return null;
+            }
+            anterior = carregar(cache.getId(login));
+        }
+        if (anterior != null) {
+            if (!substituir) {
+                return null;
+            }
+            usuariosPorId[anterior.getId()] = null;
+            anterior.invalidar();
+            desindexar(anterior);
+            if (cache != null) {
+                cache.remover(login, anterior.getId());
+            }
+        }
+
+        if (id < 0) {
+            id = proximoId;
+        }
+        Usuario usuario = new Usuario(id, login, senha, nome);
+        guardar(usuario);
+        proximoId = Math.max(proximoId, id + 1);
+        if (cache != null) {
+            cache.registrar(login, id, CacheDeUsuarios.SEM_REGISTRO);
+        }
+        indice.indexarNome(usuario.getId(), nome);
+        return usuario;
+    }
+
+    // Coloca um usuário nos índices de usuários em memória (chamado com o gerenciador travado)
+    private void guardar(Usuario usuario) {
+        Usuario[] porId = usuariosPorId;
+        if (usuario.getId() >= porId.length) {
+            porId = Arrays.copyOf(porId, Math.max(porId.length * 2, usuario.getId() + 1));
+        }
+        porId[usuario.getId()] = usuario;
+        usuariosPorId = porId;
+        usuarios.put(usuario.getLogin(), usuario);
+    }
+
+    /**
+     * Passa a carregar os usuários sob demanda: a partir daqui, os usuários cadastrados são
+     * registrados no cache, e os que não estiverem em memória são lidos do snapshot
+     * @param cache Índice dos usuários guardados no snapshot
+     */
+    public synchronized void usarCargaSobDemanda(CacheDeUsuarios cache) {
+        for (Usuario usuario : usuarios.values()) {
+            cache.registrar(usuario.getLogin(), usuario.getId(), CacheDeUsuarios.SEM_REGISTRO);
+        }
+        this.cache = cache;
+    }
+
+    /**
+     * Obtém o índice da carga sob demanda
+     * @return Cache de usuários ou null se todos os usuários ficam em memória
+     */
+    public CacheDeUsuarios getCache() {
+        return cache;
+    }
+
+    /**
+     * Registra um usuário guardado no snapshot sem trazê-lo para a memória, indexando o nome e os
+     * atributos do perfil para as buscas (usado ao carregar no modo sob demanda)
+     * @param id Id interno gravado
+     * @param login Login do usuário
+     * @param nome Nome do usuário
+     * @param atributos Nomes e valores dos atributos do perfil, alternados
+     * @param endereco Endereço do registro no snapshot
+     */
+    synchronized void registrarNoSnapshot(int id, String login, String nome, String[] atributos, long endereco) {
+        cache.registrar(login, id, endereco);
+        proximoId = Math.max(proximoId, id + 1);
+        indice.indexarNome(id, nome);
+        for (int i = 0; i < atributos.length; i += 2) {
+            indice.atualizarAtributo(id, atributos[i], null, atributos[i + 1]);
+        }
+    }
+
+    // Traz para a memória um usuário que só está no snapshot, ou devolve o que outra thread já trouxe
+    private synchronized Usuario carregar(int id) {
+        Usuario[] porId = usuariosPorId;
+        Usuario usuario = id < porId.length ? porId[id] : null;
+        if (usuario == null) {
+            usuario = cache.carregar(id);
+            if (usuario != null) {
+                guardar(usuario);
+                indexarInimigos(usuario);
+            }
+        }
+        return usuario;
+    }
+
+    /**
+     * Verifica se a quantidade de usuários em memória pede uma passagem de {@link #liberarMemoria(boolean)}
+     * @return true se a passagem deve ser feita (sempre false fora do modo sob demanda)
+     */
+    public boolean precisaLiberarMemoria() {
+        CacheDeUsuarios atual = cache;
+        return atual != null && atual.precisaLiberar(usuarios.size());
+    }
+
+    /**
+     * Descarrega da memória os usuários limpos acessados há mais tempo, até a capacidade do cache.
+     * Os usuários descarregados são invalidados, e as sessões os resolvem de novo pelo login.
+     * Exige que nenhuma operação esteja em andamento.
+     * @param repetir Se é uma nova tentativa da passagem anterior (depois de gravar o snapshot), que
+     *                preserva os mesmos usuários acessados recentemente
+     * @return Quantidade de usuários descarregados
+     */
+    public synchronized int liberarMemoria(boolean repetir) {
+        if (cache == null) {
+            return 0;
+        }
+        List<Usuario> descartes = cache.escolherDescartes(usuarios.values(), repetir);
+        for (Usuario usuario : descartes) {
+            usuarios.remove(usuario.getLogin());
+            usuariosPorId[usuario.getId()] = null;
+            usuario.invalidar();
+        }
+        return descartes.size();
+    }
+
+    /**
+     * Obtém a quantidade de usuários em memória
+     * @return Quantidade de usuários em memória
+     */
+    public int getQuantidadeEmMemoria() {
+        return usuarios.size();
+    }
+
+    /**
+     * Obtém a quantidade de usuários cadastrados, estejam ou não em memória
+     * @return Quantidade de usuários
+     */
+    public int getQuantidadeUsuarios() {
+        CacheDeUsuarios atual = cache;
+        return atual != null ? atual.getQuantidadeUsuarios() : usuarios.size();
+    }
+
+    /**
+     * Preenche ou altera um atributo do perfil de um usuário, atualizando o índice de atributos.
+     * Toda alteração de perfil deve passar por aqui para que as buscas a enxerguem.
+     * @param usuario Usuário cujo perfil será alterado
+     * @param atributo Nome do atributo
+     * @param valor Valor do atributo
+     * @throws RuntimeException Se o nome do atributo for nulo ou vazio
+     */
+    public void editarAtributo(Usuario usuario, String atributo, String valor) {
+        String anterior = usuario.getPerfil().adicionarAtributo(atributo, valor);
+        indice.atualizarAtributo(usuario.getId(), atributo, anterior, valor);
+    }
+
+    /**
+     * Busca os usuários que preencheram um atributo com o valor informado. O atributo "nome"
+     * é procurado no nome do cadastro, como em getAtributoUsuario.
+     * @param atributo Nome do atributo
+     * @param valor Valor procurado (comparado exatamente)
+     * @return Usuários encontrados, em ordem arbitrária
+     */
+    public List<Usuario> buscarPorAtributo(String atributo, String valor) {
+        List<Usuario> encontrados = new ArrayList<>();
+        if ("nome".equals(atributo)) {
+            for (int id : indice.buscarPorNome(valor)) {
+                Usuario usuario = getUsuarioPorId(id);
+                if (usuario != null && usuario.getNome().equals(valor)) {
+                    encontrados.add(usuario);
+                }
+            }
+            return encontrados;
+        }
+        for (int id : indice.buscarPorAtributo(atributo, valor)) {
+            Usuario usuario = getUsuarioPorId(id);
+            if (usuario != null) {
+                encontrados.add(usuario);
+            }
+        }
+        return encontrados;
+    }
+
+    /**
+     * Busca os usuários cujo nome começa pelo prefixo, sem diferenciar maiúsculas de minúsculas
+     * @param prefixo Prefixo do nome
+     * @return Usuários encontrados, em ordem alfabética de nome
+     */
+    public List<Usuario> buscarPorPrefixoDoNome(String prefixo) {
+        List<Usuario> encontrados = new ArrayList<>();
+        for (int id : indice.buscarPorPrefixoDoNome(prefixo)) {
+            Usuario usuario = getUsuarioPorId(id);
+            if (usuario != null) {
+                encontrados.add(usuario);
+            }
+        }
+        return encontrados;
+    }
+
+    /**
+     * Adiciona um inimigo a um usuário, incluindo o par no índice de inimigos. Toda inimizade deve
+     * passar por aqui para que as validações das interações a enxerguem.
+     * @param usuario Usuário que está adicionando o inimigo
+     * @param inimigo Usuário bloqueado
+     * @throws RuntimeException Se o usuário já for inimigo
+     */
+    public void adicionarInimigo(Usuario usuario, Usuario inimigo) {
+        usuario.adicionarInimigo(inimigo);
+        inimigos.adicionar(usuario.getId(), inimigo.getId());
+    }
+
+    /**
+     * Verifica se um dos usuários tem o outro como inimigo, em qualquer sentido. É o ponto único
+     * de validação dos bloqueios entre usuários.
+     * @param usuario Um usuário
+     * @param outro Outro usuário
+     * @return true se algum dos dois bloqueou o outro
+     */
+    public boolean saoInimigos(Usuario usuario, Usuario outro) {
+        return inimigos.saoInimigos(usuario.getId(), outro.getId());
+    }
+
+    /**
+     * Inclui no índice de inimigos os pares de um usuário cujas arestas foram restauradas de uma vez
+     * (as de ida e as reversas), sem passar por {@link #adicionarInimigo(Usuario, Usuario)}
+     * @param usuario Usuário restaurado
+     */
+    void indexarInimigos(Usuario usuario) {
+        for (int inimigo : usuario.getIdsInimigos()) {
+            inimigos.adicionar(usuario.getId(), inimigo);
+        }
+        for (int desafeto : usuario.getIdsInimigoDe()) {
+            inimigos.adicionar(desafeto, usuario.getId());
+        }
+    }
+
+    /**
+     * Obtém o índice de inimigos, para as métricas
+     * @return Índice de inimigos
+     */
+    public IndiceDeInimigos getIndiceDeInimigos() {
+        return inimigos;
+    }
+
+    // Retira dos índices o nome e os atributos de um usuário que deixou de estar cadastrado
+    private void desindexar(Usuario usuario) {
+        indice.removerNome(usuario.getId(), usuario.getNome());
+        for (Map.Entry<String, String> atributo : usuario.getPerfil().getAtributos().entrySet()) {
+            indice.atualizarAtributo(usuario.getId(), atributo.getKey(), atributo.getValue(), null);
+        }
     }
 
     /**
@@ -43,7 +369,32 @@ public class UserManager {
      * @return Objeto Usuario ou null se não encontrado
      */
     public Usuario getUsuario(String login) {
-        return usuarios.get(login);
+        if (login == null) {
+            return null;
+        }
+        Usuario usuario = usuarios.get(login);
+        CacheDeUsuarios atual = cache;
+        if (atual != null) {
+            int id = usuario != null ? usuario.getId() : atual.getId(login);
+            if (usuario == null && id >= 0) {
+                return carregar(id);
+            }
+            atual.tocar(id);
+        }
+        return usuario;
+    }
+
+    /**
+     * Registra no cache um acesso a um usuário obtido sem passar por {@link #getUsuario(String)}
+     * (como a referência guardada em uma sessão), para que ele fique protegido da próxima passagem
+     * de liberação enquanto a operação que o obteve ainda não o travou
+     * @param usuario Usuário acessado
+     */
+    void registrarAcesso(Usuario usuario) {
+        CacheDeUsuarios atual = cache;
+        if (atual != null) {
+            atual.tocar(usuario.getId());
+        }
     }
 
     /**
@@ -52,41 +403,126 @@ public class UserManager {
      * @return true se o usuário existe, false caso contrário
      */
     public boolean containsUsuario(String login) {
-        return usuarios.containsKey(login);
+        CacheDeUsuarios atual = cache;
+        return login != null && (usuarios.containsKey(login) || atual != null && atual.getId(login) >= 0);
+    }
+
+    /**
+     * Obtém o id interno de um usuário pelo login, sem trazê-lo para a memória
+     * @param login Login do usuário
+     * @return Id interno ou -1 se o usuário não existir
+     */
+    public int getIdPorLogin(String login) {
+        Usuario usuario = login == null ? null : usuarios.get(login);
+        if (usuario != null) {
+            return usuario.getId();
+        }
+        CacheDeUsuarios atual = cache;
+        return atual == null ? -1 : atual.getId(login);
+    }
+
+    /**
+     * Verifica se um id pertence a um usuário cadastrado, sem trazê-lo para a memória
+     * @param id Id interno
+     * @return true se o usuário existir
+     */
+    public boolean containsId(int id) {
+        Usuario[] porId = usuariosPorId;
+        if (id >= 0 && id < porId.length && porId[id] != null) {
+            return true;
+        }
+        CacheDeUsuarios atual = cache;
+        return atual != null && atual.contemId(id);
+    }
+
+    /**
+     * Obtém um usuário pelo id interno
+     * @param id Id interno do usuário
+     * @return Objeto Usuario ou null se o id não pertencer a um usuário cadastrado
+     */
+    public Usuario getUsuarioPorId(int id) {
+        Usuario[] porId = usuariosPorId;
+        Usuario usuario = id >= 0 && id < porId.length ? porId[id] : null;
+        CacheDeUsuarios atual = cache;
+        if (atual != null) {
+            if (usuario == null) {
+                return atual.contemId(id) ? carregar(id) : null;
+            }
+            atual.tocar(id);
+        }
+        return usuario;
+    }
+
+    /**
+     * Obtém um usuário pelo id interno somente se ele estiver em memória
+     * @param id Id interno do usuário
+     * @return Objeto Usuario ou null se ele não existir ou não estiver em memória
+     */
+    public Usuario getUsuarioEmMemoria(int id) {
+        Usuario[] porId = usuariosPorId;
+        return id >= 0 && id < porId.length ? porId[id] : null;
     }
 
     /**
-     * Remove um usuário do sistema e todas as suas referências
+     * Obtém o limite superior (exclusivo) dos ids internos já atribuídos
+     * @return Maior id atribuído mais um
+     */
+    public synchronized int getLimiteIds() {
+        return proximoId;
+    }
+
+    /**
+     * Remove um usuário do sistema e todas as suas referências.
+     * Apenas os usuários relacionados a ele são visitados.
      * @param usuario Usuário a ser removido
      */
     public void removerUsuario(Usuario usuario) {
-        String login = usuario.getLogin();
+        // Remove as referências ao usuário nos usuários relacionados a ele e depois os seus pares de
+        // inimigos (os relacionados trazidos da memória por desvincular registram os pares de novo)
+        int[] idsInimigos = usuario.getIdsInimigos();
+        int[] idsInimigoDe = usuario.getIdsInimigoDe();
+        usuario.desvincular(this::getUsuarioPorId);
+        inimigos.removerUsuario(usuario.getId(), idsInimigos, idsInimigoDe);
 
-        // Remove todas as referências ao usuário em outros usuários
-        for (Usuario outro : usuarios.values()) {
-            outro.getAmigos().remove(usuario);
-            outro.getConvitesRecebidos().remove(usuario);
-            outro.getConvitesEnviados().remove(usuario);
-            outro.getIdolos().remove(usuario);
-            outro.getFas().remove(usuario);
-            outro.getPaqueras().remove(usuario);
-            outro.inimigos.remove(usuario);
-            outro.limparRecadosDoUsuario(login);
+        // Remove o usuário dos índices por login e por id
+        synchronized (this) {
+            usuarios.remove(usuario.getLogin());
+            usuariosPorId[usuario.getId()] = null;
+            usuario.invalidar();
+            if (cache != null) {
+                cache.remover(usuario.getLogin(), usuario.getId());
+            }
         }
-
-        // Remove o usuário do mapa principal
-        usuarios.remove(login);
+        desindexar(usuario);
     }
 
     /**
      * Limpa todos os usuários do sistema (reinicialização)
      */
-    public void clear() {
+    public synchronized void clear() {
+        for (Usuario usuario : usuarios.values()) {
+            usuario.invalidar();
+        }
         usuarios.clear();
+        usuariosPorId = new Usuario[64];
+        proximoId = 0;
+        indice.clear();
+        inimigos.limpar();
+        if (cache != null) {
+            cache.limpar();
+        }
+    }
+
+    /**
+     * Obtém as travas por usuário compartilhadas pelos gerenciadores
+     * @return Travas de usuários
+     */
+    public TravasDeUsuarios getTravas() {
+        return travas;
     }
 
     /**
-     * Obtém todos os usuários do sistema
+     * Obtém os usuários em memória (todos, fora do modo sob demanda)
      * @return Mapa de usuários (login -> Usuario)
      */
     public Map<String, Usuario> getUsuarios() {
@@ -1,20 +1,58 @@
 package br.ufal.ic.p2.jackut.models;
 
+import br.ufal.ic.p2.jackut.util.CaixaDeEntrada;
+
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
 
 public class Comunidade implements Serializable {
     // Controle de versão para serialização
     private static final long serialVersionUID = 1L;
 
+    // Quantidade mínima de mensagens no log antes de descartar as já lidas por todos
+    private static final int LIMITE_DESCARTE = 64;
+
     // Atributos básicos da comunidade (imutáveis após criação)
     private final String nome;
     private final String descricao;
-    private final Usuario dono;
+    private final String loginDono;
+    private final int idDono;
+
+    // Logins dos membros da comunidade (mantém ordem de inserção), cada um com a posição no log
+    // da próxima mensagem que ainda não leu. A comunidade guarda só os logins, e não os objetos dos
+    // usuários, para não prendê-los na memória quando são carregados sob demanda
+    private final Map<String, Long> membros;
+
+    // Log de mensagens em vetores paralelos: sequência global de chegada, id do remetente e texto.
+    // A entrada de índice i do vetor corresponde à posição base + i do log
+    private long[] sequencias = new long[0];
+    private int[] remetentes = new int[0];
+    private String[] mensagens = new String[0];
+    private int tamanhoLog;
+    private long base;
+
+    // Tamanho do log que dispara a próxima tentativa de descartar mensagens já lidas
+    private int proximoDescarte = LIMITE_DESCARTE;
+
+    // Trava mantida pelo CommunityManager durante cada operação sobre a comunidade, inclusive o
+    // registro no journal. É uma ReentrantLock, e não o monitor do objeto, porque quem espera um
+    // monitor em uma thread virtual prende a thread portadora durante toda a gravação
+    private final ReentrantLock trava = new ReentrantLock();
+
+    // Lista de membros já formatada para exibição (null quando precisa ser refeita)
+    private volatile String membrosFormatados;
 
-    // Conjunto de membros da comunidade (mantém ordem de inserção)
-    private final Set<Usuario> membros;
+    // Logins dos membros em ordem alfabética, para a consulta paginada; montado na primeira
+    // consulta e mantido a cada alteração de membros a partir dela
+    private transient NavigableSet<String> membrosOrdenados;
 
     /**
      * Construtor - Cria uma nova comunidade
@@ -23,11 +61,24 @@ public class Comunidade implements Serializable {
      * @param dono Usuário criador da comunidade (torna-se primeiro membro)
      */
     public Comunidade(String nome, String descricao, Usuario dono) {
+        this(nome, descricao, dono.getLogin(), dono.getId());
+    }
+
+    /**
+     * Construtor - Cria uma comunidade a partir do login e do id interno do dono (usado ao carregar
+     * dados persistidos sem trazer o dono para a memória)
+     * @param nome Nome da comunidade
+     * @param descricao Descrição da comunidade
+     * @param loginDono Login do criador da comunidade (torna-se primeiro membro)
+     * @param idDono Id interno do criador da comunidade
+     */
+    public Comunidade(String nome, String descricao, String loginDono, int idDono) {
         this.nome = nome;
         this.descricao = descricao;
-        this.dono = dono;
-        this.membros = new LinkedHashSet<>();
-        this.membros.add(dono); // O dono é automaticamente adicionado como membro
+        this.loginDono = loginDono;
+        this.idDono = idDono;
+        this.membros = new LinkedHashMap<>();
+        this.membros.put(loginDono, 0L); // O dono é automaticamente adicionado como membro
     }
 
     /**
@@ -47,29 +98,261 @@ public class Comunidade implements Serializable {
     }
 
     /**
-     * Retorna o dono da comunidade
-     * @return Objeto Usuario representando o dono
+     * Retorna o login do dono da comunidade
+     * @return Login do dono
      */
-    public Usuario getDono() {
-        return dono;
+    public String getLoginDono() {
+        return loginDono;
     }
 
     /**
-     * Retorna uma cópia do conjunto de membros da comunidade
-     * @return Conjunto de membros (cópia para proteção do encapsulamento)
+     * Retorna o id interno do dono da comunidade
+     * @return Id do dono
      */
-    public Set<Usuario> getMembros() {
-        return new LinkedHashSet<>(membros);
+    public int getIdDono() {
+        return idDono;
     }
 
     /**
-     * Adiciona um novo membro à comunidade
-     * @param usuario Usuário a ser adicionado
+     * Retorna a trava das operações do CommunityManager sobre a comunidade, que abrangem o registro
+     * no journal e a alteração em memória
+     * @return Trava da comunidade
+     */
+    public ReentrantLock getTrava() {
+        return trava;
+    }
+
+    /**
+     * Retorna uma cópia do conjunto de logins dos membros da comunidade
+     * @return Logins dos membros (cópia para proteção do encapsulamento)
+     */
+    public synchronized Set<String> getMembros() {
+        return new LinkedHashSet<>(membros.keySet());
+    }
+
+    /**
+     * Verifica se um usuário é membro da comunidade
+     * @param login Login do usuário
+     * @return true se for membro, false caso contrário
+     */
+    public synchronized boolean ehMembro(String login) {
+        return membros.containsKey(login);
+    }
+
+    /**
+     * Adiciona um novo membro à comunidade. O membro só lê as mensagens enviadas depois de entrar.
+     * @param login Login do usuário a ser adicionado
      * @throws RuntimeException Se o usuário já for membro da comunidade
      */
-    public void adicionarMembro(Usuario usuario) {
-        if (!membros.add(usuario)) {
+    public synchronized void adicionarMembro(String login) {
+        if (membros.putIfAbsent(login, base + tamanhoLog) != null) {
             throw new RuntimeException("Usuario já faz parte dessa comunidade.");
         }
+        membrosFormatados = null;
+        if (membrosOrdenados != null) {
+            membrosOrdenados.add(login);
+        }
+    }
+
+    /**
+     * Retorna a lista de membros formatada guardada, se ainda for válida
+     * @return Lista formatada ou null se precisar ser refeita
+     */
+    public String getMembrosFormatados() {
+        return membrosFormatados;
+    }
+
+    /**
+     * Formata a lista de membros e a guarda até a próxima alteração de membros. A formatação
+     * acontece com a comunidade travada, para que nenhuma alteração fique de fora da lista guardada.
+     * @param formatador Função que recebe a comunidade e os logins dos membros e produz a lista formatada
+     * @return Lista formatada
+     */
+    public synchronized String formatarMembros(BiFunction<Comunidade, Set<String>, String> formatador) {
+        if (membrosFormatados == null) {
+            membrosFormatados = formatador.apply(this, membros.keySet());
+        }
+        return membrosFormatados;
+    }
+
+    /**
+     * Obtém uma página dos membros em ordem alfabética, percorrendo apenas os membros da página
+     * @param cursor Cursor da página anterior (null ou vazio para a primeira)
+     * @param limite Quantidade máxima de logins
+     * @return Página de logins
+     * @throws RuntimeException Se o limite não for positivo
+     */
+    public synchronized Pagina getPaginaMembros(String cursor, int limite) {
+        if (membrosOrdenados == null) {
+            membrosOrdenados = new TreeSet<>(membros.keySet());
+        }
+        return Pagina.de(membrosOrdenados, cursor, limite);
+    }
+
+    /**
+     * Acrescenta uma mensagem ao fim do log da comunidade, em O(1) amortizado
+     * @param sequencia Sequência global de chegada da mensagem (crescente entre chamadas)
+     * @param remetente Id do remetente
+     * @param mensagem Conteúdo da mensagem
+     */
+    public synchronized void publicar(long sequencia, int remetente, String mensagem) {
+        if (tamanhoLog >= proximoDescarte) {
+            descartarLidas();
+        }
+        if (tamanhoLog == sequencias.length) {
+            int capacidade = Math.max(8, tamanhoLog * 2);
+            sequencias = Arrays.copyOf(sequencias, capacidade);
+            remetentes = Arrays.copyOf(remetentes, capacidade);
+            mensagens = Arrays.copyOf(mensagens, capacidade);
+        }
+        sequencias[tamanhoLog] = sequencia;
+        remetentes[tamanhoLog] = remetente;
+        mensagens[tamanhoLog] = mensagem;
+        tamanhoLog++;
+    }
+
+    /**
+     * Obtém a sequência de chegada da próxima mensagem não lida por um membro
+     * @param membro Login do membro da comunidade
+     * @return Sequência da mensagem ou -1 se o membro não tiver mensagens a ler
+     */
+    public synchronized long getSequenciaNaoLida(String membro) {
+        Long cursor = membros.get(membro);
+        if (cursor == null || cursor >= base + tamanhoLog) {
+            return -1;
+        }
+        return sequencias[(int) (cursor - base)];
+    }
+
+    /**
+     * Lê a próxima mensagem não lida por um membro, avançando sua posição no log
+     * @param membro Login do membro da comunidade
+     * @return A mensagem ou null se não houver mensagens a ler
+     */
+    public synchronized String lerMensagem(String membro) {
+        Long cursor = membros.get(membro);
+        if (cursor == null || cursor >= base + tamanhoLog) {
+            return null;
+        }
+        membros.put(membro, cursor + 1);
+        return mensagens[(int) (cursor - base)];
+    }
+
+    /**
+     * Retira as mensagens que um membro ainda não leu, na ordem do log, avançando sua posição de
+     * leitura até o fim
+     * @param membro Login do membro da comunidade
+     * @param destino Ação que recebe cada mensagem, o id do seu remetente e a sua sequência de chegada
+     */
+    public synchronized void retirarNaoLidas(String membro, CaixaDeEntrada.Entrada destino) {
+        Long cursor = membros.get(membro);
+        if (cursor == null) {
+            return;
+        }
+        for (long posicao = cursor; posicao < base + tamanhoLog; posicao++) {
+            int i = (int) (posicao - base);
+            destino.aceitar(mensagens[i], remetentes[i], sequencias[i]);
+        }
+        membros.put(membro, base + tamanhoLog);
+    }
+
+    /**
+     * Obtém a posição no log da próxima mensagem que o membro ainda não leu
+     * @param membro Login do membro da comunidade
+     * @return Posição no log ou -1 se o usuário não for membro
+     */
+    public synchronized long getPosicaoLeitura(String membro) {
+        Long cursor = membros.get(membro);
+        return cursor == null ? -1 : cursor;
+    }
+
+    /**
+     * Restaura a posição de leitura de um membro (usado ao carregar dados persistidos)
+     * @param membro Login do membro da comunidade
+     * @param posicao Posição no log da próxima mensagem não lida
+     */
+    public synchronized void restaurarPosicaoLeitura(String membro, long posicao) {
+        if (membros.containsKey(membro)) {
+            membros.put(membro, Math.max(base, Math.min(posicao, base + tamanhoLog)));
+        }
+    }
+
+    /**
+     * Obtém a posição no log da primeira mensagem ainda guardada
+     * @return Posição da primeira mensagem do log
+     */
+    public synchronized long getInicioLog() {
+        return base;
+    }
+
+    /**
+     * Obtém a quantidade de mensagens guardadas no log (inclui as já lidas por todos que ainda não
+     * foram descartadas)
+     * @return Quantidade de mensagens
+     */
+    public synchronized int getTamanhoLog() {
+        return tamanhoLog;
+    }
+
+    /**
+     * Retorna uma cópia das sequências de chegada das mensagens guardadas no log
+     * @return Sequências, a partir de {@link #getInicioLog()}
+     */
+    public synchronized long[] getSequenciasLog() {
+        return Arrays.copyOf(sequencias, tamanhoLog);
+    }
+
+    /**
+     * Retorna uma cópia dos ids dos remetentes das mensagens guardadas no log
+     * @return Ids dos remetentes, a partir de {@link #getInicioLog()}
+     */
+    public synchronized int[] getRemetentesLog() {
+        return Arrays.copyOf(remetentes, tamanhoLog);
+    }
+
+    /**
+     * Retorna uma cópia das mensagens guardadas no log
+     * @return Mensagens, a partir de {@link #getInicioLog()}
+     */
+    public synchronized String[] getMensagensLog() {
+        return Arrays.copyOf(mensagens, tamanhoLog);
+    }
+
+    /**
+     * Descarta do início do log as mensagens que todos os membros já leram. É chamado quando o
+     * log dobra de tamanho, de modo que o custo de percorrer os membros é amortizado nas publicações.
+     */
+    private void descartarLidas() {
+        long menor = base + tamanhoLog;
+        for (long cursor : membros.values()) {
+            menor = Math.min(menor, cursor);
+        }
+        int lidas = (int) (menor - base);
+        if (lidas > 0) {
+            int restantes = tamanhoLog - lidas;
+            System.arraycopy(sequencias, lidas, sequencias, 0, restantes);
+            System.arraycopy(remetentes, lidas, remetentes, 0, restantes);
+            System.arraycopy(mensagens, lidas, mensagens, 0, restantes);
+            Arrays.fill(mensagens, restantes, tamanhoLog, null);
+            tamanhoLog = restantes;
+            base = menor;
+        }
+        proximoDescarte = Math.max(LIMITE_DESCARTE, tamanhoLog * 2);
+    }
+
+    /**
+     * Remove um membro da comunidade
+     * @param login Login do usuário a ser removido
+     * @return true se o usuário era membro, false caso contrário
+     */
+    public synchronized boolean removerMembro(String login) {
+        if (membros.remove(login) == null) {
+            return false;
+        }
+        membrosFormatados = null;
+        if (membrosOrdenados != null) {
+            membrosOrdenados.remove(login);
+        }
+        return true;
     }
 }
@@ -0,0 +1,122 @@
+/**
+ * Dicionário de nomes de atributos compartilhado por todos os perfis.
+ * <p>
+ * Cada nome de atributo recebe um índice inteiro na primeira vez em que aparece, e os perfis
+ * guardam apenas os índices, em vez de uma cópia da chave por usuário. O dicionário também interna
+ * os valores de atributos de baixa cardinalidade (cidade, estado civil...): enquanto um atributo
+ * tiver no máximo {@code jackut.perfil.valoresInternados} valores distintos (256 por padrão;
+ * 0 desativa), valores iguais passam a ser a mesma instância de String. Ao ultrapassar o limite,
+ * o atributo é tratado como de alta cardinalidade e sua tabela de valores é descartada.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.models;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class DicionarioDeAtributos {
+    // Instância compartilhada pelos perfis
+    private static final DicionarioDeAtributos INSTANCIA = new DicionarioDeAtributos(
+            Integer.getInteger("jackut.perfil.valoresInternados", 256));
+
+    // Índice de cada nome de atributo
+    private final Map<String, Integer> indices = new ConcurrentHashMap<>();
+
+    // Nome de cada índice; o vetor só é substituído sob a trava do dicionário
+    private volatile String[] nomes = new String[16];
+
+    // Valores internados por índice de atributo (null quando o atributo não é mais internado)
+    private volatile Map<String, String>[] valores = novasTabelas(16);
+
+    // Quantidade de nomes registrados
+    private int tamanho;
+
+    // Máximo de valores distintos internados por atributo
+    private final int limiteValores;
+
+    private DicionarioDeAtributos(int limiteValores) {
+        this.limiteValores = limiteValores;
+    }
+
+    /**
+     * Obtém o dicionário compartilhado
+     * @return Dicionário usado por todos os perfis
+     */
+    public static DicionarioDeAtributos getInstancia() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Obtém o índice de um nome de atributo, registrando-o se for novo
+     * @param nome Nome do atributo
+     * @return Índice do atributo
+     */
+    public int registrar(String nome) {
+        Integer indice = indices.get(nome);
+        return indice != null ? indice : registrarNovo(nome);
+    }
+
+    /**
+     * Obtém o índice de um nome de atributo sem registrá-lo
+     * @param nome Nome do atributo
+     * @return Índice do atributo ou -1 se nenhum perfil o utilizou
+     */
+    public int getIndice(String nome) {
+        Integer indice = indices.get(nome);
+        return indice == null ? -1 : indice;
+    }
+
+    /**
+     * Obtém o nome de um atributo pelo índice
+     * @param indice Índice devolvido por {@link #registrar(String)}
+     * @return Nome do atributo
+     */
+    public String getNome(int indice) {
+        return nomes[indice];
+    }
+
+    /**
+     * Devolve a instância compartilhada de um valor do atributo, se ele ainda for internado
+     * @param indice Índice do atributo
+     * @param valor Valor a internar
+     * @return Instância compartilhada do valor, ou o próprio valor se o atributo não for internado
+     */
+    public String internar(int indice, String valor) {
+        Map<String, String> tabela = valores[indice];
+        if (tabela == null || valor == null) {
+            return valor;
+        }
+        String existente = tabela.get(valor);
+        if (existente != null) {
+            return existente;
+        }
+        if (tabela.size() >= limiteValores) {
+            // Alta cardinalidade: internar só ocuparia memória
+            valores[indice] = null;
+            return valor;
+        }
+        existente = tabela.putIfAbsent(valor, valor);
+        return existente != null ? existente : valor;
+    }
+
+    private synchronized int registrarNovo(String nome) {
+        Integer indice = indices.get(nome);
+        if (indice != null) {
+            return indice;
+        }
+        if (tamanho == nomes.length) {
+            valores = Arrays.copyOf(valores, tamanho * 2);
+            nomes = Arrays.copyOf(nomes, tamanho * 2);
+        }
+        nomes[tamanho] = nome;
+        valores[tamanho] = limiteValores > 0 ? new ConcurrentHashMap<>() : null;
+        indices.put(nome, tamanho);
+        return tamanho++;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Map<String, String>[] novasTabelas(int capacidade) {
+        return (Map<String, String>[]) new Map[capacidade];
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Página de uma consulta paginada de logins (amigos, fãs, paqueras ou membros de comunidade).
+ * <p>
+ * Os logins vêm em ordem alfabética. O cursor de continuação é o último login da página: a
+ * próxima página começa no primeiro login maior que ele, de modo que inclusões e remoções entre
+ * as consultas não fazem a paginação pular nem repetir os logins que permaneceram no conjunto.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+
+public class Pagina {
+    // Logins da página, em ordem alfabética
+    private final List<String> logins;
+
+    // Cursor da próxima página (null se esta for a última)
+    private final String proximo;
+
+    private Pagina(List<String> logins, String proximo) {
+        this.logins = Collections.unmodifiableList(logins);
+        this.proximo = proximo;
+    }
+
+    /**
+     * Monta uma página a partir de um conjunto ordenado de logins, percorrendo apenas os
+     * elementos da página (O(log n + limite))
+     * @param ordenados Logins em ordem alfabética
+     * @param cursor Cursor devolvido pela página anterior (null ou vazio para a primeira página)
+     * @param limite Quantidade máxima de logins na página
+     * @return Página com até limite logins posteriores ao cursor
+     * @throws RuntimeException Se o limite não for positivo
+     */
+    public static Pagina de(NavigableSet<String> ordenados, String cursor, int limite) {
+        validarLimite(limite);
+        NavigableSet<String> restantes = cursor == null || cursor.isEmpty()
+                ? ordenados : ordenados.tailSet(cursor, false);
+
+        // O tamanho de uma visão parcial do conjunto custa O(n), por isso não é usado aqui
+        List<String> logins = new ArrayList<>(Math.min(limite, 256));
+        String ultimo = null;
+        for (String login : restantes) {
+            if (logins.size() == limite) {
+                return new Pagina(logins, ultimo);
+            }
+            logins.add(login);
+            ultimo = login;
+        }
+        return new Pagina(logins, null);
+    }
+
+    /**
+     * Cria uma página vazia, sem continuação
+     * @param limite Quantidade máxima de logins pedida (validada como nas demais páginas)
+     * @return Página vazia
+     * @throws RuntimeException Se o limite não for positivo
+     */
+    public static Pagina vazia(int limite) {
+        validarLimite(limite);
+        return new Pagina(new ArrayList<>(), null);
+    }
+
+    /**
+     * Retorna os logins da página
+     * @return Lista imutável de logins em ordem alfabética
+     */
+    public List<String> getLogins() {
+        return logins;
+    }
+
+    /**
+     * Retorna o cursor a ser passado para obter a próxima página
+     * @return Cursor ou null se não houver mais logins
+     */
+    public String getProximo() {
+        return proximo;
+    }
+
+    /**
+     * Verifica se há logins depois desta página
+     * @return true se houver uma próxima página
+     */
+    public boolean temProxima() {
+        return proximo != null;
+    }
+
+    // Formata a página no mesmo formato das listas completas: logins entre chaves
+    @Override
+    public String toString() {
+        return "{" + String.join(",", logins) + "}";
+    }
+
+    private static void validarLimite(int limite) {
+        if (limite <= 0) {
+            throw new RuntimeException("Tamanho de página inválido.");
+        }
+    }
+}
@@ -2,11 +2,16 @@
  * Representa o perfil personalizável de um usuário, armazenando atributos adicionais.
  * <p>
  * Permite que cada usuário tenha um perfil único com informações extras além dos dados básicos.
- * Os atributos são armazenados como pares chave-valor.
+ * Os atributos são armazenados como pares chave-valor em dois vetores do tamanho exato do perfil:
+ * as chaves são índices no {@link DicionarioDeAtributos} compartilhado, e os valores de atributos
+ * de baixa cardinalidade são instâncias internadas por ele.
  * </p>
  */
 package br.ufal.ic.p2.jackut.models;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.HashMap;
@@ -17,22 +22,50 @@ public class Perfil implements Serializable {
     @Serial
     private static final long serialVersionUID = 1L;
 
-    // Mapa que armazena os atributos do perfil (chave-valor)
-    private final Map<String, String> atributos = new HashMap<>();
+    private static final int[] SEM_CHAVES = new int[0];
+    private static final String[] SEM_VALORES = new String[0];
+
+    // Dicionário de nomes de atributos compartilhado por todos os perfis
+    private static final DicionarioDeAtributos DICIONARIO = DicionarioDeAtributos.getInstancia();
+
+    // Índices das chaves no dicionário e valores correspondentes, em vetores paralelos. Os índices
+    // só valem nesta execução, por isso a serialização grava os nomes (ver writeObject)
+    private transient int[] chaves = SEM_CHAVES;
+    private transient String[] valores = SEM_VALORES;
 
     /**
      * Adiciona ou atualiza um atributo no perfil do usuário
      * @param chave Nome do atributo (não pode ser nulo ou vazio)
      * @param valor Valor do atributo
+     * @return Valor anterior do atributo ou null se ele não estava preenchido
      * @throws RuntimeException Se a chave for nula ou vazia
      */
-    public void adicionarAtributo(String chave, String valor) {
+    public synchronized String adicionarAtributo(String chave, String valor) {
         // Validação do parâmetro chave
         if (chave == null || chave.isEmpty()) {
             throw new RuntimeException("Atributo não preenchido.");
         }
-        // Armazena o atributo no mapa
-        atributos.put(chave, valor);
+
+        int indice = DICIONARIO.registrar(chave);
+        String internado = DICIONARIO.internar(indice, valor);
+        int posicao = posicao(indice);
+        if (posicao >= 0) {
+            String anterior = valores[posicao];
+            valores[posicao] = internado;
+            return anterior;
+        }
+
+        // Perfis têm poucos atributos: os vetores crescem uma posição por atributo novo
+        int tamanho = chaves.length;
+        int[] novasChaves = new int[tamanho + 1];
+        String[] novosValores = new String[tamanho + 1];
+        System.arraycopy(chaves, 0, novasChaves, 0, tamanho);
+        System.arraycopy(valores, 0, novosValores, 0, tamanho);
+        novasChaves[tamanho] = indice;
+        novosValores[tamanho] = internado;
+        chaves = novasChaves;
+        valores = novosValores;
+        return null;
     }
 
     /**
@@ -40,7 +73,49 @@ public class Perfil implements Serializable {
      * @param chave Nome do atributo a ser recuperado
      * @return O valor do atributo ou null se não existir
      */
-    public String getAtributo(String chave) {
-        return atributos.get(chave);
+    public synchronized String getAtributo(String chave) {
+        int indice = DICIONARIO.getIndice(chave);
+        int posicao = indice < 0 ? -1 : posicao(indice);
+        return posicao < 0 ? null : valores[posicao];
+    }
+
+    /**
+     * Obtém todos os atributos preenchidos do perfil
+     * @return Cópia do mapa de atributos (chave-valor)
+     */
+    public synchronized Map<String, String> getAtributos() {
+        Map<String, String> atributos = new HashMap<>();
+        for (int i = 0; i < chaves.length; i++) {
+            atributos.put(DICIONARIO.getNome(chaves[i]), valores[i]);
+        }
+        return atributos;
+    }
+
+    // Posição do atributo nos vetores, ou -1 se ele não estiver preenchido
+    private int posicao(int indice) {
+        for (int i = 0; i < chaves.length; i++) {
+            if (chaves[i] == indice) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Grava os atributos pelo nome, pois os índices do dicionário mudam entre execuções
+    @Serial
+    private synchronized void writeObject(ObjectOutputStream saida) throws IOException {
+        saida.defaultWriteObject();
+        saida.writeObject(getAtributos());
+    }
+
+    @Serial
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream entrada) throws IOException, ClassNotFoundException {
+        entrada.defaultReadObject();
+        chaves = SEM_CHAVES;
+        valores = SEM_VALORES;
+        for (Map.Entry<String, String> atributo : ((Map<String, String>) entrada.readObject()).entrySet()) {
+            adicionarAtributo(atributo.getKey(), atributo.getValue());
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,81 @@
+package br.ufal.ic.p2.jackut.models;
+
+public class Sessao {
+    // Identificação da sessão e login do usuário dono dela
+    private final String id;
+    private final String login;
+
+    // Referência direta ao usuário, válida enquanto a geração dele for a registrada na abertura
+    private final Usuario usuario;
+    private final int geracao;
+
+    // Instantes (em milissegundos do relógio do SessionManager) de abertura e do último uso
+    private final long criadaEm;
+    private volatile long ultimoAcesso;
+
+    // Indica que a sessão foi encerrada antes de vencer (ex: remoção do usuário)
+    private volatile boolean encerrada;
+
+    /**
+     * Construtor
+     * @param id ID da sessão
+     * @param usuario Usuário dono da sessão
+     * @param agora Instante de abertura
+     */
+    public Sessao(String id, Usuario usuario, long agora) {
+        this.id = id;
+        this.login = usuario.getLogin();
+        this.usuario = usuario;
+        this.geracao = usuario.getGeracao();
+        this.criadaEm = agora;
+        this.ultimoAcesso = agora;
+    }
+
+    public String getId() { return id; }
+    public String getLogin() { return login; }
+    public Usuario getUsuario() { return usuario; }
+    public long getCriadaEm() { return criadaEm; }
+    public long getUltimoAcesso() { return ultimoAcesso; }
+    public boolean isEncerrada() { return encerrada; }
+
+    /**
+     * Verifica se a referência ao usuário ainda corresponde ao cadastro atual
+     * @return true se o usuário não foi removido nem substituído desde a abertura
+     */
+    public boolean isUsuarioValido() {
+        return usuario.getGeracao() == geracao;
+    }
+
+    /**
+     * Registra um uso da sessão, adiando o vencimento por ociosidade
+     * @param agora Instante do uso
+     */
+    public void tocar(long agora) {
+        ultimoAcesso = agora;
+    }
+
+    /**
+     * Marca a sessão como encerrada
+     */
+    public void encerrar() {
+        encerrada = true;
+    }
+
+    /**
+     * Calcula o instante em que a sessão vence, o que ocorrer primeiro entre o tempo de vida
+     * e o tempo de ociosidade
+     * @param tempoDeVida Tempo de vida máximo (0 para ilimitado)
+     * @param tempoOcioso Tempo máximo sem uso (0 para ilimitado)
+     * @return Instante de vencimento, ou Long.MAX_VALUE se a sessão não vence
+     */
+    public long getVencimento(long tempoDeVida, long tempoOcioso) {
+        long vencimento = Long.MAX_VALUE;
+        if (tempoDeVida > 0) {
+            vencimento = criadaEm + tempoDeVida;
+        }
+        if (tempoOcioso > 0) {
+            vencimento = Math.min(vencimento, ultimoAcesso + tempoOcioso);
+        }
+        return vencimento;
+    }
+}
@@ -12,39 +12,85 @@
  */
 package br.ufal.ic.p2.jackut.models;
 
+import br.ufal.ic.p2.jackut.util.CaixaDeEntrada;
+import br.ufal.ic.p2.jackut.util.ConjuntoDeInteiros;
+import br.ufal.ic.p2.jackut.util.ContagemDeInteiros;
+
 import java.io.Serializable;
-import java.util.*;
+import java.util.Arrays;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
 
 public class Usuario implements Serializable {
     // Controle de versão para serialização
     private static final long serialVersionUID = 1L;
 
     // Atributos básicos do usuário (imutáveis)
+    private final int id;
     private final String login;
     private final String senha;
     private final String nome;
     private final Perfil perfil;
 
-    // Estruturas de dados para relacionamentos e mensagens
-    private final Set<Usuario> amigos = new LinkedHashSet<>();
-    private final Set<Usuario> convitesEnviados = new LinkedHashSet<>();
-    private final Set<Usuario> convitesRecebidos = new LinkedHashSet<>();
-    private final Queue<String> recadosRecebidos = new LinkedList<>();
-    private final Queue<String> mensagensRecebidas = new LinkedList<>();
-    private final Set<Usuario> idolos = new HashSet<>();
-    private final Set<Usuario> fas = new HashSet<>();
-    private final Set<Usuario> paqueras = new HashSet<>();
-    public final Set<Usuario> inimigos = new HashSet<>();
-    private final Queue<String> recadosIdentificados = new LinkedList<>();
-    private final Map<String, String> autoresRecados = new LinkedHashMap<>();
-
-    /**
-     * Construtor - Inicializa o usuário com login, senha e nome
+    // Relacionamentos, guardados pelos ids internos dos outros usuários
+    private final ConjuntoDeInteiros amigos = new ConjuntoDeInteiros();
+    private final ConjuntoDeInteiros convitesEnviados = new ConjuntoDeInteiros();
+    private final ConjuntoDeInteiros convitesRecebidos = new ConjuntoDeInteiros();
+    private final ConjuntoDeInteiros idolos = new ConjuntoDeInteiros();
+    private final ConjuntoDeInteiros fas = new ConjuntoDeInteiros();
+    private final ConjuntoDeInteiros paqueras = new ConjuntoDeInteiros();
+    private final ConjuntoDeInteiros inimigos = new ConjuntoDeInteiros();
+
+    // Ids dos amigos na ordem em que as amizades foram feitas (o conjunto não guarda ordem), com a
+    // quantidade de posições ocupadas; é a ordem gravada nos snapshots e usada na lista de amigos
+    private int[] ordemDosAmigos = new int[0];
+    private int quantidadeDeAmigos;
+
+    // Filas de recados e de mensagens recebidas diretamente (as de comunidades ficam no log de cada
+    // comunidade), com o id do remetente de cada entrada
+    private final CaixaDeEntrada recadosRecebidos = new CaixaDeEntrada();
+    private final CaixaDeEntrada mensagensRecebidas = new CaixaDeEntrada();
+
+    // Listas de amigos e de fãs já formatadas para exibição (null quando precisam ser refeitas);
+    // toda alteração nos conjuntos correspondentes as descarta
+    private String amigosFormatados;
+    private String fasFormatados;
+
+    // Logins de amigos, fãs e paqueras em ordem alfabética, para as consultas paginadas. Cada
+    // conjunto é montado na primeira consulta e, a partir dela, mantido a cada alteração (null
+    // enquanto não for consultado, para não ocupar memória em contas que nunca são paginadas)
+    private transient NavigableSet<String> amigosOrdenados;
+    private transient NavigableSet<String> fasOrdenados;
+    private transient NavigableSet<String> paquerasOrdenadas;
+
+    // Arestas reversas, usadas para remover a conta tocando apenas os usuários afetados. As de
+    // recados só ligam pares com recados ainda não lidos: somem quando o último deles é lido
+    private final ConjuntoDeInteiros paqueradoPor = new ConjuntoDeInteiros();
+    private final ConjuntoDeInteiros inimigoDe = new ConjuntoDeInteiros();
+    private final ConjuntoDeInteiros destinatariosDeRecados = new ConjuntoDeInteiros();
+    private final ConjuntoDeInteiros remetentesDeRecados = new ConjuntoDeInteiros();
+
+    // Quantidade de recados não lidos de cada remetente na caixa (null enquanto não houver nenhum
+    // com remetente conhecido). É refeita a partir dos recados ao carregar o usuário
+    private ContagemDeInteiros recadosPorRemetente;
+
+    // Geração do cadastro: muda quando o usuário é removido, substituído ou descarregado da memória,
+    // o que invalida as sessões que guardam uma referência direta a este objeto
+    private transient volatile int geracao;
+
+    /**
+     * Construtor - Inicializa o usuário com id interno, login, senha e nome
+     * @param id Identificador interno denso, atribuído pelo gerenciador de usuários
      * @param login Identificador único do usuário
      * @param senha Senha de acesso
      * @param nome Nome completo do usuário
      */
-    public Usuario(String login, String senha, String nome) {
+    public Usuario(int id, String login, String senha, String nome) {
+        this.id = id;
         this.login = login;
         this.senha = senha;
         this.nome = nome;
@@ -52,26 +98,174 @@ public class Usuario implements Serializable {
     }
 
     // Métodos getters básicos
+    public int getId() { return id; }
     public String getLogin() { return login; }
     public String getSenha() { return senha; }
     public String getNome() { return nome; }
     public Perfil getPerfil() { return perfil; }
+    public int getGeracao() { return geracao; }
+
+    /**
+     * Avança a geração do cadastro, invalidando as referências guardadas nas sessões
+     * (chamado pelo gerenciador de usuários, que serializa as alterações)
+     */
+    public void invalidar() {
+        geracao++;
+    }
+
+    // Métodos getters que retornam cópias dos ids dos usuários relacionados
+    public int[] getIdsAmigos() {
+        // Lê o vetor uma única vez, como as leituras sem trava de ConjuntoDeInteiros
+        int[] ordem = ordemDosAmigos;
+        return Arrays.copyOf(ordem, Math.min(quantidadeDeAmigos, ordem.length));
+    }
+    public int[] getIdsConvitesEnviados() { return convitesEnviados.paraVetor(); }
+    public int[] getIdsConvitesRecebidos() { return convitesRecebidos.paraVetor(); }
+    public int[] getIdsIdolos() { return idolos.paraVetor(); }
+    public int[] getIdsFas() { return fas.paraVetor(); }
+    public int[] getIdsPaqueras() { return paqueras.paraVetor(); }
+    public int[] getIdsInimigos() { return inimigos.paraVetor(); }
+    public int[] getIdsInimigoDe() { return inimigoDe.paraVetor(); }
+
+    /**
+     * Obtém cópias de todos os conjuntos de ids, inclusive as arestas reversas, na ordem aceita por
+     * {@link #restaurarLigacoes(int[][])}: amigos, convites enviados, convites recebidos, ídolos, fãs,
+     * paqueras, paquerado por, inimigos, inimigo de, destinatários e remetentes de recados
+     * @return Vetores de ids, um por conjunto
+     */
+    public int[][] getLigacoes() {
+        ConjuntoDeInteiros[] conjuntos = ligacoes();
+        int[][] ids = new int[conjuntos.length][];
+        for (int i = 0; i < conjuntos.length; i++) {
+            ids[i] = conjuntos[i] == amigos ? getIdsAmigos() : conjuntos[i].paraVetor();
+        }
+        return ids;
+    }
 
-    // Métodos getters que retornam cópias defensivas
-    public Set<Usuario> getAmigos() { return new HashSet<>(amigos); }
-    public Set<Usuario> getConvitesEnviados() { return new HashSet<>(convitesEnviados); }
-    public Set<Usuario> getConvitesRecebidos() { return new HashSet<>(convitesRecebidos); }
-    public Set<Usuario> getIdolos() { return new HashSet<>(idolos); }
-    public Set<Usuario> getFas() { return new HashSet<>(fas); }
-    public Set<Usuario> getPaqueras() { return new HashSet<>(paqueras); }
+    /**
+     * Restaura todos os conjuntos de ids deste usuário, sem tocar nos usuários relacionados, que
+     * guardam as próprias arestas (usado ao carregar um usuário sob demanda)
+     * @param ids Vetores de ids na ordem de {@link #getLigacoes()}
+     */
+    public void restaurarLigacoes(int[][] ids) {
+        ConjuntoDeInteiros[] conjuntos = ligacoes();
+        for (int i = 0; i < conjuntos.length; i++) {
+            for (int id : ids[i]) {
+                if (conjuntos[i] == amigos) {
+                    incluirAmigo(id);
+                } else {
+                    conjuntos[i].adicionar(id);
+                }
+            }
+        }
+    }
+
+    // Conjuntos de ids na ordem usada por getLigacoes e restaurarLigacoes
+    private ConjuntoDeInteiros[] ligacoes() {
+        return new ConjuntoDeInteiros[] {amigos, convitesEnviados, convitesRecebidos, idolos, fas, paqueras,
+                paqueradoPor, inimigos, inimigoDe, destinatariosDeRecados, remetentesDeRecados};
+    }
+
+    /**
+     * Percorre os ids dos amigos sem copiá-los (ver {@link ConjuntoDeInteiros#paraCada})
+     * @param acao Ação aplicada ao id de cada amigo
+     */
+    public void paraCadaAmigo(IntConsumer acao) {
+        amigos.paraCada(acao);
+    }
+
+    /**
+     * Obtém a quantidade de amigos
+     * @return Quantidade de amigos
+     */
+    public int getQuantidadeAmigos() {
+        return amigos.tamanho();
+    }
+
+    // Métodos de acesso às listas formatadas guardadas
+    public String getAmigosFormatados() { return amigosFormatados; }
+    public void setAmigosFormatados(String amigosFormatados) { this.amigosFormatados = amigosFormatados; }
+    public String getFasFormatados() { return fasFormatados; }
+    public void setFasFormatados(String fasFormatados) { this.fasFormatados = fasFormatados; }
+
+    /**
+     * Obtém uma página dos amigos em ordem alfabética
+     * @param cursor Cursor da página anterior (null ou vazio para a primeira)
+     * @param limite Quantidade máxima de logins
+     * @param usuarios Função que obtém um usuário pelo seu id interno (usada só na primeira consulta)
+     * @return Página de logins
+     */
+    public Pagina getPaginaAmigos(String cursor, int limite, IntFunction<Usuario> usuarios) {
+        if (amigosOrdenados == null) {
+            amigosOrdenados = ordenar(amigos, usuarios);
+        }
+        return Pagina.de(amigosOrdenados, cursor, limite);
+    }
+
+    /**
+     * Obtém uma página dos fãs em ordem alfabética
+     * @param cursor Cursor da página anterior (null ou vazio para a primeira)
+     * @param limite Quantidade máxima de logins
+     * @param usuarios Função que obtém um usuário pelo seu id interno (usada só na primeira consulta)
+     * @return Página de logins
+     */
+    public Pagina getPaginaFas(String cursor, int limite, IntFunction<Usuario> usuarios) {
+        if (fasOrdenados == null) {
+            fasOrdenados = ordenar(fas, usuarios);
+        }
+        return Pagina.de(fasOrdenados, cursor, limite);
+    }
+
+    /**
+     * Obtém uma página das paqueras em ordem alfabética
+     * @param cursor Cursor da página anterior (null ou vazio para a primeira)
+     * @param limite Quantidade máxima de logins
+     * @param usuarios Função que obtém um usuário pelo seu id interno (usada só na primeira consulta)
+     * @return Página de logins
+     */
+    public Pagina getPaginaPaqueras(String cursor, int limite, IntFunction<Usuario> usuarios) {
+        if (paquerasOrdenadas == null) {
+            paquerasOrdenadas = ordenar(paqueras, usuarios);
+        }
+        return Pagina.de(paquerasOrdenadas, cursor, limite);
+    }
+
+    // Monta o conjunto ordenado com os logins dos usuários ainda cadastrados cujos ids pertencem ao conjunto
+    private static NavigableSet<String> ordenar(ConjuntoDeInteiros ids, IntFunction<Usuario> usuarios) {
+        NavigableSet<String> ordenados = new TreeSet<>();
+        for (int id : ids.paraVetor()) {
+            Usuario usuario = usuarios.apply(id);
+            if (usuario != null) {
+                ordenados.add(usuario.login);
+            }
+        }
+        return ordenados;
+    }
+
+    /**
+     * Percorre os recados ainda não lidos, na ordem de leitura, sem retirá-los da fila
+     * @param acao Ação que recebe o recado e o id do remetente
+     *             ({@link CaixaDeEntrada#SEM_REMETENTE} se não for conhecido)
+     */
+    public void paraCadaRecado(ObjIntConsumer<String> acao) {
+        recadosRecebidos.paraCada(acao);
+    }
+
+    /**
+     * Percorre as mensagens ainda não lidas, na ordem de leitura, sem retirá-las da fila
+     * @param acao Ação que recebe a mensagem, o id do remetente
+     *             ({@link CaixaDeEntrada#SEM_REMETENTE} se não for conhecido) e a sequência de chegada
+     */
+    public void paraCadaMensagem(CaixaDeEntrada.Entrada acao) {
+        mensagensRecebidas.paraCada(acao);
+    }
 
     /**
      * Envia um convite de amizade para outro usuário
      * @param amigo Usuário que receberá o convite
      */
     public void enviarConvite(Usuario amigo) {
-        if (!convitesEnviados.contains(amigo)) {
-            convitesEnviados.add(amigo);
+        if (convitesEnviados.adicionar(amigo.id)) {
             amigo.receberConvite(this);
         }
     }
@@ -81,9 +275,7 @@ public class Usuario implements Serializable {
      * @param amigo Usuário que enviou o convite
      */
     public void receberConvite(Usuario amigo) {
-        if (!convitesRecebidos.contains(amigo)) {
-            convitesRecebidos.add(amigo);
-        }
+        convitesRecebidos.adicionar(amigo.id);
     }
 
     /**
@@ -92,11 +284,14 @@ public class Usuario implements Serializable {
      * @throws RuntimeException Se o usuário já for ídolo
      */
     public void adicionarIdolo(Usuario idolo) {
-        if (idolos.contains(idolo)) {
+        if (!idolos.adicionar(idolo.id)) {
             throw new RuntimeException("Usuário já está adicionado como ídolo.");
         }
-        idolos.add(idolo);
-        idolo.fas.add(this); // Adiciona como fã do ídolo
+        idolo.fas.adicionar(id); // Adiciona como fã do ídolo
+        idolo.fasFormatados = null;
+        if (idolo.fasOrdenados != null) {
+            idolo.fasOrdenados.add(login);
+        }
     }
 
     /**
@@ -105,47 +300,143 @@ public class Usuario implements Serializable {
      * @throws RuntimeException Se o usuário já for paquera
      */
     public void adicionarPaquera(Usuario paquera) {
-        if (paqueras.contains(paquera)) {
+        if (!paqueras.adicionar(paquera.id)) {
             throw new RuntimeException("Usuário já está adicionado como paquera.");
         }
-        paqueras.add(paquera);
+        paquera.paqueradoPor.adicionar(id);
+        if (paquerasOrdenadas != null) {
+            paquerasOrdenadas.add(paquera.login);
+        }
 
         // Verifica se é uma paquera mútua
-        if (paquera.paqueras.contains(this)) {
+        if (paquera.paqueras.contem(id)) {
             String recado1 = paquera.getNome() + " é seu paquera - Recado do Jackut.";
             String recado2 = this.getNome() + " é seu paquera - Recado do Jackut.";
 
-            this.receberRecado(paquera.getLogin(), recado1);
-            paquera.receberRecado(this.getLogin(), recado2);
+            this.receberRecado(paquera, recado1);
+            paquera.receberRecado(this, recado2);
         }
     }
 
     /**
-     * Adiciona um inimigo à lista do usuário
+     * Restaura uma amizade já estabelecida (usado ao carregar dados persistidos)
+     * @param amigo Usuário amigo
+     */
+    public void restaurarAmizade(Usuario amigo) {
+        incluirAmigo(amigo.id);
+        amigo.incluirAmigo(id);
+        amigosFormatados = null;
+        amigo.amigosFormatados = null;
+        registrarAmizadeOrdenada(amigo);
+    }
+
+    /**
+     * Restaura uma paquera sem reenviar os recados de paquera mútua
+     * (usado ao carregar dados persistidos)
+     * @param paquera Usuário paquera
+     */
+    public void restaurarPaquera(Usuario paquera) {
+        paqueras.adicionar(paquera.id);
+        paquera.paqueradoPor.adicionar(id);
+        if (paquerasOrdenadas != null) {
+            paquerasOrdenadas.add(paquera.login);
+        }
+    }
+
+    /**
+     * Adiciona um inimigo à lista do usuário. As validações das interações consultam o índice de
+     * inimigos, mantido por UserManager.adicionarInimigo, que é quem deve chamar este método
      * @param inimigo Usuário a ser adicionado como inimigo
      * @throws RuntimeException Se o usuário já for inimigo
      */
     public void adicionarInimigo(Usuario inimigo) {
-        if (inimigos.contains(inimigo)) {
+        if (!inimigos.adicionar(inimigo.id)) {
             throw new RuntimeException("Usuário já está adicionado como inimigo.");
         }
-        inimigos.add(inimigo);
+        inimigo.inimigoDe.adicionar(id);
     }
 
     /**
      * Remove todos os recados de um remetente específico
-     * @param loginRemetente Login do remetente cujos recados serão removidos
+     * @param remetente Usuário cujos recados serão removidos
      */
-    public void limparRecadosDoUsuario(String loginRemetente) {
-        Queue<String> novosRecados = new LinkedList<>();
-        for (String recado : recadosRecebidos) {
-            if (!loginRemetente.equals(autoresRecados.get(recado))) {
-                novosRecados.add(recado);
+    public void limparRecadosDoUsuario(Usuario remetente) {
+        recadosRecebidos.removerDe(remetente.id);
+        if (recadosPorRemetente != null) {
+            recadosPorRemetente.remover(remetente.id);
+        }
+    }
+
+    /**
+     * Desfaz todos os relacionamentos do usuário (quando ele é removido do sistema).
+     * <p>
+     * Usa as arestas de ida e as reversas para visitar somente os usuários ligados a este,
+     * removendo as referências reais nos dois lados e os recados enviados por ele.
+     * </p>
+     * @param usuarios Função que obtém um usuário pelo seu id interno
+     */
+    public void desvincular(IntFunction<Usuario> usuarios) {
+        paraCada(amigos, usuarios, amigo -> {
+            amigo.excluirAmigo(id);
+            amigo.amigosFormatados = null;
+            if (amigo.amigosOrdenados != null) {
+                amigo.amigosOrdenados.remove(login);
+            }
+        });
+        paraCada(convitesEnviados, usuarios, convidado -> convidado.convitesRecebidos.remover(id));
+        paraCada(convitesRecebidos, usuarios, convidante -> convidante.convitesEnviados.remover(id));
+        paraCada(idolos, usuarios, idolo -> {
+            idolo.fas.remover(id);
+            idolo.fasFormatados = null;
+            if (idolo.fasOrdenados != null) {
+                idolo.fasOrdenados.remove(login);
+            }
+        });
+        paraCada(fas, usuarios, fa -> fa.idolos.remover(id));
+        paraCada(paqueras, usuarios, paquera -> paquera.paqueradoPor.remover(id));
+        paraCada(paqueradoPor, usuarios, admirador -> {
+            admirador.paqueras.remover(id);
+            if (admirador.paquerasOrdenadas != null) {
+                admirador.paquerasOrdenadas.remove(login);
+            }
+        });
+        paraCada(inimigos, usuarios, inimigo -> inimigo.inimigoDe.remover(id));
+        paraCada(inimigoDe, usuarios, desafeto -> desafeto.inimigos.remover(id));
+        paraCada(destinatariosDeRecados, usuarios, destinatario -> {
+            destinatario.limparRecadosDoUsuario(this);
+            destinatario.remetentesDeRecados.remover(id);
+        });
+        paraCada(remetentesDeRecados, usuarios, remetente -> remetente.destinatariosDeRecados.remover(id));
+
+        amigos.limpar();
+        ordemDosAmigos = new int[0];
+        quantidadeDeAmigos = 0;
+        convitesEnviados.limpar();
+        convitesRecebidos.limpar();
+        idolos.limpar();
+        fas.limpar();
+        paqueras.limpar();
+        paqueradoPor.limpar();
+        inimigos.limpar();
+        inimigoDe.limpar();
+        destinatariosDeRecados.limpar();
+        remetentesDeRecados.limpar();
+        recadosPorRemetente = null;
+        amigosFormatados = null;
+        fasFormatados = null;
+        amigosOrdenados = null;
+        fasOrdenados = null;
+        paquerasOrdenadas = null;
+    }
+
+    // Aplica a ação a cada usuário ainda cadastrado cujo id pertence ao conjunto
+    private static void paraCada(ConjuntoDeInteiros ids, IntFunction<Usuario> usuarios, Consumer<Usuario> acao) {
+        for (int id : ids.paraVetor()) {
+            Usuario usuario = usuarios.apply(id);
+            if (usuario != null) {
+                acao.accept(usuario);
             }
         }
-        recadosRecebidos.clear();
-        recadosRecebidos.addAll(novosRecados);
-        autoresRecados.entrySet().removeIf(entry -> loginRemetente.equals(entry.getValue()));
     }
 
     /**
@@ -154,23 +445,69 @@ public class Usuario implements Serializable {
      * @return true se o convite foi aceito com sucesso, false caso contrário
      */
     public boolean aceitarConvite(Usuario amigo) {
-        if (convitesRecebidos.remove(amigo)) {
-            amigos.add(amigo);
-            amigo.amigos.add(this);
-            amigo.convitesEnviados.remove(this);
+        if (convitesRecebidos.remover(amigo.id)) {
+            incluirAmigo(amigo.id);
+            amigo.incluirAmigo(id);
+            amigo.convitesEnviados.remover(id);
+            amigosFormatados = null;
+            amigo.amigosFormatados = null;
+            registrarAmizadeOrdenada(amigo);
             return true;
         }
         return false;
     }
 
+    // Inclui o amigo no conjunto e, se for novo, no fim da ordem das amizades
+    private void incluirAmigo(int idAmigo) {
+        if (amigos.adicionar(idAmigo)) {
+            if (quantidadeDeAmigos == ordemDosAmigos.length) {
+                ordemDosAmigos = Arrays.copyOf(ordemDosAmigos, Math.max(4, quantidadeDeAmigos * 2));
+            }
+            ordemDosAmigos[quantidadeDeAmigos++] = idAmigo;
+        }
+    }
+
+    // Retira o amigo do conjunto e da ordem das amizades, mantendo a ordem dos demais
+    private void excluirAmigo(int idAmigo) {
+        if (amigos.remover(idAmigo)) {
+            int i = 0;
+            while (ordemDosAmigos[i] != idAmigo) {
+                i++;
+            }
+            System.arraycopy(ordemDosAmigos, i + 1, ordemDosAmigos, i, quantidadeDeAmigos - i - 1);
+            quantidadeDeAmigos--;
+        }
+    }
+
+    // Inclui a amizade nos conjuntos ordenados dos dois lados que já tenham sido montados
+    private void registrarAmizadeOrdenada(Usuario amigo) {
+        if (amigosOrdenados != null) {
+            amigosOrdenados.add(amigo.login);
+        }
+        if (amigo.amigosOrdenados != null) {
+            amigo.amigosOrdenados.add(login);
+        }
+    }
+
     /**
-     * Lê o próximo recado na fila
+     * Lê o próximo recado na fila. Se era o último recado não lido do remetente, desfaz as arestas
+     * de recados entre os dois
+     * @param usuarios Função que obtém um usuário pelo seu id interno (usada para obter o remetente)
      * @return O recado ou null se não houver recados
      */
-    public String lerRecado() {
-        String recado = recadosRecebidos.poll();
-        if (recado != null) {
-            autoresRecados.remove(recado);
+    public String lerRecado(IntFunction<Usuario> usuarios) {
+        int idRemetente = recadosRecebidos.remetenteDoInicio();
+        String recado = recadosRecebidos.retirar();
+        if (idRemetente == CaixaDeEntrada.SEM_REMETENTE || recadosPorRemetente.decrementar(idRemetente) > 0) {
+            return recado;
+        }
+        remetentesDeRecados.remover(idRemetente);
+        Usuario remetente = usuarios.apply(idRemetente);
+        if (remetente != null) {
+            // Só este usuário está travado: o remetente pode estar enviando recados a outros
+            synchronized (remetente.destinatariosDeRecados) {
+                remetente.destinatariosDeRecados.remover(id);
+            }
         }
         return recado;
     }
@@ -181,7 +518,7 @@ public class Usuario implements Serializable {
      * @return true se houver convite pendente, false caso contrário
      */
     public boolean temConvitePendenteDe(Usuario usuario) {
-        return convitesRecebidos.contains(usuario);
+        return convitesRecebidos.contem(usuario.id);
     }
 
     /**
@@ -189,25 +526,73 @@ public class Usuario implements Serializable {
      * @return true se houver recados, false caso contrário
      */
     public boolean temRecados() {
-        return !recadosRecebidos.isEmpty();
+        return !recadosRecebidos.vazia();
     }
 
     /**
-     * Recebe um novo recado
-     * @param remetenteLogin Login do remetente
+     * Conta os recados não lidos
+     * @return Quantidade de recados na fila
+     */
+    public int getQuantidadeRecados() {
+        return recadosRecebidos.tamanho();
+    }
+
+    /**
+     * Recebe um novo recado, registrando a aresta reversa usada na remoção de contas
+     * @param remetente Usuário que enviou o recado (null se não for conhecido)
      * @param recado Conteúdo do recado
      */
-    public void receberRecado(String remetenteLogin, String recado) {
-        recadosRecebidos.add(recado);
-        autoresRecados.put(recado, remetenteLogin);
+    public void receberRecado(Usuario remetente, String recado) {
+        if (remetente == null) {
+            recadosRecebidos.adicionar(CaixaDeEntrada.SEM_REMETENTE, recado);
+            return;
+        }
+        recadosRecebidos.adicionar(remetente.id, recado);
+        contarRecado(remetente.id);
+        synchronized (remetente.destinatariosDeRecados) {
+            remetente.destinatariosDeRecados.adicionar(id);
+        }
+        remetentesDeRecados.adicionar(remetente.id);
+    }
+
+    /**
+     * Restaura um recado não lido sem tocar no remetente (usado ao carregar um usuário sob demanda)
+     * @param remetente Id do remetente ({@link CaixaDeEntrada#SEM_REMETENTE} se não for conhecido)
+     * @param recado Conteúdo do recado
+     */
+    public void restaurarRecado(int remetente, String recado) {
+        recadosRecebidos.adicionar(remetente, recado);
+        if (remetente != CaixaDeEntrada.SEM_REMETENTE) {
+            contarRecado(remetente);
+        }
+    }
+
+    // Soma um recado não lido do remetente
+    private void contarRecado(int remetente) {
+        if (recadosPorRemetente == null) {
+            recadosPorRemetente = new ContagemDeInteiros(1);
+        }
+        recadosPorRemetente.incrementar(remetente);
+    }
+
+    /**
+     * Restaura uma mensagem não lida (usado ao carregar dados persistidos e ao guardar as mensagens
+     * não lidas de uma comunidade apagada)
+     * @param remetente Id do remetente ({@link CaixaDeEntrada#SEM_REMETENTE} se não for conhecido)
+     * @param mensagem Conteúdo da mensagem
+     * @param sequencia Sequência global de chegada da mensagem (0 se não for conhecida)
+     */
+    public void restaurarMensagem(int remetente, String mensagem, long sequencia) {
+        mensagensRecebidas.adicionar(remetente, mensagem, sequencia);
     }
 
     /**
      * Recebe uma nova mensagem
+     * @param remetente Usuário que enviou a mensagem (null se não for conhecido)
      * @param mensagem Conteúdo da mensagem
      */
-    public void receberMensagem(String mensagem) {
-        mensagensRecebidas.add(mensagem);
+    public void receberMensagem(Usuario remetente, String mensagem) {
+        mensagensRecebidas.adicionar(remetente == null ? CaixaDeEntrada.SEM_REMETENTE : remetente.id, mensagem);
     }
 
     /**
@@ -215,7 +600,33 @@ public class Usuario implements Serializable {
      * @return true se houver mensagens, false caso contrário
      */
     public boolean temMensagens() {
-        return !mensagensRecebidas.isEmpty();
+        return !mensagensRecebidas.vazia();
+    }
+
+    /**
+     * Obtém a sequência de chegada da próxima mensagem recebida diretamente
+     * @return Sequência da mensagem (0 se não for conhecida) ou -1 se não houver mensagens
+     */
+    public long getSequenciaMensagem() {
+        return mensagensRecebidas.sequenciaDoInicio();
+    }
+
+    /**
+     * Verifica se o usuário tem outro como amigo
+     * @param amigo Usuário a ser verificado como amigo
+     * @return true se for amigo, false caso contrário
+     */
+    public boolean ehAmigo(Usuario amigo) {
+        return amigos.contem(amigo.id);
+    }
+
+    /**
+     * Verifica se o usuário já enviou um convite de amizade ainda não aceito
+     * @param usuario Usuário a ser verificado
+     * @return true se houver convite enviado pendente, false caso contrário
+     */
+    public boolean enviouConviteA(Usuario usuario) {
+        return convitesEnviados.contem(usuario.id);
     }
 
     /**
@@ -224,7 +635,7 @@ public class Usuario implements Serializable {
      * @return true se for fã, false caso contrário
      */
     public boolean ehFa(Usuario idolo) {
-        return idolo.fas.contains(this);
+        return idolo.fas.contem(id);
     }
 
     /**
@@ -233,7 +644,7 @@ public class Usuario implements Serializable {
      * @return true se for paquera, false caso contrário
      */
     public boolean ehPaquera(Usuario paquera) {
-        return paqueras.contains(paquera);
+        return paqueras.contem(paquera.id);
     }
 
     /**
@@ -242,7 +653,7 @@ public class Usuario implements Serializable {
      * @return true se for inimigo, false caso contrário
      */
     public boolean ehInimigo(Usuario usuario) {
-        return inimigos.contains(usuario);
+        return inimigos.contem(usuario.id);
     }
 
     /**
@@ -250,7 +661,7 @@ public class Usuario implements Serializable {
      * @return A mensagem ou null se não houver mensagens
      */
     public String lerMensagem() {
-        return mensagensRecebidas.poll();
+        return mensagensRecebidas.retirar();
     }
 
     // Métodos para comparar usuários (baseado no login)
@@ -0,0 +1,110 @@
+/**
+ * Cliente do {@link ServidorDeComandos}: envia comandos por uma conexão e lê as respostas como
+ * {@link Resultado}s.
+ * <p>
+ * Uma lista de comandos é enviada em janelas de {@value #JANELA} requisições, escritas de uma vez
+ * antes de ler as respostas, para que o servidor as execute em lote. As variáveis dos comandos são
+ * resolvidas pelo servidor com as atribuições feitas na mesma conexão. Uma instância não deve ser
+ * usada por várias threads ao mesmo tempo.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.servidor;
+
+import br.ufal.ic.p2.jackut.comandos.Comando;
+import br.ufal.ic.p2.jackut.comandos.InterpretadorDeComandos;
+import br.ufal.ic.p2.jackut.comandos.Resultado;
+
+import java.io.*;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ClienteDeComandos implements Closeable {
+    // Requisições enviadas antes de ler as respostas; limita o que fica nos buffers dos dois lados
+    private static final int JANELA = 128;
+
+    private final SocketChannel canal;
+    private final BufferedReader leitor;
+    private final Writer escritor;
+
+    /**
+     * Construtor que abre a conexão
+     * @param endereco Endereço do servidor (ver {@link ServidorDeComandos#endereco(String)})
+     * @throws IOException Se não for possível conectar
+     */
+    public ClienteDeComandos(SocketAddress endereco) throws IOException {
+        this.canal = SocketChannel.open(endereco);
+        if (canal.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+            canal.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+        this.leitor = new BufferedReader(new InputStreamReader(Channels.newInputStream(canal), StandardCharsets.UTF_8));
+        this.escritor = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(canal), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Executa um comando e aguarda a resposta
+     * @param comando Comando a executar
+     * @return Resultado do comando
+     * @throws IOException Se a conexão falhar ou a resposta for inválida
+     */
+    public Resultado executar(Comando comando) throws IOException {
+        escritor.write(comando.toString());
+        escritor.write('\n');
+        escritor.flush();
+        return ler(comando);
+    }
+
+    /**
+     * Executa uma sequência de comandos sem esperar cada resposta antes de enviar o seguinte
+     * @param comandos Comandos a executar
+     * @return Resultado de cada comando, na ordem
+     * @throws IOException Se a conexão falhar ou alguma resposta for inválida
+     */
+    public List<Resultado> executar(List<Comando> comandos) throws IOException {
+        List<Resultado> resultados = new ArrayList<>(comandos.size());
+        for (int inicio = 0; inicio < comandos.size(); inicio += JANELA) {
+            List<Comando> janela = comandos.subList(inicio, Math.min(comandos.size(), inicio + JANELA));
+            for (Comando comando : janela) {
+                escritor.write(comando.toString());
+                escritor.write('\n');
+            }
+            escritor.flush();
+            for (Comando comando : janela) {
+                resultados.add(ler(comando));
+            }
+        }
+        return resultados;
+    }
+
+    @Override
+    public void close() throws IOException {
+        canal.close();
+    }
+
+    // Lê a resposta de um comando: "ok", "ok valor" ou "erro mensagem"
+    private Resultado ler(Comando comando) throws IOException {
+        String linha = leitor.readLine();
+        if (linha == null) {
+            throw new EOFException("Conexão encerrada pelo servidor.");
+        }
+        Comando resposta;
+        try {
+            resposta = InterpretadorDeComandos.interpretar(linha);
+        } catch (RuntimeException e) {
+            resposta = null;
+        }
+        if (resposta != null && resposta.getValores().size() <= 1) {
+            if (resposta.getNome().equals("ok")) {
+                return Resultado.sucesso(comando, resposta.getValor(0));
+            }
+            if (resposta.getNome().equals("erro") && resposta.getValores().size() == 1) {
+                return Resultado.erro(comando, resposta.getValor(0));
+            }
+        }
+        throw new IOException("Resposta inválida do servidor: " + linha);
+    }
+}
@@ -0,0 +1,321 @@
+/**
+ * Servidor que expõe os comandos da Facade por um socket TCP ou Unix, uma linha por comando.
+ * <p>
+ * As requisições são linhas na gramática dos scripts do EasyAccept ({@code getAmigos login=jpsauve},
+ * {@code s1=abrirSessao login=jpsauve senha=sauvegr}), e cada uma recebe uma linha de resposta na
+ * mesma gramática: {@code ok}, {@code ok valor} ou {@code erro mensagem}, com aspas quando
+ * necessário. Linhas em branco e comentários não têm resposta. As variáveis, como as sessões
+ * atribuídas com {@code s1=}, valem até o fim da conexão, e {@code quit} a encerra.
+ * </p>
+ * <p>
+ * Cada conexão é atendida por uma thread virtual. O cliente pode enviar várias requisições sem
+ * esperar as respostas: as linhas que já chegaram (até {@value #LIMITE_LOTE}) formam um lote, e as
+ * respostas do lote são escritas juntas, na ordem das requisições. Um lote com mais de uma
+ * requisição e alguma escrita é executado com {@link Facade#executarLote} (uma gravação no log para
+ * todo o lote, sob acesso exclusivo); uma requisição sozinha ou um lote só de leituras segue pelas
+ * travas por usuário ({@link Facade#executar(Comando, Map)}), sem bloquear as outras conexões. Uma
+ * linha fora da gramática encerra o lote e recebe a resposta de erro depois das anteriores.
+ * </p>
+ * <p>
+ * Modelo de ameaças: o servidor não cifra o tráfego nem autentica as conexões, e a única credencial
+ * é o ID de sessão devolvido por {@code abrirSessao}, aceito em qualquer conexão. Ele é pensado
+ * para clientes da mesma máquina (ou de uma rede confiável, atrás de um túnel ou proxy que cuide
+ * da autenticação), por isso escuta por padrão apenas no loopback ou em um socket Unix, cujo
+ * acesso é controlado pelas permissões do arquivo. Os IDs de sessão são gerados com
+ * {@link java.security.SecureRandom}, para que um cliente não deduza as sessões de outros a partir
+ * das suas. Os comandos de administração ({@code zerarSistema}, que apaga os dados de todos, e
+ * {@code encerrarSistema}, que para a Facade compartilhada) são recusados, a menos que o servidor
+ * seja criado com a administração permitida (propriedade {@code jackut.servidor.administracao=true});
+ * {@code removerUsuario} só remove a conta da própria sessão e continua aceito. Fora do escopo: ataques de
+ * quem tem acesso à rede entre cliente e servidor, esgotamento de recursos por muitas conexões e
+ * a força das senhas, guardadas e comparadas em texto puro.
+ * </p>
+ * <pre>
+ * uso: ServidorDeComandos [endereço] [diretório de dados]
+ *      endereço: porta, host:porta ou unix:caminho (padrão 7070, em 127.0.0.1)
+ * </pre>
+ */
+package br.ufal.ic.p2.jackut.servidor;
+
+import br.ufal.ic.p2.jackut.Facade;
+import br.ufal.ic.p2.jackut.comandos.Comando;
+import br.ufal.ic.p2.jackut.comandos.InterpretadorDeComandos;
+import br.ufal.ic.p2.jackut.comandos.Resultado;
+import br.ufal.ic.p2.jackut.managers.PersistenceManager;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ServidorDeComandos implements Closeable {
+    // Porta usada quando o endereço não é informado
+    public static final int PORTA_PADRAO = 7070;
+
+    // Quantidade máxima de requisições já recebidas executadas em um lote
+    private static final int LIMITE_LOTE = 1024;
+
+    // Comandos que afetam o sistema inteiro, aceitos só com a administração permitida
+    private static final Set<String> COMANDOS_DE_ADMINISTRACAO = Set.of("zerarSistema", "encerrarSistema");
+
+    private final Facade facade;
+
+    // Indica se os comandos de administração são aceitos
+    private final boolean administracao;
+    private final ServerSocketChannel canal;
+    private final SocketAddress endereco;
+
+    // Conexões abertas, fechadas junto com o servidor
+    private final Set<SocketChannel> conexoes = ConcurrentHashMap.newKeySet();
+
+    // Thread que aceita as conexões
+    private final Thread aceitador;
+
+    /**
+     * Construtor que abre o socket e começa a aceitar conexões, com os comandos de administração
+     * permitidos apenas se a propriedade jackut.servidor.administracao for true
+     * @param facade Facade que executa os comandos, compartilhada por todas as conexões
+     * @param endereco Endereço TCP ou Unix (ver {@link #endereco(String)})
+     * @throws IOException Se não for possível abrir o socket
+     */
+    public ServidorDeComandos(Facade facade, SocketAddress endereco) throws IOException {
+        this(facade, endereco, Boolean.getBoolean("jackut.servidor.administracao"));
+    }
+
+    /**
+     * Construtor que abre o socket e começa a aceitar conexões
+     * @param facade Facade que executa os comandos, compartilhada por todas as conexões
+     * @param endereco Endereço TCP ou Unix (ver {@link #endereco(String)})
+     * @param administracao true para aceitar os comandos de administração (zerarSistema e
+     *                      encerrarSistema)
+     * @throws IOException Se não for possível abrir o socket
+     */
+    public ServidorDeComandos(Facade facade, SocketAddress endereco, boolean administracao) throws IOException {
+        this.facade = facade;
+        this.administracao = administracao;
+        if (endereco instanceof UnixDomainSocketAddress) {
+            removerSocketAbandonado(((UnixDomainSocketAddress) endereco).getPath());
+            this.canal = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            this.canal = ServerSocketChannel.open();
+        }
+        this.canal.bind(endereco);
+        this.endereco = canal.getLocalAddress();
+        this.aceitador = Thread.ofVirtual().name("jackut-servidor").start(this::aceitar);
+    }
+
+    // Um arquivo de socket deixado por uma execução anterior impediria o bind: ele é removido só se
+    // for um socket e ninguém mais aceitar conexões nele. Qualquer outro arquivo no caminho (ou um
+    // link simbólico) é mantido e o servidor não abre
+    private static void removerSocketAbandonado(Path caminho) throws IOException {
+        BasicFileAttributes atributos;
+        try {
+            atributos = Files.readAttributes(caminho, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        if (!atributos.isOther()) {
+            throw new IOException("O caminho já existe e não é um socket: " + caminho);
+        }
+        try (SocketChannel teste = SocketChannel.open(UnixDomainSocketAddress.of(caminho))) {
+            throw new IOException("Já há um servidor escutando em " + caminho);
+        } catch (ConnectException e) {
+            Files.deleteIfExists(caminho);
+        }
+    }
+
+    /**
+     * Obtém o endereço em que o servidor aceita conexões (com a porta escolhida, se foi pedida a porta 0)
+     * @return Endereço do socket
+     */
+    public SocketAddress getEndereco() {
+        return endereco;
+    }
+
+    /**
+     * Aguarda o servidor ser fechado
+     * @throws InterruptedException Se a espera for interrompida
+     */
+    public void aguardar() throws InterruptedException {
+        aceitador.join();
+    }
+
+    /**
+     * Para de aceitar conexões e fecha as abertas. Não encerra a Facade
+     * @throws IOException Se ocorrer erro ao fechar o socket
+     */
+    @Override
+    public void close() throws IOException {
+        canal.close();
+        for (SocketChannel conexao : conexoes) {
+            conexao.close();
+        }
+        if (endereco instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) endereco).getPath());
+        }
+    }
+
+    /**
+     * Interpreta um endereço de servidor
+     * @param texto Porta ({@code 7070}, no loopback), host e porta ({@code 0.0.0.0:7070}, que expõe
+     *              o servidor à rede) ou caminho de socket Unix ({@code unix:/tmp/jackut.sock})
+     * @return Endereço do socket
+     */
+    public static SocketAddress endereco(String texto) {
+        if (texto.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(Path.of(texto.substring("unix:".length())));
+        }
+        int separador = texto.lastIndexOf(':');
+        try {
+            if (separador < 0) {
+                return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(texto));
+            }
+            return new InetSocketAddress(texto.substring(0, separador), Integer.parseInt(texto.substring(separador + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Endereço inválido: " + texto);
+        }
+    }
+
+    // Aceita conexões até o servidor ser fechado, cada uma atendida por uma thread virtual
+    private void aceitar() {
+        while (canal.isOpen()) {
+            try {
+                SocketChannel conexao = canal.accept();
+                if (conexao.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+                    conexao.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                }
+                conexoes.add(conexao);
+                Thread.ofVirtual().name("jackut-conexao").start(() -> {
+                    try {
+                        atender(conexao);
+                    } finally {
+                        conexoes.remove(conexao);
+                    }
+                });
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Erro ao aceitar conexão: " + e.getMessage());
+            }
+        }
+    }
+
+    // Lê as requisições de uma conexão em lotes e responde cada lote de uma vez
+    private void atender(SocketChannel conexao) {
+        Map<String, String> variaveis = new HashMap<>();
+        List<Comando> lote = new ArrayList<>();
+        try (conexao;
+             BufferedReader leitor = new BufferedReader(new InputStreamReader(
+                     Channels.newInputStream(conexao), StandardCharsets.UTF_8));
+             Writer escritor = new BufferedWriter(new OutputStreamWriter(
+                     Channels.newOutputStream(conexao), StandardCharsets.UTF_8))) {
+            boolean aberta = true;
+            String linha;
+            while (aberta && (linha = leitor.readLine()) != null) {
+                // A primeira linha é esperada; as seguintes entram no lote só se já chegaram
+                String invalida = null;
+                while (true) {
+                    try {
+                        Comando comando = InterpretadorDeComandos.interpretar(linha);
+                        if (comando != null && !administracao && COMANDOS_DE_ADMINISTRACAO.contains(comando.getNome())) {
+                            // Recusado como uma linha fora da gramática, depois das respostas anteriores
+                            invalida = "Comando não permitido neste servidor: " + comando.getNome() + ".";
+                        } else if (comando != null) {
+                            lote.add(comando);
+                            aberta = !comando.getNome().equals("quit");
+                        }
+                    } catch (RuntimeException e) {
+                        invalida = e.getMessage();
+                    }
+                    if (invalida != null || !aberta || lote.size() >= LIMITE_LOTE || !leitor.ready()
+                            || (linha = leitor.readLine()) == null) {
+                        break;
+                    }
+                }
+
+                try {
+                    if (lote.size() > 1 && temEscrita(lote)) {
+                        facade.executarLote(lote.iterator(), variaveis, resultado -> responder(escritor, resultado));
+                    } else {
+                        for (Comando comando : lote) {
+                            responder(escritor, facade.executar(comando, variaveis));
+                        }
+                    }
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                lote.clear();
+                if (invalida != null) {
+                    escritor.write("erro " + InterpretadorDeComandos.citar(invalida) + "\n");
+                }
+                escritor.flush();
+            }
+        } catch (IOException e) {
+            // Conexão fechada pelo cliente ou pelo servidor
+        } catch (RuntimeException e) {
+            System.err.println("Erro ao atender conexão: " + e.getMessage());
+        }
+    }
+
+    // Verifica se algum comando do lote altera os dados, o que justifica o acesso exclusivo do lote
+    private static boolean temEscrita(List<Comando> lote) {
+        for (Comando comando : lote) {
+            if (Facade.alteraDados(comando.getNome())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Escreve a resposta de um comando (o envio fica para o fim do lote)
+    private static void responder(Writer escritor, Resultado resultado) {
+        try {
+            if (!resultado.isSucesso()) {
+                escritor.write("erro " + InterpretadorDeComandos.citar(resultado.getErro()) + "\n");
+            } else if (resultado.getValor() == null) {
+                escritor.write("ok\n");
+            } else {
+                escritor.write("ok " + InterpretadorDeComandos.citar(resultado.getValor()) + "\n");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Método principal que inicia o servidor e o mantém até o processo ser encerrado, quando os
+     * dados são salvos
+     * @param args Endereço e diretório de dados, ambos opcionais
+     * @throws Exception Se não for possível abrir o socket
+     */
+    public static void main(String[] args) throws Exception {
+        SocketAddress endereco = endereco(args.length > 0 ? args[0] : String.valueOf(PORTA_PADRAO));
+        File diretorio = args.length > 1 ? new File(args[1]) : PersistenceManager.getDiretorioPadrao();
+        Facade facade = new Facade(diretorio);
+        ServidorDeComandos servidor = new ServidorDeComandos(facade, endereco);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                servidor.close();
+            } catch (IOException e) {
+                System.err.println("Erro ao fechar o servidor: " + e.getMessage());
+            }
+            facade.encerrarSistema();
+        }));
+        System.out.println("Servidor Jackut em " + servidor.getEndereco() + ", dados em " + diretorio.getPath());
+        if (servidor.getEndereco() instanceof InetSocketAddress
+                && !((InetSocketAddress) servidor.getEndereco()).getAddress().isLoopbackAddress()) {
+            System.err.println("Aviso: o servidor aceita conexões de fora desta máquina, sem cifrar nem autenticar o tráfego.");
+        }
+        servidor.aguardar();
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Árvore de prefixos (trie) que associa textos a ids inteiros.
+ * <p>
+ * Cada nó guarda os caracteres dos filhos em um vetor ordenado, procurado por busca binária, e
+ * os ids dos textos que terminam nele. A busca por prefixo desce até o nó do prefixo e percorre
+ * só a subárvore dele, em ordem alfabética, de modo que o custo depende do tamanho do prefixo e do
+ * resultado, e não da quantidade de textos guardados. Nós que ficam vazios são podados na remoção.
+ * Não é thread-safe: o acesso concorrente deve ser coordenado por quem a utiliza.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+public class ArvoreDePrefixos {
+    private static final char[] SEM_ROTULOS = new char[0];
+    private static final No[] SEM_FILHOS = new No[0];
+
+    // Raiz da árvore (corresponde ao texto vazio)
+    private No raiz = new No();
+
+    /**
+     * Associa um id a um texto
+     * @param texto Texto
+     * @param id Id associado (inteiro não negativo)
+     */
+    public void adicionar(String texto, int id) {
+        No no = raiz;
+        for (int i = 0; i < texto.length(); i++) {
+            no = no.filhoOuNovo(texto.charAt(i));
+        }
+        if (no.ids == null) {
+            no.ids = new ConjuntoDeInteiros();
+        }
+        no.ids.adicionar(id);
+    }
+
+    /**
+     * Desfaz a associação de um id a um texto, podando os nós que ficarem vazios
+     * @param texto Texto
+     * @param id Id associado
+     * @return true se a associação existia
+     */
+    public boolean remover(String texto, int id) {
+        return remover(raiz, texto, 0, id);
+    }
+
+    /**
+     * Percorre os ids associados exatamente ao texto
+     * @param texto Texto procurado
+     * @param acao Ação aplicada a cada id (em ordem arbitrária)
+     */
+    public void paraCadaIgual(String texto, IntConsumer acao) {
+        No no = descer(texto);
+        if (no != null && no.ids != null) {
+            no.ids.paraCada(acao);
+        }
+    }
+
+    /**
+     * Percorre os ids associados a textos que começam pelo prefixo, na ordem alfabética dos textos
+     * @param prefixo Prefixo procurado (vazio percorre a árvore toda)
+     * @param acao Ação aplicada a cada id
+     */
+    public void paraCadaComPrefixo(String prefixo, IntConsumer acao) {
+        No no = descer(prefixo);
+        if (no != null) {
+            percorrer(no, acao);
+        }
+    }
+
+    /**
+     * Remove todos os textos
+     */
+    public void limpar() {
+        raiz = new No();
+    }
+
+    // Nó correspondente ao texto, ou null se nenhum texto guardado começar por ele
+    private No descer(String texto) {
+        No no = raiz;
+        for (int i = 0; i < texto.length() && no != null; i++) {
+            no = no.filho(texto.charAt(i));
+        }
+        return no;
+    }
+
+    // Percorre a subárvore em profundidade, visitando os filhos em ordem de caractere
+    private static void percorrer(No no, IntConsumer acao) {
+        if (no.ids != null) {
+            int[] ids = no.ids.paraVetor();
+            Arrays.sort(ids);
+            for (int id : ids) {
+                acao.accept(id);
+            }
+        }
+        for (No filho : no.filhos) {
+            percorrer(filho, acao);
+        }
+    }
+
+    // Remove recursivamente, desfazendo do filho para o pai as ligações de nós vazios
+    private static boolean remover(No no, String texto, int posicao, int id) {
+        if (posicao == texto.length()) {
+            if (no.ids == null || !no.ids.remover(id)) {
+                return false;
+            }
+            if (no.ids.vazio()) {
+                no.ids = null;
+            }
+            return true;
+        }
+        char c = texto.charAt(posicao);
+        No filho = no.filho(c);
+        if (filho == null || !remover(filho, texto, posicao + 1, id)) {
+            return false;
+        }
+        if (filho.ids == null && filho.filhos.length == 0) {
+            no.removerFilho(c);
+        }
+        return true;
+    }
+
+    // Nó com os filhos em vetores paralelos ordenados pelo caractere
+    private static class No {
+        private char[] rotulos = SEM_ROTULOS;
+        private No[] filhos = SEM_FILHOS;
+        private ConjuntoDeInteiros ids;
+
+        private No filho(char c) {
+            int i = Arrays.binarySearch(rotulos, c);
+            return i >= 0 ? filhos[i] : null;
+        }
+
+        private No filhoOuNovo(char c) {
+            int i = Arrays.binarySearch(rotulos, c);
+            if (i >= 0) {
+                return filhos[i];
+            }
+            i = -i - 1;
+            char[] novosRotulos = new char[rotulos.length + 1];
+            No[] novosFilhos = new No[filhos.length + 1];
+            System.arraycopy(rotulos, 0, novosRotulos, 0, i);
+            System.arraycopy(filhos, 0, novosFilhos, 0, i);
+            System.arraycopy(rotulos, i, novosRotulos, i + 1, rotulos.length - i);
+            System.arraycopy(filhos, i, novosFilhos, i + 1, filhos.length - i);
+            novosRotulos[i] = c;
+            novosFilhos[i] = new No();
+            rotulos = novosRotulos;
+            filhos = novosFilhos;
+            return novosFilhos[i];
+        }
+
+        private void removerFilho(char c) {
+            int i = Arrays.binarySearch(rotulos, c);
+            if (i < 0) {
+                return;
+            }
+            char[] novosRotulos = new char[rotulos.length - 1];
+            No[] novosFilhos = new No[filhos.length - 1];
+            System.arraycopy(rotulos, 0, novosRotulos, 0, i);
+            System.arraycopy(filhos, 0, novosFilhos, 0, i);
+            System.arraycopy(rotulos, i + 1, novosRotulos, i, rotulos.length - i - 1);
+            System.arraycopy(filhos, i + 1, novosFilhos, i, filhos.length - i - 1);
+            rotulos = novosRotulos.length == 0 ? SEM_ROTULOS : novosRotulos;
+            filhos = novosFilhos.length == 0 ? SEM_FILHOS : novosFilhos;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * Fila de recados ou mensagens de um destinatário, com o id do remetente de cada entrada.
+ * <p>
+ * As entradas ficam em dois vetores paralelos usados como buffer circular, que dobra de tamanho
+ * quando cheio: inserir no fim e retirar do início custam O(1), sem um nó alocado por entrada.
+ * A remoção de todas as entradas de um remetente é preguiçosa: o remetente é marcado e suas
+ * entradas são descartadas quando chegam ao início da fila ou na próxima compactação.
+ * Cada entrada pode ter uma sequência de chegada, usada para intercalar a fila com outras origens;
+ * o vetor das sequências só é criado quando a primeira entrada com sequência é inserida.
+ * Não é thread-safe: o acesso concorrente deve ser coordenado por quem a utiliza.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.util;
+
+import java.util.function.ObjIntConsumer;
+
+public class CaixaDeEntrada {
+    /**
+     * Id usado para entradas sem remetente conhecido
+     */
+    public static final int SEM_REMETENTE = -1;
+
+    // Capacidade inicial do buffer (potência de 2)
+    private static final int CAPACIDADE_INICIAL = 4;
+
+    // Buffer circular: id do remetente e conteúdo de cada entrada (null enquanto vazio)
+    private int[] remetentes;
+    private String[] conteudos;
+
+    // Sequência de chegada de cada entrada, paralela ao buffer (null enquanto nenhuma tiver sequência)
+    private long[] sequencias;
+
+    // Posição da primeira entrada e quantidade de entradas no buffer (incluindo as descartadas)
+    private int inicio;
+    private int quantidade;
+
+    // Remetentes cujas entradas foram removidas, mas podem continuar no buffer
+    private final ConjuntoDeInteiros removidos = new ConjuntoDeInteiros();
+
+    // Quantidade de entradas de remetentes removidos ainda no buffer
+    private int descartadas;
+
+    /**
+     * Insere uma entrada no fim da fila
+     * @param remetente Id do remetente ou {@link #SEM_REMETENTE}
+     * @param conteudo Conteúdo da entrada
+     */
+    public void adicionar(int remetente, String conteudo) {
+        adicionar(remetente, conteudo, 0);
+    }
+
+    /**
+     * Insere uma entrada com sequência de chegada no fim da fila
+     * @param remetente Id do remetente ou {@link #SEM_REMETENTE}
+     * @param conteudo Conteúdo da entrada
+     * @param sequencia Sequência de chegada (0 se não for conhecida)
+     */
+    public void adicionar(int remetente, String conteudo, long sequencia) {
+        if (remetentes == null) {
+            remetentes = new int[CAPACIDADE_INICIAL];
+            conteudos = new String[CAPACIDADE_INICIAL];
+        } else if (quantidade == remetentes.length) {
+            redimensionar(remetentes.length * 2);
+        }
+        int posicao = (inicio + quantidade) & (remetentes.length - 1);
+        remetentes[posicao] = remetente;
+        conteudos[posicao] = conteudo;
+        if (sequencia != 0 && sequencias == null) {
+            sequencias = new long[remetentes.length];
+        }
+        if (sequencias != null) {
+            sequencias[posicao] = sequencia;
+        }
+        quantidade++;
+    }
+
+    /**
+     * Retira a primeira entrada válida da fila
+     * @return Conteúdo da entrada ou null se a fila estiver vazia
+     */
+    public String retirar() {
+        descartarInicio();
+        if (quantidade == 0) {
+            return null;
+        }
+        String conteudo = conteudos[inicio];
+        conteudos[inicio] = null;
+        inicio = (inicio + 1) & (remetentes.length - 1);
+        quantidade--;
+        return conteudo;
+    }
+
+    /**
+     * Obtém o remetente da primeira entrada válida, que é a próxima a ser retirada
+     * @return Id do remetente ou {@link #SEM_REMETENTE} se a fila estiver vazia
+     */
+    public int remetenteDoInicio() {
+        descartarInicio();
+        return quantidade == 0 ? SEM_REMETENTE : remetentes[inicio];
+    }
+
+    /**
+     * Obtém a sequência de chegada da primeira entrada válida
+     * @return Sequência da entrada (0 se ela não tiver sequência) ou -1 se a fila estiver vazia
+     */
+    public long sequenciaDoInicio() {
+        descartarInicio();
+        if (quantidade == 0) {
+            return -1;
+        }
+        return sequencias == null ? 0 : sequencias[inicio];
+    }
+
+    /**
+     * Verifica se a fila não tem entradas válidas
+     * @return true se estiver vazia
+     */
+    public boolean vazia() {
+        return tamanho() == 0;
+    }
+
+    /**
+     * Obtém a quantidade de entradas válidas
+     * @return Tamanho da fila
+     */
+    public int tamanho() {
+        return quantidade - descartadas;
+    }
+
+    /**
+     * Remove todas as entradas de um remetente. As entradas são apenas marcadas; o remetente não
+     * deve voltar a enviar para esta fila depois de removido.
+     * @param remetente Id do remetente
+     */
+    public void removerDe(int remetente) {
+        if (quantidade == 0 || remetente == SEM_REMETENTE || !removidos.adicionar(remetente)) {
+            return;
+        }
+        int mascara = remetentes.length - 1;
+        for (int i = 0; i < quantidade; i++) {
+            if (remetentes[(inicio + i) & mascara] == remetente) {
+                descartadas++;
+            }
+        }
+        if (descartadas * 2 > quantidade) {
+            compactar();
+        }
+    }
+
+    /**
+     * Percorre as entradas válidas, do início ao fim da fila, sem retirá-las
+     * @param acao Ação que recebe o conteúdo e o id do remetente de cada entrada
+     */
+    public void paraCada(ObjIntConsumer<String> acao) {
+        for (int i = 0; i < quantidade; i++) {
+            int posicao = (inicio + i) & (remetentes.length - 1);
+            if (!descartada(remetentes[posicao])) {
+                acao.accept(conteudos[posicao], remetentes[posicao]);
+            }
+        }
+    }
+
+    /**
+     * Percorre as entradas válidas com as suas sequências, do início ao fim da fila, sem retirá-las
+     * @param acao Ação que recebe o conteúdo, o id do remetente e a sequência de cada entrada
+     */
+    public void paraCada(Entrada acao) {
+        for (int i = 0; i < quantidade; i++) {
+            int posicao = (inicio + i) & (remetentes.length - 1);
+            if (!descartada(remetentes[posicao])) {
+                acao.aceitar(conteudos[posicao], remetentes[posicao], sequencias == null ? 0 : sequencias[posicao]);
+            }
+        }
+    }
+
+    /**
+     * Remove todas as entradas
+     */
+    public void limpar() {
+        remetentes = null;
+        conteudos = null;
+        sequencias = null;
+        inicio = 0;
+        quantidade = 0;
+        descartadas = 0;
+        removidos.limpar();
+    }
+
+    // Retira do início as entradas de remetentes removidos
+    private void descartarInicio() {
+        while (descartadas > 0 && descartada(remetentes[inicio])) {
+            conteudos[inicio] = null;
+            inicio = (inicio + 1) & (remetentes.length - 1);
+            quantidade--;
+            descartadas--;
+        }
+        if (descartadas == 0) {
+            removidos.limpar();
+        }
+    }
+
+    private boolean descartada(int remetente) {
+        return remetente != SEM_REMETENTE && removidos.contem(remetente);
+    }
+
+    // Reescreve o buffer sem as entradas descartadas
+    private void compactar() {
+        int[] novosRemetentes = new int[remetentes.length];
+        String[] novosConteudos = new String[conteudos.length];
+        long[] novasSequencias = sequencias == null ? null : new long[sequencias.length];
+        int[] n = new int[1];
+        paraCada((conteudo, remetente, sequencia) -> {
+            novosRemetentes[n[0]] = remetente;
+            if (novasSequencias != null) {
+                novasSequencias[n[0]] = sequencia;
+            }
+            novosConteudos[n[0]++] = conteudo;
+        });
+        remetentes = novosRemetentes;
+        conteudos = novosConteudos;
+        sequencias = novasSequencias;
+        inicio = 0;
+        quantidade = n[0];
+        descartadas = 0;
+        removidos.limpar();
+    }
+
+    // Copia as entradas para um buffer maior, começando da posição 0
+    private void redimensionar(int capacidade) {
+        int[] novosRemetentes = new int[capacidade];
+        String[] novosConteudos = new String[capacidade];
+        long[] novasSequencias = sequencias == null ? null : new long[capacidade];
+        for (int i = 0; i < quantidade; i++) {
+            int posicao = (inicio + i) & (remetentes.length - 1);
+            novosRemetentes[i] = remetentes[posicao];
+            novosConteudos[i] = conteudos[posicao];
+            if (novasSequencias != null) {
+                novasSequencias[i] = sequencias[posicao];
+            }
+        }
+        remetentes = novosRemetentes;
+        conteudos = novosConteudos;
+        sequencias = novasSequencias;
+        inicio = 0;
+    }
+
+    /**
+     * Ação sobre uma entrada da fila com a sua sequência de chegada
+     */
+    @FunctionalInterface
+    public interface Entrada {
+        /**
+         * Recebe uma entrada
+         * @param conteudo Conteúdo da entrada
+         * @param remetente Id do remetente ou {@link CaixaDeEntrada#SEM_REMETENTE}
+         * @param sequencia Sequência de chegada (0 se não for conhecida)
+         */
+        void aceitar(String conteudo, int remetente, long sequencia);
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Conjunto de inteiros não negativos armazenados em um vetor primitivo.
+ * <p>
+ * Usa endereçamento aberto com sondagem linear e remoção por deslocamento reverso, sem
+ * objetos por elemento nem boxing. A tabela só é alocada na primeira inserção, de modo que
+ * conjuntos vazios (o caso mais comum nos relacionamentos) custam apenas o objeto.
+ * Não é thread-safe: as alterações devem ser coordenadas por quem o utiliza. As leituras
+ * ({@link #contem}, {@link #paraVetor} e {@link #paraCada}) leem a tabela uma única vez e limitam
+ * a sondagem ao seu tamanho, então, feitas sem trava durante uma alteração, podem enxergar um
+ * estado desatualizado, mas não falham.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+public class ConjuntoDeInteiros {
+    // Marcador de posição livre na tabela
+    private static final int VAZIO = -1;
+
+    // Capacidade inicial da tabela (potência de 2)
+    private static final int CAPACIDADE_INICIAL = 4;
+
+    // Tabela de elementos (null enquanto o conjunto estiver vazio)
+    private int[] tabela;
+
+    // Quantidade de elementos
+    private int tamanho;
+
+    /**
+     * Adiciona um elemento
+     * @param valor Inteiro não negativo
+     * @return true se o elemento foi adicionado, false se já existia
+     */
+    public boolean adicionar(int valor) {
+        if (tabela == null) {
+            tabela = novaTabela(CAPACIDADE_INICIAL);
+        } else if ((tamanho + 1) * 4 > tabela.length * 3) {
+            redimensionar(tabela.length * 2);
+        }
+
+        int mascara = tabela.length - 1;
+        int i = espalhar(valor) & mascara;
+        while (tabela[i] != VAZIO) {
+            if (tabela[i] == valor) {
+                return false;
+            }
+            i = (i + 1) & mascara;
+        }
+        tabela[i] = valor;
+        tamanho++;
+        return true;
+    }
+
+    /**
+     * Verifica se o elemento pertence ao conjunto
+     * @param valor Inteiro a procurar
+     * @return true se pertencer ao conjunto
+     */
+    public boolean contem(int valor) {
+        int[] atual = tabela;
+        if (atual == null) {
+            return false;
+        }
+        int mascara = atual.length - 1;
+        int i = espalhar(valor) & mascara;
+        for (int sondagens = 0; sondagens < atual.length && atual[i] != VAZIO; sondagens++) {
+            if (atual[i] == valor) {
+                return true;
+            }
+            i = (i + 1) & mascara;
+        }
+        return false;
+    }
+
+    /**
+     * Remove um elemento
+     * @param valor Inteiro a remover
+     * @return true se o elemento existia
+     */
+    public boolean remover(int valor) {
+        if (tamanho == 0) {
+            return false;
+        }
+        int mascara = tabela.length - 1;
+        int i = espalhar(valor) & mascara;
+        while (tabela[i] != valor) {
+            if (tabela[i] == VAZIO) {
+                return false;
+            }
+            i = (i + 1) & mascara;
+        }
+
+        // Desloca para trás os elementos seguintes do mesmo agrupamento
+        int livre = i;
+        int j = (i + 1) & mascara;
+        while (tabela[j] != VAZIO) {
+            int ideal = espalhar(tabela[j]) & mascara;
+            if (((j - ideal) & mascara) >= ((j - livre) & mascara)) {
+                tabela[livre] = tabela[j];
+                livre = j;
+            }
+            j = (j + 1) & mascara;
+        }
+        tabela[livre] = VAZIO;
+        tamanho--;
+        return true;
+    }
+
+    /**
+     * Obtém a quantidade de elementos
+     * @return Tamanho do conjunto
+     */
+    public int tamanho() {
+        return tamanho;
+    }
+
+    /**
+     * Verifica se o conjunto está vazio
+     * @return true se não houver elementos
+     */
+    public boolean vazio() {
+        return tamanho == 0;
+    }
+
+    /**
+     * Copia os elementos para um novo vetor (em ordem arbitrária)
+     * @return Vetor com os elementos
+     */
+    public int[] paraVetor() {
+        int[] atual = tabela;
+        if (atual == null) {
+            return new int[0];
+        }
+        // O tamanho lido pode não corresponder à tabela lida durante uma alteração concorrente
+        int[] resultado = new int[Math.min(tamanho, atual.length)];
+        int k = 0;
+        for (int valor : atual) {
+            if (valor != VAZIO) {
+                if (k == resultado.length) {
+                    resultado = Arrays.copyOf(resultado, Math.max(CAPACIDADE_INICIAL, k * 2));
+                }
+                resultado[k++] = valor;
+            }
+        }
+        return k == resultado.length ? resultado : Arrays.copyOf(resultado, k);
+    }
+
+    /**
+     * Percorre os elementos sem copiá-los (em ordem arbitrária). A tabela percorrida é a vigente
+     * no início da chamada, então uma leitura sem trava concorrente com alterações pode perder ou
+     * repetir elementos, mas não falha.
+     * @param acao Ação aplicada a cada elemento
+     */
+    public void paraCada(IntConsumer acao) {
+        int[] atual = tabela;
+        if (atual == null) {
+            return;
+        }
+        for (int valor : atual) {
+            if (valor != VAZIO) {
+                acao.accept(valor);
+            }
+        }
+    }
+
+    /**
+     * Remove todos os elementos e libera a tabela
+     */
+    public void limpar() {
+        tabela = null;
+        tamanho = 0;
+    }
+
+    // Recria a tabela com a nova capacidade, reinserindo os elementos; a nova tabela só substitui a
+    // antiga depois de completa, para que uma leitura sem trava não a encontre pela metade
+    private void redimensionar(int capacidade) {
+        int[] nova = novaTabela(capacidade);
+        int mascara = capacidade - 1;
+        for (int valor : tabela) {
+            if (valor != VAZIO) {
+                int i = espalhar(valor) & mascara;
+                while (nova[i] != VAZIO) {
+                    i = (i + 1) & mascara;
+                }
+                nova[i] = valor;
+            }
+        }
+        tabela = nova;
+    }
+
+    private static int[] novaTabela(int capacidade) {
+        int[] nova = new int[capacidade];
+        Arrays.fill(nova, VAZIO);
+        return nova;
+    }
+
+    // Mistura os bits do valor para espalhar ids sequenciais pela tabela
+    private static int espalhar(int valor) {
+        int h = valor * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
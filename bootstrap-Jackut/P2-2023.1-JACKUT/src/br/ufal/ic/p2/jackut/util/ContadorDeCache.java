@@ -0,0 +1,50 @@
+/**
+ * Contadores de acertos e falhas de um cache, seguros para uso concorrente.
+ * <p>
+ * Usa {@link LongAdder}, que distribui os incrementos entre células por thread, para que a
+ * contagem não vire um ponto de disputa nas leituras mais frequentes.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class ContadorDeCache {
+    private final LongAdder acertos = new LongAdder();
+    private final LongAdder falhas = new LongAdder();
+
+    /**
+     * Registra uma consulta atendida pelo cache
+     */
+    public void registrarAcerto() {
+        acertos.increment();
+    }
+
+    /**
+     * Registra uma consulta que precisou recalcular o valor
+     */
+    public void registrarFalha() {
+        falhas.increment();
+    }
+
+    public long getAcertos() { return acertos.sum(); }
+    public long getFalhas() { return falhas.sum(); }
+
+    /**
+     * Calcula a fração de consultas atendidas pelo cache
+     * @return Taxa de acerto entre 0 e 1 (0 se não houve consultas)
+     */
+    public double getTaxaDeAcerto() {
+        long a = acertos.sum();
+        long total = a + falhas.sum();
+        return total == 0 ? 0 : (double) a / total;
+    }
+
+    /**
+     * Zera os contadores
+     */
+    public void zerar() {
+        acertos.reset();
+        falhas.reset();
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Contagem de ocorrências de inteiros não negativos em vetores primitivos.
+ * <p>
+ * Usa endereçamento aberto com sondagem linear, como o {@link ConjuntoDeInteiros}, guardando a
+ * contagem de cada chave em um vetor paralelo, sem objetos por entrada nem boxing. A remoção de uma
+ * chave desloca para trás as seguintes do mesmo agrupamento, sem marcadores de posição apagada.
+ * Não é thread-safe: cada tarefa de contagem deve usar a sua e somá-las no final.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.util;
+
+import java.util.Arrays;
+
+public class ContagemDeInteiros {
+    // Marcador de posição livre na tabela
+    private static final int VAZIO = -1;
+
+    // Tabela de chaves e contagens correspondentes
+    private int[] chaves;
+    private int[] contagens;
+
+    // Quantidade de chaves distintas
+    private int tamanho;
+
+    /**
+     * Construtor
+     * @param capacidadeEsperada Quantidade de chaves distintas esperada, para evitar redimensionamentos
+     */
+    public ContagemDeInteiros(int capacidadeEsperada) {
+        int capacidade = Integer.highestOneBit(Math.max(4, capacidadeEsperada * 4 / 3) - 1) << 1;
+        chaves = new int[capacidade];
+        contagens = new int[capacidade];
+        Arrays.fill(chaves, VAZIO);
+    }
+
+    /**
+     * Soma uma ocorrência à contagem da chave
+     * @param chave Inteiro não negativo
+     */
+    public void incrementar(int chave) {
+        somar(chave, 1);
+    }
+
+    /**
+     * Soma uma quantidade à contagem da chave
+     * @param chave Inteiro não negativo
+     * @param quantidade Quantidade a somar
+     */
+    public void somar(int chave, int quantidade) {
+        if ((tamanho + 1) * 4 > chaves.length * 3) {
+            redimensionar(chaves.length * 2);
+        }
+        int mascara = chaves.length - 1;
+        int i = espalhar(chave) & mascara;
+        while (chaves[i] != VAZIO) {
+            if (chaves[i] == chave) {
+                contagens[i] += quantidade;
+                return;
+            }
+            i = (i + 1) & mascara;
+        }
+        chaves[i] = chave;
+        contagens[i] = quantidade;
+        tamanho++;
+    }
+
+    /**
+     * Subtrai uma ocorrência da contagem da chave, retirando a chave quando a contagem chega a zero
+     * @param chave Inteiro não negativo
+     * @return Contagem restante da chave (0 se ela não estava presente)
+     */
+    public int decrementar(int chave) {
+        int i = posicao(chave);
+        if (i < 0) {
+            return 0;
+        }
+        if (--contagens[i] > 0) {
+            return contagens[i];
+        }
+        retirar(i);
+        return 0;
+    }
+
+    /**
+     * Retira a chave e a sua contagem
+     * @param chave Inteiro não negativo
+     */
+    public void remover(int chave) {
+        int i = posicao(chave);
+        if (i >= 0) {
+            retirar(i);
+        }
+    }
+
+    /**
+     * Soma a esta as contagens de outra
+     * @param outra Contagem a ser somada (não é alterada)
+     */
+    public void somarTudo(ContagemDeInteiros outra) {
+        outra.paraCada(this::somar);
+    }
+
+    /**
+     * Obtém a quantidade de chaves distintas
+     * @return Tamanho da contagem
+     */
+    public int tamanho() {
+        return tamanho;
+    }
+
+    /**
+     * Percorre as chaves com suas contagens (em ordem arbitrária)
+     * @param visitante Ação que recebe cada chave e sua contagem
+     */
+    public void paraCada(Visitante visitante) {
+        for (int i = 0; i < chaves.length; i++) {
+            if (chaves[i] != VAZIO) {
+                visitante.visitar(chaves[i], contagens[i]);
+            }
+        }
+    }
+
+    /**
+     * Ação aplicada a cada par de chave e contagem
+     */
+    @FunctionalInterface
+    public interface Visitante {
+        void visitar(int chave, int contagem);
+    }
+
+    // Posição da chave na tabela, ou -1 se ela não estiver presente
+    private int posicao(int chave) {
+        int mascara = chaves.length - 1;
+        int i = espalhar(chave) & mascara;
+        while (chaves[i] != chave) {
+            if (chaves[i] == VAZIO) {
+                return -1;
+            }
+            i = (i + 1) & mascara;
+        }
+        return i;
+    }
+
+    // Esvazia a posição i, deslocando para trás as entradas seguintes do mesmo agrupamento
+    private void retirar(int i) {
+        int mascara = chaves.length - 1;
+        int livre = i;
+        int j = (i + 1) & mascara;
+        while (chaves[j] != VAZIO) {
+            int ideal = espalhar(chaves[j]) & mascara;
+            if (((j - ideal) & mascara) >= ((j - livre) & mascara)) {
+                chaves[livre] = chaves[j];
+                contagens[livre] = contagens[j];
+                livre = j;
+            }
+            j = (j + 1) & mascara;
+        }
+        chaves[livre] = VAZIO;
+        contagens[livre] = 0;
+        tamanho--;
+    }
+
+    // Recria a tabela com a nova capacidade, reinserindo as entradas
+    private void redimensionar(int capacidade) {
+        int[] chavesAntigas = chaves;
+        int[] contagensAntigas = contagens;
+        chaves = new int[capacidade];
+        contagens = new int[capacidade];
+        Arrays.fill(chaves, VAZIO);
+        tamanho = 0;
+        for (int i = 0; i < chavesAntigas.length; i++) {
+            if (chavesAntigas[i] != VAZIO) {
+                somar(chavesAntigas[i], contagensAntigas[i]);
+            }
+        }
+    }
+
+    // Mistura os bits da chave para espalhar ids sequenciais pela tabela
+    private static int espalhar(int chave) {
+        int h = chave * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Histograma de latências em faixas log-lineares, no estilo do HdrHistogram, seguro para uso
+ * concorrente e sem alocação ao registrar.
+ * <p>
+ * Valores abaixo de {@value #LINEARES} ns têm uma faixa cada; acima disso, cada potência de dois é
+ * dividida em {@value #SUBFAIXAS} faixas iguais, de modo que o erro relativo de um percentil fica
+ * abaixo de 1/{@value #SUBFAIXAS} (cerca de 3%) em qualquer escala, até o limite de
+ * 2^{@value #BITS_MAXIMOS} ns (cerca de um minuto). As contagens ficam em um único
+ * {@link AtomicLongArray} dividido em faixas por thread (como as células de um LongAdder), para que
+ * threads diferentes não disputem as mesmas posições; a leitura soma as faixas.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class HistogramaDeLatencia {
+    // Bits de precisão: valores até 2^BITS_PRECISAO têm faixa própria, e cada potência de dois
+    // acima é dividida em 2^(BITS_PRECISAO - 1) faixas
+    private static final int BITS_PRECISAO = 6;
+    private static final int LINEARES = 1 << BITS_PRECISAO;
+    private static final int SUBFAIXAS = LINEARES / 2;
+
+    // Maior valor registrado com precisão (valores acima contam na última faixa)
+    private static final int BITS_MAXIMOS = 36;
+    private static final long VALOR_MAXIMO = (1L << BITS_MAXIMOS) - 1;
+
+    // Quantidade de faixas e posições extras de cada divisão: soma dos valores, maior valor e
+    // preenchimento para que divisões vizinhas não compartilhem linha de cache
+    private static final int FAIXAS = indice(VALOR_MAXIMO) + 1;
+    private static final int SOMA = FAIXAS;
+    private static final int MAXIMO = FAIXAS + 1;
+    private static final int TAMANHO_DIVISAO = FAIXAS + 2 + 8;
+
+    // Limite de divisões, mesmo em máquinas com muitos núcleos
+    private static final int DIVISOES_MAXIMAS = 8;
+
+    private final AtomicLongArray contagens;
+    private final int mascara;
+
+    /**
+     * Construtor: uma divisão por núcleo, arredondada para potência de dois
+     */
+    public HistogramaDeLatencia() {
+        int nucleos = Math.min(DIVISOES_MAXIMAS, Runtime.getRuntime().availableProcessors());
+        int divisoes = Integer.highestOneBit(Math.max(1, nucleos - 1) << 1);
+        this.mascara = divisoes - 1;
+        this.contagens = new AtomicLongArray(divisoes * TAMANHO_DIVISAO);
+    }
+
+    /**
+     * Registra uma medição
+     * @param nanos Duração em nanossegundos (valores negativos contam como zero)
+     */
+    public void registrar(long nanos) {
+        long valor = Math.max(0, nanos);
+        int base = ((int) Thread.currentThread().threadId() & mascara) * TAMANHO_DIVISAO;
+        contagens.getAndIncrement(base + indice(Math.min(valor, VALOR_MAXIMO)));
+        contagens.getAndAdd(base + SOMA, valor);
+        long maximo = contagens.get(base + MAXIMO);
+        while (valor > maximo && !contagens.compareAndSet(base + MAXIMO, maximo, valor)) {
+            maximo = contagens.get(base + MAXIMO);
+        }
+    }
+
+    /**
+     * Soma as divisões em um retrato do histograma. Medições registradas durante a leitura podem
+     * entrar ou não no retrato
+     * @return Retrato com as contagens atuais
+     */
+    public Retrato retratar() {
+        long[] faixas = new long[FAIXAS];
+        long soma = 0;
+        long maximo = 0;
+        for (int base = 0; base < contagens.length(); base += TAMANHO_DIVISAO) {
+            for (int i = 0; i < FAIXAS; i++) {
+                faixas[i] += contagens.get(base + i);
+            }
+            soma += contagens.get(base + SOMA);
+            maximo = Math.max(maximo, contagens.get(base + MAXIMO));
+        }
+        return new Retrato(faixas, soma, maximo);
+    }
+
+    // Faixa de um valor entre 0 e VALOR_MAXIMO
+    private static int indice(long valor) {
+        if (valor < LINEARES) {
+            return (int) valor;
+        }
+        int deslocamento = 63 - Long.numberOfLeadingZeros(valor) - (BITS_PRECISAO - 1);
+        return LINEARES + (deslocamento - 1) * SUBFAIXAS + (int) ((valor >>> deslocamento) - SUBFAIXAS);
+    }
+
+    // Maior valor que cai na faixa
+    private static long limiteSuperior(int indice) {
+        if (indice < LINEARES) {
+            return indice;
+        }
+        int deslocamento = (indice - LINEARES) / SUBFAIXAS + 1;
+        long subfaixa = (indice - LINEARES) % SUBFAIXAS + SUBFAIXAS;
+        return ((subfaixa + 1) << deslocamento) - 1;
+    }
+
+    /**
+     * Contagens de um histograma em um instante
+     */
+    public static final class Retrato {
+        private final long[] faixas;
+        private final long contagem;
+        private final long soma;
+        private final long maximo;
+
+        private Retrato(long[] faixas, long soma, long maximo) {
+            long contagem = 0;
+            for (long quantidade : faixas) {
+                contagem += quantidade;
+            }
+            this.faixas = faixas;
+            this.contagem = contagem;
+            this.soma = soma;
+            this.maximo = maximo;
+        }
+
+        public long getContagem() { return contagem; }
+        public long getSomaNanos() { return soma; }
+        public long getMaximoNanos() { return maximo; }
+
+        /**
+         * Calcula a média das medições
+         * @return Média em nanossegundos (0 se não houve medições)
+         */
+        public double getMediaNanos() {
+            return contagem == 0 ? 0 : (double) soma / contagem;
+        }
+
+        /**
+         * Calcula um percentil das medições, com a precisão das faixas
+         * @param percentil Percentil entre 0 e 100 (ex: 99.9)
+         * @return Maior valor da faixa que contém o percentil, em nanossegundos (0 se não houve medições)
+         */
+        public long getPercentilNanos(double percentil) {
+            if (contagem == 0) {
+                return 0;
+            }
+            long posicao = Math.max(1, (long) Math.ceil(percentil / 100 * contagem));
+            long acumulado = 0;
+            for (int i = 0; i < faixas.length; i++) {
+                acumulado += faixas[i];
+                if (acumulado >= posicao) {
+                    return Math.min(limiteSuperior(i), maximo);
+                }
+            }
+            return maximo;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Roda de tempo (hashed timer wheel) para agendar vencimentos com custo O(1).
+ * <p>
+ * O tempo é dividido em ticks de duração fixa e cada item é guardado na posição da roda
+ * correspondente ao tick do seu prazo. Avançar a roda visita apenas as posições dos ticks
+ * decorridos; itens com prazo além de uma volta completa permanecem na posição até a volta certa.
+ * A roda não tem thread própria: quem a usa chama {@link #avancar} periodicamente ou a cada acesso.
+ * </p>
+ * @param <T> Tipo dos itens agendados
+ */
+package br.ufal.ic.p2.jackut.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+public class RodaDeTempo<T> {
+    // Posições da roda, cada uma com os itens cujo prazo cai em ticks congruentes a ela
+    private final List<Entrada<T>>[] posicoes;
+
+    // Duração de cada tick, na mesma unidade dos prazos
+    private final long duracaoTick;
+
+    // Último tick processado
+    private long tickAtual;
+
+    /**
+     * Construtor
+     * @param posicoes Quantidade de posições da roda (arredondada para a próxima potência de 2)
+     * @param duracaoTick Duração de cada tick
+     * @param agora Instante inicial
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public RodaDeTempo(int posicoes, long duracaoTick, long agora) {
+        int tamanho = Integer.highestOneBit(Math.max(1, posicoes - 1)) << 1;
+        this.posicoes = new List[tamanho];
+        for (int i = 0; i < tamanho; i++) {
+            this.posicoes[i] = new ArrayList<>();
+        }
+        this.duracaoTick = duracaoTick;
+        this.tickAtual = agora / duracaoTick;
+    }
+
+    /**
+     * Agenda um item para vencer no prazo informado
+     * @param item Item agendado
+     * @param prazo Instante de vencimento
+     */
+    public synchronized void agendar(T item, long prazo) {
+        long tick = Math.max(prazo / duracaoTick, tickAtual + 1);
+        posicoes[(int) (tick & (posicoes.length - 1))].add(new Entrada<>(item, tick));
+    }
+
+    /**
+     * Avança a roda até o instante informado, entregando os itens vencidos ao tratador. O tratador
+     * é chamado fora da trava da roda e devolve um novo prazo para reagendar o item, ou um valor
+     * negativo para descartá-lo.
+     * @param agora Instante atual
+     * @param aoVencer Tratador dos itens vencidos
+     */
+    public void avancar(long agora, ToLongFunction<T> aoVencer) {
+        List<T> vencidos = new ArrayList<>();
+        synchronized (this) {
+            long alvo = agora / duracaoTick;
+            long passos = Math.min(alvo - tickAtual, posicoes.length);
+            for (long p = 1; p <= passos; p++) {
+                List<Entrada<T>> posicao = posicoes[(int) ((tickAtual + p) & (posicoes.length - 1))];
+                posicao.removeIf(entrada -> {
+                    if (entrada.tick <= alvo) {
+                        vencidos.add(entrada.item);
+                        return true;
+                    }
+                    return false;
+                });
+            }
+            tickAtual = Math.max(tickAtual, alvo);
+        }
+
+        for (T item : vencidos) {
+            long novoPrazo = aoVencer.applyAsLong(item);
+            if (novoPrazo >= 0) {
+                agendar(item, novoPrazo);
+            }
+        }
+    }
+
+    /**
+     * Remove todos os itens agendados
+     */
+    public synchronized void limpar() {
+        for (List<Entrada<T>> posicao : posicoes) {
+            posicao.clear();
+        }
+    }
+
+    // Item agendado com o tick do seu prazo
+    private static class Entrada<T> {
+        private final T item;
+        private final long tick;
+
+        private Entrada(T item, long tick) {
+            this.item = item;
+            this.tick = tick;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * Teste de estresse da ordem entre as alterações em memória e os registros no journal.
+ * <p>
+ * Uma thread cadastra usuários e cria comunidades enquanto outras tentam, sem parar, enviar um
+ * recado a cada usuário e entrar em cada comunidade assim que eles aparecem. Toda operação
+ * confirmada precisa estar no journal depois da operação que a tornou possível: uma segunda
+ * Facade sobre o mesmo diretório reproduz o journal sem erro e encontra todos os recados e membros.
+ * </p>
+ * <p>
+ * Em seguida, cada rodada cadastra um usuário com duas sessões: uma thread envia recados pela
+ * primeira enquanto outra remove a conta pela segunda. Nenhum recado do usuário removido pode
+ * sobrar, nem na memória nem na reprodução do journal.
+ * </p>
+ * <p>
+ * Por fim, com o journal impossível de abrir, cada operação precisa falhar sem alterar a memória:
+ * o registro vem antes da alteração.
+ * </p>
+ * <p>
+ * uso: TesteAtomicidadeDoJournal [quantidade]
+ * </p>
+ */
+package br.ufal.ic.p2.jackut;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static br.ufal.ic.p2.jackut.Verificacoes.*;
+
+public class TesteAtomicidadeDoJournal {
+    // Quantidade padrão de usuários e de comunidades criados
+    private static final int QUANTIDADE_PADRAO = 1000;
+
+    // Quantidade de rodadas de remoção concorrente com o envio de recados
+    private static final int RODADAS_REMOCAO = 200;
+
+    public static void main(String[] args) throws Exception {
+        int quantidade = args.length > 0 ? Integer.parseInt(args[0]) : QUANTIDADE_PADRAO;
+        File diretorio = diretorioTemporario();
+        try {
+            Facade facade = new Facade(diretorio);
+            facade.criarUsuario("dono", "s", "Dono");
+            facade.criarUsuario("remetente", "s", "Remetente");
+            facade.criarUsuario("membro", "s", "Membro");
+            String dono = facade.abrirSessao("dono", "s");
+            String remetente = facade.abrirSessao("remetente", "s");
+            String membro = facade.abrirSessao("membro", "s");
+
+            AtomicReference<Throwable> erro = new AtomicReference<>();
+            Thread criador = iniciar(erro, () -> {
+                for (int i = 0; i < quantidade; i++) {
+                    facade.criarUsuario("u" + i, "s", "Usuario " + i);
+                    facade.criarComunidade(dono, "c" + i, "Comunidade " + i);
+                }
+            });
+            Thread recados = iniciar(erro, () -> {
+                for (int i = 0; i < quantidade; i++) {
+                    String destinatario = "u" + i;
+                    String recado = "r" + i;
+                    repetirAteConseguir(erro, () -> facade.enviarRecado(remetente, destinatario, recado));
+                }
+            });
+            Thread membros = iniciar(erro, () -> {
+                for (int i = 0; i < quantidade; i++) {
+                    String comunidade = "c" + i;
+                    repetirAteConseguir(erro, () -> facade.adicionarComunidade(membro, comunidade));
+                }
+            });
+            criador.join();
+            recados.join();
+            membros.join();
+            if (erro.get() != null) {
+                throw new AssertionError("falha durante a carga", erro.get());
+            }
+
+            // Reabre o diretório sem encerrar a primeira Facade: os dados vêm da reprodução do journal
+            Facade reaberta = new Facade(diretorio);
+            for (int i = 0; i < quantidade; i++) {
+                String sessao = reaberta.abrirSessao("u" + i, "s");
+                verificarIgual("r" + i, reaberta.lerRecado(sessao), "recado de u" + i);
+                verificarIgual("{dono,membro}", reaberta.getMembrosComunidade("c" + i), "membros de c" + i);
+            }
+            System.out.println(quantidade + " usuários e comunidades, nenhuma operação perdida");
+        } finally {
+            apagar(diretorio);
+        }
+        remocaoDuranteOperacoes();
+        falhaDeGravacao();
+    }
+
+    // Remove usuários enquanto outra sessão deles ainda envia recados
+    private static void remocaoDuranteOperacoes() throws Exception {
+        File diretorio = diretorioTemporario();
+        try {
+            Facade facade = new Facade(diretorio);
+            facade.criarUsuario("alvo", "s", "Alvo");
+            for (int i = 0; i < RODADAS_REMOCAO; i++) {
+                String login = "v" + i;
+                facade.criarUsuario(login, "s", "Removido " + i);
+                String envio = facade.abrirSessao(login, "s");
+                String remocao = facade.abrirSessao(login, "s");
+
+                AtomicReference<Throwable> erro = new AtomicReference<>();
+                Thread remetente = iniciar(erro, () -> {
+                    try {
+                        while (true) {
+                            facade.enviarRecado(envio, "alvo", "recado de " + login);
+                        }
+                    } catch (RuntimeException e) {
+                        verificarIgual("Usuário não cadastrado.", e.getMessage(), "envio depois da remoção");
+                    }
+                });
+                Thread removedor = iniciar(erro, () -> facade.removerUsuario(remocao));
+                remetente.join();
+                removedor.join();
+                if (erro.get() != null) {
+                    throw new AssertionError("falha na rodada " + i, erro.get());
+                }
+            }
+
+            String alvo = facade.abrirSessao("alvo", "s");
+            verificarErro("Não há recados.", () -> facade.lerRecado(alvo));
+            Facade reaberta = new Facade(diretorio);
+            String reabertaAlvo = reaberta.abrirSessao("alvo", "s");
+            verificarErro("Não há recados.", () -> reaberta.lerRecado(reabertaAlvo));
+            System.out.println(RODADAS_REMOCAO + " remoções concorrentes, nenhum recado órfão");
+        } finally {
+            apagar(diretorio);
+        }
+    }
+
+    // Operações cujo registro falha não deixam alterações em memória
+    private static void falhaDeGravacao() throws Exception {
+        File diretorio = diretorioTemporario();
+        try {
+            Facade facade = new Facade(diretorio);
+            facade.criarUsuario("ana", "s", "Ana");
+            facade.criarUsuario("bia", "s", "Bia");
+            facade.encerrarSistema();
+
+            // O journal só é aberto na primeira gravação: um diretório no lugar dele faz toda gravação falhar
+            Facade semJournal = new Facade(diretorio);
+            File journal = new File(diretorio, "jackut.journal");
+            journal.delete();
+            verificar(journal.mkdir(), "diretório no lugar do journal");
+
+            String ana = semJournal.abrirSessao("ana", "s");
+            String bia = semJournal.abrirSessao("bia", "s");
+            String erro = "Erro ao registrar operação.";
+            verificarErro(erro, () -> semJournal.criarUsuario("cid", "s", "Cid"));
+            verificarErro(erro, () -> semJournal.editarPerfil(ana, "cidade", "Maceió"));
+            verificarErro(erro, () -> semJournal.adicionarAmigo(ana, "bia"));
+            verificarErro(erro, () -> semJournal.adicionarIdolo(ana, "bia"));
+            verificarErro(erro, () -> semJournal.enviarRecado(ana, "bia", "oi"));
+            verificarErro(erro, () -> semJournal.criarComunidade(ana, "c", "Comunidade"));
+
+            verificarErro("Login ou senha inválidos.", () -> semJournal.abrirSessao("cid", "s"));
+            verificarErro("Atributo não preenchido.", () -> semJournal.getAtributoUsuario("ana", "cidade"));
+            verificarIgual("{}", semJournal.getAmigos("bia"), "convite não registrado");
+            verificar(!semJournal.ehFa("ana", "bia"), "ídolo não registrado");
+            verificarErro("Não há recados.", () -> semJournal.lerRecado(bia));
+            verificarErro("Comunidade não existe.", () -> semJournal.getDescricaoComunidade("c"));
+            verificarIgual("{}", semJournal.getComunidades("ana"), "comunidade não registrada");
+            System.out.println("gravações que falham não alteram a memória");
+        } finally {
+            apagar(diretorio);
+        }
+    }
+
+    // Inicia uma thread que guarda o primeiro erro encontrado
+    private static Thread iniciar(AtomicReference<Throwable> erro, Runnable corpo) {
+        Thread thread = new Thread(() -> {
+            try {
+                corpo.run();
+            } catch (Throwable e) {
+                erro.compareAndSet(null, e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    // Repete a operação enquanto o alvo ainda não existe, ou até outra thread falhar
+    private static void repetirAteConseguir(AtomicReference<Throwable> erro, Runnable operacao) {
+        while (erro.get() == null) {
+            try {
+                operacao.run();
+                return;
+            } catch (RuntimeException e) {
+                if (!"Usuário não cadastrado.".equals(e.getMessage())
+                        && !"Comunidade não existe.".equals(e.getMessage())) {
+                    throw e;
+                }
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
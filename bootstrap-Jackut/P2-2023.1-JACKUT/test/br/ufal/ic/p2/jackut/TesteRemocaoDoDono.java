@@ -0,0 +1,87 @@
+/**
+ * Testes da remoção do dono de uma comunidade: a comunidade é apagada, mas as mensagens que os
+ * outros membros ainda não leram continuam disponíveis em lerMensagem, na ordem de chegada também
+ * em relação às mensagens das outras comunidades e às enviadas depois, tanto na memória quanto na
+ * reprodução do journal e depois de um snapshot.
+ */
+package br.ufal.ic.p2.jackut;
+
+import java.io.File;
+
+import static br.ufal.ic.p2.jackut.Verificacoes.*;
+
+public class TesteRemocaoDoDono {
+    public static void main(String[] args) throws Exception {
+        // Na memória
+        File diretorio = diretorioTemporario();
+        try {
+            Facade facade = new Facade(diretorio);
+            removerDono(facade);
+            verificarIgual("{livros}", facade.getComunidades("bia"), "comunidade apagada");
+            conferir(facade, "memória");
+        } finally {
+            apagar(diretorio);
+        }
+
+        // Reabre o diretório sem encerrar a primeira Facade: os dados vêm da reprodução do journal
+        diretorio = diretorioTemporario();
+        try {
+            removerDono(new Facade(diretorio));
+            conferir(new Facade(diretorio), "journal");
+        } finally {
+            apagar(diretorio);
+        }
+
+        // Encerra antes de reabrir, para que as mensagens guardadas passem pelo snapshot
+        diretorio = diretorioTemporario();
+        try {
+            Facade facade = new Facade(diretorio);
+            removerDono(facade);
+            facade.encerrarSistema();
+            conferir(new Facade(diretorio), "snapshot");
+        } finally {
+            apagar(diretorio);
+        }
+        System.out.println("Remoção do dono ok");
+    }
+
+    // Bia lê m1 e Caio nenhuma das mensagens antes de o dono ser removido; l1, da comunidade de
+    // Bia, chega entre m1 e m2
+    private static void removerDono(Facade facade) {
+        facade.criarUsuario("dono", "s", "Dono");
+        facade.criarUsuario("bia", "s", "Bia");
+        facade.criarUsuario("caio", "s", "Caio");
+        String dono = facade.abrirSessao("dono", "s");
+        String bia = facade.abrirSessao("bia", "s");
+        String caio = facade.abrirSessao("caio", "s");
+        facade.criarComunidade(dono, "jogos", "Jogos");
+        facade.adicionarComunidade(bia, "jogos");
+        facade.adicionarComunidade(caio, "jogos");
+        facade.criarComunidade(bia, "livros", "Livros");
+        facade.adicionarComunidade(caio, "livros");
+        facade.enviarMensagem(dono, "jogos", "m1");
+        facade.enviarMensagem(bia, "livros", "l1");
+        facade.enviarMensagem(caio, "jogos", "m2");
+        facade.enviarMensagem(dono, "jogos", "m3");
+        verificarIgual("m1", facade.lerMensagem(bia), "mensagem lida antes da remoção");
+        facade.removerUsuario(dono);
+    }
+
+    // Bia ainda não leu l1, m2 e m3; Caio não leu nenhuma. l2 é enviada depois da remoção (e da
+    // carga) e tem de vir depois das mensagens guardadas de jogos
+    private static void conferir(Facade facade, String origem) {
+        String bia = facade.abrirSessao("bia", "s");
+        String caio = facade.abrirSessao("caio", "s");
+        facade.enviarMensagem(bia, "livros", "l2");
+        String[] deBia = {"l1", "m2", "m3", "l2"};
+        for (String esperada : deBia) {
+            verificarIgual(esperada, facade.lerMensagem(bia), "mensagem de bia (" + origem + ")");
+        }
+        verificarErro("Não há mensagens.", () -> facade.lerMensagem(bia));
+        String[] deCaio = {"m1", "l1", "m2", "m3", "l2"};
+        for (String esperada : deCaio) {
+            verificarIgual(esperada, facade.lerMensagem(caio), "mensagem de caio (" + origem + ")");
+        }
+        verificarErro("Não há mensagens.", () -> facade.lerMensagem(caio));
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Executa os testes de unidade em sequência e informa quais falharam.
+ * <p>
+ * uso: TodosOsTestes
+ * </p>
+ */
+package br.ufal.ic.p2.jackut;
+
+import br.ufal.ic.p2.jackut.comandos.TesteInterpretadorDeComandos;
+import br.ufal.ic.p2.jackut.managers.TesteArestasDeRecados;
+import br.ufal.ic.p2.jackut.managers.TesteIndiceDeInimigos;
+import br.ufal.ic.p2.jackut.managers.TesteJournal;
+import br.ufal.ic.p2.jackut.managers.TesteSnapshotParticionado;
+import br.ufal.ic.p2.jackut.servidor.TesteServidorDeComandos;
+import br.ufal.ic.p2.jackut.util.TesteArvoreDePrefixos;
+import br.ufal.ic.p2.jackut.util.TesteCaixaDeEntrada;
+import br.ufal.ic.p2.jackut.util.TesteConjuntoDeInteiros;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class TodosOsTestes {
+    // Corpo de um teste: o método main da classe de teste
+    private interface Teste {
+        void executar(String[] args) throws Exception;
+    }
+
+    public static void main(String[] args) {
+        Map<String, Teste> testes = new LinkedHashMap<>();
+        testes.put("TesteConjuntoDeInteiros", TesteConjuntoDeInteiros::main);
+        testes.put("TesteCaixaDeEntrada", TesteCaixaDeEntrada::main);
+        testes.put("TesteArvoreDePrefixos", TesteArvoreDePrefixos::main);
+        testes.put("TesteInterpretadorDeComandos", TesteInterpretadorDeComandos::main);
+        testes.put("TesteIndiceDeInimigos", TesteIndiceDeInimigos::main);
+        testes.put("TesteArestasDeRecados", TesteArestasDeRecados::main);
+        testes.put("TesteJournal", TesteJournal::main);
+        testes.put("TesteSnapshotParticionado", TesteSnapshotParticionado::main);
+        testes.put("TesteServidorDeComandos", TesteServidorDeComandos::main);
+        testes.put("TesteAtomicidadeDoJournal", TesteAtomicidadeDoJournal::main);
+        testes.put("TesteRemocaoDoDono", TesteRemocaoDoDono::main);
+
+        int falhas = 0;
+        for (Map.Entry<String, Teste> teste : testes.entrySet()) {
+            try {
+                teste.getValue().executar(new String[0]);
+                System.out.println("ok     " + teste.getKey());
+            } catch (Throwable e) {
+                falhas++;
+                System.out.println("FALHOU " + teste.getKey() + ": " + e);
+                e.printStackTrace(System.out);
+            }
+        }
+        System.out.println(testes.size() - falhas + " de " + testes.size() + " testes passaram");
+        if (falhas > 0) {
+            System.exit(1);
+        }
+    }
+}
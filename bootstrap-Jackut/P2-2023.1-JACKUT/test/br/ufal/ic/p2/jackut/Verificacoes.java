@@ -0,0 +1,82 @@
+/**
+ * Verificações usadas pelos testes de unidade, que rodam sem bibliotecas de teste.
+ * <p>
+ * Cada teste é uma classe com um método main que lança {@link AssertionError} na primeira
+ * verificação que falha; {@link TodosOsTestes} executa todos e resume o resultado.
+ * </p>
+ */
+package br.ufal.ic.p2.jackut;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Objects;
+
+public final class Verificacoes {
+    private Verificacoes() {
+    }
+
+    /**
+     * Verifica uma condição
+     * @param condicao Condição esperada
+     * @param mensagem Descrição da falha
+     * @throws AssertionError Se a condição for falsa
+     */
+    public static void verificar(boolean condicao, String mensagem) {
+        if (!condicao) {
+            throw new AssertionError(mensagem);
+        }
+    }
+
+    /**
+     * Verifica se dois valores são iguais
+     * @param esperado Valor esperado
+     * @param obtido Valor obtido
+     * @param mensagem Descrição do que foi verificado
+     * @throws AssertionError Se os valores forem diferentes
+     */
+    public static void verificarIgual(Object esperado, Object obtido, String mensagem) {
+        if (!Objects.equals(esperado, obtido)) {
+            throw new AssertionError(mensagem + ": esperado <" + esperado + ">, obtido <" + obtido + ">");
+        }
+    }
+
+    /**
+     * Verifica se uma ação lança RuntimeException com a mensagem informada
+     * @param mensagemEsperada Mensagem da exceção
+     * @param acao Ação executada
+     * @throws AssertionError Se a ação não lançar a exceção esperada
+     */
+    public static void verificarErro(String mensagemEsperada, Runnable acao) {
+        try {
+            acao.run();
+        } catch (RuntimeException e) {
+            verificarIgual(mensagemEsperada, e.getMessage(), "mensagem de erro");
+            return;
+        }
+        throw new AssertionError("esperado erro <" + mensagemEsperada + ">");
+    }
+
+    /**
+     * Cria um diretório temporário para os dados de um teste
+     * @return Diretório criado
+     * @throws IOException Se não for possível criá-lo
+     */
+    public static File diretorioTemporario() throws IOException {
+        return Files.createTempDirectory("jackut-teste").toFile();
+    }
+
+    /**
+     * Remove um diretório de dados e o que houver dentro
+     * @param arquivo Diretório ou arquivo
+     */
+    public static void apagar(File arquivo) {
+        File[] filhos = arquivo.listFiles();
+        if (filhos != null) {
+            for (File filho : filhos) {
+                apagar(filho);
+            }
+        }
+        arquivo.delete();
+    }
+}
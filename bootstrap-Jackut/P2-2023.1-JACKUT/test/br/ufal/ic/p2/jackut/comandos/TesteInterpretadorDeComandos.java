@@ -0,0 +1,46 @@
+/**
+ * Testes do {@link InterpretadorDeComandos}: valores formatados por {@code citar}, inclusive com
+ * várias linhas, aspas e barras invertidas, ocupam uma única linha e são lidos de volta iguais.
+ */
+package br.ufal.ic.p2.jackut.comandos;
+
+import java.util.List;
+
+import static br.ufal.ic.p2.jackut.Verificacoes.*;
+
+public class TesteInterpretadorDeComandos {
+    // Valores com os caracteres que precisam de escape
+    private static final String[] VALORES = {
+            "simples", "", "com espaço", "linha 1\nlinha 2", "fim de linha\r\n", "\n",
+            "aspas \"internas\"", "barra \\n literal", "\\", "a=b", "# não é comentário"
+    };
+
+    public static void main(String[] args) {
+        for (String valor : VALORES) {
+            idaEVolta(valor);
+        }
+        escapesLidos();
+        System.out.println("InterpretadorDeComandos ok");
+    }
+
+    // O comando formatado ocupa uma linha e é interpretado com os mesmos argumentos
+    private static void idaEVolta(String valor) {
+        Comando comando = new Comando("enviarRecado", "s1", "bia", valor);
+        String linha = comando.toString();
+        verificar(linha.indexOf('\n') < 0 && linha.indexOf('\r') < 0, "linha única para " + linha);
+        verificarIgual(List.of("s1", "bia", valor), InterpretadorDeComandos.interpretar(linha).getValores(),
+                "argumentos de " + linha);
+
+        // Resposta do servidor, lida pelo cliente com o mesmo interpretador
+        Comando resposta = InterpretadorDeComandos.interpretar("ok " + InterpretadorDeComandos.citar(valor));
+        verificarIgual(valor, resposta.getValor(0), "resposta com " + linha);
+    }
+
+    // Escapes escritos à mão nos scripts
+    private static void escapesLidos() {
+        Comando comando = InterpretadorDeComandos.interpretar("enviarRecado recado=\"a\\nb\\r\\\\n\\\"\"");
+        verificarIgual("a\nb\r\\n\"", comando.getValor(0), "escapes dentro das aspas");
+        comando = InterpretadorDeComandos.interpretar("enviarRecado recado=a\\nb");
+        verificarIgual("a\\nb", comando.getValor(0), "barra fora das aspas");
+    }
+}
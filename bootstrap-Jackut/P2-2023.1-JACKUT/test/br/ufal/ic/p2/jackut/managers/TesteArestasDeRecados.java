@@ -0,0 +1,87 @@
+/**
+ * Testes das arestas reversas de recados: o par remetente e destinatário só fica ligado enquanto
+ * houver recados não lidos entre eles, tanto na leitura quanto na remoção do remetente, e a
+ * contagem dos recados não lidos é refeita quando o destinatário é carregado do snapshot.
+ */
+package br.ufal.ic.p2.jackut.managers;
+
+import br.ufal.ic.p2.jackut.models.Usuario;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static br.ufal.ic.p2.jackut.Verificacoes.*;
+
+public class TesteArestasDeRecados {
+    // Posições dos destinatários e dos remetentes de recados em Usuario.getLigacoes
+    private static final int DESTINATARIOS = 9;
+    private static final int REMETENTES = 10;
+
+    public static void main(String[] args) throws IOException {
+        UserManager userManager = new UserManager();
+        for (String login : new String[] { "ana", "bia", "caio" }) {
+            userManager.criarUsuario(login, "s", login);
+        }
+        Usuario ana = userManager.getUsuario("ana");
+        Usuario bia = userManager.getUsuario("bia");
+        Usuario caio = userManager.getUsuario("caio");
+
+        // A aresta com Ana só some quando o segundo recado dela é lido
+        bia.receberRecado(ana, "a1");
+        bia.receberRecado(caio, "c1");
+        bia.receberRecado(ana, "a2");
+        verificarIgual("a1", bia.lerRecado(userManager::getUsuarioPorId), "primeiro recado");
+        String soBia = "[" + bia.getId() + "]";
+        verificarLigacoes(ana, bia, caio, soBia, soBia, "[" + ana.getId() + ", " + caio.getId() + "]",
+                "com um recado de Ana não lido");
+        verificarIgual("c1", bia.lerRecado(userManager::getUsuarioPorId), "recado de Caio");
+        verificarIgual("a2", bia.lerRecado(userManager::getUsuarioPorId), "segundo recado de Ana");
+        verificarLigacoes(ana, bia, caio, "[]", "[]", "[]", "com todos os recados lidos");
+
+        // A remoção do remetente retira os recados dele e a contagem, sem deixar arestas
+        bia.receberRecado(caio, "c2");
+        bia.receberRecado(ana, "a3");
+        userManager.removerUsuario(caio);
+        verificarIgual("[" + ana.getId() + "]", Arrays.toString(bia.getLigacoes()[REMETENTES]),
+                "remetentes depois de remover Caio");
+        verificarIgual("a3", bia.lerRecado(userManager::getUsuarioPorId), "recado de Ana depois da remoção");
+        verificarIgual("[]", Arrays.toString(bia.getLigacoes()[REMETENTES]), "remetentes depois de ler");
+        verificarIgual("[]", Arrays.toString(ana.getLigacoes()[DESTINATARIOS]), "destinatários de Ana");
+
+        // Depois de carregar do snapshot, ler o recado pendente desfaz as arestas gravadas
+        bia.receberRecado(ana, "a4");
+        File diretorio = diretorioTemporario();
+        try {
+            new SnapshotParticionado(diretorio, 2).gravar(1, userManager, new CommunityManager(userManager));
+            UserManager carregados = new UserManager();
+            new SnapshotParticionado(diretorio, 2).carregar(carregados, new CommunityManager(carregados));
+            Usuario anaCarregada = carregados.getUsuario("ana");
+            Usuario biaCarregada = carregados.getUsuario("bia");
+            verificarIgual("[" + biaCarregada.getId() + "]", Arrays.toString(anaCarregada.getLigacoes()[DESTINATARIOS]),
+                    "destinatários de Ana carregados");
+            verificarIgual("a4", biaCarregada.lerRecado(carregados::getUsuarioPorId), "recado carregado");
+            verificarIgual("[]", Arrays.toString(anaCarregada.getLigacoes()[DESTINATARIOS]),
+                    "destinatários de Ana depois de ler");
+            verificarIgual("[]", Arrays.toString(biaCarregada.getLigacoes()[REMETENTES]),
+                    "remetentes de Bia depois de ler");
+        } finally {
+            apagar(diretorio);
+        }
+        System.out.println("Arestas de recados ok");
+    }
+
+    // Confere os destinatários de Ana e de Caio e os remetentes de Bia
+    private static void verificarLigacoes(Usuario ana, Usuario bia, Usuario caio, String deAna, String deCaio,
+                                          String remetentes, String situacao) {
+        verificarIgual(deAna, Arrays.toString(ana.getLigacoes()[DESTINATARIOS]), "destinatários de Ana " + situacao);
+        verificarIgual(deCaio, Arrays.toString(caio.getLigacoes()[DESTINATARIOS]), "destinatários de Caio " + situacao);
+        verificarIgual(remetentes, ordenados(bia.getLigacoes()[REMETENTES]), "remetentes de Bia " + situacao);
+    }
+
+    private static String ordenados(int[] ids) {
+        int[] copia = ids.clone();
+        Arrays.sort(copia);
+        return Arrays.toString(copia);
+    }
+}
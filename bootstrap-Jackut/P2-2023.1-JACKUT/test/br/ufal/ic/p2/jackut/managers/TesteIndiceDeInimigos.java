@@ -0,0 +1,79 @@
+/**
+ * Testes do {@link IndiceDeInimigos}: a remoção por deslocamento reverso não pode esconder os
+ * pares que continuam no índice, e o filtro nunca dá falso negativo, nem depois de ser refeito.
+ */
+package br.ufal.ic.p2.jackut.managers;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static br.ufal.ic.p2.jackut.Verificacoes.*;
+
+public class TesteIndiceDeInimigos {
+    // Quantidade de usuários e de pares sorteados
+    private static final int USUARIOS = 400;
+    private static final int PARES = 3000;
+
+    public static void main(String[] args) {
+        Random aleatorio = new Random(7);
+        IndiceDeInimigos indice = new IndiceDeInimigos();
+        Set<Long> esperado = new HashSet<>();
+        while (esperado.size() < PARES) {
+            int usuario = aleatorio.nextInt(USUARIOS);
+            int inimigo = aleatorio.nextInt(USUARIOS);
+            if (usuario != inimigo) {
+                verificarIgual(esperado.add(par(usuario, inimigo)), indice.adicionar(usuario, inimigo),
+                        "adicionar " + usuario + "->" + inimigo);
+            }
+        }
+        long repetido = esperado.iterator().next();
+        verificar(!indice.adicionar((int) (repetido >>> 32), (int) repetido), "inclusão repetida");
+        conferir(indice, esperado);
+
+        // Remove metade dos usuários, um a um, conferindo todos os pares depois de cada remoção
+        for (int id = 0; id < USUARIOS; id += 2) {
+            List<Integer> inimigos = new ArrayList<>();
+            List<Integer> inimigoDe = new ArrayList<>();
+            for (long chave : esperado) {
+                int usuario = (int) (chave >>> 32);
+                int inimigo = (int) chave;
+                if (usuario == id) {
+                    inimigos.add(inimigo);
+                } else if (inimigo == id) {
+                    inimigoDe.add(usuario);
+                }
+            }
+            indice.removerUsuario(id, paraVetor(inimigos), paraVetor(inimigoDe));
+            int removido = id;
+            esperado.removeIf(chave -> (int) (chave >>> 32) == removido || (int) (long) chave == removido);
+            conferir(indice, esperado);
+        }
+
+        indice.limpar();
+        verificarIgual(0, indice.getQuantidadePares(), "pares depois de limpar");
+        verificar(!indice.saoInimigos(1, 3), "índice limpo");
+        System.out.println("IndiceDeInimigos ok");
+    }
+
+    // Confere a quantidade de pares e a resposta simétrica para todo par de usuários
+    private static void conferir(IndiceDeInimigos indice, Set<Long> esperado) {
+        verificarIgual(esperado.size(), indice.getQuantidadePares(), "quantidade de pares");
+        for (int a = 0; a < USUARIOS; a++) {
+            for (int b = a + 1; b < USUARIOS; b++) {
+                boolean inimigos = esperado.contains(par(a, b)) || esperado.contains(par(b, a));
+                verificarIgual(inimigos, indice.saoInimigos(a, b), "inimigos " + a + " e " + b);
+            }
+        }
+    }
+
+    private static long par(int usuario, int inimigo) {
+        return (long) usuario << 32 | inimigo;
+    }
+
+    private static int[] paraVetor(List<Integer> ids) {
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Testes do {@link Journal}: reprodução dos registros e descarte da cauda deixada por uma gravação
+ * interrompida (registro cortado, CRC que não confere ou lixo depois do último registro), com o
+ * arquivo truncado no último registro válido para que as gravações seguintes continuem legíveis.
+ * Também verifica que a carga do {@link PersistenceManager} falha com
+ * {@link JournalInconsistenteException}, em vez de descartá-los, em registros que a operação
+ * rejeitaria, como os de um usuário já removido.
+ */
+package br.ufal.ic.p2.jackut.managers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static br.ufal.ic.p2.jackut.Verificacoes.*;
+
+public class TesteJournal {
+    public static void main(String[] args) throws IOException {
+        File diretorio = diretorioTemporario();
+        try {
+            File arquivo = new File(diretorio, "jackut.journal");
+            Journal journal = new Journal(arquivo, true);
+            journal.registrar("criarUsuario", "ana", "s", "Ana");
+            journal.registrar("editarPerfil", "ana", "cidade", null);
+            long doisRegistros = journal.getTamanho();
+            journal.registrar("enviarRecado", "ana", "bia", "olá, ç");
+            journal.fechar();
+            long completo = arquivo.length();
+            verificarIgual(completo, journal.getTamanho(), "tamanho contado");
+
+            verificarIgual("[[criarUsuario, ana, s, Ana], [editarPerfil, ana, cidade, null], "
+                    + "[enviarRecado, ana, bia, olá, ç]]", reproduzir(arquivo, 0).toString(), "reprodução completa");
+            verificarIgual("[[enviarRecado, ana, bia, olá, ç]]", reproduzir(arquivo, 2).toString(),
+                    "reprodução após a sequência 2");
+            verificarIgual(completo, arquivo.length(), "arquivo íntegro não é truncado");
+
+            // Último registro cortado no meio
+            byte[] original = ler(arquivo);
+            escrever(arquivo, Arrays.copyOf(original, (int) completo - 3));
+            verificarIgual(2, reproduzir(arquivo, 0).size(), "registro cortado descartado");
+            verificarIgual(doisRegistros, arquivo.length(), "truncado no último registro válido");
+
+            // CRC que não confere no último registro
+            byte[] corrompido = original.clone();
+            corrompido[(int) doisRegistros + 20] ^= 0x40;
+            escrever(arquivo, corrompido);
+            verificarIgual(2, reproduzir(arquivo, 0).size(), "registro com CRC inválido descartado");
+            verificarIgual(doisRegistros, arquivo.length(), "truncado antes do registro corrompido");
+
+            // Lixo depois do último registro, com um tamanho absurdo
+            byte[] comLixo = Arrays.copyOf(original, original.length + 6);
+            comLixo[original.length] = 0x7F;
+            escrever(arquivo, comLixo);
+            verificarIgual(3, reproduzir(arquivo, 0).size(), "registros antes do lixo");
+            verificarIgual(completo, arquivo.length(), "lixo removido");
+
+            // Depois do truncamento, o journal continua a sequência e os novos registros são lidos
+            escrever(arquivo, Arrays.copyOf(original, (int) completo - 3));
+            Journal reaberto = new Journal(arquivo, true);
+            reaberto.reproduzir(0, campos -> { });
+            verificarIgual(2L, reaberto.getUltimaSequencia(), "sequência depois do truncamento");
+            reaberto.registrar("lerRecado", "bia");
+            reaberto.fechar();
+            List<String> lidos = reproduzir(arquivo, 0);
+            verificarIgual("[lerRecado, bia]", lidos.get(lidos.size() - 1), "registro gravado depois do truncamento");
+            verificarIgual(3, lidos.size(), "registros depois do truncamento");
+        } finally {
+            apagar(diretorio);
+        }
+        registrosRejeitados();
+        System.out.println("Journal ok");
+    }
+
+    // Um registro de um usuário removido ou que a operação rejeitaria interrompe a carga
+    private static void registrosRejeitados() throws IOException {
+        verificarRejeicao("Registro do journal rejeitado (enviarRecado de ana): Usuário não cadastrado.", false,
+                new String[]{"removerUsuario", "ana"}, new String[]{"enviarRecado", "ana", "bia", "órfão"});
+        verificarRejeicao("Registro do journal rejeitado (lerRecado de ana): Não há recados.", false,
+                new String[]{"lerRecado", "ana"});
+        verificarRejeicao("Registro do journal rejeitado (adicionarAmigo de bia): Usuário não cadastrado.", true,
+                new String[]{"adicionarAmigo", "bia", "fantasma"});
+        verificarRejeicao("Registro do journal rejeitado (apagarTudo de ana): Operação desconhecida.", false,
+                new String[]{"apagarTudo", "ana"});
+    }
+
+    // Grava o cadastro de ana e bia seguido dos registros e confere o erro da carga
+    private static void verificarRejeicao(String esperado, boolean comCausa, String[]... registros)
+            throws IOException {
+        File diretorio = diretorioTemporario();
+        try {
+            Journal journal = new Journal(new File(diretorio, "jackut.journal"), true);
+            journal.registrar("criarUsuario", "ana", "s", "Ana");
+            journal.registrar("criarUsuario", "bia", "s", "Bia");
+            for (String[] registro : registros) {
+                journal.registrar(registro);
+            }
+            journal.fechar();
+
+            UserManager userManager = new UserManager();
+            PersistenceManager persistencia = new PersistenceManager(diretorio, userManager,
+                    new CommunityManager(userManager), new RelationshipManager(userManager));
+            try {
+                persistencia.carregarDados();
+                throw new AssertionError("carga deveria falhar: " + esperado);
+            } catch (JournalInconsistenteException e) {
+                verificarIgual(esperado, e.getMessage(), "registro rejeitado");
+                verificarIgual(comCausa, e.getCause() != null, "causa da rejeição");
+            }
+        } finally {
+            apagar(diretorio);
+        }
+    }
+
+    // Reproduz o arquivo em um journal novo e devolve os campos de cada registro aplicado
+    private static List<String> reproduzir(File arquivo, long aposSequencia) {
+        List<String> lidos = new ArrayList<>();
+        new Journal(arquivo, true).reproduzir(aposSequencia, campos -> lidos.add(Arrays.toString(campos)));
+        return lidos;
+    }
+
+    private static byte[] ler(File arquivo) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(arquivo, "r")) {
+            byte[] dados = new byte[(int) raf.length()];
+            raf.readFully(dados);
+            return dados;
+        }
+    }
+
+    private static void escrever(File arquivo, byte[] dados) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(arquivo, "rw")) {
+            raf.setLength(0);
+            raf.write(dados);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Testes das gerações do {@link SnapshotParticionado}: só as partições sujas são regravadas, em
+ * arquivos de uma geração nova, os arquivos substituídos e os deixados por gravações interrompidas
+ * são apagados, e a carga lê de cada partição a geração que o manifesto indica, mantendo a ordem em
+ * que as amizades foram feitas.
+ */
+package br.ufal.ic.p2.jackut.managers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static br.ufal.ic.p2.jackut.Verificacoes.*;
+
+public class TesteSnapshotParticionado {
+    // Quantidade de partições e de usuários gravados
+    private static final int PARTICOES = 4;
+    private static final int USUARIOS = 40;
+
+    // Amigos de u1, na ordem em que as amizades são feitas
+    private static final String[] AMIGOS_DE_U1 = { "u30", "u2", "u17", "u9" };
+
+    public static void main(String[] args) throws IOException {
+        File diretorio = diretorioTemporario();
+        try {
+            UserManager userManager = new UserManager();
+            CommunityManager communityManager = new CommunityManager(userManager);
+            for (int i = 0; i < USUARIOS; i++) {
+                userManager.criarUsuario("u" + i, "s", "Usuario " + i);
+            }
+            communityManager.criarComunidade(userManager.getUsuario("u1"), "jogos", "Jogos");
+            for (String amigo : AMIGOS_DE_U1) {
+                userManager.getUsuario(amigo).enviarConvite(userManager.getUsuario("u1"));
+                userManager.getUsuario("u1").aceitarConvite(userManager.getUsuario(amigo));
+            }
+
+            // A primeira gravação escreve todas as partições na geração 1
+            SnapshotParticionado snapshot = new SnapshotParticionado(diretorio, PARTICOES);
+            verificar(!snapshot.existe(), "diretório sem snapshot");
+            verificarIgual(PARTICOES, snapshot.getQuantidadeSujas(), "todas sujas no início");
+            snapshot.gravar(10, userManager, communityManager);
+            verificarIgual(0, snapshot.getQuantidadeSujas(), "nenhuma suja depois de gravar");
+            for (int i = 0; i < PARTICOES; i++) {
+                verificar(particao(diretorio, i, 1).exists(), "partição " + i + " na geração 1");
+            }
+
+            // Uma alteração regrava só a partição do usuário, na geração 2
+            userManager.editarAtributo(userManager.getUsuario("u3"), "cidade", "Recife");
+            snapshot.marcarUsuario("u3");
+            verificarIgual(1, snapshot.getQuantidadeSujas(), "uma partição suja");
+            int alterada = snapshot.getParticao("u3");
+            // Arquivo de uma gravação interrompida, que o manifesto nunca referenciou
+            File interrompida = particao(diretorio, alterada == 0 ? 1 : 0, 9);
+            try (FileOutputStream saida = new FileOutputStream(interrompida)) {
+                saida.write(new byte[] { 1, 2, 3 });
+            }
+            snapshot.gravar(11, userManager, communityManager);
+            for (int i = 0; i < PARTICOES; i++) {
+                long geracao = i == alterada ? 2 : 1;
+                verificar(particao(diretorio, i, geracao).exists(), "partição " + i + " na geração " + geracao);
+            }
+            verificar(!particao(diretorio, alterada, 1).exists(), "arquivo substituído apagado");
+            verificar(!interrompida.exists(), "arquivo de gravação interrompida apagado");
+
+            // Um snapshot novo sobre o diretório lê as gerações do manifesto
+            UserManager carregados = new UserManager();
+            CommunityManager comunidades = new CommunityManager(carregados);
+            SnapshotParticionado relido = new SnapshotParticionado(diretorio, PARTICOES);
+            verificar(relido.existe(), "manifesto gravado");
+            verificarIgual(11L, relido.carregar(carregados, comunidades), "sequência do manifesto");
+            for (int i = 0; i < USUARIOS; i++) {
+                verificarIgual("Usuario " + i, carregados.getUsuario("u" + i).getNome(), "nome de u" + i);
+            }
+            verificarIgual("Recife", carregados.getUsuario("u3").getPerfil().getAtributo("cidade"), "atributo alterado");
+            verificarIgual("u1", comunidades.getDonoComunidade("jogos"), "dono da comunidade");
+            StringBuilder amigos = new StringBuilder();
+            for (int id : carregados.getUsuario("u1").getIdsAmigos()) {
+                amigos.append(carregados.getUsuarioPorId(id).getLogin()).append(' ');
+            }
+            verificarIgual(String.join(" ", AMIGOS_DE_U1), amigos.toString().trim(), "ordem das amizades");
+
+            // A geração continua depois da carga, sem reaproveitar nomes de arquivos existentes
+            relido.marcarUsuario("u5");
+            relido.gravar(12, carregados, comunidades);
+            verificar(particao(diretorio, relido.getParticao("u5"), 3).exists(), "geração 3 depois da carga");
+            System.out.println("SnapshotParticionado ok");
+        } finally {
+            apagar(diretorio);
+        }
+    }
+
+    private static File particao(File diretorio, int indice, long geracao) {
+        return new File(diretorio, "jackut.particao." + indice + "." + geracao);
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Testes das proteções do {@link ServidorDeComandos}: por padrão ele escuta no loopback e recusa
+ * os comandos de administração (zerarSistema e encerrarSistema), que só são aceitos com a
+ * administração permitida, mas aceita que um usuário remova a própria conta; os IDs de sessão não seguem uma sequência; um socket Unix abandonado é substituído,
+ * mas um arquivo comum no mesmo caminho não é apagado.
+ */
+package br.ufal.ic.p2.jackut.servidor;
+
+import br.ufal.ic.p2.jackut.Facade;
+import br.ufal.ic.p2.jackut.comandos.Comando;
+import br.ufal.ic.p2.jackut.comandos.Resultado;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static br.ufal.ic.p2.jackut.Verificacoes.*;
+
+public class TesteServidorDeComandos {
+    // Quantidade de sessões abertas para conferir os IDs
+    private static final int SESSOES = 100;
+
+    public static void main(String[] args) throws Exception {
+        File diretorio = diretorioTemporario();
+        try {
+            Facade facade = new Facade(diretorio);
+            verificar(((InetSocketAddress) ServidorDeComandos.endereco("0")).getAddress().isLoopbackAddress(),
+                    "porta sem host no loopback");
+
+            try (ServidorDeComandos servidor = new ServidorDeComandos(facade, ServidorDeComandos.endereco("0"), false);
+                 ClienteDeComandos cliente = new ClienteDeComandos(servidor.getEndereco())) {
+                verificar(cliente.executar(new Comando("criarUsuario", "ana", "s", "Ana")).isSucesso(), "cadastro");
+                sessoesImprevisiveis(cliente);
+
+                // O comando recusado responde em ordem, sem impedir os seguintes
+                List<Resultado> resultados = cliente.executar(List.of(
+                        new Comando("getAtributoUsuario", "ana", "nome"),
+                        new Comando("zerarSistema"),
+                        new Comando("getAtributoUsuario", "ana", "nome")));
+                verificarIgual("Ana", resultados.get(0).getValor(), "resposta antes do comando recusado");
+                verificarIgual("Comando não permitido neste servidor: zerarSistema.", resultados.get(1).getErro(),
+                        "zerarSistema recusado");
+                verificarIgual("Ana", resultados.get(2).getValor(), "dados mantidos");
+                verificarIgual("Comando não permitido neste servidor: encerrarSistema.",
+                        cliente.executar(new Comando("encerrarSistema")).getErro(), "encerrarSistema recusado");
+
+                // Remover a própria conta não é administração
+                verificar(cliente.executar(new Comando("criarUsuario", "bob", "s", "Bob")).isSucesso(), "cadastro de bob");
+                String sessao = cliente.executar(new Comando("abrirSessao", "bob", "s")).getValor();
+                verificar(cliente.executar(new Comando("removerUsuario", sessao)).isSucesso(), "removerUsuario aceito");
+                verificarIgual("Usuário não cadastrado.",
+                        cliente.executar(new Comando("getAtributoUsuario", "bob", "nome")).getErro(), "conta removida");
+            }
+
+            try (ServidorDeComandos servidor = new ServidorDeComandos(facade, ServidorDeComandos.endereco("0"), true);
+                 ClienteDeComandos cliente = new ClienteDeComandos(servidor.getEndereco())) {
+                verificar(cliente.executar(new Comando("zerarSistema")).isSucesso(), "zerarSistema com administração");
+                verificarIgual("Usuário não cadastrado.",
+                        cliente.executar(new Comando("getAtributoUsuario", "ana", "nome")).getErro(), "sistema zerado");
+            }
+            socketUnix(facade, diretorio);
+            facade.encerrarSistema();
+            System.out.println("ServidorDeComandos ok");
+        } finally {
+            apagar(diretorio);
+        }
+    }
+
+    // O arquivo de um socket fechado sem ser apagado é substituído; um arquivo comum impede a abertura
+    private static void socketUnix(Facade facade, File diretorio) throws Exception {
+        Path caminho = new File(diretorio, "jackut.sock").toPath();
+        try (ServerSocketChannel abandonado = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            abandonado.bind(UnixDomainSocketAddress.of(caminho));
+        }
+        verificar(Files.exists(caminho), "socket abandonado no disco");
+        try (ServidorDeComandos servidor = new ServidorDeComandos(facade, UnixDomainSocketAddress.of(caminho));
+             ClienteDeComandos cliente = new ClienteDeComandos(servidor.getEndereco())) {
+            verificar(cliente.executar(new Comando("getAtributoUsuario", "ninguem", "nome")).getErro() != null,
+                    "servidor no lugar do socket abandonado");
+            verificarRecusa("Já há um servidor escutando em " + caminho, facade, caminho);
+        }
+
+        Files.writeString(caminho, "dados");
+        verificarRecusa("O caminho já existe e não é um socket: " + caminho, facade, caminho);
+        verificarIgual("dados", Files.readString(caminho), "arquivo comum mantido");
+    }
+
+    // O servidor não pode abrir no caminho
+    private static void verificarRecusa(String mensagemEsperada, Facade facade, Path caminho) {
+        try (ServidorDeComandos servidor = new ServidorDeComandos(facade, UnixDomainSocketAddress.of(caminho))) {
+            throw new AssertionError("esperado erro <" + mensagemEsperada + ">");
+        } catch (IOException e) {
+            verificarIgual(mensagemEsperada, e.getMessage(), "mensagem de erro");
+        }
+    }
+
+    // IDs distintos e sem partes numéricas consecutivas
+    private static void sessoesImprevisiveis(ClienteDeComandos cliente) throws Exception {
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < SESSOES; i++) {
+            String id = cliente.executar(new Comando("abrirSessao", "ana", "s")).getValor();
+            verificar(ids.add(id), "ID de sessão repetido: " + id);
+            verificar(id.length() >= 22 + "sessao_".length(), "ID de sessão curto: " + id);
+        }
+        verificar(!ids.contains("sessao_1") && !ids.contains("sessao_2"), "IDs sequenciais");
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Testes da {@link ArvoreDePrefixos}: busca exata e por prefixo em ordem alfabética, e poda dos
+ * nós que ficam vazios na remoção.
+ */
+package br.ufal.ic.p2.jackut.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static br.ufal.ic.p2.jackut.Verificacoes.*;
+
+public class TesteArvoreDePrefixos {
+    public static void main(String[] args) {
+        ArvoreDePrefixos arvore = new ArvoreDePrefixos();
+        arvore.adicionar("maria", 3);
+        arvore.adicionar("mario", 1);
+        arvore.adicionar("mar", 7);
+        arvore.adicionar("ana", 2);
+        arvore.adicionar("maria", 5);
+
+        // Na ordem dos textos, e os ids de um mesmo texto em ordem crescente
+        verificarIgual("[7, 3, 5, 1]", comPrefixo(arvore, "mar"), "prefixo mar");
+        verificarIgual("[2, 7, 3, 5, 1]", comPrefixo(arvore, ""), "prefixo vazio");
+        verificarIgual("[]", comPrefixo(arvore, "mx"), "prefixo ausente");
+        verificarIgual("[]", comPrefixo(arvore, "marias"), "prefixo maior que os textos");
+        verificarIgual("[7]", iguais(arvore, "mar"), "igual a mar");
+        verificarIgual("[]", iguais(arvore, "ma"), "nó intermediário sem ids");
+
+        verificar(arvore.remover("maria", 3), "remover id existente");
+        verificar(!arvore.remover("maria", 3), "remover id já removido");
+        verificar(!arvore.remover("marta", 3), "remover texto ausente");
+        verificarIgual("[7, 5, 1]", comPrefixo(arvore, "mar"), "prefixo depois da remoção");
+
+        // Removidos os ids de "maria" e "mario", a subárvore abaixo de "mar" é podada
+        verificar(arvore.remover("maria", 5) && arvore.remover("mario", 1), "remover folhas");
+        verificarIgual("[7]", comPrefixo(arvore, "mar"), "prefixo depois da poda");
+        verificarIgual("[]", comPrefixo(arvore, "mari"), "nó podado");
+        verificar(arvore.remover("mar", 7), "remover o último id do ramo");
+        verificarIgual("[2]", comPrefixo(arvore, ""), "só o outro ramo resta");
+
+        arvore.limpar();
+        verificarIgual("[]", comPrefixo(arvore, ""), "árvore limpa");
+        System.out.println("ArvoreDePrefixos ok");
+    }
+
+    private static String comPrefixo(ArvoreDePrefixos arvore, String prefixo) {
+        List<Integer> ids = new ArrayList<>();
+        arvore.paraCadaComPrefixo(prefixo, ids::add);
+        return ids.toString();
+    }
+
+    private static String iguais(ArvoreDePrefixos arvore, String texto) {
+        List<Integer> ids = new ArrayList<>();
+        arvore.paraCadaIgual(texto, ids::add);
+        return ids.toString();
+    }
+}
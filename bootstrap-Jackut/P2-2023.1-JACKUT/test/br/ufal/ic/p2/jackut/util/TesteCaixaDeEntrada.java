@@ -0,0 +1,97 @@
+/**
+ * Testes da {@link CaixaDeEntrada}: ordem de chegada com o buffer crescendo e dando a volta,
+ * recados iguais de remetentes diferentes mantidos separados e remoção preguiçosa por remetente,
+ * comparadas com uma fila de referência.
+ */
+package br.ufal.ic.p2.jackut.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import static br.ufal.ic.p2.jackut.Verificacoes.*;
+
+public class TesteCaixaDeEntrada {
+    // Quantidade de operações sorteadas
+    private static final int OPERACOES = 100_000;
+
+    public static void main(String[] args) {
+        textosIguais();
+        remocaoPorRemetente();
+        comparadaComFila(new Random(42));
+        System.out.println("CaixaDeEntrada ok");
+    }
+
+    // Dois recados com o mesmo texto são entregues, e remover um remetente não apaga o do outro
+    private static void textosIguais() {
+        CaixaDeEntrada caixa = new CaixaDeEntrada();
+        caixa.adicionar(1, "oi");
+        caixa.adicionar(2, "oi");
+        caixa.adicionar(CaixaDeEntrada.SEM_REMETENTE, "oi");
+        verificarIgual(3, caixa.tamanho(), "recados iguais");
+        caixa.removerDe(1);
+        verificarIgual("[oi de 2, oi de -1]", conteudo(caixa), "depois de remover o remetente 1");
+        caixa.removerDe(CaixaDeEntrada.SEM_REMETENTE);
+        verificarIgual(2, caixa.tamanho(), "entradas sem remetente não são removidas");
+    }
+
+    // As entradas removidas são puladas na leitura e descartadas na compactação
+    private static void remocaoPorRemetente() {
+        CaixaDeEntrada caixa = new CaixaDeEntrada();
+        verificar(caixa.retirar() == null && caixa.vazia(), "caixa nova vazia");
+        for (int i = 0; i < 10; i++) {
+            caixa.adicionar(i % 2 == 0 ? 7 : 8, "r" + i);
+        }
+        caixa.removerDe(7);
+        verificarIgual(5, caixa.tamanho(), "tamanho sem as entradas removidas");
+        verificarIgual(8, caixa.remetenteDoInicio(), "remetente da primeira entrada válida");
+        verificarIgual("r1", caixa.retirar(), "primeira entrada válida");
+        // Mais da metade das entradas restantes descartadas dispara a compactação
+        caixa.removerDe(8);
+        verificar(caixa.vazia() && caixa.retirar() == null, "todas removidas");
+        verificarIgual(CaixaDeEntrada.SEM_REMETENTE, caixa.remetenteDoInicio(), "remetente da caixa vazia");
+        caixa.adicionar(9, "depois");
+        verificarIgual("depois", caixa.retirar(), "entrada depois da compactação");
+        caixa.adicionar(9, "x");
+        caixa.limpar();
+        verificar(caixa.vazia() && caixa.retirar() == null, "caixa limpa");
+    }
+
+    private static void comparadaComFila(Random aleatorio) {
+        CaixaDeEntrada caixa = new CaixaDeEntrada();
+        Deque<int[]> esperado = new ArrayDeque<>();
+        List<String> textos = new ArrayList<>();
+        // Um remetente removido não volta a enviar para a caixa, então os remetentes ativos avançam
+        int primeiroAtivo = 0;
+        for (int i = 0; i < OPERACOES; i++) {
+            int sorteio = aleatorio.nextInt(100);
+            if (sorteio < 55) {
+                int remetente = primeiroAtivo + aleatorio.nextInt(8);
+                textos.add("t" + i);
+                caixa.adicionar(remetente, textos.get(textos.size() - 1));
+                esperado.addLast(new int[] { remetente, textos.size() - 1 });
+            } else if (sorteio < 95) {
+                int[] primeiro = esperado.pollFirst();
+                verificarIgual(primeiro == null ? null : textos.get(primeiro[1]), caixa.retirar(), "retirar");
+            } else {
+                int removido = primeiroAtivo++;
+                caixa.removerDe(removido);
+                esperado.removeIf(entrada -> entrada[0] == removido);
+            }
+            verificarIgual(esperado.size(), caixa.tamanho(), "tamanho");
+        }
+        List<String> restantes = new ArrayList<>();
+        for (int[] entrada : esperado) {
+            restantes.add(textos.get(entrada[1]) + " de " + entrada[0]);
+        }
+        verificarIgual(restantes.toString(), conteudo(caixa), "entradas restantes");
+    }
+
+    private static String conteudo(CaixaDeEntrada caixa) {
+        List<String> entradas = new ArrayList<>();
+        caixa.paraCada((texto, remetente) -> entradas.add(texto + " de " + remetente));
+        return entradas.toString();
+    }
+}
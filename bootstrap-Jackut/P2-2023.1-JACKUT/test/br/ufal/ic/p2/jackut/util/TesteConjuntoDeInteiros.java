@@ -0,0 +1,116 @@
+/**
+ * Testes do {@link ConjuntoDeInteiros}: operações sorteadas comparadas com um HashSet, com valores
+ * em uma faixa pequena para que as colisões e as remoções por deslocamento reverso aconteçam em
+ * agrupamentos longos, inclusive os que dão a volta no fim da tabela. Também verifica que leituras
+ * sem trava, concorrentes com inserções, remoções e limpezas, não falham.
+ */
+package br.ufal.ic.p2.jackut.util;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static br.ufal.ic.p2.jackut.Verificacoes.*;
+
+public class TesteConjuntoDeInteiros {
+    // Quantidade de operações sorteadas e faixa dos valores
+    private static final int OPERACOES = 200_000;
+    private static final int FAIXA = 300;
+
+    // Quantidade de leituras feitas durante as alterações de outra thread
+    private static final int LEITURAS_CONCORRENTES = 2_000_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        vazio();
+        comparadoComHashSet(new Random(42));
+        limpar();
+        leiturasConcorrentes();
+        System.out.println("ConjuntoDeInteiros ok");
+    }
+
+    // Um conjunto novo não aloca a tabela e responde às consultas
+    private static void vazio() {
+        ConjuntoDeInteiros conjunto = new ConjuntoDeInteiros();
+        verificar(conjunto.vazio(), "conjunto novo vazio");
+        verificar(!conjunto.contem(0), "conjunto novo não contém 0");
+        verificar(!conjunto.remover(0), "remover de conjunto novo");
+        verificarIgual(0, conjunto.paraVetor().length, "vetor de conjunto novo");
+        conjunto.paraCada(valor -> {
+            throw new AssertionError("paraCada em conjunto vazio");
+        });
+    }
+
+    private static void comparadoComHashSet(Random aleatorio) {
+        ConjuntoDeInteiros conjunto = new ConjuntoDeInteiros();
+        Set<Integer> esperado = new HashSet<>();
+        for (int i = 0; i < OPERACOES; i++) {
+            int valor = aleatorio.nextInt(FAIXA);
+            // Mais inserções que remoções no início, o contrário no fim, para crescer e esvaziar
+            boolean inserir = aleatorio.nextInt(OPERACOES) >= i;
+            if (inserir) {
+                verificarIgual(esperado.add(valor), conjunto.adicionar(valor), "adicionar " + valor);
+            } else {
+                verificarIgual(esperado.remove(valor), conjunto.remover(valor), "remover " + valor);
+            }
+            verificarIgual(esperado.size(), conjunto.tamanho(), "tamanho");
+            if (i % 1000 == 0) {
+                conferir(conjunto, esperado);
+            }
+        }
+        conferir(conjunto, esperado);
+    }
+
+    private static void limpar() {
+        ConjuntoDeInteiros conjunto = new ConjuntoDeInteiros();
+        for (int i = 0; i < 100; i++) {
+            conjunto.adicionar(i);
+        }
+        conjunto.limpar();
+        verificar(conjunto.vazio() && !conjunto.contem(5), "conjunto limpo");
+        verificar(conjunto.adicionar(5) && conjunto.contem(5), "inserção depois de limpar");
+    }
+
+    // Uma thread cresce, esvazia e limpa o conjunto enquanto outra o lê sem trava
+    private static void leiturasConcorrentes() throws InterruptedException {
+        ConjuntoDeInteiros conjunto = new ConjuntoDeInteiros();
+        AtomicBoolean parar = new AtomicBoolean();
+        Thread escritor = new Thread(() -> {
+            Random aleatorio = new Random(7);
+            while (!parar.get()) {
+                for (int i = 0; i < FAIXA; i++) {
+                    conjunto.adicionar(aleatorio.nextInt(FAIXA));
+                }
+                for (int i = 0; i < FAIXA / 2; i++) {
+                    conjunto.remover(aleatorio.nextInt(FAIXA));
+                }
+                conjunto.limpar();
+            }
+        });
+        escritor.start();
+        try {
+            for (int i = 0; i < LEITURAS_CONCORRENTES; i++) {
+                conjunto.contem(i % FAIXA);
+                if (i % 64 == 0) {
+                    for (int valor : conjunto.paraVetor()) {
+                        verificar(valor >= 0 && valor < FAIXA, "valor lido fora da faixa: " + valor);
+                    }
+                }
+            }
+        } finally {
+            parar.set(true);
+            escritor.join();
+        }
+    }
+
+    // Todo valor da faixa é encontrado exatamente quando está no conjunto esperado
+    private static void conferir(ConjuntoDeInteiros conjunto, Set<Integer> esperado) {
+        for (int valor = 0; valor < FAIXA; valor++) {
+            verificarIgual(esperado.contains(valor), conjunto.contem(valor), "contem " + valor);
+        }
+        int[] valores = conjunto.paraVetor();
+        Arrays.sort(valores);
+        verificarIgual(esperado.stream().sorted().toList().toString(), Arrays.toString(valores), "elementos");
+    }
+}